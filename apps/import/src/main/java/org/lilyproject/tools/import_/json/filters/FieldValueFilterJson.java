@@ -48,19 +48,35 @@ public class FieldValueFilterJson implements RecordFilterJsonConverter<FieldValu
             throw new RuntimeException("FieldValueFilter deserialization: both field and fieldValue must be specified.");
         }
 
+        String compareOp = JsonUtil.getString(node, "compareOp", null);
+        if (compareOp != null) {
+            filter.setCompareOp(CompareOp.valueOf(compareOp));
+        }
+
+        String rangeEndCompareOp = JsonUtil.getString(node, "rangeEndCompareOp", null);
+        if (rangeEndCompareOp != null) {
+            filter.setRangeEndCompareOp(CompareOp.valueOf(rangeEndCompareOp));
+        }
+
+        filter.setMatchPrefix(JsonUtil.getBoolean(node, "matchPrefix", filter.getMatchPrefix()));
+
         if (field != null && fieldValue != null) {
             QName fieldQName = QNameConverter.fromJson(field, namespaces); 
             filter.setField(fieldQName);
             ValueType valueType = repository.getTypeManager().getFieldTypeByName(fieldQName).getValueType();
+            JsonNode rangeEndValue = node.get("rangeEndValue");
+            if (comparesSingleValues(filter, rangeEndValue != null)) {
+                valueType = valueType.getDeepestValueType();
+            }
+
             Object value = RecordReader.INSTANCE.readValue(fieldValue, valueType, "fieldValue", new NamespacesImpl(), repository);
             filter.setFieldValue(value);
-        }
 
-        String compareOp = JsonUtil.getString(node, "compareOp", null);
-        if (compareOp != null) {
-            filter.setCompareOp(CompareOp.valueOf(compareOp));
+            if (rangeEndValue != null) {
+                filter.setRangeEndValue(RecordReader.INSTANCE.readValue(rangeEndValue, valueType, "rangeEndValue",
+                        new NamespacesImpl(), repository));
+            }
         }
-        
 
         filter.setFilterIfMissing(JsonUtil.getBoolean(node, "filterIfMissing", filter.getFilterIfMissing()));
         
@@ -82,19 +98,42 @@ public class FieldValueFilterJson implements RecordFilterJsonConverter<FieldValu
             node.put("field", QNameConverter.toJson(filter.getField(), namespaces));
             
             ValueType valueType = repository.getTypeManager().getFieldTypeByName(filter.getField()).getValueType();
+            if (comparesSingleValues(filter, filter.getRangeEndValue() != null)) {
+                valueType = valueType.getDeepestValueType();
+            }
             JsonNode valueAsJson = RecordWriter.INSTANCE.valueToJson(filter.getFieldValue(), valueType,
                     new WriteOptions(), namespaces, repository);
             
             node.put("fieldValue", valueAsJson);
             ObjectNode valueNode = node.putObject("value");
+
+            if (filter.getRangeEndValue() != null) {
+                node.put("rangeEndValue", RecordWriter.INSTANCE.valueToJson(filter.getRangeEndValue(), valueType,
+                        new WriteOptions(), namespaces, repository));
+            }
         }
 
         if (filter.getCompareOp() != null) {
             node.put("compareOp", filter.getCompareOp().toString());
         }
         
+        if (filter.getRangeEndCompareOp() != null) {
+            node.put("rangeEndCompareOp", filter.getRangeEndCompareOp().toString());
+        }
+
+        node.put("matchPrefix", filter.getMatchPrefix());
+
         node.put("filterIfMissing", filter.getFilterIfMissing());        
         
         return node;
     }
+
+    /**
+     * Except for plain (not-)equals comparisons, the field value is a single value, also for LIST or PATH fields.
+     */
+    private static boolean comparesSingleValues(FieldValueFilter filter, boolean hasRangeEnd) {
+        CompareOp compareOp = filter.getCompareOp() != null ? filter.getCompareOp() : CompareOp.EQUAL;
+        return filter.getMatchPrefix() || hasRangeEnd
+                || (compareOp != CompareOp.EQUAL && compareOp != CompareOp.NOT_EQUAL);
+    }
 }
@@ -17,6 +17,7 @@ package org.lilyproject.tools.import_.json.test;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -37,6 +38,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.lilyproject.repository.api.CompareOp;
 import org.lilyproject.repository.api.IdGenerator;
 import org.lilyproject.repository.api.QName;
 import org.lilyproject.repository.api.Record;
@@ -190,6 +192,19 @@ public class JsonConversionTest {
         assertEquals(500, parsedScan.getCaching());
     }
 
+    @Test
+    public void testScanParallelism() throws Exception {
+        RecordScan scan = new RecordScan();
+        scan.setParallelism(8);
+        scan.setOrdered(false);
+
+        byte[] data = scanToBytes(scan);
+        RecordScan parsedScan = scanFromBytes(data);
+
+        assertEquals(8, parsedScan.getParallelism());
+        assertEquals(false, parsedScan.getOrdered());
+    }
+
     @Test
     public void testScanRecordTypeFilter() throws Exception {
         QName recordType = new QName("ns", "rt");
@@ -286,6 +301,45 @@ public class JsonConversionTest {
         }
     }
 
+    @Test
+    public void testScanTypedFieldValueFilter() throws Exception {
+        // Range, the range end is a value of the same type as the field value
+        FieldValueFilter rangeFilter = new FieldValueFilter(new QName("ns", "longField"), CompareOp.GREATER, 3L);
+        rangeFilter.setRangeEndValue(10L);
+        rangeFilter.setRangeEndCompareOp(CompareOp.LESS_OR_EQUAL);
+
+        RecordScan scan = new RecordScan();
+        scan.setRecordFilter(rangeFilter);
+        byte[] data = scanToBytes(scan);
+
+        FieldValueFilter filter = (FieldValueFilter) scanFromBytes(data).getRecordFilter();
+        assertEquals(CompareOp.GREATER, filter.getCompareOp());
+        assertEquals(3L, filter.getFieldValue());
+        assertEquals(10L, filter.getRangeEndValue());
+        assertEquals(CompareOp.LESS_OR_EQUAL, filter.getRangeEndCompareOp());
+        assertFalse(filter.getMatchPrefix());
+
+        JsonNode node = new ObjectMapper().readTree(data);
+        assertEquals(10L, node.get("recordFilter").get("rangeEndValue").getLongValue());
+        assertEquals("LESS_OR_EQUAL", node.get("recordFilter").get("rangeEndCompareOp").getTextValue());
+
+        // Prefix match on a multi-value field: the field value is a single value
+        FieldValueFilter prefixFilter = new FieldValueFilter(new QName("ns", "stringListField"), "fo");
+        prefixFilter.setMatchPrefix(true);
+        scan.setRecordFilter(prefixFilter);
+        data = scanToBytes(scan);
+
+        filter = (FieldValueFilter) scanFromBytes(data).getRecordFilter();
+        assertTrue(filter.getMatchPrefix());
+        assertEquals("fo", filter.getFieldValue());
+        assertNull(filter.getRangeEndValue());
+        assertNull(filter.getRangeEndCompareOp());
+
+        node = new ObjectMapper().readTree(data);
+        assertTrue(node.get("recordFilter").get("matchPrefix").getBooleanValue());
+        assertEquals("fo", node.get("recordFilter").get("fieldValue").getTextValue());
+    }
+
     @Test
     public void testScanRecordVariantFilter() throws Exception {
         IdGenerator idGenerator = new IdGeneratorImpl();
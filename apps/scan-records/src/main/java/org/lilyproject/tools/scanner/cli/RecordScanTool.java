@@ -25,7 +25,6 @@ import org.lilyproject.repository.api.Record;
 import org.lilyproject.repository.api.RecordScan;
 import org.lilyproject.repository.api.RecordScanner;
 import org.lilyproject.repository.api.Repository;
-import org.lilyproject.repository.api.ReturnFields;
 import org.lilyproject.repository.api.filter.RecordFilterList;
 import org.lilyproject.repository.api.filter.RecordFilterList.Operator;
 import org.lilyproject.repository.api.filter.RecordTypeFilter;
@@ -37,6 +36,8 @@ public class RecordScanTool {
     private Repository repository;
     private static int DEFAULT_CACHE = 1024;
     private static boolean DEFAULT_CACHE_BLOCKS = false;
+    private int parallelism = -1;
+    private int estimateRegions = -1;
 
     public static void count(Repository repository) throws Exception {
         count(repository, null, null);
@@ -70,29 +71,29 @@ public class RecordScanTool {
         this.repository = repository;
     }
 
+    /**
+     * Sets the number of regions to scan concurrently, see {@link RecordScan#setParallelism(int)}. When not set,
+     * the value from the scan configuration is used.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the number of regions to count when estimating the number of records, see
+     * {@link Repository#estimateCount}. By default, all records are counted.
+     */
+    public void setEstimateRegions(int estimateRegions) {
+        this.estimateRegions = estimateRegions;
+    }
+
     public void count(String startId, String stopId, String recordTypeFilter, File configFile) throws Exception {
-        System.out.println("Counting records");
+        System.out.println(estimateRegions > 0 ? "Estimating record count" : "Counting records");
         RecordScan scan = createRecordScan(startId, stopId, recordTypeFilter, configFile);
-        if (configFile == null) {
-            // We don't need to return fields for counting
-            scan.setReturnFields(ReturnFields.NONE);
-        }
-        RecordScanner scanner = repository.getScanner(scan);
-        Record record;
         Date start = new Date();
-        try {
-            int i = 0;
-            while ((record = scanner.next()) != null) {                
-                i++;
-                if (i % 1000 == 0) {
-                    System.out.println("Record no° : " + i + ", Record id : " + record.getId() );
-                }
-            }
-            Date stop = new Date();
-            System.out.println("Found " + i + " records in " + ((stop.getTime() - start.getTime()) / 1000f) + "s");
-        } finally {
-            scanner.close();
-        }
+        long count = estimateRegions > 0 ? repository.estimateCount(scan, estimateRegions) : repository.count(scan);
+        Date stop = new Date();
+        System.out.println("Found " + count + " records in " + ((stop.getTime() - start.getTime()) / 1000f) + "s");
     }
 
     public void print(String startId, String stopId, long limit, String recordTypeFilter, File configFile) throws Exception {
@@ -126,6 +127,9 @@ public class RecordScanTool {
         scan = scan != null ? scan : new RecordScan();
         scan.setCaching(RecordScanTool.DEFAULT_CACHE);
         scan.setCacheBlocks(DEFAULT_CACHE_BLOCKS);
+        if (parallelism > 0) {
+            scan.setParallelism(parallelism);
+        }
 
         if (startId != null && startId.length() > 0) {
             scan.setStartRecordId(repository.getIdGenerator().fromString(startId));
@@ -35,6 +35,8 @@ public class ScannerCli extends BaseZkCliTool {
     private Option startOption;
     private Option stopOption;
     private Option recordTypeOption;
+    private Option parallelOption;
+    private Option estimateOption;
 
     /**
      * @param args
@@ -96,7 +98,19 @@ public class ScannerCli extends BaseZkCliTool {
                 .withDescription("Filter records by record type name")
                 .withLongOpt("record-type")
                 .create("r");
-        
+        parallelOption = OptionBuilder
+                .hasArg()
+                .withArgName("number")
+                .withDescription("Number of regions to scan concurrently (default 1)")
+                .withLongOpt("parallel")
+                .create();
+        estimateOption = OptionBuilder
+                .hasArg()
+                .withArgName("regions")
+                .withDescription("Estimate the number of records by counting only the given number of regions"
+                        + " (with --count)")
+                .withLongOpt("estimate")
+                .create();
 
         options.add(printOption);
         options.add(limitOption);
@@ -105,6 +119,8 @@ public class ScannerCli extends BaseZkCliTool {
         options.add(startOption);
         options.add(stopOption);
         options.add(recordTypeOption);
+        options.add(parallelOption);
+        options.add(estimateOption);
 
         return options;
     }
@@ -127,10 +143,17 @@ public class ScannerCli extends BaseZkCliTool {
         long limit = cmd.hasOption(limitOption.getLongOpt()) ? Long.parseLong(cmd.getOptionValue(limitOption.getLongOpt())) : -1;
 
         lilyClient = new LilyClient(zkConnectionString, zkSessionTimeout);
+        RecordScanTool scanTool = new RecordScanTool(lilyClient.getRepository());
+        if (cmd.hasOption(parallelOption.getLongOpt())) {
+            scanTool.setParallelism(Integer.parseInt(cmd.getOptionValue(parallelOption.getLongOpt())));
+        }
+        if (cmd.hasOption(estimateOption.getLongOpt())) {
+            scanTool.setEstimateRegions(Integer.parseInt(cmd.getOptionValue(estimateOption.getLongOpt())));
+        }
         if (cmd.hasOption(countOption.getOpt())) {            
-            RecordScanTool.count(lilyClient.getRepository(), startId, stopId,recordTypeFilter, configFile);
+            scanTool.count(startId, stopId, recordTypeFilter, configFile);
         } else if (cmd.hasOption(printOption.getOpt())) {
-            RecordScanTool.print(lilyClient.getRepository(), startId, stopId, limit, recordTypeFilter, configFile);
+            scanTool.print(startId, stopId, limit, recordTypeFilter, configFile);
         }
 
         return 0;
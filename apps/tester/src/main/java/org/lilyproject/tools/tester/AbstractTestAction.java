@@ -67,6 +67,23 @@ public abstract class AbstractTestAction implements TestAction {
         return failureCount;
     }
 
+    @Override
+    public int runOnce() {
+        failureCount = 0;
+        runAction();
+        return failureCount;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
     abstract protected void runAction();
     
     protected void report(boolean success, double duration) {
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.tools.tester;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.codehaus.jackson.JsonNode;
+import org.lilyproject.clientmetrics.Metrics;
+import org.lilyproject.clientmetrics.MetricsPlugin;
+import org.lilyproject.util.json.JsonUtil;
+
+/**
+ * Issues the actions of the scenario at a target rate ("open loop"), rather than having each worker start
+ * the next action as soon as the previous one finished ("closed loop").
+ *
+ * <p>In a closed loop, a slow operation delays all operations the worker would have done in the meantime,
+ * which then never get measured (coordinated omission). Here, each operation gets an intended start time
+ * from the schedule, and its response time is measured from that moment on, so it includes the time the
+ * operation had to wait for a free worker. The actions still report their own (service) times as before,
+ * the response times are reported as &lt;action name&gt;.responseTime, with type OL.</p>
+ *
+ * <p>The operations are queued to the workers through a bounded queue. When the queue is full, the scheduler
+ * waits: the next operations will start late, which is accounted for in their response time. At the end of
+ * each metrics interval, the offered (scheduled) and achieved (completed) throughput are reported.</p>
+ *
+ * <p>One pass through the scenario issues each action 'count' times, the 'time' property of the actions
+ * is ignored.</p>
+ */
+public class OpenLoopScheduler implements MetricsPlugin {
+    /** The longest the scheduler waits for the next operation without checking the stop conditions, in ns */
+    private static final long MAX_WAIT_BETWEEN_CHECKS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int opsPerSecond;
+    private final int rampUp;
+    private final BlockingQueue<Operation> queue;
+
+    private final AtomicLong completed = new AtomicLong();
+    private volatile long startedAt = -1;
+    private long lastReportAt;
+    private long lastReportOffered;
+    private long lastReportCompleted;
+
+    private volatile boolean stopped;
+
+    public interface Control {
+        boolean checkStopConditions();
+
+        void incFailureCount(int amount);
+    }
+
+    /**
+     * @param config object with properties opsPerSecond (required), rampUp (in seconds, default 0) and
+     *               maxQueued (default 10000).
+     */
+    public OpenLoopScheduler(JsonNode config) {
+        this.opsPerSecond = JsonUtil.getInt(config, "opsPerSecond");
+        this.rampUp = JsonUtil.getInt(config, "rampUp", 0);
+        this.queue = new ArrayBlockingQueue<Operation>(JsonUtil.getInt(config, "maxQueued", 10000));
+
+        if (opsPerSecond <= 0) {
+            throw new IllegalArgumentException("openLoop opsPerSecond should be larger than 0, got: " + opsPerSecond);
+        }
+        if (rampUp < 0) {
+            throw new IllegalArgumentException("openLoop rampUp should not be negative, got: " + rampUp);
+        }
+    }
+
+    public int getOpsPerSecond() {
+        return opsPerSecond;
+    }
+
+    /**
+     * Runs the scenario, until a stop condition is reached or the scenario has been passed through the
+     * given number of times.
+     *
+     * @param workersTestActions the actions of the scenario for each worker, in the same order for each worker
+     */
+    public void run(List<TestAction>[] workersTestActions, Metrics metrics, int iterations, Control control)
+            throws InterruptedException {
+        // One pass through the scenario: the index of the action for each operation
+        List<Integer> pass = new ArrayList<Integer>();
+        List<TestAction> scenario = workersTestActions[0];
+        for (int i = 0; i < scenario.size(); i++) {
+            int count = Math.max(1, scenario.get(i).getCount());
+            pass.addAll(Collections.nCopies(count, i));
+        }
+        if (pass.isEmpty()) {
+            return;
+        }
+
+        Set<Thread> threads = new HashSet<Thread>();
+        for (int i = 0; i < workersTestActions.length; i++) {
+            threads.add(new OpenLoopWorkerThread(workersTestActions[i], metrics, control));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        long start = System.nanoTime();
+        synchronized (this) {
+            startedAt = start;
+            lastReportAt = start;
+        }
+
+        try {
+            long total = (long)iterations * workersTestActions.length * pass.size();
+            for (long op = 0; op < total; op++) {
+                long intendedStart = start + getIntendedStart(op);
+
+                // wait in slices, so that the stop conditions are still checked during long gaps between
+                // the operations, as at the start of the ramp up
+                long wait;
+                while ((wait = intendedStart - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(Math.min(wait, MAX_WAIT_BETWEEN_CHECKS));
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    if (control.checkStopConditions()) {
+                        queue.clear();
+                        return;
+                    }
+                }
+
+                Operation operation = new Operation(intendedStart, pass.get((int)(op % pass.size())));
+                while (!queue.offer(operation, 1, TimeUnit.SECONDS)) {
+                    if (control.checkStopConditions()) {
+                        queue.clear();
+                        return;
+                    }
+                }
+
+                // checked for each operation, as the closed loop workers do: at low rates, checking only every
+                // so many operations would run well past the maximum run time
+                if (control.checkStopConditions()) {
+                    // don't wait for the operations which are still queued
+                    queue.clear();
+                    return;
+                }
+            }
+        } finally {
+            stopped = true;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    /**
+     * The intended start time, in ns since the start, of the given operation (counted from 0). During the
+     * ramp up period, the rate increases linearly from 0 to opsPerSecond.
+     */
+    long getIntendedStart(long op) {
+        double rampUpOps = opsPerSecond * rampUp / 2d;
+        double seconds;
+        if (op < rampUpOps) {
+            // number of ops by time t (t < rampUp) = opsPerSecond * t^2 / (2 * rampUp)
+            seconds = Math.sqrt(2d * rampUp * op / opsPerSecond);
+        } else {
+            seconds = rampUp + (op - rampUpOps) / opsPerSecond;
+        }
+        return (long)(seconds * 1e9d);
+    }
+
+    /**
+     * The number of operations which should have been started by the given number of ns since the start.
+     */
+    long getOffered(long elapsed) {
+        double seconds = elapsed / 1e9d;
+        if (seconds < rampUp) {
+            return (long)(opsPerSecond * seconds * seconds / (2d * rampUp));
+        } else {
+            return (long)(opsPerSecond * rampUp / 2d + (seconds - rampUp) * opsPerSecond);
+        }
+    }
+
+    @Override
+    public synchronized void beforeReport(Metrics metrics) {
+        if (startedAt == -1) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long offered = getOffered(now - startedAt);
+        long completedNow = completed.get();
+        double seconds = (now - lastReportAt) / 1e9d;
+
+        if (seconds > 0) {
+            metrics.increment("-openLoopOpsPerSec@offered", (offered - lastReportOffered) / seconds);
+            metrics.increment("-openLoopOpsPerSec@achieved", (completedNow - lastReportCompleted) / seconds);
+        }
+        metrics.increment("-openLoopQueued@ops", queue.size());
+
+        lastReportAt = now;
+        lastReportOffered = offered;
+        lastReportCompleted = completedNow;
+    }
+
+    @Override
+    public void afterIncrement(Metrics metrics) {
+    }
+
+    @Override
+    public List<String> getExtraInfoLines() {
+        return Collections.singletonList("Open loop: target " + opsPerSecond + " ops/sec"
+                + (rampUp > 0 ? ", ramp up over " + rampUp + "s" : "") + ", " + queue.size() + " ops queued");
+    }
+
+    private static class Operation {
+        final long intendedStart;
+        final int actionIndex;
+
+        Operation(long intendedStart, int actionIndex) {
+            this.intendedStart = intendedStart;
+            this.actionIndex = actionIndex;
+        }
+    }
+
+    private class OpenLoopWorkerThread extends Thread {
+        private final List<TestAction> testActions;
+        private final Metrics metrics;
+        private final Control control;
+
+        OpenLoopWorkerThread(List<TestAction> testActions, Metrics metrics, Control control) {
+            this.testActions = testActions;
+            this.metrics = metrics;
+            this.control = control;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Operation operation = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (operation == null) {
+                        if (stopped) {
+                            return;
+                        }
+                        continue;
+                    }
+
+                    TestAction testAction = testActions.get(operation.actionIndex);
+                    control.incFailureCount(testAction.runOnce());
+                    completed.incrementAndGet();
+
+                    double responseTime = (System.nanoTime() - operation.intendedStart) / 1e6d;
+                    metrics.increment(testAction.getName() + ".responseTime", "OL", responseTime);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -20,6 +20,16 @@ import org.lilyproject.repository.api.RecordId;
 public interface TestAction {
 
     int run();
+
+    /**
+     * Runs the action a single time, regardless of its count or time. Returns the number of failures.
+     */
+    int runOnce();
+
+    String getName();
+
+    int getCount();
+
     TestActionContext getContext();
 
     ActionResult linkFieldAction(TestFieldType testFieldType, RecordId recordId);
@@ -40,6 +40,7 @@ import org.codehaus.jackson.node.ObjectNode;
 import org.joda.time.DateTime;
 import org.lilyproject.cli.OptionUtil;
 import org.lilyproject.client.NoServersException;
+import org.lilyproject.clientmetrics.ListMetricsPlugin;
 import org.lilyproject.repository.api.FieldType;
 import org.lilyproject.repository.api.QName;
 import org.lilyproject.repository.api.RecordType;
@@ -77,6 +78,8 @@ public class Tester extends BaseRepositoryTestTool {
     private Map<QName, TestRecordType> recordTypes = new HashMap<QName, TestRecordType>();
     private Map<QName, TestFieldType> fieldTypes = new HashMap<QName, TestFieldType>();
     private JsonImport jsonImport;
+    private OpenLoopScheduler openLoopScheduler;
+    private ListMetricsPlugin metricsPlugins;
 
     public static void main(String[] args) throws Exception {
         new Tester().start(args);
@@ -237,6 +240,14 @@ public class Tester extends BaseRepositoryTestTool {
                     System.out.println("Error: recordSpaces property should be an array. Skipping.");
                     jp.skipChildren();
                 }
+            } else if (fieldName.equals("openLoop")) {
+                if (current == JsonToken.START_OBJECT) {
+                    openLoopScheduler = new OpenLoopScheduler(jp.readValueAsTree());
+                    metricsPlugins.add(openLoopScheduler);
+                } else {
+                    System.out.println("Error: openLoop property should be an object. Skipping.");
+                    jp.skipChildren();
+                }
             } else if (fieldName.equals("stopConditions")) {
                 if (current == JsonToken.START_OBJECT) {
                     readStopConditions((ObjectNode) jp.readValueAsTree());
@@ -327,6 +338,12 @@ public class Tester extends BaseRepositoryTestTool {
         }
     }
 
+    @Override
+    protected void addMetricsPlugins(ListMetricsPlugin plugins) {
+        // the open loop scheduler, if any, is only added once the config is read
+        this.metricsPlugins = plugins;
+    }
+
     private void readStopConditions(JsonNode stopConditions) {
         maximumRunTime = JsonUtil.getInt(stopConditions, "maximumRunTime");
         maximumFailures = JsonUtil.getInt(stopConditions, "maximumFailures");
@@ -388,6 +405,23 @@ public class Tester extends BaseRepositoryTestTool {
 
     private void test() throws InterruptedException {
         startTime = System.currentTimeMillis();
+
+        if (openLoopScheduler != null) {
+            System.out.println("Running open loop at " + openLoopScheduler.getOpsPerSecond() + " ops/sec.");
+            openLoopScheduler.run(workersTestActions, metrics, nrOfIterations, new OpenLoopScheduler.Control() {
+                @Override
+                public boolean checkStopConditions() {
+                    return Tester.this.checkStopConditions();
+                }
+
+                @Override
+                public void incFailureCount(int amount) {
+                    Tester.this.incFailureCount(amount);
+                }
+            });
+            return;
+        }
+
         HashSet<Thread> threads = new HashSet<Thread>(workers);
         for (int i = 0; i < workers; i++) {
             threads.add(new WorkerThread(workersTestActions[i]));
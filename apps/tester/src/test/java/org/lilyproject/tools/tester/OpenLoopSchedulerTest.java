@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.tools.tester;
+
+import org.junit.Test;
+import org.lilyproject.util.json.JsonFormat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OpenLoopSchedulerTest {
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void testConstantRate() throws Exception {
+        OpenLoopScheduler scheduler = scheduler("{opsPerSecond: 100}");
+
+        assertSeconds(0, scheduler.getIntendedStart(0));
+        assertSeconds(0.01, scheduler.getIntendedStart(1));
+        assertSeconds(1, scheduler.getIntendedStart(100));
+        assertSeconds(25.5, scheduler.getIntendedStart(2550));
+
+        assertEquals(0, scheduler.getOffered(0));
+        assertEquals(100, scheduler.getOffered(SECOND));
+        assertEquals(150, scheduler.getOffered(SECOND + SECOND / 2));
+        assertEquals(2550, scheduler.getOffered(25 * SECOND + SECOND / 2));
+    }
+
+    @Test
+    public void testRampUp() throws Exception {
+        // 500 operations during the ramp up: the average rate is half of the target rate
+        OpenLoopScheduler scheduler = scheduler("{opsPerSecond: 100, rampUp: 10}");
+
+        assertSeconds(0, scheduler.getIntendedStart(0));
+        assertSeconds(Math.sqrt(10), scheduler.getIntendedStart(50));
+        assertSeconds(5, scheduler.getIntendedStart(125));
+        assertSeconds(10, scheduler.getIntendedStart(500));
+        assertSeconds(11, scheduler.getIntendedStart(600));
+
+        assertEquals(0, scheduler.getOffered(0));
+        assertEquals(125, scheduler.getOffered(5 * SECOND));
+        assertEquals(499, scheduler.getOffered(10 * SECOND - 1000000));
+        assertEquals(500, scheduler.getOffered(10 * SECOND));
+        assertEquals(600, scheduler.getOffered(11 * SECOND));
+    }
+
+    @Test
+    public void testOfferedMatchesIntendedStart() throws Exception {
+        OpenLoopScheduler scheduler = scheduler("{opsPerSecond: 100, rampUp: 10}");
+
+        // the offered count steps up at the intended start of each operation, both during and after the ramp up
+        for (long op = 1; op < 1000; op++) {
+            assertEquals(op, scheduler.getOffered(scheduler.getIntendedStart(op) + 1000));
+        }
+    }
+
+    @Test
+    public void testAfterStall() throws Exception {
+        OpenLoopScheduler scheduler = scheduler("{opsPerSecond: 100}");
+
+        // The scheduler was blocked from 1s to 6s (e.g. on a full queue), while it was at operation 100. The
+        // schedule is not shifted by the stall: the operations which should have started in the meantime are
+        // late and issued right away (their response times include the stall)...
+        assertEquals(600, scheduler.getOffered(6 * SECOND));
+        for (long op = 100; op < 600; op++) {
+            assertTrue(scheduler.getIntendedStart(op) < 6 * SECOND);
+        }
+        // ... after which the operations start at the target rate again, without a burst beyond the schedule
+        assertSeconds(6, scheduler.getIntendedStart(600));
+        assertSeconds(6.01, scheduler.getIntendedStart(601));
+        // the offered throughput over the stall still is the target rate, whatever was achieved
+        assertEquals(500, scheduler.getOffered(6 * SECOND) - scheduler.getOffered(SECOND));
+    }
+
+    @Test
+    public void testAfterStallDuringRampUp() throws Exception {
+        OpenLoopScheduler scheduler = scheduler("{opsPerSecond: 100, rampUp: 10}");
+
+        // Blocked from 2s to 8s: the ramp up is not extended by the stall
+        long offered = scheduler.getOffered(8 * SECOND);
+        assertEquals(320, offered);
+        assertTrue(scheduler.getIntendedStart(offered - 1) < 8 * SECOND);
+        assertSeconds(8, scheduler.getIntendedStart(offered));
+        assertSeconds(10, scheduler.getIntendedStart(500));
+    }
+
+    private OpenLoopScheduler scheduler(String config) throws Exception {
+        return new OpenLoopScheduler(JsonFormat.deserializeNonStd(config));
+    }
+
+    private void assertSeconds(double expected, long nanos) {
+        assertEquals(expected * SECOND, nanos, 1000);
+    }
+}
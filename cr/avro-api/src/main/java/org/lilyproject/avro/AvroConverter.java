@@ -68,18 +68,12 @@ public class AvroConverter {
         this.typeManager = repository.getTypeManager();
     }
 
-    private byte[] asArray(ByteBuffer buffer) {
-        byte[] bytes = new byte[buffer.remaining()];
-        buffer.get(bytes, 0, bytes.length);
-        return bytes;
-    }
-
     public Record convertRecord(ByteBuffer recordData) throws RepositoryException, InterruptedException {
-        return RecordAsBytesConverter.read(new DataInputImpl(asArray(recordData)), repository);
+        return RecordAsBytesConverter.read(new DataInputImpl(recordData), repository);
     }
 
     public IdRecord convertIdRecord(ByteBuffer avroIdRecord) throws RepositoryException, InterruptedException {
-        return RecordAsBytesConverter.readIdRecord(new DataInputImpl(asArray(avroIdRecord)), repository);
+        return RecordAsBytesConverter.readIdRecord(new DataInputImpl(avroIdRecord), repository);
     }
 
     public List<MutationCondition> convertFromAvro(List<AvroMutationCondition> avroConditions)
@@ -116,12 +110,12 @@ public class AvroConverter {
 
     public ByteBuffer convert(Record record) throws AvroRepositoryException, AvroInterruptedException,
             RepositoryException, InterruptedException {
-        return ByteBuffer.wrap(RecordAsBytesConverter.write(record, repository));
+        return RecordAsBytesConverter.writeAsByteBuffer(record, repository);
     }
 
     public ByteBuffer convert(IdRecord idRecord) throws AvroRepositoryException, AvroInterruptedException,
             RepositoryException, InterruptedException {
-        return ByteBuffer.wrap(RecordAsBytesConverter.writeIdRecord(idRecord, repository));
+        return RecordAsBytesConverter.writeIdRecordAsByteBuffer(idRecord, repository);
     }
 
     public List<AvroMutationCondition> convert(Record parentRecord, List<MutationCondition> conditions)
@@ -15,6 +15,7 @@
  */
 package org.lilyproject.avro.repository;
 
+import java.nio.ByteBuffer;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
@@ -56,6 +57,17 @@ public class RecordAsBytesConverter {
         return output.toByteArray();
     }
 
+    /**
+     * Same as {@link #write(Record, Repository)}, but returns a ByteBuffer which wraps the serialization
+     * buffer, avoiding a copy of the serialized record.
+     */
+    public static final ByteBuffer writeAsByteBuffer(Record record, Repository repository)
+            throws RepositoryException, InterruptedException {
+        DataOutput output = new DataOutputImpl();
+        write(record, output, repository);
+        return output.toByteBuffer();
+    }
+
     public static final void write(Record record, DataOutput output, Repository repository)
             throws RepositoryException, InterruptedException {
         // Write serialization format version
@@ -187,6 +199,17 @@ public class RecordAsBytesConverter {
         return output.toByteArray();
     }
 
+    /**
+     * Same as {@link #writeIdRecord(IdRecord, Repository)}, but returns a ByteBuffer which wraps the
+     * serialization buffer, avoiding a copy of the serialized record.
+     */
+    public static final ByteBuffer writeIdRecordAsByteBuffer(IdRecord record, Repository repository)
+            throws RepositoryException, InterruptedException {
+        DataOutput output = new DataOutputImpl();
+        writeIdRecord(record, output, repository);
+        return output.toByteBuffer();
+    }
+
     public static final void writeIdRecord(IdRecord record, DataOutput output, Repository repository)
             throws RepositoryException, InterruptedException {
         write(record, output, repository);
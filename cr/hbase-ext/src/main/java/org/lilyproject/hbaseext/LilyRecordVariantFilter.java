@@ -3,16 +3,16 @@ package org.lilyproject.hbaseext;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.TreeMap;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Maps;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.filter.FilterBase;
-import org.lilyproject.bytes.impl.DataInputImpl;
-import org.lilyproject.repository.api.RecordId;
-import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.lilyproject.bytes.impl.DataOutputImpl;
 import org.lilyproject.util.ArgumentValidator;
 
 /**
@@ -21,65 +21,298 @@ import org.lilyproject.util.ArgumentValidator;
  * ones). If the value of the variant property is specified, it has to match exactly. If the value is
  * <code>null</code>, any value will match.
  *
+ * <p>The variant properties are compared directly on the bytes of the row key, without decoding the record id.
+ * When a row does not match, the filter gives the scanner a hint of the next row which could match, so that whole
+ * ranges of non-matching variants are skipped rather than read. If the master record id is given, the filter also
+ * seeks to the master record, and ends the scan once past its variants.</p>
  *
+ * <p>IMPORTANT: This implementation depends on the byte encoding of the USER, UUID, SALTED and variant record ids
+ * (see IdGeneratorImpl). Any changes there have an impact on this implementation.</p>
  */
 public class LilyRecordVariantFilter extends FilterBase {
+    private static final byte USER_ID_TYPE = 0;
+    private static final byte UUID_ID_TYPE = 1;
+    private static final byte SALTED_ID_TYPE = 2;
+    private static final int UUID_ID_LENGTH = 17;
+    private static final byte VARIANT_SEPARATOR = 0;
+
+    private byte[] masterRecordId;
     private Map<String, String> variantProperties;
-    private final IdGeneratorImpl idGenerator = new IdGeneratorImpl();
+
+    // The variant properties, sorted and encoded as in the row key
+    private byte[][] expectedKeys;
+    private byte[][] expectedValues;
+    // The bytes with which the variant properties of a matching row key start
+    private byte[] expectedStart;
+
+    private byte[] seekHint;
+    private boolean done;
 
     /**
      * @param variantProperties the variant properties that the records should have
      */
     public LilyRecordVariantFilter(final Map<String, String> variantProperties) {
+        this(null, variantProperties);
+    }
+
+    /**
+     * @param masterRecordId    optional (can be null), the bytes of the master record id, in which case only
+     *                          variants of this master record are returned
+     * @param variantProperties the variant properties that the records should have
+     */
+    public LilyRecordVariantFilter(byte[] masterRecordId, final Map<String, String> variantProperties) {
         ArgumentValidator.notNull(variantProperties, "variantProperties");
 
+        this.masterRecordId = masterRecordId;
         this.variantProperties = variantProperties;
+        encodeVariantProperties();
     }
 
     public LilyRecordVariantFilter() {
         // for hbase readFields
     }
 
+    public byte[] getMasterRecordId() {
+        return masterRecordId;
+    }
+
     public Map<String, String> getVariantProperties() {
         return variantProperties;
     }
 
+    private void encodeVariantProperties() {
+        SortedMap<String, String> sorted = new TreeMap<String, String>(variantProperties);
+        expectedKeys = new byte[sorted.size()][];
+        expectedValues = new byte[sorted.size()][];
+        int i = 0;
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            expectedKeys[i] = encode(entry.getKey());
+            expectedValues[i] = entry.getValue() != null ? encode(entry.getValue()) : null;
+            i++;
+        }
+
+        if (expectedKeys.length == 0) {
+            expectedStart = null;
+        } else if (expectedValues[0] == null) {
+            expectedStart = expectedKeys[0];
+        } else {
+            expectedStart = Bytes.add(expectedKeys[0], expectedValues[0]);
+        }
+    }
+
+    private static byte[] encode(String string) {
+        DataOutputImpl output = new DataOutputImpl();
+        output.writeVUTF(string);
+        return output.toByteArray();
+    }
+
+    @Override
+    public void reset() {
+        seekHint = null;
+    }
+
+    @Override
+    public boolean filterAllRemaining() {
+        return done;
+    }
+
+    @Override
     public boolean filterRowKey(byte[] buffer, int offset, int length) {
         // note: return value true means it is NOT a result of the scanner, false otherwise
+        seekHint = null;
+
+        if (buffer == null || length == 0)
+            return true;
+
+        int end = offset + length;
 
-        if (buffer == null)
+        // Determine where the master record id ends, and the variant properties start (if any)
+        int masterEnd;
+        int variantStart;
+        if (buffer[offset] == UUID_ID_TYPE) {
+            masterEnd = Math.min(offset + UUID_ID_LENGTH, end);
+            variantStart = masterEnd;
+        } else if (buffer[offset] == USER_ID_TYPE) {
+            masterEnd = indexOf(buffer, offset + 1, end, VARIANT_SEPARATOR);
+            variantStart = masterEnd == end ? end : masterEnd + 1;
+        } else if (buffer[offset] == SALTED_ID_TYPE) {
+            // the bucket byte following the type byte can be 0 as well
+            masterEnd = indexOf(buffer, Math.min(offset + 2, end), end, VARIANT_SEPARATOR);
+            variantStart = masterEnd == end ? end : masterEnd + 1;
+        } else {
             return true;
+        }
+        boolean isVariant = variantStart < end;
+
+        if (masterRecordId != null) {
+            int cmp = Bytes.compareTo(buffer, offset, masterEnd - offset, masterRecordId, 0, masterRecordId.length);
+            if (cmp < 0) {
+                seekHint = masterRecordId;
+                return false;
+            } else if (cmp > 0) {
+                done = true;
+                return true;
+            }
+        }
 
-        final RecordId recordId = idGenerator.fromBytes(new DataInputImpl(buffer, offset, length));
+        if (expectedKeys.length == 0) {
+            if (!isVariant) {
+                return false;
+            }
+            // Only the master record matches, all variants which follow it can be skipped
+            return skipToNextMaster(buffer, offset, masterEnd);
+        }
 
-        final SortedMap<String, String> recordVariantProperties = recordId.getVariantProperties();
+        if (!isVariant) {
+            // A master record: the variants to look for follow right after it
+            byte[] master = Arrays.copyOfRange(buffer, offset, end);
+            seekHint = buffer[offset] != UUID_ID_TYPE ?
+                    Bytes.add(master, new byte[] {VARIANT_SEPARATOR}, expectedStart) :
+                    Bytes.add(master, expectedStart);
+            return false;
+        }
 
-        // check if the record has all expected variant properties
-        if (containsAllExpectedDimensions(recordVariantProperties) &&
-                hasSameValueForValuedDimensions(recordVariantProperties)) {
+        // All matching variants start with the first expected variant property (the variant properties are
+        // sorted the same way in the row key), which allows to skip the ones sorting before or after it.
+        int cmp = compareStart(buffer, variantStart, end, expectedStart);
+        if (cmp < 0) {
+            seekHint = Bytes.add(Arrays.copyOfRange(buffer, offset, variantStart), expectedStart);
+            return false;
+        } else if (cmp > 0) {
+            return skipToNextMaster(buffer, offset, masterEnd);
+        }
 
-            // check if the record doesn't have other variant properties
-            return variantProperties.size() != recordVariantProperties.size();
-        } else return true;
+        return !matches(buffer, variantStart, end);
     }
 
-    private boolean containsAllExpectedDimensions(Map<String, String> recordVariantProperties) {
-        return recordVariantProperties.keySet().containsAll(this.variantProperties.keySet());
+    /**
+     * Checks that the variant properties in the row key are exactly the expected ones. Since both are sorted in
+     * the same way, the i-th property in the row key should be the i-th expected property.
+     */
+    private boolean matches(byte[] buffer, int pos, int end) {
+        int i = 0;
+        while (pos < end) {
+            if (i >= expectedKeys.length) {
+                return false;
+            }
+
+            int keyEnd = skipVUTF(buffer, pos, end);
+            if (keyEnd == -1 || !equals(buffer, pos, keyEnd, expectedKeys[i])) {
+                return false;
+            }
+
+            int valueEnd = skipVUTF(buffer, keyEnd, end);
+            if (valueEnd == -1) {
+                return false;
+            }
+            if (expectedValues[i] != null && !equals(buffer, keyEnd, valueEnd, expectedValues[i])) {
+                return false;
+            }
+
+            pos = valueEnd;
+            i++;
+        }
+        return i == expectedKeys.length;
+    }
+
+    /**
+     * Filters out the current row, and hints the scanner to continue at the first row after all variants of its
+     * master record.
+     */
+    private boolean skipToNextMaster(byte[] buffer, int offset, int masterEnd) {
+        if (masterRecordId != null) {
+            done = true;
+            return true;
+        }
+
+        byte[] next;
+        if (buffer[offset] != UUID_ID_TYPE) {
+            // all variants start with the master id followed by the separator byte (0)
+            next = Arrays.copyOfRange(buffer, offset, masterEnd + 1);
+            next[next.length - 1] = VARIANT_SEPARATOR + 1;
+        } else {
+            // increment the UUID, taking the carry into account
+            next = Arrays.copyOfRange(buffer, offset, masterEnd);
+            int i = next.length - 1;
+            while (i > 0 && next[i] == (byte)0xFF) {
+                next[i] = 0;
+                i--;
+            }
+            if (i == 0) {
+                // this was the last possible UUID
+                return true;
+            }
+            next[i]++;
+        }
+
+        seekHint = next;
+        return false;
+    }
+
+    /**
+     * Compares the bytes starting at pos with the given bytes, returns 0 if they start with these bytes.
+     */
+    private static int compareStart(byte[] buffer, int pos, int end, byte[] start) {
+        for (int i = 0; i < start.length; i++) {
+            if (pos + i >= end) {
+                return -1;
+            }
+            int diff = (buffer[pos + i] & 0xFF) - (start[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
     }
 
-    private boolean hasSameValueForValuedDimensions(Map<String, String> variantProperties) {
-        return variantProperties.entrySet().containsAll(getValuedDimensions().entrySet());
+    private static boolean equals(byte[] buffer, int pos, int end, byte[] bytes) {
+        return Bytes.compareTo(buffer, pos, end - pos, bytes, 0, bytes.length) == 0;
+    }
+
+    private static int indexOf(byte[] buffer, int pos, int end, byte value) {
+        for (int i = pos; i < end; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return end;
     }
 
-    private Map<String, String> getValuedDimensions() {
-        return Maps.filterValues(variantProperties, new Predicate<String>() {
-            @Override
-            public boolean apply(String input) {
-                return input != null;
+    /**
+     * Returns the position after the string written by DataOutput.writeVUTF at pos, or -1 if it is not valid.
+     */
+    private static int skipVUTF(byte[] buffer, int pos, int end) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (pos >= end || shift > 28) {
+                return -1;
             }
-        });
+            b = buffer[pos++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return length <= end - pos ? pos + length : -1;
     }
 
+    @Override
+    public ReturnCode filterKeyValue(KeyValue kv) {
+        return seekHint != null ? ReturnCode.SEEK_NEXT_USING_HINT : ReturnCode.INCLUDE;
+    }
+
+    @Override
+    public KeyValue getNextKeyHint(KeyValue currentKV) {
+        return seekHint != null ? KeyValue.createFirstOnRow(seekHint) : null;
+    }
+
+    @Override
+    public boolean filterRow() {
+        // A row for which a seek hint was given is never part of the result, also not when the hint is not used
+        // (e.g. because this filter is part of a FilterList)
+        return seekHint != null;
+    }
 
     public void write(DataOutput out) throws IOException {
         out.writeInt(variantProperties.size());
@@ -87,6 +320,10 @@ public class LilyRecordVariantFilter extends FilterBase {
             out.writeUTF(variantProperty.getKey());
             out.writeUTF(variantProperty.getValue() != null ? variantProperty.getValue() : "\u0000");
         }
+        out.writeBoolean(masterRecordId != null);
+        if (masterRecordId != null) {
+            Bytes.writeByteArray(out, masterRecordId);
+        }
     }
 
     public void readFields(DataInput in) throws IOException {
@@ -97,6 +334,10 @@ public class LilyRecordVariantFilter extends FilterBase {
             final String value = in.readUTF();
             variantProperties.put(key, value.equals("\u0000") ? null : value);
         }
+        masterRecordId = in.readBoolean() ? Bytes.readByteArray(in) : null;
+        encodeVariantProperties();
+        seekHint = null;
+        done = false;
     }
 }
 
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.hbaseext;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+
+/**
+ * A FilterList which passes the seek hints of its filters on to the scanner.
+ *
+ * <p>The FilterList of HBase 0.90 ignores a SEEK_NEXT_USING_HINT answer of its filters, so filters such as
+ * {@link LilyRecordVariantFilter} lose their ability to skip rows as soon as they are combined with another
+ * filter. For the MUST_PASS_ALL operator, this list returns the hint of the first filter asking for it. A
+ * MUST_PASS_ONE list behaves as a plain FilterList, since skipping rows based on the hint of one of its filters
+ * could skip rows accepted by the others.</p>
+ */
+public class SeekHintFilterList extends FilterList {
+    /** The filter which gave the seek hint for the current key value. */
+    private Filter seekHintFilter;
+
+    public SeekHintFilterList() {
+        // for hbase readFields
+        super();
+    }
+
+    public SeekHintFilterList(Operator operator) {
+        super(operator);
+    }
+
+    @Override
+    public void reset() {
+        seekHintFilter = null;
+        super.reset();
+    }
+
+    @Override
+    public ReturnCode filterKeyValue(KeyValue v) {
+        seekHintFilter = null;
+        if (getOperator() != Operator.MUST_PASS_ALL) {
+            return super.filterKeyValue(v);
+        }
+
+        // Same as FilterList, except for the seek hint
+        for (Filter filter : getFilters()) {
+            if (filter.filterAllRemaining()) {
+                return ReturnCode.NEXT_ROW;
+            }
+            ReturnCode code = filter.filterKeyValue(v);
+            switch (code) {
+                case INCLUDE:
+                    continue;
+                case NEXT_ROW:
+                case SKIP:
+                    return ReturnCode.SKIP;
+                case SEEK_NEXT_USING_HINT:
+                    seekHintFilter = filter;
+                    return code;
+                default:
+                    // FilterList treats any other answer as an include as well
+                    continue;
+            }
+        }
+        return ReturnCode.INCLUDE;
+    }
+
+    @Override
+    public KeyValue getNextKeyHint(KeyValue currentKV) {
+        return seekHintFilter != null ? seekHintFilter.getNextKeyHint(currentKV) : super.getNextKeyHint(currentKV);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.hbaseext;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.WritableByteArrayComparable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.lilyproject.bytes.impl.DataInputImpl;
+
+/**
+ * Compares a field value, as stored by the repository, in value order rather than byte order.
+ *
+ * <p>This comparator does the complete evaluation of the condition: it returns 0 when the field value matches
+ * and 1 when it does not, and should hence be used with {@link CompareOp#EQUAL}.</p>
+ *
+ * <p>The condition consists of a comparison with a first operand, and optionally a second comparison (e.g. to
+ * express a range), or a prefix test (only for strings). For multi-value and hierarchical fields, the field
+ * value matches if one of its values matches the complete condition.</p>
+ *
+ * <p>The operands are encoded in the same way as the field values, without the exists/deleted flag.</p>
+ *
+ * <p>IMPORTANT: This implementation depends on the byte encodings from the LONG, INTEGER, DOUBLE, DECIMAL, DATE,
+ *               DATETIME, STRING, LIST and PATH value types and DataOutputImpl. Any changes there have an impact
+ *               on this implementation.
+ */
+public class TypedValueComparator extends WritableByteArrayComparable {
+    public static final byte TYPE_LONG = 1;
+    public static final byte TYPE_INTEGER = 2;
+    public static final byte TYPE_DOUBLE = 3;
+    public static final byte TYPE_DECIMAL = 4;
+    public static final byte TYPE_DATE = 5;
+    public static final byte TYPE_DATETIME = 6;
+    public static final byte TYPE_STRING = 7;
+
+    private static final byte DELETE_FLAG = 1;
+
+    private byte type;
+    private int nestingLevel;
+    private CompareOp compareOp;
+    private byte[] operand;
+    private CompareOp secondCompareOp;
+    private byte[] secondOperand;
+    private boolean prefix;
+    private boolean matchDeleted;
+
+    private Comparable decodedOperand;
+    private Comparable decodedSecondOperand;
+
+    /**
+     * Nullary constructor, for Writable
+     */
+    public TypedValueComparator() {
+        super();
+    }
+
+    /**
+     * @param type         one of the TYPE constants, the type of the (deepest) values
+     * @param nestingLevel the number of LIST and PATH levels around the values, 0 for single values
+     * @param compareOp    the comparison with operand, EQUAL or NOT_EQUAL in case of a prefix test
+     * @param operand      the encoded value to compare with
+     * @param prefix       true if the value should (EQUAL) or should not (NOT_EQUAL) start with the operand,
+     *                     only for strings
+     * @param matchDeleted whether a deleted field value matches
+     */
+    public TypedValueComparator(byte type, int nestingLevel, CompareOp compareOp, byte[] operand, boolean prefix,
+            boolean matchDeleted) {
+        this(type, nestingLevel, compareOp, operand, null, null, prefix, matchDeleted);
+    }
+
+    /**
+     * @param secondCompareOp optional (can be null), a second comparison which should hold for the same value,
+     *                        e.g. LESS for the upper bound of a range
+     */
+    public TypedValueComparator(byte type, int nestingLevel, CompareOp compareOp, byte[] operand,
+            CompareOp secondCompareOp, byte[] secondOperand, boolean prefix, boolean matchDeleted) {
+        if (prefix && type != TYPE_STRING) {
+            throw new IllegalArgumentException("Prefix comparisons are only possible on strings.");
+        }
+        if (prefix && compareOp != CompareOp.EQUAL && compareOp != CompareOp.NOT_EQUAL) {
+            throw new IllegalArgumentException("Prefix comparisons are only possible with EQUAL or NOT_EQUAL.");
+        }
+        this.type = type;
+        this.nestingLevel = nestingLevel;
+        this.compareOp = compareOp;
+        this.operand = operand;
+        this.secondCompareOp = secondCompareOp;
+        this.secondOperand = secondOperand;
+        this.prefix = prefix;
+        this.matchDeleted = matchDeleted;
+    }
+
+    @Override
+    public byte[] getValue() {
+        return operand;
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        type = in.readByte();
+        nestingLevel = in.readInt();
+        compareOp = CompareOp.valueOf(in.readUTF());
+        operand = Bytes.readByteArray(in);
+        if (in.readBoolean()) {
+            secondCompareOp = CompareOp.valueOf(in.readUTF());
+            secondOperand = Bytes.readByteArray(in);
+        } else {
+            secondCompareOp = null;
+            secondOperand = null;
+        }
+        prefix = in.readBoolean();
+        matchDeleted = in.readBoolean();
+        decodedOperand = null;
+        decodedSecondOperand = null;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(type);
+        out.writeInt(nestingLevel);
+        out.writeUTF(compareOp.name());
+        Bytes.writeByteArray(out, operand);
+        out.writeBoolean(secondCompareOp != null);
+        if (secondCompareOp != null) {
+            out.writeUTF(secondCompareOp.name());
+            Bytes.writeByteArray(out, secondOperand);
+        }
+        out.writeBoolean(prefix);
+        out.writeBoolean(matchDeleted);
+    }
+
+    @Override
+    public int compareTo(byte[] theirValue) {
+        if (theirValue == null || theirValue.length == 0) {
+            return 1;
+        }
+        if (theirValue[0] == DELETE_FLAG) { // First byte indicates if it was deleted or not
+            return matchDeleted ? 0 : 1;
+        }
+
+        if (decodedOperand == null) {
+            decodedOperand = decode(new DataInputImpl(operand));
+            if (secondCompareOp != null) {
+                decodedSecondOperand = decode(new DataInputImpl(secondOperand));
+            }
+        }
+
+        DataInputImpl input = new DataInputImpl(theirValue);
+        input.readByte(); // skip the exists flag
+
+        return matches(nestingLevel, input) ? 0 : 1;
+    }
+
+    private boolean matches(int nestingLevel, DataInputImpl input) {
+        if (nestingLevel == 0) {
+            Comparable value = decode(input);
+            if (prefix) {
+                boolean startsWith = ((String)value).startsWith((String)decodedOperand);
+                return compareOp == CompareOp.EQUAL ? startsWith : !startsWith;
+            }
+            return matches(value, compareOp, decodedOperand)
+                    && (secondCompareOp == null || matches(value, secondCompareOp, decodedSecondOperand));
+        } else {
+            int count = input.readInt(); // Number of elements in the list or path
+            for (int i = 0; i < count; i++) {
+                // since we stop at the first match, there's no need to skip the remaining values
+                if (matches(nestingLevel - 1, input)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean matches(Comparable value, CompareOp compareOp, Comparable operand) {
+        int result = value.compareTo(operand);
+        switch (compareOp) {
+            case LESS:
+                return result < 0;
+            case LESS_OR_EQUAL:
+                return result <= 0;
+            case EQUAL:
+                return result == 0;
+            case NOT_EQUAL:
+                return result != 0;
+            case GREATER_OR_EQUAL:
+                return result >= 0;
+            case GREATER:
+                return result > 0;
+            default:
+                throw new RuntimeException("Unsupported compare operator: " + compareOp);
+        }
+    }
+
+    private Comparable decode(DataInputImpl input) {
+        switch (type) {
+            case TYPE_LONG:
+                return input.readLong();
+            case TYPE_INTEGER:
+                return input.readInt();
+            case TYPE_DOUBLE:
+                return input.readDouble();
+            case TYPE_DECIMAL:
+                return new BigDecimal(input.readUTF());
+            case TYPE_DATE:
+            case TYPE_DATETIME:
+                input.readByte(); // Skip the encoding version byte, there is only one version
+                return input.readLong();
+            case TYPE_STRING:
+                input.readByte(); // Skip the encoding version byte, there is only one version
+                return input.readUTF();
+            default:
+                throw new RuntimeException("Unsupported value type: " + type);
+        }
+    }
+}
@@ -29,8 +29,7 @@ import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hbase.client.Result;
-import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.io.Text;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.lilyproject.client.LilyClient;
 import org.lilyproject.indexer.derefmap.DerefMap;
@@ -57,7 +56,11 @@ import org.lilyproject.util.io.Closer;
 import org.lilyproject.util.zookeeper.ZkUtil;
 import org.lilyproject.util.zookeeper.ZooKeeperItf;
 
-public class IndexingMapper extends IdRecordMapper<ImmutableBytesWritable, Result> {
+/**
+ * Indexes the records of the batch build. Normally the documents are sent to the Solr shards, when building
+ * offline, they are passed on to the {@link SolrShardIndexReducer}s instead.
+ */
+public class IndexingMapper extends IdRecordMapper<Text, SolrInputDocumentWritable> {
     private Indexer indexer;
     private MultiThreadedHttpConnectionManager connectionManager;
     private IndexLocker indexLocker;
@@ -103,19 +106,24 @@ public class IndexingMapper extends IdRecordMapper<ImmutableBytesWritable, Resul
                 shardSelector = DefaultShardSelectorBuilder.createDefaultSelector(solrShards);
             }
 
-            connectionManager = new MultiThreadedHttpConnectionManager();
-            connectionManager.getParams().setDefaultMaxConnectionsPerHost(5);
-            connectionManager.getParams().setMaxTotalConnections(50);
-            HttpClient httpClient = new HttpClient(connectionManager);
+            String indexName = jobConf.get("org.lilyproject.indexer.batchbuild.indexname");
 
-            SolrClientConfig solrConfig = new SolrClientConfig();
-            solrConfig.setRequestWriter(jobConf.get("org.lilyproject.indexer.batchbuild.requestwriter", null));
-            solrConfig.setResponseParser(jobConf.get("org.lilyproject.indexer.batchbuild.responseparser", null));
+            SolrShardManager solrShardMgr;
+            if (jobConf.getBoolean("org.lilyproject.indexer.batchbuild.offline", false)) {
+                solrShardMgr = new OfflineSolrShardManager(shardSelector, context);
+            } else {
+                connectionManager = new MultiThreadedHttpConnectionManager();
+                connectionManager.getParams().setDefaultMaxConnectionsPerHost(5);
+                connectionManager.getParams().setMaxTotalConnections(50);
+                HttpClient httpClient = new HttpClient(connectionManager);
 
-            String indexName = jobConf.get("org.lilyproject.indexer.batchbuild.indexname");
+                SolrClientConfig solrConfig = new SolrClientConfig();
+                solrConfig.setRequestWriter(jobConf.get("org.lilyproject.indexer.batchbuild.requestwriter", null));
+                solrConfig.setResponseParser(jobConf.get("org.lilyproject.indexer.batchbuild.responseparser", null));
 
-            SolrShardManager solrShardMgr = new SolrShardManagerImpl(indexName, solrShards, shardSelector, httpClient,
-                    solrConfig);
+                solrShardMgr = new SolrShardManagerImpl(indexName, solrShards, shardSelector, httpClient,
+                        solrConfig);
+            }
 
             boolean enableLocking =
                     Boolean.parseBoolean(jobConf.get("org.lilyproject.indexer.batchbuild.enableLocking"));
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.batchbuild;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.lilyproject.indexer.engine.SolrClientException;
+import org.lilyproject.indexer.engine.SolrShardManager;
+import org.lilyproject.indexer.engine.SolrUpdateClient;
+import org.lilyproject.indexer.model.sharding.ShardSelector;
+import org.lilyproject.indexer.model.sharding.ShardSelectorException;
+import org.lilyproject.repository.api.RecordId;
+
+/**
+ * SolrShardManager used when building an index offline: rather than sending the documents to Solr, they
+ * are written as map output, keyed by the name of the shard selected for the record, so that they end up
+ * at the {@link SolrShardIndexReducer} for that shard.
+ *
+ * <p>Since the offline index is built from scratch, delete requests are ignored.</p>
+ */
+public class OfflineSolrShardManager implements SolrShardManager {
+    private final ShardSelector selector;
+    private final TaskInputOutputContext<?, ?, Text, SolrInputDocumentWritable> context;
+    private final Map<String, SolrUpdateClient> clients = new HashMap<String, SolrUpdateClient>();
+
+    public OfflineSolrShardManager(ShardSelector selector,
+            TaskInputOutputContext<?, ?, Text, SolrInputDocumentWritable> context) {
+        this.selector = selector;
+        this.context = context;
+        for (String shard : selector.getShards()) {
+            clients.put(shard, new ShardOutputClient(shard));
+        }
+    }
+
+    @Override
+    public SolrUpdateClient getSolrClient(RecordId recordId) throws ShardSelectorException {
+        return clients.get(selector.getShard(recordId));
+    }
+
+    private class ShardOutputClient implements SolrUpdateClient {
+        private final String shard;
+        private final Text key;
+
+        public ShardOutputClient(String shard) {
+            this.shard = shard;
+            this.key = new Text(shard);
+        }
+
+        @Override
+        public String getDescription() {
+            return "offline shard " + shard;
+        }
+
+        @Override
+        public UpdateResponse add(SolrInputDocument doc) throws SolrClientException, InterruptedException {
+            try {
+                // The indexing is done by multiple threads, while the map context is not thread-safe
+                synchronized (context) {
+                    context.write(key, new SolrInputDocumentWritable(doc));
+                }
+            } catch (IOException e) {
+                throw new SolrClientException(getDescription(), e);
+            }
+            return new UpdateResponse();
+        }
+
+        @Override
+        public UpdateResponse add(Collection<SolrInputDocument> docs) throws SolrClientException,
+                InterruptedException {
+            for (SolrInputDocument doc : docs) {
+                add(doc);
+            }
+            return new UpdateResponse();
+        }
+
+        @Override
+        public UpdateResponse deleteById(String id) {
+            return new UpdateResponse();
+        }
+
+        @Override
+        public UpdateResponse deleteById(List<String> ids) {
+            return new UpdateResponse();
+        }
+
+        @Override
+        public UpdateResponse deleteByQuery(String query) {
+            return new UpdateResponse();
+        }
+
+        @Override
+        public UpdateResponse commit(boolean waitFlush, boolean waitSearcher) {
+            return new UpdateResponse();
+        }
+
+        @Override
+        public UpdateResponse commit() {
+            return new UpdateResponse();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.batchbuild;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * Sends all documents of one Solr shard to the same reducer, when building an index offline. The job should
+ * have as many reducers as there are shards.
+ */
+public class ShardPartitioner extends Partitioner<Text, SolrInputDocumentWritable> implements Configurable {
+    private Configuration conf;
+    private List<String> shards;
+
+    @Override
+    public int getPartition(Text shard, SolrInputDocumentWritable document, int numPartitions) {
+        int partition = Collections.binarySearch(shards, shard.toString());
+        if (partition < 0) {
+            throw new RuntimeException("Unknown Solr shard: " + shard);
+        }
+        return partition % numPartitions;
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        this.shards = getShardNames(conf);
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    /**
+     * The sorted names of the shards of the index being built. The shard for reducer n is the n-th in this list.
+     */
+    public static List<String> getShardNames(Configuration conf) {
+        List<String> shards = new ArrayList<String>();
+        for (int i = 1; true; i++) {
+            String shardName = conf.get("org.lilyproject.indexer.batchbuild.solrshard.name." + i);
+            if (shardName == null)
+                break;
+            shards.add(shardName);
+        }
+        Collections.sort(shards);
+        return shards;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.batchbuild;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+/**
+ * Carries a Solr document from the {@link IndexingMapper} to the {@link SolrShardIndexReducer}, when building
+ * an index offline.
+ *
+ * <p>The fields are written one by one, each value prefixed with a type byte. Values of a type other than
+ * those listed below are written as their string representation, which is what Solr indexes for them anyway.</p>
+ */
+public class SolrInputDocumentWritable implements Writable {
+    private SolrInputDocument document;
+
+    private static final byte STRING = 0;
+    private static final byte LONG = 1;
+    private static final byte INTEGER = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte DATE = 6;
+
+    public SolrInputDocumentWritable() {
+    }
+
+    public SolrInputDocumentWritable(SolrInputDocument document) {
+        this.document = document;
+    }
+
+    public SolrInputDocument getDocument() {
+        return document;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeFloat(document.getDocumentBoost());
+        WritableUtils.writeVInt(out, document.size());
+        for (SolrInputField field : document) {
+            Text.writeString(out, field.getName());
+            out.writeFloat(field.getBoost());
+            Collection<Object> values = field.getValues();
+            WritableUtils.writeVInt(out, values == null ? 0 : values.size());
+            if (values != null) {
+                for (Object value : values) {
+                    writeValue(out, value);
+                }
+            }
+        }
+    }
+
+    private void writeValue(DataOutput out, Object value) throws IOException {
+        if (value instanceof Long) {
+            out.writeByte(LONG);
+            WritableUtils.writeVLong(out, (Long)value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            WritableUtils.writeVInt(out, (Integer)value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float)value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double)value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date)value).getTime());
+        } else {
+            out.writeByte(STRING);
+            Text.writeString(out, value.toString());
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        document = new SolrInputDocument();
+        document.setDocumentBoost(in.readFloat());
+        int fieldCount = WritableUtils.readVInt(in);
+        for (int i = 0; i < fieldCount; i++) {
+            SolrInputField field = new SolrInputField(Text.readString(in));
+            float boost = in.readFloat();
+            int valueCount = WritableUtils.readVInt(in);
+            for (int j = 0; j < valueCount; j++) {
+                field.addValue(readValue(in), 1.0f);
+            }
+            field.setBoost(boost);
+            document.put(field.getName(), field);
+        }
+    }
+
+    private Object readValue(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case STRING:
+                return Text.readString(in);
+            case LONG:
+                return WritableUtils.readVLong(in);
+            case INTEGER:
+                return WritableUtils.readVInt(in);
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DATE:
+                return new Date(in.readLong());
+            default:
+                throw new IOException("Unknown Solr field value type: " + type);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.batchbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.CoreDescriptor;
+import org.apache.solr.core.SolrConfig;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.schema.IndexSchema;
+
+/**
+ * Builds the Lucene index of one Solr shard, when building an index offline.
+ *
+ * <p>The documents are added to an embedded Solr core, configured with the Solr configuration of the
+ * target cores (solrconfig.xml, schema.xml and whatever they refer to), which is copied from the directory
+ * specified by the solrConfDir property of the batch index configuration. At the end, the index is copied to
+ * [outputDir]/[shard name]/index, from where it can be published into the target core.</p>
+ */
+public class SolrShardIndexReducer extends Reducer<Text, SolrInputDocumentWritable, NullWritable, NullWritable> {
+    private static final String CORE_NAME = "offline";
+    private static final int ADD_BATCH_SIZE = 500;
+
+    private String shard;
+    private File solrHome;
+    private CoreContainer coreContainer;
+    private EmbeddedSolrServer solrServer;
+    private final List<SolrInputDocument> batch = new ArrayList<SolrInputDocument>(ADD_BATCH_SIZE);
+    private final Log log = LogFactory.getLog(getClass());
+
+    public enum Counters {
+        OFFLINE_INDEXED_DOCUMENTS
+    }
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration jobConf = context.getConfiguration();
+
+        // Reducer n builds the n-th shard, see ShardPartitioner
+        List<String> shards = ShardPartitioner.getShardNames(jobConf);
+        shard = shards.get(context.getTaskAttemptID().getTaskID().getId());
+
+        solrHome = new File("solr-home").getAbsoluteFile();
+        FileUtils.deleteDirectory(solrHome);
+        File confDir = new File(solrHome, "conf");
+
+        Path solrConfDir = new Path(jobConf.get("org.lilyproject.indexer.batchbuild.offline.solrconfdir"));
+        solrConfDir.getFileSystem(jobConf).copyToLocalFile(solrConfDir, new Path(confDir.getAbsolutePath()));
+
+        try {
+            String instanceDir = solrHome.getAbsolutePath() + File.separator;
+            String dataDir = new File(solrHome, "data").getAbsolutePath() + File.separator;
+
+            coreContainer = new CoreContainer();
+            SolrConfig solrConfig = new SolrConfig(instanceDir, "solrconfig.xml", null);
+            IndexSchema schema = new IndexSchema(solrConfig, "schema.xml", null);
+            CoreDescriptor descriptor = new CoreDescriptor(coreContainer, CORE_NAME, instanceDir);
+            SolrCore core = new SolrCore(CORE_NAME, dataDir, solrConfig, schema, descriptor);
+            coreContainer.register(CORE_NAME, core, false);
+            solrServer = new EmbeddedSolrServer(coreContainer, CORE_NAME);
+        } catch (Exception e) {
+            throw new IOException("Error creating embedded Solr core for offline index build of shard " + shard, e);
+        }
+
+        log.info("Building offline index for shard " + shard + " in " + solrHome);
+    }
+
+    @Override
+    protected void reduce(Text key, Iterable<SolrInputDocumentWritable> values, Context context)
+            throws IOException, InterruptedException {
+        for (SolrInputDocumentWritable value : values) {
+            batch.add(value.getDocument());
+            if (batch.size() >= ADD_BATCH_SIZE) {
+                flush(context);
+            }
+        }
+    }
+
+    private void flush(Context context) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            solrServer.add(batch);
+        } catch (Exception e) {
+            throw new IOException("Error adding documents to offline index of shard " + shard, e);
+        }
+        context.getCounter(Counters.OFFLINE_INDEXED_DOCUMENTS).increment(batch.size());
+        batch.clear();
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        Configuration jobConf = context.getConfiguration();
+        try {
+            flush(context);
+            try {
+                solrServer.commit();
+                if (jobConf.getBoolean("org.lilyproject.indexer.batchbuild.offline.optimize", false)) {
+                    context.setStatus("Optimizing offline index of shard " + shard);
+                    solrServer.optimize();
+                }
+            } catch (Exception e) {
+                throw new IOException("Error committing offline index of shard " + shard, e);
+            }
+        } finally {
+            coreContainer.shutdown();
+        }
+
+        // Copy to a temporary location first, so that a failing attempt does not leave half an index behind
+        Path outputDir = new Path(jobConf.get("org.lilyproject.indexer.batchbuild.offline.outputdir"));
+        FileSystem fs = outputDir.getFileSystem(jobConf);
+        Path tmpDir = new Path(outputDir, "_" + shard + "_" + context.getTaskAttemptID());
+        Path shardDir = new Path(outputDir, shard);
+
+        context.setStatus("Copying offline index of shard " + shard + " to " + shardDir);
+        fs.mkdirs(tmpDir);
+        fs.copyFromLocalFile(new Path(new File(solrHome, "data/index").getAbsolutePath()), new Path(tmpDir, "index"));
+        fs.delete(shardDir, true);
+        if (!fs.rename(tmpDir, shardDir)) {
+            throw new IOException("Failed to move offline index of shard " + shard + " to " + shardDir);
+        }
+
+        FileUtils.deleteDirectory(solrHome);
+        log.info("Offline index for shard " + shard + " written to " + shardDir);
+    }
+}
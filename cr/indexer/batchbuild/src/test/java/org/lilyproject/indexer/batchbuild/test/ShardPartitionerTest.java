@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.batchbuild.test;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+import org.lilyproject.indexer.batchbuild.ShardPartitioner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ShardPartitionerTest {
+    @Test
+    public void testPartition() throws Exception {
+        Configuration conf = new Configuration(false);
+        conf.set("org.lilyproject.indexer.batchbuild.solrshard.name.1", "shard2");
+        conf.set("org.lilyproject.indexer.batchbuild.solrshard.name.2", "shard3");
+        conf.set("org.lilyproject.indexer.batchbuild.solrshard.name.3", "shard1");
+        // not part of the list, since there is no name.4
+        conf.set("org.lilyproject.indexer.batchbuild.solrshard.name.5", "shard5");
+
+        assertEquals(Arrays.asList("shard1", "shard2", "shard3"), ShardPartitioner.getShardNames(conf));
+
+        ShardPartitioner partitioner = new ShardPartitioner();
+        partitioner.setConf(conf);
+
+        // the shard for reducer n is the n-th in the sorted list
+        assertEquals(0, partitioner.getPartition(new Text("shard1"), null, 3));
+        assertEquals(1, partitioner.getPartition(new Text("shard2"), null, 3));
+        assertEquals(2, partitioner.getPartition(new Text("shard3"), null, 3));
+
+        try {
+            partitioner.getPartition(new Text("shard5"), null, 3);
+            fail("expected an exception for an unknown shard");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFewerReducers() throws Exception {
+        Configuration conf = new Configuration(false);
+        conf.set("org.lilyproject.indexer.batchbuild.solrshard.name.1", "shard1");
+        conf.set("org.lilyproject.indexer.batchbuild.solrshard.name.2", "shard2");
+        conf.set("org.lilyproject.indexer.batchbuild.solrshard.name.3", "shard3");
+
+        ShardPartitioner partitioner = new ShardPartitioner();
+        partitioner.setConf(conf);
+
+        // e.g. when running with the local job runner, which has only one reducer
+        for (String shard : new String[] {"shard1", "shard2", "shard3"}) {
+            assertEquals(0, partitioner.getPartition(new Text(shard), null, 1));
+        }
+        assertEquals(0, partitioner.getPartition(new Text("shard3"), null, 2));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.batchbuild.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+import org.lilyproject.indexer.batchbuild.SolrInputDocumentWritable;
+
+import static org.junit.Assert.assertEquals;
+
+public class SolrInputDocumentWritableTest {
+    @Test
+    public void testRoundTrip() throws Exception {
+        SolrInputDocument document = new SolrInputDocument();
+        document.setDocumentBoost(2.0f);
+        document.addField("lily.key", "USER.foo-live");
+        document.addField("lily.version", 3L);
+        document.addField("title", "first", 1.5f);
+        document.addField("title", "second");
+        document.addField("count", 5);
+        document.addField("price", 2.5d);
+        document.addField("rating", 0.5f);
+        document.addField("published", true);
+        document.addField("date", new Date(1000000L));
+        // Other types are passed as their string representation
+        document.addField("other", new StringBuilder("built"));
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        new SolrInputDocumentWritable(document).write(out);
+        // A second document in the same stream, as in a sequence file
+        SolrInputDocument empty = new SolrInputDocument();
+        new SolrInputDocumentWritable(empty).write(out);
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        SolrInputDocumentWritable writable = new SolrInputDocumentWritable();
+        writable.readFields(in);
+        SolrInputDocument result = writable.getDocument();
+
+        assertEquals(2.0f, result.getDocumentBoost(), 0);
+        assertEquals(Arrays.asList("lily.key", "lily.version", "title", "count", "price", "rating", "published",
+                "date", "other"), new ArrayList<String>(result.getFieldNames()));
+        assertEquals("USER.foo-live", result.getFieldValue("lily.key"));
+        assertEquals(3L, result.getFieldValue("lily.version"));
+        assertEquals(Arrays.asList("first", "second"), new ArrayList<Object>(result.getFieldValues("title")));
+        assertEquals(1.5f, result.getField("title").getBoost(), 0);
+        assertEquals(5, result.getFieldValue("count"));
+        assertEquals(2.5d, result.getFieldValue("price"));
+        assertEquals(0.5f, result.getFieldValue("rating"));
+        assertEquals(true, result.getFieldValue("published"));
+        assertEquals(new Date(1000000L), result.getFieldValue("date"));
+        assertEquals("built", result.getFieldValue("other"));
+
+        writable.readFields(in);
+        assertEquals(0, writable.getDocument().size());
+        assertEquals(out.getLength(), in.getPosition());
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.lilyproject.repository.api.Blob;
+import org.lilyproject.util.hbase.HBaseTableFactory;
+import org.lilyproject.util.io.Closer;
+
+/**
+ * Extracts the text content of blobs, using Tika, for indexing.
+ *
+ * <p>Since blobs are immutable, the extracted text is cached by blob key (and media type), so that
+ * reindexing a record, or indexing it for multiple vtags, does not read and parse the same blob
+ * over and over again. The cache has a local tier, bounded by the total number of characters, and
+ * optionally a persistent tier stored in HBase, shared by all Lily nodes and batch index builds.</p>
+ *
+ * <p>The extraction itself runs on a bounded pool of worker threads, and is given up after a timeout,
+ * so that a single huge or malformed document can not stall the calling indexer thread. A failed or
+ * timed-out extraction is not cached, so that it will be retried the next time the record is indexed.
+ * Note that Tika does not always react to interruption: a timed-out extraction might keep occupying
+ * its worker thread until it finishes by itself.</p>
+ *
+ * <p>Instances are thread-safe, and are meant to be shared by all indexers in a process.</p>
+ */
+public class ContentExtractor {
+    public static final int DEFAULT_THREADS = 4;
+    public static final long DEFAULT_TIMEOUT = 60000L;
+    public static final long DEFAULT_CACHE_SIZE = 20L * 1000 * 1000;
+
+    /** Maximum number of characters extracted from one blob (Tika default: 100K). */
+    private static final int WRITE_LIMIT = 500 * 1000;
+
+    private static final byte[] TABLE_NAME = Bytes.toBytes("blobtext");
+    private static final byte[] DATA_CF = Bytes.toBytes("data");
+    private static final byte[] TEXT_COLUMN = Bytes.toBytes("text");
+
+    private static ContentExtractor defaultInstance;
+
+    private final Parser tikaParser = new AutoDetectParser();
+    private final ThreadPoolExecutor executor;
+    private final long timeout;
+    private final Cache<HashCode, String> localCache;
+    private final HTableInterface persistentCache;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    /**
+     * @param threads         number of concurrent extractions
+     * @param timeout         maximum time, in ms, to wait for the extraction of one blob
+     * @param cacheSize       maximum total number of characters in the local cache, 0 to disable it
+     * @param persistentCache optional (can be null), the table in which extracted text is persisted,
+     *                        see {@link #getPersistentCacheTable}.
+     */
+    public ContentExtractor(int threads, long timeout, long cacheSize, HTableInterface persistentCache) {
+        this.timeout = timeout;
+        this.persistentCache = persistentCache;
+
+        this.localCache = CacheBuilder.newBuilder()
+                .maximumWeight(cacheSize)
+                .weigher(new Weigher<HashCode, String>() {
+                    @Override
+                    public int weigh(HashCode key, String value) {
+                        return value.length() + 1;
+                    }
+                })
+                .build();
+
+        // The queue is bounded as well: when the extraction can not keep up, we would otherwise only run
+        // into the timeouts anyway, while the queue keeps growing.
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 100), new DaemonThreadFactory());
+    }
+
+    /**
+     * Returns a shared instance using the default settings and no persistent cache, for indexers
+     * which are not given a specific instance.
+     */
+    public static synchronized ContentExtractor getDefaultInstance() {
+        if (defaultInstance == null) {
+            defaultInstance = new ContentExtractor(DEFAULT_THREADS, DEFAULT_TIMEOUT, DEFAULT_CACHE_SIZE, null);
+        }
+        return defaultInstance;
+    }
+
+    public static HTableInterface getPersistentCacheTable(HBaseTableFactory tableFactory) throws IOException {
+        HTableDescriptor tableDescriptor = new HTableDescriptor(TABLE_NAME);
+        tableDescriptor.addFamily(new HColumnDescriptor(DATA_CF));
+        return tableFactory.getTable(tableDescriptor);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the text content of the blob, or null if it could not be extracted.
+     *
+     * @param streamProvider provides the content of the blob, is only called when the text is not cached.
+     * @param description    describes the blob (record & field) for logging purposes
+     */
+    public String extract(Blob blob, Callable<InputStream> streamProvider, String description)
+            throws InterruptedException {
+        HashCode key = getCacheKey(blob);
+        if (key == null) {
+            return extractAndWait(blob, streamProvider, description);
+        }
+
+        String text = localCache.getIfPresent(key);
+        if (text != null) {
+            return text;
+        }
+
+        text = readPersistentCache(key, description);
+        if (text == null) {
+            text = extractAndWait(blob, streamProvider, description);
+            if (text == null) {
+                return null;
+            }
+            writePersistentCache(key, text, description);
+        }
+
+        localCache.put(key, text);
+        return text;
+    }
+
+    private HashCode getCacheKey(Blob blob) {
+        if (blob.getValue() == null) {
+            return null;
+        }
+
+        Hasher hasher = Hashing.md5().newHasher();
+        hasher.putBytes(blob.getValue());
+        if (blob.getMediaType() != null) {
+            hasher.putString(blob.getMediaType());
+        }
+        return hasher.hash();
+    }
+
+    private String extractAndWait(Blob blob, Callable<InputStream> streamProvider, String description)
+            throws InterruptedException {
+        Future<String> future;
+        try {
+            future = executor.submit(new Extraction(blob, streamProvider, description));
+        } catch (RejectedExecutionException e) {
+            log.error("Blob extraction: too many extractions waiting, skipping " + description + ".");
+            return null;
+        }
+
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.error("Blob extraction: timed out after " + timeout + " ms. " + description + ".");
+            return null;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            log.error("Error extracting blob content. " + description + ".", e.getCause());
+            return null;
+        }
+    }
+
+    private String readPersistentCache(HashCode key, String description) {
+        if (persistentCache == null) {
+            return null;
+        }
+
+        try {
+            Get get = new Get(key.asBytes());
+            get.addColumn(DATA_CF, TEXT_COLUMN);
+            Result result = persistentCache.get(get);
+            byte[] value = result.getValue(DATA_CF, TEXT_COLUMN);
+            return value != null ? Bytes.toString(value) : null;
+        } catch (IOException e) {
+            log.warn("Error reading extracted text from persistent cache. " + description + ".", e);
+            return null;
+        }
+    }
+
+    private void writePersistentCache(HashCode key, String text, String description) {
+        if (persistentCache == null) {
+            return;
+        }
+
+        try {
+            Put put = new Put(key.asBytes());
+            put.add(DATA_CF, TEXT_COLUMN, Bytes.toBytes(text));
+            persistentCache.put(put);
+        } catch (IOException e) {
+            log.warn("Error writing extracted text to persistent cache. " + description + ".", e);
+        }
+    }
+
+    private class Extraction implements Callable<String> {
+        private final Blob blob;
+        private final Callable<InputStream> streamProvider;
+        private final String description;
+
+        Extraction(Blob blob, Callable<InputStream> streamProvider, String description) {
+            this.blob = blob;
+            this.streamProvider = streamProvider;
+            this.description = description;
+        }
+
+        @Override
+        public String call() throws Exception {
+            InputStream is = null;
+
+            WriteOutContentHandler woh = new WriteOutContentHandler(WRITE_LIMIT);
+            BodyContentHandler ch = new BodyContentHandler(woh);
+
+            try {
+                is = streamProvider.call();
+
+                Metadata metadata = new Metadata();
+                metadata.add(Metadata.CONTENT_TYPE, blob.getMediaType());
+                if (blob.getName() != null)
+                    metadata.add(Metadata.RESOURCE_NAME_KEY, blob.getName());
+
+                tikaParser.parse(is, ch, metadata, new ParseContext());
+            } catch (Exception e) {
+                if (woh.isWriteLimitReached(e)) {
+                    // ok, we'll just use the partial result
+                    if (log.isInfoEnabled()) {
+                        log.info("Blob extraction: write limit reached. " + description + ".");
+                    }
+                } else {
+                    throw e;
+                }
+            } finally {
+                Closer.close(is);
+            }
+
+            return ch.toString();
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Blob content extractor " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
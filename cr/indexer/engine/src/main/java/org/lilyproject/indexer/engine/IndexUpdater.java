@@ -109,7 +109,8 @@ public class IndexUpdater implements RowLogMessageListener {
     private IdGenerator idGenerator;
 
     /**
-     * @param rowLog this should be the message queue
+     * @param rowLog this should be the rowlog on which the subscription is registered: the message queue,
+     *               or the WAL when the indexers consume it directly
      * @param subscriptionId ID of the rowlog subscription to which this listener is listening. This is needed
      *                       because the IndexUpdater generates events itself, which should only be sent to
      *                       this subscription.
@@ -175,7 +176,7 @@ public class IndexUpdater implements RowLogMessageListener {
 
                 // After this we can go to update denormalized data
                 if (derefMap != null)
-                    updateDenormalizedData(recordId, null, null);
+                    updateDenormalizedData(recordId, null, null, event.getWriteTimestamp());
             } else { // CREATE or UPDATE
                 VTaggedRecord vtRecord;
 
@@ -225,7 +226,8 @@ public class IndexUpdater implements RowLogMessageListener {
                             // meanwhile undergo changes. However, we continuously work with the snapshot of the vtags
                             // mappings read here. The processing of later events will bring the index up to date with
                             // any new changes.
-                            vtRecord = new VTaggedRecord(recordId, eventHelper, repository);
+                            vtRecord = new VTaggedRecord(recordId, indexer.getConf().getVtags(), eventHelper,
+                                    repository);
                         } catch (RecordNotFoundException e) {
                             // The record has been deleted in the meantime.
                             // For now, we do nothing, when the delete event is received the record will be removed
@@ -242,7 +244,7 @@ public class IndexUpdater implements RowLogMessageListener {
 
                 if (derefMap != null) {
                     updateDenormalizedData(recordId, eventHelper.getUpdatedFieldsByScope(),
-                            eventHelper.getModifiedVTags());
+                            eventHelper.getModifiedVTags(), event.getWriteTimestamp());
                 }
             }
 
@@ -260,6 +262,13 @@ public class IndexUpdater implements RowLogMessageListener {
         } finally {
             long after = System.currentTimeMillis();
             metrics.updates.inc(after - before);
+            // The write timestamp is set by the repository (for events of records written with this version),
+            // the message timestamp when the event was put on the queue by the MQ feeder
+            metrics.queueLag.inc(before - msg.getTimestamp());
+            if (event != null && event.getWriteTimestamp() != -1) {
+                metrics.writeToQueueLag.inc(msg.getTimestamp() - event.getWriteTimestamp());
+                metrics.endToEndLag.inc(after - event.getWriteTimestamp());
+            }
             Thread.currentThread().setContextClassLoader(currentCL);
         }
         return true;
@@ -395,8 +404,12 @@ public class IndexUpdater implements RowLogMessageListener {
         }
     }
 
+    /**
+     * @param writeTimestamp the write timestamp of the event causing the update, passed on to the index events
+     *                       of the referrers so that the indexing lag is traced up to their indexing
+     */
     private void updateDenormalizedData(RecordId recordId, Map<Scope, Set<FieldType>> updatedFieldsByScope,
-                                        Set<SchemaId> changedVTagFields)
+                                        Set<SchemaId> changedVTagFields, long writeTimestamp)
             throws RepositoryException, InterruptedException, LinkIndexException, IOException {
 
         Multimap<RecordId, SchemaId> referrersAndVTags = ArrayListMultimap.create();
@@ -445,13 +458,14 @@ public class IndexUpdater implements RowLogMessageListener {
 
             RecordEvent payload = new RecordEvent();
             payload.setType(INDEX);
+            payload.setWriteTimestamp(writeTimestamp);
             for (SchemaId vtag : referrersAndVTags.get(referrer)) {
                 payload.addVTagToIndex(vtag);
             }
 
             // TODO how will this behave if the row was meanwhile deleted?
             try {
-                rowLog.putMessage(referrer.toBytes(), null, payload.toJsonBytes(), null,
+                rowLog.putMessage(referrer.toBytes(), null, payload.toBytes(), null,
                         Collections.singletonList(subscriptionId));
             } catch (Exception e) {
                 // We failed to put the message: this is pretty important since it means the record's index
@@ -493,7 +507,7 @@ public class IndexUpdater implements RowLogMessageListener {
 
             VTaggedRecord vtRecord;
             try {
-                vtRecord = new VTaggedRecord(recordId, repository);
+                vtRecord = new VTaggedRecord(recordId, vtagsToIndex, null, repository);
             } catch (RecordNotFoundException e) {
                 // can't index what doesn't exist
                 return;
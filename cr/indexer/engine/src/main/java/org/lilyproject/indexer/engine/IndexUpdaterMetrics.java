@@ -24,6 +24,7 @@ import org.apache.hadoop.metrics.util.MetricsRegistry;
 import org.apache.hadoop.metrics.util.MetricsTimeVaryingLong;
 import org.apache.hadoop.metrics.util.MetricsTimeVaryingRate;
 import org.lilyproject.util.hbase.metrics.MBeanUtil;
+import org.lilyproject.util.hbase.metrics.MetricsHistogram;
 import org.lilyproject.util.hbase.metrics.MetricsDynamicMBeanBase;
 
 import javax.management.ObjectName;
@@ -43,6 +44,24 @@ public class IndexUpdaterMetrics implements Updater {
      * */
     public MetricsTimeVaryingLong errors = new MetricsTimeVaryingLong("errors", registry);
 
+    /**
+     * Time between the write of the record and the event being put on the message queue: this covers the
+     * WAL processing and the MQ feeder.
+     */
+    public MetricsHistogram writeToQueueLag = new MetricsHistogram("writeToQueueLag", registry);
+
+    /**
+     * Time the event spent on the message queue before the index updater started processing it.
+     */
+    public MetricsHistogram queueLag = new MetricsHistogram("queueLag", registry);
+
+    /**
+     * Time between the write of the record and the end of the processing of its event by the index updater
+     * (including the Solr update). Since the timestamps are taken on different servers, the lags include the
+     * clock differences between them.
+     */
+    public MetricsHistogram endToEndLag = new MetricsHistogram("endToEndLag", registry);
+
     public IndexUpdaterMetrics(String indexName) {
         this.indexName = indexName;
         context = MetricsUtil.getContext("indexUpdater");
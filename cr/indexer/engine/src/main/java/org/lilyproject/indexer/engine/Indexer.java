@@ -16,8 +16,11 @@
 package org.lilyproject.indexer.engine;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +36,7 @@ import org.lilyproject.indexer.model.indexerconf.DynamicIndexField;
 import org.lilyproject.indexer.model.indexerconf.DynamicIndexField.DynamicIndexFieldMatch;
 import org.lilyproject.indexer.model.indexerconf.IndexCase;
 import org.lilyproject.indexer.model.indexerconf.IndexerConf;
+import org.lilyproject.indexer.model.indexerconf.Value;
 import org.lilyproject.indexer.model.sharding.ShardSelectorException;
 import org.lilyproject.repository.api.FieldType;
 import org.lilyproject.repository.api.IdRecord;
@@ -74,6 +78,16 @@ public class Indexer {
 
     public Indexer(String indexName, IndexerConf conf, Repository repository, SolrShardManager solrShardMgr,
                    IndexLocker indexLocker, IndexerMetrics metrics, DerefMap derefMap) {
+        this(indexName, conf, repository, solrShardMgr, indexLocker, metrics, derefMap,
+                ContentExtractor.getDefaultInstance());
+    }
+
+    /**
+     * @param contentExtractor extracts the text of blobs, can be shared between indexers.
+     */
+    public Indexer(String indexName, IndexerConf conf, Repository repository, SolrShardManager solrShardMgr,
+                   IndexLocker indexLocker, IndexerMetrics metrics, DerefMap derefMap,
+                   ContentExtractor contentExtractor) {
         this.indexName = indexName;
         this.conf = conf;
         this.repository = repository;
@@ -81,7 +95,7 @@ public class Indexer {
         this.indexLocker = indexLocker;
         this.typeManager = repository.getTypeManager();
         this.systemFields = SystemFields.getInstance(typeManager, repository.getIdGenerator());
-        this.valueEvaluator = new ValueEvaluator(conf);
+        this.valueEvaluator = new ValueEvaluator(conf, contentExtractor);
         this.metrics = metrics;
         this.derefMap = derefMap;
     }
@@ -106,7 +120,7 @@ public class Indexer {
     public void index(RecordId recordId) throws RepositoryException, SolrClientException,
             ShardSelectorException, InterruptedException, IOException {
 
-        VTaggedRecord vtRecord = new VTaggedRecord(recordId, repository);
+        VTaggedRecord vtRecord = new VTaggedRecord(recordId, conf.getVtags(), null, repository);
         IdRecord record = vtRecord.getRecord();
 
         IndexCase indexCase = conf.getIndexCase(record);
@@ -199,46 +213,43 @@ public class Indexer {
         // Note that it is important the the indexFields are evaluated in order, since multiple
         // indexFields can have the same name and the order of values for multi-value fields can be important.
         //
-        // The value of the indexFields is re-evaluated for each vtag. It is only the value of
-        // deref-values which can change from vtag to vtag, so we could optimize this by only
-        // evaluating those after the first run, but again because we want to maintain order and
-        // because a deref-field could share the same name with a non-deref field, we simply
-        // re-evaluate all fields for each vtag.
+        // Only the values of deref-expressions (including those within forEach) can change from vtag
+        // to vtag. If there are none, all fields are evaluated for the first vtag only and copied to the
+        // documents of the other vtags. Otherwise, the indexFields are evaluated for each vtag (because we
+        // want to maintain order and because a deref-field could share the same name with a non-deref field),
+        // but the values which do not depend on the vtag are only evaluated once, as are the dynamic fields.
+        Map<Value, List<String>> evaluatedValues = new IdentityHashMap<Value, List<String>>();
+        List<DynamicFieldValues> dynamicFieldValues = null;
+        SolrInputDocument template = null;
+
         for (SchemaId vtag : vtags) {
 
             SolrDocumentBuilder solrDocumentBuilder =
                     new SolrDocumentBuilder(repository, getConf().getRecordFilter(), systemFields, valueEvaluator,
-                            record, getIndexId(record.getId(), vtag), vtag, version);
-
-            // By convention/definition, we first evaluate the static index fields and then the dynamic ones
-
-            //
-            // 1: evaluate the static index fields
-            //
-            conf.getIndexFields().collectIndexUpdate(solrDocumentBuilder);
-
-            //
-            // 2: evaluate dynamic index fields
-            //
-            if (!conf.getDynamicFields().isEmpty()) {
-                for (Map.Entry<SchemaId, Object> field : record.getFieldsById().entrySet()) {
-                    FieldType fieldType = typeManager.getFieldTypeById(field.getKey());
-                    for (DynamicIndexField dynField : conf.getDynamicFields()) {
-                        DynamicIndexFieldMatch match = dynField.matches(fieldType);
-                        if (match.match) {
-                            String fieldName = evalName(dynField, match, fieldType);
-
-                            List<String> values = valueEvaluator.format(record, fieldType, dynField.extractContext(),
-                                    dynField.getFormatter(), repository);
-
-                            solrDocumentBuilder.addField(fieldName, values);
-
-                            if (!dynField.getContinue()) {
-                                // stop on first match, unless continue attribute is true
-                                break;
-                            }
-                        }
-                    }
+                            record, getIndexId(record.getId(), vtag), vtag, version, evaluatedValues);
+
+            if (template != null) {
+                solrDocumentBuilder.addFields(template);
+            } else {
+                // By convention/definition, we first evaluate the static index fields and then the dynamic ones
+
+                //
+                // 1: evaluate the static index fields
+                //
+                conf.getIndexFields().collectIndexUpdate(solrDocumentBuilder);
+
+                //
+                // 2: evaluate dynamic index fields
+                //
+                if (dynamicFieldValues == null) {
+                    dynamicFieldValues = evalDynamicFields(record);
+                }
+                for (DynamicFieldValues field : dynamicFieldValues) {
+                    solrDocumentBuilder.addField(field.name, field.values);
+                }
+
+                if (!conf.containsDerefExpressions() && vtags.size() > 1) {
+                    template = solrDocumentBuilder.copyFields();
                 }
             }
 
@@ -275,6 +286,45 @@ public class Indexer {
         }
     }
 
+    private List<DynamicFieldValues> evalDynamicFields(IdRecord record)
+            throws RepositoryException, InterruptedException {
+        if (conf.getDynamicFields().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<DynamicFieldValues> result = new ArrayList<DynamicFieldValues>();
+        for (Map.Entry<SchemaId, Object> field : record.getFieldsById().entrySet()) {
+            FieldType fieldType = typeManager.getFieldTypeById(field.getKey());
+            for (DynamicIndexField dynField : conf.getDynamicFields()) {
+                DynamicIndexFieldMatch match = dynField.matches(fieldType);
+                if (match.match) {
+                    String fieldName = evalName(dynField, match, fieldType);
+
+                    List<String> values = valueEvaluator.format(record, fieldType, dynField.extractContext(),
+                            dynField.getFormatter(), repository);
+
+                    result.add(new DynamicFieldValues(fieldName, values));
+
+                    if (!dynField.getContinue()) {
+                        // stop on first match, unless continue attribute is true
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static class DynamicFieldValues {
+        private final String name;
+        private final List<String> values;
+
+        DynamicFieldValues(String name, List<String> values) {
+            this.name = name;
+            this.values = values;
+        }
+    }
+
     private void processDependencies(IdRecord record, SchemaId vtag, SolrDocumentBuilder solrDocumentBuilder)
             throws IOException, RepositoryException, InterruptedException {
         if (log.isDebugEnabled()) {
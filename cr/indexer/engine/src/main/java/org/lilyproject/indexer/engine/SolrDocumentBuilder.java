@@ -29,10 +29,12 @@ import com.google.common.collect.Sets;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
 import org.lilyproject.indexer.derefmap.DependencyEntry;
 import org.lilyproject.indexer.derefmap.DerefMapUtil;
 import org.lilyproject.indexer.model.indexerconf.Dep;
 import org.lilyproject.indexer.model.indexerconf.FieldTemplatePart;
+import org.lilyproject.indexer.model.indexerconf.FieldValue;
 import org.lilyproject.indexer.model.indexerconf.IndexRecordFilter;
 import org.lilyproject.indexer.model.indexerconf.IndexUpdateBuilder;
 import org.lilyproject.indexer.model.indexerconf.LiteralTemplatePart;
@@ -75,8 +77,23 @@ public class SolrDocumentBuilder implements IndexUpdateBuilder {
     private SchemaId vtag;
     private long version;
 
+    /**
+     * Values which only depend on the record itself, see {@link #eval(Value)}.
+     */
+    private Map<Value, List<String>> evaluatedValues;
+
     public SolrDocumentBuilder(Repository repository, IndexRecordFilter indexRecordFilter, SystemFields systemFields,
                                ValueEvaluator valueEvaluator, IdRecord record, String key, SchemaId vtag, long version) {
+        this(repository, indexRecordFilter, systemFields, valueEvaluator, record, key, vtag, version, null);
+    }
+
+    /**
+     * @param evaluatedValues optional (can be null), memo of evaluated values, to be shared between the builders
+     *                        of the different vtags of the same record version.
+     */
+    public SolrDocumentBuilder(Repository repository, IndexRecordFilter indexRecordFilter, SystemFields systemFields,
+                               ValueEvaluator valueEvaluator, IdRecord record, String key, SchemaId vtag, long version,
+                               Map<Value, List<String>> evaluatedValues) {
         this.repository = repository;
         this.indexRecordFilter = indexRecordFilter;
         this.systemFields = systemFields;
@@ -86,6 +103,7 @@ public class SolrDocumentBuilder implements IndexUpdateBuilder {
         this.key = key;
         this.vtag = vtag;
         this.version = version;
+        this.evaluatedValues = evaluatedValues;
 
         this.nameTemplateResolver = new FieldNameTemplateResolver();
 
@@ -120,9 +138,47 @@ public class SolrDocumentBuilder implements IndexUpdateBuilder {
         return repository;
     }
 
+    /**
+     * Returns a copy of the fields added so far, which can be added to the document of another vtag using
+     * {@link #addFields}.
+     */
+    public SolrInputDocument copyFields() {
+        SolrInputDocument copy = new SolrInputDocument();
+        for (SolrInputField field : solrDoc) {
+            for (Object value : field.getValues()) {
+                copy.addField(field.getName(), value);
+            }
+        }
+        return copy;
+    }
+
+    public void addFields(SolrInputDocument fields) {
+        for (SolrInputField field : fields) {
+            for (Object value : field.getValues()) {
+                solrDoc.addField(field.getName(), value);
+                emptyDocument = false;
+            }
+        }
+    }
+
+    /**
+     * Evaluates a value. The value of a field of the record itself (thus not dereferenced, and not within
+     * a forEach) does not depend on the vtag, so this is taken from the evaluatedValues memo when available.
+     * Such values never introduce dependencies on other records, so nothing is lost by not evaluating them.
+     */
     @Override
     public List<String> eval(Value value) throws RepositoryException, InterruptedException {
-        return valueEvaluator.eval(value, this);
+        if (evaluatedValues == null || !(value instanceof FieldValue) || contexts.size() != 1) {
+            return valueEvaluator.eval(value, this);
+        }
+
+        if (evaluatedValues.containsKey(value)) {
+            return evaluatedValues.get(value);
+        }
+
+        List<String> values = valueEvaluator.eval(value, this);
+        evaluatedValues.put(value, values);
+        return values;
     }
 
     @Override
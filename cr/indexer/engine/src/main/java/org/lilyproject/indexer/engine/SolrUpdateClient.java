@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.engine;
+
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The updating part of {@link SolrClient}, which is all the {@link Indexer} needs. This allows to send the index
+ * updates somewhere else than to a Solr server which can be queried, such as when building an index offline.
+ */
+public interface SolrUpdateClient {
+    /**
+     * Description of this Solr server, usually its URL.
+     */
+    String getDescription();
+
+    //
+    //
+    // The following method declarations are copied from Solr's SolrServer class, but with
+    // InterruptedException added to their throws clause. This is necessary for the RetryingSolrClient.
+    //
+    //
+
+    UpdateResponse add(SolrInputDocument doc) throws SolrClientException, InterruptedException;
+
+    UpdateResponse add(Collection<SolrInputDocument> docs) throws SolrClientException,
+            InterruptedException;
+
+    UpdateResponse deleteById(String id) throws SolrClientException, InterruptedException;
+
+    UpdateResponse deleteById(List<String> ids) throws SolrClientException, InterruptedException;
+
+    UpdateResponse deleteByQuery(String query) throws SolrClientException, InterruptedException;
+
+    UpdateResponse commit(boolean waitFlush, boolean waitSearcher) throws SolrClientException,
+            InterruptedException;
+
+    UpdateResponse commit() throws SolrClientException, InterruptedException;
+}
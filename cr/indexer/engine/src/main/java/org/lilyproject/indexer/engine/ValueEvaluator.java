@@ -21,17 +21,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.parser.ParseContext;
-import org.apache.tika.parser.Parser;
-import org.apache.tika.sax.BodyContentHandler;
-import org.apache.tika.sax.WriteOutContentHandler;
 import org.lilyproject.indexer.model.indexerconf.DerefValue;
 import org.lilyproject.indexer.model.indexerconf.FieldValue;
 import org.lilyproject.indexer.model.indexerconf.Follow;
@@ -46,24 +39,26 @@ import org.lilyproject.repository.api.FieldType;
 import org.lilyproject.repository.api.Record;
 import org.lilyproject.repository.api.Repository;
 import org.lilyproject.repository.api.RepositoryException;
-import org.lilyproject.util.io.Closer;
 import org.lilyproject.util.repo.SystemFields;
 
 /**
  * Evaluates an index field value (a {@link Value}) to a value.
  */
 public class ValueEvaluator {
-    private Log log = LogFactory.getLog(getClass());
-
     private IndexerConf conf;
 
     private SystemFields systemFields;
 
-    private Parser tikaParser = new AutoDetectParser();
+    private ContentExtractor contentExtractor;
 
     public ValueEvaluator(IndexerConf conf) {
+        this(conf, ContentExtractor.getDefaultInstance());
+    }
+
+    public ValueEvaluator(IndexerConf conf, ContentExtractor contentExtractor) {
         this.conf = conf;
         this.systemFields = conf.getSystemFields();
+        this.contentExtractor = contentExtractor;
     }
 
     /**
@@ -118,7 +113,8 @@ public class ValueEvaluator {
         return formatter.format(indexValues, repository);
     }
 
-    private List<String> extractContent(List<IndexValue> indexValues, Repository repository) {
+    private List<String> extractContent(List<IndexValue> indexValues, Repository repository)
+            throws InterruptedException {
         // At this point we can be sure the value will be a blob, this is
         // validated during
         // the construction of the indexer conf.
@@ -140,7 +136,7 @@ public class ValueEvaluator {
     }
 
     private void extractContent(Object value, Deque<Integer> indexes, Record record, FieldType fieldType,
-            List<String> result, Repository repository) {
+            List<String> result, Repository repository) throws InterruptedException {
 
         if (value instanceof List) { // this covers both LIST and PATH types
             List values = (List) value;
@@ -154,46 +150,22 @@ public class ValueEvaluator {
         }
     }
 
-    private void extractContent(Object value, Record record, FieldType fieldType, int[] indexes, List<String> result,
-            Repository repository) {
+    private void extractContent(Object value, final Record record, final FieldType fieldType, final int[] indexes,
+            List<String> result, final Repository repository) throws InterruptedException {
 
         Blob blob = (Blob) value;
-        InputStream is = null;
-
-        // TODO make write limit configurable
-        WriteOutContentHandler woh = new WriteOutContentHandler(500 * 1000); // 500K limit (Tika default: 100K)
-        BodyContentHandler ch = new BodyContentHandler(woh);
-
-        try {
-            is = repository.getInputStream(record, fieldType.getName(), indexes);
-
-            Metadata metadata = new Metadata();
-            metadata.add(Metadata.CONTENT_TYPE, blob.getMediaType());
-            if (blob.getName() != null)
-                metadata.add(Metadata.RESOURCE_NAME_KEY, blob.getName());
-
-            ParseContext parseContext = new ParseContext();
-
-            tikaParser.parse(is, ch, metadata, parseContext);
-        } catch (Throwable t) {
-            if (woh.isWriteLimitReached(t)) {
-                // ok, we'll just add use the partial result
-                if (log.isInfoEnabled()) {
-                    log.info("Blob extraction: write limit reached. Field '" + fieldType.getName() + "', record '"
-                            + record.getId() + "'.");
-                }
-            } else {
-                log.error(
-                        "Error extracting blob content. Field '" + fieldType.getName() + "', record '" + record.getId()
-                                + "'.", t);
-                return;
+
+        Callable<InputStream> streamProvider = new Callable<InputStream>() {
+            @Override
+            public InputStream call() throws Exception {
+                return repository.getInputStream(record, fieldType.getName(), indexes);
             }
-        } finally {
-            Closer.close(is);
-        }
+        };
+
+        String text = contentExtractor.extract(blob, streamProvider,
+                "Field '" + fieldType.getName() + "', record '" + record.getId() + "'");
 
-        String text = ch.toString();
-        if (text.length() > 0)
+        if (text != null && text.length() > 0)
             result.add(text);
     }
 
@@ -26,6 +26,8 @@ import org.lilyproject.repository.api.Record;
 import org.lilyproject.repository.api.RecordId;
 import org.lilyproject.repository.api.Repository;
 import org.lilyproject.rowlog.api.RowLog;
+import org.lilyproject.rowlog.api.RowLogDispatchFilter;
+import org.lilyproject.rowlog.api.RowLogDispatchFilterMapping;
 import org.lilyproject.rowlog.api.RowLogException;
 import org.lilyproject.rowlog.api.RowLogMessage;
 import org.lilyproject.rowlog.api.RowLogMessageListener;
@@ -34,11 +36,18 @@ import org.lilyproject.util.repo.RecordEvent;
 import org.lilyproject.util.repo.RowLogContext;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-public class IndexAwareMQFeeder implements RowLogMessageListener {
+/**
+ * Feeds the MQ from the WAL, only for those index subscriptions for which the record event is relevant.
+ *
+ * <p>When the index subscriptions are registered on the WAL rather than the MQ, the same relevance filter
+ * is used as {@link RowLogDispatchFilter} of the WAL.</p>
+ */
+public class IndexAwareMQFeeder implements RowLogMessageListener, RowLogDispatchFilter {
     private Log log = LogFactory.getLog(getClass());
     private final RowLog messageQueue;
     private final Repository repository;
@@ -53,6 +62,28 @@ public class IndexAwareMQFeeder implements RowLogMessageListener {
     @PostConstruct
     public void register() {
         RowLogMessageListenerMapping.INSTANCE.put("MQFeeder", this);
+        RowLogDispatchFilterMapping.INSTANCE.put("wal", this);
+    }
+
+    @PreDestroy
+    public void unregister() {
+        RowLogDispatchFilterMapping.INSTANCE.remove("wal");
+    }
+
+    @Override
+    public void filterSubscriptions(RowLogMessage message, List<String> subscriptionIds) {
+        RecordEvent recordEvent = getRecordEvent(message);
+        if (recordEvent == null) {
+            return;
+        }
+
+        // Same as for the MQ: don't dispatch if attribute lily.mq=false is set
+        if (recordEvent.hasAttributes() && "false".equals(recordEvent.getAttributes().get("lily.mq"))) {
+            subscriptionIds.clear();
+            return;
+        }
+
+        filterSubscriptions(subscriptionIds, indexesInfo.getIndexInfos(), message, recordEvent);
     }
 
     @Override
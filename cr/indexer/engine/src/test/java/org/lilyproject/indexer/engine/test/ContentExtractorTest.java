@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.engine.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lilyproject.indexer.engine.ContentExtractor;
+import org.lilyproject.repository.api.Blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContentExtractorTest {
+    private ContentExtractor extractor;
+
+    @Before
+    public void setUp() {
+        extractor = new ContentExtractor(1, 1000, 1000, null);
+    }
+
+    @After
+    public void tearDown() {
+        extractor.stop();
+    }
+
+    @Test
+    public void testExtractedTextIsCachedByBlob() throws Exception {
+        CountingProvider provider = new CountingProvider("hello world");
+
+        Blob blob = new Blob(Bytes.toBytes("blobkey1"), "text/plain", 11L, "hello.txt");
+        assertEquals("hello world", extractor.extract(blob, provider, "test").trim());
+
+        // Same blob key, different blob object: served from the cache
+        Blob sameBlob = new Blob(Bytes.toBytes("blobkey1"), "text/plain", 11L, "hello.txt");
+        assertEquals("hello world", extractor.extract(sameBlob, provider, "test").trim());
+        assertEquals(1, provider.calls.get());
+
+        // Other blob key: extracted again
+        Blob otherBlob = new Blob(Bytes.toBytes("blobkey2"), "text/plain", 11L, "hello.txt");
+        extractor.extract(otherBlob, provider, "test");
+        assertEquals(2, provider.calls.get());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<InputStream> slowProvider = new Callable<InputStream>() {
+            @Override
+            public InputStream call() throws Exception {
+                release.await();
+                return new ByteArrayInputStream(Bytes.toBytes("too late"));
+            }
+        };
+
+        Blob blob = new Blob(Bytes.toBytes("blobkey3"), "text/plain", 8L, "slow.txt");
+        long before = System.currentTimeMillis();
+        assertNull(extractor.extract(blob, slowProvider, "test"));
+        assertTrue(System.currentTimeMillis() - before < 5000);
+        release.countDown();
+
+        // A timed out extraction is not cached
+        CountingProvider provider = new CountingProvider("on time");
+        assertEquals("on time", extractor.extract(blob, provider, "test").trim());
+        assertEquals(1, provider.calls.get());
+    }
+
+    private static class CountingProvider implements Callable<InputStream> {
+        private final String text;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        CountingProvider(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public InputStream call() throws Exception {
+            calls.incrementAndGet();
+            return new ByteArrayInputStream(Bytes.toBytes(text));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.engine.test;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lilyproject.indexer.model.indexerconf.DefaultFormatter;
+import org.lilyproject.indexer.model.indexerconf.IndexValue;
+import org.lilyproject.repository.api.Repository;
+
+/**
+ * Formats like the default formatter, but counts how many times each value has been formatted.
+ */
+public class CountingFormatter extends DefaultFormatter {
+    private static ConcurrentMap<String, AtomicInteger> COUNTS = new ConcurrentHashMap<String, AtomicInteger>();
+
+    @Override
+    public List<String> format(List<IndexValue> indexValues, Repository repository) throws InterruptedException {
+        List<String> result = super.format(indexValues, repository);
+        for (String value : result) {
+            COUNTS.putIfAbsent(value, new AtomicInteger());
+            COUNTS.get(value).incrementAndGet();
+        }
+        return result;
+    }
+
+    public static int getCount(String value) {
+        AtomicInteger count = COUNTS.get(value);
+        return count == null ? 0 : count.get();
+    }
+
+    public static void reset() {
+        COUNTS.clear();
+    }
+}
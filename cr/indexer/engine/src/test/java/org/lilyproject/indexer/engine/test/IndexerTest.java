@@ -2693,6 +2693,65 @@ public class IndexerTest {
         verifyResultCount("+v_field2:met +lily.vtag:latest", 1);
     }
 
+    /**
+     * When several vtags point to the same version of a record, only the deref-values should be
+     * evaluated for each vtag, the other values only once.
+     */
+    @Test
+    public void testFieldsEvaluatedOnceForAllVtags() throws Exception {
+        messageVerifier.disable();
+
+        //
+        // Without deref expressions, the document of the first vtag is reused for the others
+        //
+        changeIndexUpdater("indexerconf_vtags.xml");
+        CountingFormatter.reset();
+
+        Record record = repository.newRecord();
+        record.setRecordType(vRecordType1.getName());
+        record.setField(vfield1.getName(), "spruce");
+        record.setField(liveTag.getName(), 1L);
+        record.setField(previewTag.getName(), 1L);
+        record.setField(latestTag.getName(), 1L);
+        repository.create(record);
+        commitIndex();
+
+        assertEquals(1, CountingFormatter.getCount("spruce"));
+        verifyResultCount("+v_field1:spruce +lily.vtag:live", 1);
+        verifyResultCount("+v_field1:spruce +lily.vtag:preview", 1);
+        verifyResultCount("+v_field1:spruce +lily.vtag:latest", 1);
+
+        //
+        // With deref expressions, only these are evaluated for each vtag
+        //
+        changeIndexUpdater("indexerconf_vtags_deref.xml");
+        CountingFormatter.reset();
+
+        Record linkedRecord = repository.newRecord();
+        linkedRecord.setRecordType(vRecordType1.getName());
+        linkedRecord.setField(vfield2.getName(), "maple");
+        linkedRecord.setField(liveTag.getName(), 1L);
+        linkedRecord.setField(previewTag.getName(), 1L);
+        linkedRecord.setField(latestTag.getName(), 1L);
+        linkedRecord = repository.create(linkedRecord);
+
+        record = repository.newRecord();
+        record.setRecordType(vRecordType1.getName());
+        record.setField(vfield1.getName(), "birch");
+        record.setField(vLinkField1.getName(), new Link(linkedRecord.getId()));
+        record.setField(liveTag.getName(), 1L);
+        record.setField(previewTag.getName(), 1L);
+        record.setField(latestTag.getName(), 1L);
+        repository.create(record);
+        commitIndex();
+
+        assertEquals(1, CountingFormatter.getCount("birch"));
+        assertEquals(3, CountingFormatter.getCount("maple"));
+        for (String vtag : new String[] {"live", "preview", "latest"}) {
+            verifyResultCount("+v_field1:birch +v_deref1:maple +lily.vtag:" + vtag, 1);
+        }
+    }
+
     /**
      * This test might better fit in the indexer-model package
      */
@@ -3038,6 +3097,13 @@ public class IndexerTest {
             return super.readWithIds(recordId, version, fieldIds);
         }
 
+        @Override
+        public List<IdRecord> readVTaggedWithIds(RecordId recordId, Set<SchemaId> vtagIds)
+                throws RepositoryException, InterruptedException {
+            readCount++;
+            return super.readVTaggedWithIds(recordId, vtagIds);
+        }
+
         public int reads() {
             int result = readCount;
             readCount = 0;
@@ -316,6 +316,21 @@ public class RecordMatcherTest {
         assertEquals(Sets.newHashSet(vtag2.getId()),
                 idxConf.getRecordFilter().getIndexCase(recordProp1Prop2Prop3).getVersionTags());
 
+        //
+        // Record with the same variant properties as the first one, but another value for prop2: the rules
+        // are looked up by variant dimensions, but the values should still be checked for each record
+        //
+        Record recordProp1Prop2Other = repository.recordBuilder()
+                .id("record", ImmutableMap.of("prop1", "val1", "prop2", "zeus"))
+                .recordType(new QName("ns1", "typeA"))
+                .field(new QName("ns", "string"), "something")
+                .build();
+
+        assertEquals(Sets.newHashSet(vtag2.getId()),
+                idxConf.getRecordFilter().getIndexCase(recordProp1Prop2Other).getVersionTags());
+        assertEquals(Sets.newHashSet(vtag1.getId()),
+                idxConf.getRecordFilter().getIndexCase(recordProp1Prop2).getVersionTags());
+
         //
         // Record with one prop should not be matched by any rules
         //
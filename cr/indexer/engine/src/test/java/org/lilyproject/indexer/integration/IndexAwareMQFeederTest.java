@@ -79,6 +79,7 @@ public class IndexAwareMQFeederTest {
     protected static IndexesInfo indexesInfo;
     protected static Repository repository;
     protected static TypeManager typeManager;
+    protected static IndexAwareMQFeeder mqFeeder;
 
     protected static List<CountingSolrShardManager> solrShardManagers = new ArrayList<CountingSolrShardManager>();
     protected static List<CountingSolrClient> solrClients = new ArrayList<CountingSolrClient>();
@@ -90,7 +91,8 @@ public class IndexAwareMQFeederTest {
             if (indexesInfo == null) {
                 throw new RuntimeException("Expected IndexesInfo to be available at this point.");
             }
-            return new IndexAwareMQFeeder(mq, getRepository(), indexesInfo);
+            mqFeeder = new IndexAwareMQFeeder(mq, getRepository(), indexesInfo);
+            return mqFeeder;
         }
     };
 
@@ -540,6 +542,77 @@ public class IndexAwareMQFeederTest {
         assertEquals(0, solrClient.adds());
     }
 
+    /**
+     * When the index subscriptions are on the WAL, the feeder is used as dispatch filter of the WAL. This checks
+     * the filtering on the messages of the WAL, as the WAL would call it.
+     */
+    @Test
+    public void testDispatchFilter() throws Exception {
+        setupIndexes(Lists.newArrayList("indexerconf_typeA.xml", "indexerconf_typeB.xml"));
+
+        final List<List<String>> dispatched = new ArrayList<List<String>>();
+        RowLogMessageListenerMapping.INSTANCE.put("DispatchFilterProbe", new RowLogMessageListener() {
+            @Override
+            public boolean processMessage(RowLogMessage message) throws InterruptedException {
+                List<String> subscriptionIds = Lists.newArrayList("IndexUpdater0", "IndexUpdater1");
+                mqFeeder.filterSubscriptions(message, subscriptionIds);
+                dispatched.add(subscriptionIds);
+                return true;
+            }
+        });
+        rowLogConfMgr.addSubscription("WAL", "DispatchFilterProbe", RowLogSubscription.Type.VM, 2);
+        repoSetup.waitForSubscription(repoSetup.getWal(), "DispatchFilterProbe");
+
+        try {
+            repository.recordBuilder()
+                    .defaultNamespace("mqfeedtest")
+                    .recordType("typeA")
+                    .field("field1", "value1")
+                    .create();
+
+            repository.recordBuilder()
+                    .defaultNamespace("mqfeedtest")
+                    .recordType("typeC")
+                    .field("field1", "value1")
+                    .create();
+
+            Record record = repository.recordBuilder()
+                    .defaultNamespace("mqfeedtest")
+                    .recordType("typeA")
+                    .field("field1", "value1")
+                    .create();
+
+            // When changing the record type, both the old and the new type count
+            record.setRecordType(new QName("mqfeedtest", "typeB"));
+            record.setField(new QName("mqfeedtest", "field1"), "value2");
+            record = repository.update(record);
+
+            record.setField(new QName("mqfeedtest", "field1"), "value3");
+            repository.update(record);
+
+            record = repository.recordBuilder()
+                    .defaultNamespace("mqfeedtest")
+                    .recordType("typeC")
+                    .field("field1", "value1")
+                    .build();
+            record.getAttributes().put("lily.mq", "false");
+            repository.create(record);
+
+            assertEquals(6, dispatched.size());
+            assertEquals(Lists.newArrayList("IndexUpdater0"), dispatched.get(0));
+            assertEquals(Lists.newArrayList("IndexUpdater0", "IndexUpdater1"), dispatched.get(1));
+            assertEquals(Lists.newArrayList("IndexUpdater0"), dispatched.get(2));
+            assertEquals(Lists.newArrayList("IndexUpdater0", "IndexUpdater1"), dispatched.get(3));
+            assertEquals(Lists.newArrayList("IndexUpdater1"), dispatched.get(4));
+            assertEquals(0, dispatched.get(5).size());
+        } finally {
+            rowLogConfMgr.removeSubscription("WAL", "DispatchFilterProbe");
+            RowLogMessageListenerMapping.INSTANCE.remove("DispatchFilterProbe");
+            // don't leave the MQ messages of these records for the next test
+            repoSetup.processMQ();
+        }
+    }
+
     protected static class CountingIndexUpdater implements RowLogMessageListener {
         private final IndexUpdater delegate;
         private int eventCount = 0;
@@ -25,16 +25,21 @@ import java.util.Map;
 import net.iharder.Base64;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.output.NullOutputFormat;
 import org.codehaus.jackson.JsonNode;
 import org.lilyproject.hbaseindex.IndexNotFoundException;
 import org.lilyproject.indexer.batchbuild.IndexingMapper;
+import org.lilyproject.indexer.batchbuild.ShardPartitioner;
+import org.lilyproject.indexer.batchbuild.SolrInputDocumentWritable;
+import org.lilyproject.indexer.batchbuild.SolrShardIndexReducer;
 import org.lilyproject.indexer.derefmap.DerefMapHbaseImpl;
 import org.lilyproject.indexer.engine.SolrClientConfig;
 import org.lilyproject.indexer.model.api.IndexDefinition;
 import org.lilyproject.indexer.model.indexerconf.IndexerConf;
 import org.lilyproject.indexer.model.indexerconf.IndexerConfBuilder;
+import org.lilyproject.mapreduce.AbstractLilyScanInputFormat;
 import org.lilyproject.mapreduce.LilyMapReduceUtil;
 import org.lilyproject.repository.api.RecordScan;
 import org.lilyproject.repository.api.Repository;
@@ -86,17 +91,34 @@ public class BatchIndexBuilder {
             job.getConfiguration().set("org.lilyproject.indexer.batchbuild.solrshard.address." + i, shard.getValue());
         }
 
-        job.setNumReduceTasks(0);
         job.setOutputFormatClass(NullOutputFormat.class);
 
-
         JsonNode batchConfigurationNode =
                 JsonFormat.deserializeNonStd(new ByteArrayInputStream(batchIndexConfiguration));
+
+        // In offline mode, the documents are routed per shard to reducers which build the shard indexes themselves,
+        // rather than sending them to the live Solr shards.
+        JsonNode offlineNode = batchConfigurationNode.get("offline");
+        if (offlineNode != null) {
+            configureOfflineBuild(offlineNode, index, job);
+        } else {
+            job.setNumReduceTasks(0);
+        }
         RecordScan recordScan = RecordScanReader.INSTANCE.fromJson(batchConfigurationNode.get("scan"), repository);
         recordScan.setReturnFields(ReturnFields.ALL);
         recordScan.setCacheBlocks(false);
         recordScan.setCaching(1024);
 
+        if (batchConfigurationNode.has("caching")) {
+            recordScan.setCaching(batchConfigurationNode.get("caching").asInt(1024));
+        }
+
+        // Allows to have more map tasks than there are regions, useful when the regions are large
+        if (batchConfigurationNode.has("splitsPerRegion")) {
+            job.getConfiguration().setInt(AbstractLilyScanInputFormat.SPLITS_PER_REGION,
+                    batchConfigurationNode.get("splitsPerRegion").asInt(1));
+        }
+
         if (batchConfigurationNode.has("clearDerefMap") &&
                 batchConfigurationNode.get("clearDerefMap").asBoolean(false)) {
             try {
@@ -151,6 +173,36 @@ public class BatchIndexBuilder {
         return job;
     }
 
+    private static void configureOfflineBuild(JsonNode offlineNode, IndexDefinition index, Job job) {
+        String solrConfDir = getRequiredString(offlineNode, "solrConfDir");
+        String outputDir = getRequiredString(offlineNode, "outputDir");
+        OfflineIndexPublisher.checkMergeConfiguration(offlineNode);
+
+        Configuration conf = job.getConfiguration();
+        conf.setBoolean("org.lilyproject.indexer.batchbuild.offline", true);
+        conf.set("org.lilyproject.indexer.batchbuild.offline.solrconfdir", solrConfDir);
+        conf.set("org.lilyproject.indexer.batchbuild.offline.outputdir", outputDir);
+        conf.setBoolean("org.lilyproject.indexer.batchbuild.offline.optimize",
+                offlineNode.has("optimize") && offlineNode.get("optimize").asBoolean(false));
+
+        // One reducer per shard: each of them writes the index of one shard
+        job.setNumReduceTasks(index.getSolrShards().size());
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(SolrInputDocumentWritable.class);
+        job.setPartitionerClass(ShardPartitioner.class);
+        job.setReducerClass(SolrShardIndexReducer.class);
+        conf.setBoolean("mapred.reduce.tasks.speculative.execution", false);
+    }
+
+    static String getRequiredString(JsonNode node, String name) {
+        JsonNode valueNode = node.get(name);
+        if (valueNode == null || !valueNode.isTextual()) {
+            throw new IllegalArgumentException("Missing or non-string property in offline batch build " +
+                    "configuration: " + name);
+        }
+        return valueNode.getTextValue();
+    }
+
     /**
      * This method was copied from Hadoop JobConf (Apache License).
      */
@@ -24,6 +24,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.PostConstruct;
@@ -42,6 +44,7 @@ import org.apache.hadoop.mapred.Task;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.tika.io.IOUtils;
 import org.apache.zookeeper.KeeperException;
+import org.codehaus.jackson.JsonNode;
 import org.lilyproject.indexer.batchbuild.IndexBatchBuildCounters;
 import org.lilyproject.indexer.derefmap.DerefMapHbaseImpl;
 import org.lilyproject.indexer.engine.SolrClientConfig;
@@ -58,9 +61,11 @@ import org.lilyproject.indexer.model.api.IndexerModelListener;
 import org.lilyproject.indexer.model.api.WriteableIndexerModel;
 import org.lilyproject.repository.api.Repository;
 import org.lilyproject.rowlog.api.RowLogConfigurationManager;
+import org.lilyproject.rowlog.api.RowLogException;
 import org.lilyproject.rowlog.api.RowLogSubscription;
 import org.lilyproject.util.LilyInfo;
 import org.lilyproject.util.Logs;
+import org.lilyproject.util.concurrent.CustomThreadFactory;
 import org.lilyproject.util.hbase.HBaseTableFactory;
 import org.lilyproject.util.io.Closer;
 import org.lilyproject.util.zookeeper.LeaderElection;
@@ -119,6 +124,12 @@ public class IndexerMaster {
 
     private final String nodes;
 
+    /**
+     * The rowlog on which new index subscriptions are registered: the MQ, or the WAL, in which case the
+     * indexers consume the WAL directly.
+     */
+    private final String subscriptionRowLogId;
+
 
     private byte[] fullTableScanConf;
 
@@ -126,7 +137,7 @@ public class IndexerMaster {
             Configuration mapReduceConf, Configuration mapReduceJobConf, Configuration hbaseConf,
             String zkConnectString, int zkSessionTimeout, RowLogConfigurationManager rowLogConfMgr,
             LilyInfo lilyInfo, SolrClientConfig solrClientConfig, boolean enableLocking,
-            String hostName, HBaseTableFactory tableFactory, String nodes) {
+            String hostName, HBaseTableFactory tableFactory, String nodes, String subscriptionRowLogId) {
 
         this.zk = zk;
         this.indexerModel = indexerModel;
@@ -143,6 +154,7 @@ public class IndexerMaster {
         this.hostName = hostName;
         this.tableFactory = tableFactory;
         this.nodes = nodes;
+        this.subscriptionRowLogId = subscriptionRowLogId;
     }
 
     @PostConstruct
@@ -252,10 +264,12 @@ public class IndexerMaster {
                     // due to concurrent operations (e.g. someone deleting this subscription right after we
                     // created it).
                     String subscriptionId = subscriptionId(index.getName());
-                    rowLogConfMgr.addSubscription("mq", subscriptionId, RowLogSubscription.Type.Netty, 1);
+                    rowLogConfMgr.addSubscription(subscriptionRowLogId, subscriptionId, RowLogSubscription.Type.Netty,
+                            1);
                     index.setQueueSubscriptionId(subscriptionId);
                     indexerModel.updateIndexInternal(index);
-                    log.info("Assigned queue subscription ID '" + subscriptionId + "' to index '" + indexName + "'");
+                    log.info("Assigned queue subscription ID '" + subscriptionId + "' on rowlog '"
+                            + subscriptionRowLogId + "' to index '" + indexName + "'");
                 }
             } finally {
                 indexerModel.unlockIndex(lock);
@@ -272,7 +286,7 @@ public class IndexerMaster {
                 // Read current situation of record and assure it is still actual
                 IndexDefinition index = indexerModel.getMutableIndex(indexName);
                 if (needsSubscriptionIdUnassigned(index)) {
-                    rowLogConfMgr.removeSubscription("mq", index.getQueueSubscriptionId());
+                    removeSubscription(index.getQueueSubscriptionId());
                     log.info("Deleted queue subscription for index " + indexName);
                     index.setQueueSubscriptionId(null);
                     indexerModel.updateIndexInternal(index);
@@ -285,6 +299,19 @@ public class IndexerMaster {
         }
     }
 
+    /**
+     * Removes the subscription from the rowlog it is registered on, which is not necessarily the current
+     * {@link #subscriptionRowLogId}.
+     */
+    private void removeSubscription(String subscriptionId)
+            throws KeeperException, InterruptedException, RowLogException {
+        for (String rowLogId : new String[] {"mq", "wal"}) {
+            if (rowLogConfMgr.subscriptionExists(rowLogId, subscriptionId)) {
+                rowLogConfMgr.removeSubscription(rowLogId, subscriptionId);
+            }
+        }
+    }
+
     private String subscriptionId(String indexName) {
         return "IndexUpdater_" + indexName;
     }
@@ -370,7 +397,7 @@ public class IndexerMaster {
 
                 String queueSubscriptionId = index.getQueueSubscriptionId();
                 if (queueSubscriptionId != null) {
-                    rowLogConfMgr.removeSubscription("mq", index.getQueueSubscriptionId());
+                    removeSubscription(index.getQueueSubscriptionId());
                     // We leave the subscription ID in the index definition FYI
                 }
 
@@ -567,6 +594,18 @@ public class IndexerMaster {
          */
         private Map<String, String> runningJobs = new ConcurrentHashMap<String, String>(10, 0.75f, 2);
 
+        /**
+         * The jobs of which the offline built index is being published, key = index name, value = job ID.
+         * These are marked as complete by the publishing thread.
+         */
+        private Map<String, String> publishingJobs = new ConcurrentHashMap<String, String>(10, 0.75f, 2);
+
+        /**
+         * Publishes the offline built indexes. Merging an index can take hours, so this is not done on the
+         * watcher thread, which would otherwise stop monitoring the other jobs in the meantime.
+         */
+        private ExecutorService publishExecutor;
+
         private boolean stop; // do not rely only on Thread.interrupt since some libraries eat interruptions
 
         private Thread thread;
@@ -578,6 +617,15 @@ public class IndexerMaster {
             stop = true;
             runningJobs.clear();
 
+            // Let the publishing of indexes finish, so that a new indexer master does not publish them again
+            publishExecutor.shutdown();
+            if (interrupt)
+                publishExecutor.shutdownNow();
+            if (!publishingJobs.isEmpty()) {
+                log.info("Waiting for the publishing of offline built indexes to finish: " + publishingJobs.keySet());
+            }
+            publishExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
             if (!thread.isAlive()) {
                 return;
             }
@@ -597,7 +645,9 @@ public class IndexerMaster {
                 thread.join();
             }
             runningJobs.clear();
+            publishingJobs.clear();
             stop = false;
+            publishExecutor = Executors.newSingleThreadExecutor(new CustomThreadFactory("IndexerOfflineIndexPublisher"));
             thread = new Thread(this, "IndexerBatchJobWatcher");
             thread.start();
         }
@@ -614,6 +664,10 @@ public class IndexerMaster {
                             return;
                         }
 
+                        if (publishingJobs.containsKey(jobEntry.getKey())) {
+                            continue;
+                        }
+
                         if (jobClient == null) {
                             // We only create the JobClient the first time we need it, to avoid that the
                             // repository fails to start up when there is no JobTracker running.
@@ -627,8 +681,12 @@ public class IndexerMaster {
                         } else if (job.isComplete()) {
                             String jobState = jobStateToString(job.getJobState());
                             boolean success = job.isSuccessful();
-                            markJobComplete(jobEntry.getKey(), jobEntry.getValue(), success, jobState,
-                                    job.getCounters());
+                            Counters counters = job.getCounters();
+                            if (success && publishOfflineIndex(jobEntry.getKey(), jobEntry.getValue(), jobState,
+                                    counters)) {
+                                continue;
+                            }
+                            markJobComplete(jobEntry.getKey(), jobEntry.getValue(), success, jobState, counters);
                         }
                     }
                 } catch (InterruptedException e) {
@@ -639,6 +697,57 @@ public class IndexerMaster {
             }
         }
 
+        /**
+         * In case of an offline batch build which should be merged into the Solr cores, hands this over to the
+         * publish executor, which marks the job as complete once done.
+         *
+         * @return false if there is nothing to publish, thus if the job still needs to be marked as complete
+         */
+        private boolean publishOfflineIndex(final String indexName, final String jobId, final String jobState,
+                final Counters counters) {
+            final IndexDefinition index;
+            final JsonNode offlineNode;
+            try {
+                index = indexerModel.getIndex(indexName);
+                ActiveBatchBuildInfo activeJobInfo = index.getActiveBatchBuildInfo();
+                if (activeJobInfo == null) {
+                    return false;
+                }
+                offlineNode = OfflineIndexPublisher.getMergeConfiguration(activeJobInfo.getBatchIndexConfiguration());
+            } catch (Throwable t) {
+                log.error("Error publishing offline built index " + indexName, t);
+                markJobComplete(indexName, jobId, false, jobState + ", publishing offline index failed", counters);
+                return true;
+            }
+
+            if (offlineNode == null) {
+                return false;
+            }
+
+            publishingJobs.put(indexName, jobId);
+            publishExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean success = true;
+                    try {
+                        log.info("Publishing offline built index " + indexName + ", job ID = " + jobId);
+                        OfflineIndexPublisher.merge(index, offlineNode);
+                    } catch (Throwable t) {
+                        log.error("Error publishing offline built index " + indexName, t);
+                        success = false;
+                    }
+
+                    try {
+                        markJobComplete(indexName, jobId, success,
+                                success ? jobState : jobState + ", publishing offline index failed", counters);
+                    } finally {
+                        publishingJobs.remove(indexName);
+                    }
+                }
+            });
+            return true;
+        }
+
         public synchronized void assureWatching(String indexName, String jobName) {
             if (stop) {
                 throw new RuntimeException(
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.master;
+
+import java.io.ByteArrayInputStream;
+import java.net.MalformedURLException;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.solr.client.solrj.impl.CommonsHttpSolrServer;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.common.params.CoreAdminParams;
+import org.apache.solr.common.util.NamedList;
+import org.codehaus.jackson.JsonNode;
+import org.lilyproject.indexer.model.api.IndexDefinition;
+import org.lilyproject.util.json.JsonFormat;
+
+/**
+ * Publishes the shard indexes built by an offline batch build into the target Solr cores.
+ *
+ * <p>This is done when the offline section of the batch index configuration contains "publish": "merge".
+ * The existing content of each core is then replaced by the offline index of its shard: the index is merged into
+ * a new core using the MERGEINDEXES core admin action, which is then swapped with the existing core (see
+ * {@link #publish}). Therefore the Solr shard addresses should point to cores (http://host:port/solr/core),
+ * and the outputDir should be on a file system which the Solr servers can access at the same path.</p>
+ *
+ * <p>Without the publish option, the indexes are left in the outputDir, for publishing by other means.</p>
+ */
+public class OfflineIndexPublisher {
+    private static final Log log = LogFactory.getLog(OfflineIndexPublisher.class);
+
+    private OfflineIndexPublisher() {
+    }
+
+    /**
+     * Returns the offline configuration if the indexes need to be merged into the target cores, null otherwise.
+     */
+    static JsonNode getMergeConfiguration(byte[] batchIndexConfiguration) throws Exception {
+        if (batchIndexConfiguration == null) {
+            return null;
+        }
+        JsonNode offlineNode = JsonFormat.deserializeNonStd(new ByteArrayInputStream(batchIndexConfiguration))
+                .get("offline");
+        if (offlineNode == null || !offlineNode.has("publish")) {
+            return null;
+        }
+        return "merge".equals(offlineNode.get("publish").getTextValue()) ? offlineNode : null;
+    }
+
+    static void checkMergeConfiguration(JsonNode offlineNode) {
+        String publish = offlineNode.has("publish") ? offlineNode.get("publish").getTextValue() : "none";
+        if ("merge".equals(publish)) {
+            String scheme = new Path(BatchIndexBuilder.getRequiredString(offlineNode, "outputDir")).toUri()
+                    .getScheme();
+            if (scheme != null && !scheme.equals("file")) {
+                throw new IllegalArgumentException("Publishing an offline index by merging requires an outputDir " +
+                        "on a file system accessible by the Solr servers, got: " + scheme);
+            }
+        } else if (!"none".equals(publish)) {
+            throw new IllegalArgumentException("Invalid publish value in offline batch build configuration: " +
+                    publish + ". Expected one of: none, merge.");
+        }
+    }
+
+    public static void merge(IndexDefinition index, JsonNode offlineNode) throws Exception {
+        Path outputDir = new Path(BatchIndexBuilder.getRequiredString(offlineNode, "outputDir"));
+
+        for (Map.Entry<String, String> shard : index.getSolrShards().entrySet()) {
+            String coreUrl = shard.getValue();
+            while (coreUrl.endsWith("/")) {
+                coreUrl = coreUrl.substring(0, coreUrl.length() - 1);
+            }
+            int slashPos = coreUrl.lastIndexOf('/');
+            String coreName = coreUrl.substring(slashPos + 1);
+            String adminUrl = coreUrl.substring(0, slashPos);
+            String indexDir = new Path(new Path(outputDir, shard.getKey()), "index").toUri().getPath();
+
+            log.info("Publishing offline index of shard " + shard.getKey() + " of index " + index.getName() +
+                    " from " + indexDir + " into core " + coreName + " at " + adminUrl);
+
+            publish(new SolrCoreAdmin(adminUrl), coreName, indexDir, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Replaces the content of a core by an offline index. The index is merged into a new core, next to the live
+     * one and using the same configuration, which is then swapped with the live core. Until the swap, the live
+     * core keeps serving its existing content, and if anything fails before it, the live core is left as is.
+     *
+     * <p>After the swap, the core holding the previous content is unloaded. Its data directory is not removed.
+     * The swap is only remembered across restarts of Solr when its solr.xml is persistent.</p>
+     */
+    static void publish(CoreAdmin admin, String coreName, String indexDir, long timestamp) throws Exception {
+        String newCoreName = coreName + "_offline_" + timestamp;
+        String instanceDir = admin.getInstanceDir(coreName);
+        if (instanceDir == null) {
+            throw new IllegalStateException("Solr core " + coreName + " does not exist.");
+        }
+
+        admin.createCore(newCoreName, instanceDir, "data_offline_" + timestamp);
+        try {
+            admin.mergeIndexes(newCoreName, indexDir);
+            admin.commit(newCoreName);
+            admin.swap(coreName, newCoreName);
+        } catch (Exception e) {
+            // the live core has not been touched, drop the new one
+            try {
+                admin.unloadCore(newCoreName);
+            } catch (Exception e2) {
+                log.error("Error unloading Solr core " + newCoreName + " after failing to publish into it", e2);
+            }
+            throw e;
+        }
+
+        // After the swap, the new core name refers to the previous content. The index has been published at this
+        // point, so failing to unload the old content is not a reason to fail.
+        try {
+            admin.unloadCore(newCoreName);
+        } catch (Exception e) {
+            log.error("Error unloading Solr core " + newCoreName + " holding the previous content of " + coreName, e);
+        }
+    }
+
+    /**
+     * The core admin operations needed to publish an index.
+     */
+    interface CoreAdmin {
+        /**
+         * Returns the instance directory of a core, or null if there is no such core.
+         */
+        String getInstanceDir(String coreName) throws Exception;
+
+        void createCore(String coreName, String instanceDir, String dataDir) throws Exception;
+
+        void mergeIndexes(String coreName, String indexDir) throws Exception;
+
+        void commit(String coreName) throws Exception;
+
+        void swap(String coreName, String otherCoreName) throws Exception;
+
+        void unloadCore(String coreName) throws Exception;
+    }
+
+    private static class SolrCoreAdmin implements CoreAdmin {
+        private final String adminUrl;
+        private final CommonsHttpSolrServer adminServer;
+
+        SolrCoreAdmin(String adminUrl) throws MalformedURLException {
+            this.adminUrl = adminUrl;
+            this.adminServer = new CommonsHttpSolrServer(adminUrl);
+        }
+
+        @Override
+        public String getInstanceDir(String coreName) throws Exception {
+            NamedList<Object> status = CoreAdminRequest.getStatus(coreName, adminServer).getCoreStatus(coreName);
+            return status == null ? null : (String)status.get("instanceDir");
+        }
+
+        @Override
+        public void createCore(String coreName, String instanceDir, String dataDir) throws Exception {
+            CoreAdminRequest.Create create = new CoreAdminRequest.Create();
+            create.setCoreName(coreName);
+            create.setInstanceDir(instanceDir);
+            create.setDataDir(dataDir);
+            create.process(adminServer);
+        }
+
+        @Override
+        public void mergeIndexes(String coreName, String indexDir) throws Exception {
+            CoreAdminRequest.mergeIndexes(coreName, new String[] {indexDir}, adminServer);
+        }
+
+        @Override
+        public void commit(String coreName) throws Exception {
+            new CommonsHttpSolrServer(adminUrl + "/" + coreName).commit();
+        }
+
+        @Override
+        public void swap(String coreName, String otherCoreName) throws Exception {
+            CoreAdminRequest swap = new CoreAdminRequest();
+            swap.setAction(CoreAdminParams.CoreAdminAction.SWAP);
+            swap.setCoreName(coreName);
+            swap.setOtherCoreName(otherCoreName);
+            swap.process(adminServer);
+        }
+
+        @Override
+        public void unloadCore(String coreName) throws Exception {
+            CoreAdminRequest.unloadCore(coreName, adminServer);
+        }
+    }
+}
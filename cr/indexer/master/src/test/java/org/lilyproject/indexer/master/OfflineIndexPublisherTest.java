@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.indexer.master;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class OfflineIndexPublisherTest {
+    @Test
+    public void testPublish() throws Exception {
+        RecordingCoreAdmin admin = new RecordingCoreAdmin();
+        OfflineIndexPublisher.publish(admin, "core1", "/out/shard1/index", 5);
+
+        // the index goes into a new core, which only replaces the live one once it is complete
+        assertEquals(Arrays.asList(
+                "status core1",
+                "create core1_offline_5 /solr/core1 data_offline_5",
+                "merge core1_offline_5 /out/shard1/index",
+                "commit core1_offline_5",
+                "swap core1 core1_offline_5",
+                "unload core1_offline_5"), admin.calls);
+    }
+
+    @Test
+    public void testFailingMerge() throws Exception {
+        RecordingCoreAdmin admin = new RecordingCoreAdmin();
+        admin.failOn = "merge";
+        try {
+            OfflineIndexPublisher.publish(admin, "core1", "/out/shard1/index", 5);
+            fail("expected the merge failure");
+        } catch (IOException e) {
+            assertSame(admin.failure, e);
+        }
+
+        // the live core is not touched, the new core is dropped
+        assertEquals(Arrays.asList(
+                "status core1",
+                "create core1_offline_5 /solr/core1 data_offline_5",
+                "merge core1_offline_5 /out/shard1/index",
+                "unload core1_offline_5"), admin.calls);
+    }
+
+    @Test
+    public void testFailingUnloadAfterSwap() throws Exception {
+        RecordingCoreAdmin admin = new RecordingCoreAdmin();
+        admin.failOn = "unload";
+
+        // the index has been published, so this should not fail
+        OfflineIndexPublisher.publish(admin, "core1", "/out/shard1/index", 5);
+        assertEquals("swap core1 core1_offline_5", admin.calls.get(admin.calls.size() - 2));
+    }
+
+    @Test
+    public void testMissingCore() throws Exception {
+        RecordingCoreAdmin admin = new RecordingCoreAdmin();
+        try {
+            OfflineIndexPublisher.publish(admin, "core2", "/out/shard1/index", 5);
+            fail("expected an exception for a missing core");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(Arrays.asList("status core2"), admin.calls);
+    }
+
+    @Test
+    public void testMergeConfiguration() throws Exception {
+        assertNull(OfflineIndexPublisher.getMergeConfiguration(null));
+        assertNull(OfflineIndexPublisher.getMergeConfiguration("{}".getBytes("UTF-8")));
+        assertNull(OfflineIndexPublisher.getMergeConfiguration(
+                "{offline: {outputDir: \"/out\", publish: \"none\"}}".getBytes("UTF-8")));
+        JsonNode offlineNode = OfflineIndexPublisher.getMergeConfiguration(
+                "{offline: {outputDir: \"/out\", publish: \"merge\"}}".getBytes("UTF-8"));
+        assertEquals("/out", offlineNode.get("outputDir").getTextValue());
+    }
+
+    private static class RecordingCoreAdmin implements OfflineIndexPublisher.CoreAdmin {
+        private List<String> calls = new ArrayList<String>();
+        private String failOn;
+        private IOException failure;
+
+        private void call(String operation, String args) throws IOException {
+            calls.add(operation + " " + args);
+            if (operation.equals(failOn)) {
+                failure = new IOException("Failing " + operation);
+                throw failure;
+            }
+        }
+
+        @Override
+        public String getInstanceDir(String coreName) throws Exception {
+            call("status", coreName);
+            return coreName.equals("core1") ? "/solr/core1" : null;
+        }
+
+        @Override
+        public void createCore(String coreName, String instanceDir, String dataDir) throws Exception {
+            call("create", coreName + " " + instanceDir + " " + dataDir);
+        }
+
+        @Override
+        public void mergeIndexes(String coreName, String indexDir) throws Exception {
+            call("merge", coreName + " " + indexDir);
+        }
+
+        @Override
+        public void commit(String coreName) throws Exception {
+            call("commit", coreName);
+        }
+
+        @Override
+        public void swap(String coreName, String otherCoreName) throws Exception {
+            call("swap", coreName + " " + otherCoreName);
+        }
+
+        @Override
+        public void unloadCore(String coreName) throws Exception {
+            call("unload", coreName);
+        }
+    }
+}
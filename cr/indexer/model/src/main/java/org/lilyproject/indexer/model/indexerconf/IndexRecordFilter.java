@@ -20,24 +20,39 @@ import org.lilyproject.repository.api.Record;
 import org.lilyproject.util.Pair;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Decides what records to include in an index based on inclusion/exclusion rules.
+ *
+ * <p>The conditions of the rules on the record type and on the variant dimensions only depend on a few
+ * properties of the record, which take few distinct values. For each combination of these properties, the rules
+ * which can match are determined once and kept in a lookup table, so that for each record only the remaining
+ * conditions (variant property values, field values) of these rules are evaluated.</p>
  */
 public class IndexRecordFilter {
     private List<Pair<RecordMatcher, IndexCase>> includes = new ArrayList<Pair<RecordMatcher, IndexCase>>();
     private List<RecordMatcher> excludes = new ArrayList<RecordMatcher>();
 
+    /**
+     * The rules which can match, by record type and variant dimensions. This is a cache rather than a complete
+     * table, since the combinations only become known as records pass by.
+     */
+    private final Map<MatchKey, Candidates> candidates = new ConcurrentHashMap<MatchKey, Candidates>();
+    private static final int MAX_CACHED_KEYS = 1000;
+
     public IndexRecordFilter() {
 
     }
 
     public void addExclude(RecordMatcher exclude) {
         excludes.add(exclude);
+        candidates.clear();
     }
 
     public void addInclude(RecordMatcher include, IndexCase indexCase) {
         includes.add(new Pair<RecordMatcher, IndexCase>(include, indexCase));
+        candidates.clear();
     }
 
     public Set<QName> getFieldDependencies() {
@@ -71,23 +86,55 @@ public class IndexRecordFilter {
     }
 
     public IndexCase getIndexCase(Record record) {
+        Map<String, String> varProps = record.getId().getVariantProperties();
+        Candidates candidates = getCandidates(record.getRecordTypeName(), varProps.keySet());
+
         // If an exclude matches, the record is not included in this index.
         // Excludes have higher precedence than includes.
-        for (RecordMatcher exclude : excludes) {
-            if (exclude.matches(record)) {
+        for (RecordMatcher exclude : candidates.excludes) {
+            if (exclude.matchesValues(record, varProps)) {
                 return null;
             }
         }
 
-        for (Pair<RecordMatcher, IndexCase> include : includes) {
-            if (include.getV1().matches(record)) {
-                return include.getV2();
+        for (int i = 0; i < candidates.includes.length; i++) {
+            if (candidates.includes[i].matchesValues(record, varProps)) {
+                return candidates.indexCases[i];
             }
         }
 
         return null;
     }
 
+    private Candidates getCandidates(QName recordTypeName, Set<String> dimensions) {
+        Candidates result = candidates.get(new MatchKey(recordTypeName, dimensions));
+        if (result != null) {
+            return result;
+        }
+
+        List<RecordMatcher> matchingExcludes = new ArrayList<RecordMatcher>();
+        for (RecordMatcher exclude : excludes) {
+            if (exclude.matchesRecordType(recordTypeName) && exclude.matchesVariantDimensions(dimensions)) {
+                matchingExcludes.add(exclude);
+            }
+        }
+
+        List<Pair<RecordMatcher, IndexCase>> matchingIncludes = new ArrayList<Pair<RecordMatcher, IndexCase>>();
+        for (Pair<RecordMatcher, IndexCase> include : includes) {
+            RecordMatcher matcher = include.getV1();
+            if (matcher.matchesRecordType(recordTypeName) && matcher.matchesVariantDimensions(dimensions)) {
+                matchingIncludes.add(include);
+            }
+        }
+
+        result = new Candidates(matchingExcludes, matchingIncludes);
+        if (candidates.size() >= MAX_CACHED_KEYS) {
+            candidates.clear();
+        }
+        candidates.put(new MatchKey(recordTypeName, new HashSet<String>(dimensions)), result);
+        return result;
+    }
+
     public List<IndexCase> getAllIndexCases() {
         List<IndexCase> cases = new ArrayList<IndexCase>(includes.size());
         for (Pair<RecordMatcher, IndexCase> include : includes) {
@@ -95,4 +142,45 @@ public class IndexRecordFilter {
         }
         return cases;
     }
+
+    private static final class MatchKey {
+        private final QName recordTypeName;
+        private final Set<String> dimensions;
+
+        MatchKey(QName recordTypeName, Set<String> dimensions) {
+            this.recordTypeName = recordTypeName;
+            this.dimensions = dimensions;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MatchKey)) {
+                return false;
+            }
+            MatchKey other = (MatchKey)obj;
+            return (recordTypeName == null ? other.recordTypeName == null : recordTypeName.equals(other.recordTypeName))
+                    && dimensions.equals(other.dimensions);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (recordTypeName == null ? 0 : recordTypeName.hashCode()) + dimensions.hashCode();
+        }
+    }
+
+    private static final class Candidates {
+        private final RecordMatcher[] excludes;
+        private final RecordMatcher[] includes;
+        private final IndexCase[] indexCases;
+
+        Candidates(List<RecordMatcher> excludes, List<Pair<RecordMatcher, IndexCase>> includes) {
+            this.excludes = excludes.toArray(new RecordMatcher[excludes.size()]);
+            this.includes = new RecordMatcher[includes.size()];
+            this.indexCases = new IndexCase[includes.size()];
+            for (int i = 0; i < includes.size(); i++) {
+                this.includes[i] = includes.get(i).getV1();
+                this.indexCases[i] = includes.get(i).getV2();
+            }
+        }
+    }
 }
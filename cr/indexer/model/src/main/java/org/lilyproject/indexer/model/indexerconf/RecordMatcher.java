@@ -58,11 +58,16 @@ public class RecordMatcher {
     }
 
     public boolean matches(Record record) {
-        QName recordTypeName = record.getRecordTypeName();
         Map<String, String> varProps = record.getId().getVariantProperties();
+        return matchesRecordType(record.getRecordTypeName()) && matchesVariantDimensions(varProps.keySet())
+                && matchesValues(record, varProps);
+    }
 
-        // About "recordTypeName == null": normally record type name cannot be null, but it can
-        // be in the case of IndexAwareMQFeeder
+    /**
+     * Checks the conditions on the record type. Note that the record type name can be null, normally this
+     * does not happen, but it can in the case of IndexAwareMQFeeder.
+     */
+    boolean matchesRecordType(QName recordTypeName) {
         if (this.recordTypeNamespace != null &&
                 (recordTypeName == null || !this.recordTypeNamespace.lightMatch(recordTypeName.getNamespace()))) {
             return false;
@@ -73,22 +78,38 @@ public class RecordMatcher {
             return false;
         }
 
+        return true;
+    }
+
+    /**
+     * Checks the conditions on the variant dimensions of the record, but not on their values.
+     */
+    boolean matchesVariantDimensions(Set<String> dimensions) {
         if (variantPropsPattern != null) {
-            if (variantPropsPattern.size() != varProps.size() && !variantPropsPattern.containsKey("*")) {
+            if (variantPropsPattern.size() != dimensions.size() && !variantPropsPattern.containsKey("*")) {
                 return false;
             }
 
-            for (Map.Entry<String, String> entry : variantPropsPattern.entrySet()) {
-                if (entry.getKey().equals("*"))
-                    continue;
-
-                String dimVal = varProps.get(entry.getKey());
-                if (dimVal == null) {
+            for (String dimension : variantPropsPattern.keySet()) {
+                if (!dimension.equals("*") && !dimensions.contains(dimension)) {
                     // this record does not have a required variant property
                     return false;
                 }
+            }
+        }
+
+        return true;
+    }
 
-                if (entry.getValue() != null && !entry.getValue().equals(dimVal)) {
+    /**
+     * Checks the conditions on the values of the variant properties and on the field, assuming the record
+     * matches the other conditions.
+     */
+    boolean matchesValues(Record record, Map<String, String> varProps) {
+        if (variantPropsPattern != null) {
+            for (Map.Entry<String, String> entry : variantPropsPattern.entrySet()) {
+                if (entry.getValue() != null && !entry.getKey().equals("*")
+                        && !entry.getValue().equals(varProps.get(entry.getKey()))) {
                     // the variant property does not have the required value
                     return false;
                 }
@@ -107,7 +128,6 @@ public class RecordMatcher {
         }
 
         return true;
-
     }
 
     public Set<QName> getFieldDependencies() {
@@ -34,9 +34,11 @@ import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.zookeeper.KeeperException;
 import org.lilyproject.indexer.derefmap.DerefMap;
 import org.lilyproject.indexer.derefmap.DerefMapHbaseImpl;
+import org.lilyproject.indexer.engine.ContentExtractor;
 import org.lilyproject.indexer.engine.IndexLocker;
 import org.lilyproject.indexer.engine.IndexUpdater;
 import org.lilyproject.indexer.engine.IndexUpdaterMetrics;
@@ -96,6 +98,8 @@ public class IndexerWorker {
 
     private RowLog rowLog;
 
+    private RowLog writeAheadLog;
+
     private final SolrClientConfig solrClientConfig;
 
     private final IndexerWorkerSettings settings;
@@ -122,9 +126,12 @@ public class IndexerWorker {
 
     private HBaseTableFactory tableFactory;
 
+    private ContentExtractor contentExtractor;
+
     private final Log log = LogFactory.getLog(getClass());
 
-    public IndexerWorker(IndexerModel indexerModel, Repository repository, RowLog rowLog, ZooKeeperItf zk,
+    public IndexerWorker(IndexerModel indexerModel, Repository repository, RowLog rowLog, RowLog writeAheadLog,
+            ZooKeeperItf zk,
             Configuration hbaseConf, RowLogConfigurationManager rowLogConfMgr, SolrClientConfig solrClientConfig,
             String hostName, IndexerWorkerSettings settings, IndexerRegistry indexerRegistry,
             HBaseTableFactory tableFactory)
@@ -132,6 +139,7 @@ public class IndexerWorker {
         this.indexerModel = indexerModel;
         this.repository = repository;
         this.rowLog = rowLog;
+        this.writeAheadLog = writeAheadLog;
         this.hbaseConf = hbaseConf;
         this.zk = zk;
         this.rowLogConfMgr = rowLogConfMgr;
@@ -143,7 +151,12 @@ public class IndexerWorker {
     }
 
     @PostConstruct
-    public void init() {
+    public void init() throws IOException {
+        HTableInterface extractionCacheTable = settings.getEnablePersistentExtractionCache() ?
+                ContentExtractor.getPersistentCacheTable(tableFactory) : null;
+        contentExtractor = new ContentExtractor(settings.getExtractionThreads(), settings.getExtractionTimeout(),
+                settings.getExtractionCacheSize(), extractionCacheTable);
+
         connectionManager = new MultiThreadedHttpConnectionManager();
         connectionManager.getParams().setDefaultMaxConnectionsPerHost(settings.getSolrMaxConnectionsPerHost());
         connectionManager.getParams().setMaxTotalConnections(settings.getSolrMaxTotalConnections());
@@ -184,6 +197,7 @@ public class IndexerWorker {
         }
 
         connectionManager.shutdown();
+        contentExtractor.stop();
     }
 
     private void addIndexUpdater(IndexDefinition index) {
@@ -214,18 +228,24 @@ public class IndexerWorker {
 
             // create and register the indexer
             Indexer indexer = new Indexer(index.getName(), indexerConf, repository, solrShardMgr, indexLocker,
-                    indexerMetrics, derefMap);
+                    indexerMetrics, derefMap, contentExtractor);
             indexerRegistry.register(indexer);
 
+            // The index subscription is either on the MQ, or, when the indexers consume the WAL directly, on the WAL
+            RowLog subscriptionRowLog = rowLog;
+            if (rowLogConfMgr.subscriptionExists(writeAheadLog.getId(), index.getQueueSubscriptionId())) {
+                subscriptionRowLog = writeAheadLog;
+            }
+
             IndexUpdaterMetrics updaterMetrics = new IndexUpdaterMetrics(index.getName());
-            IndexUpdater indexUpdater = new IndexUpdater(indexer, repository, indexLocker, rowLog,
+            IndexUpdater indexUpdater = new IndexUpdater(indexer, repository, indexLocker, subscriptionRowLog,
                     updaterMetrics, derefMap, index.getQueueSubscriptionId());
 
             List<RemoteListenerHandler> listenerHandlers = new ArrayList<RemoteListenerHandler>();
 
             for (int i = 0; i < settings.getListenersPerIndex(); i++) {
-                RemoteListenerHandler handler = new RemoteListenerHandler(rowLog, index.getQueueSubscriptionId(),
-                        indexUpdater, rowLogConfMgr, hostName);
+                RemoteListenerHandler handler = new RemoteListenerHandler(subscriptionRowLog,
+                        index.getQueueSubscriptionId(), indexUpdater, rowLogConfMgr, hostName);
                 listenerHandlers.add(handler);
             }
 
@@ -15,11 +15,17 @@
  */
 package org.lilyproject.indexer.worker;
 
+import org.lilyproject.indexer.engine.ContentExtractor;
+
 public class IndexerWorkerSettings {
     private int listenersPerIndex = 10;
     private boolean enableLocking = false;
     private int solrMaxTotalConnections = 200;
     private int solrMaxConnectionsPerHost = 50;
+    private int extractionThreads = ContentExtractor.DEFAULT_THREADS;
+    private long extractionTimeout = ContentExtractor.DEFAULT_TIMEOUT;
+    private long extractionCacheSize = ContentExtractor.DEFAULT_CACHE_SIZE;
+    private boolean enablePersistentExtractionCache = false;
 
     public int getListenersPerIndex() {
         return listenersPerIndex;
@@ -52,4 +58,36 @@ public class IndexerWorkerSettings {
     public void setSolrMaxConnectionsPerHost(int solrMaxConnectionsPerHost) {
         this.solrMaxConnectionsPerHost = solrMaxConnectionsPerHost;
     }
+
+    public int getExtractionThreads() {
+        return extractionThreads;
+    }
+
+    public void setExtractionThreads(int extractionThreads) {
+        this.extractionThreads = extractionThreads;
+    }
+
+    public long getExtractionTimeout() {
+        return extractionTimeout;
+    }
+
+    public void setExtractionTimeout(long extractionTimeout) {
+        this.extractionTimeout = extractionTimeout;
+    }
+
+    public long getExtractionCacheSize() {
+        return extractionCacheSize;
+    }
+
+    public void setExtractionCacheSize(long extractionCacheSize) {
+        this.extractionCacheSize = extractionCacheSize;
+    }
+
+    public boolean getEnablePersistentExtractionCache() {
+        return enablePersistentExtractionCache;
+    }
+
+    public void setEnablePersistentExtractionCache(boolean enablePersistentExtractionCache) {
+        this.enablePersistentExtractionCache = enablePersistentExtractionCache;
+    }
 }
@@ -103,7 +103,8 @@ public class LinkIndexUpdater implements RowLogMessageListener {
 
                 VTaggedRecord vtRecord;
                 try {
-                    vtRecord = new VTaggedRecord(recordId, eventHelper, repository);
+                    // The versions of the modified vtags are read together with the record
+                    vtRecord = new VTaggedRecord(recordId, eventHelper.getModifiedVTags(), eventHelper, repository);
                 } catch (RecordNotFoundException e) {
                     // record not found: delete all links for all vtags
                     linkIndex.deleteLinks(recordId);
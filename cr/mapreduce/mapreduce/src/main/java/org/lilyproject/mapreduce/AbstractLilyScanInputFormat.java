@@ -17,7 +17,9 @@ package org.lilyproject.mapreduce;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -25,6 +27,12 @@ import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.HConnectionManager;
 import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.hadoop.hbase.mapreduce.TableSplit;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Pair;
@@ -33,8 +41,10 @@ import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.codehaus.jackson.JsonNode;
 import org.lilyproject.client.LilyClient;
+import org.lilyproject.repository.api.QName;
 import org.lilyproject.repository.api.RecordScan;
 import org.lilyproject.repository.api.Repository;
+import org.lilyproject.repository.api.ReturnFields;
 import org.lilyproject.tools.import_.json.RecordScanReader;
 import org.lilyproject.util.exception.ExceptionUtil;
 import org.lilyproject.util.hbase.LilyHBaseSchema;
@@ -46,11 +56,47 @@ import org.lilyproject.util.zookeeper.ZooKeeperItf;
 
 /**
  * A MapReduce InputFormat for Lily based on Lily scanners.
+ *
+ * <p>By default, one split is created per HBase region. Using {@link #SPLITS_PER_REGION}, regions can be divided
+ * in multiple splits, so that more map tasks can work in parallel. For UUID record ids, the region is divided
+ * by interpolation of its key range (UUIDs are evenly distributed). For user-specified record ids, the region
+ * is divided based on a sample of its row keys, unless {@link #SAMPLE_USER_IDS} is set to false in which case
+ * interpolation is used as well. Note that sampling requires a (key-only) scan over the region at the time the
+ * splits are computed.</p>
  */
 public abstract class AbstractLilyScanInputFormat<KEYIN, VALUEIN> extends InputFormat<KEYIN, VALUEIN> implements Configurable {
     
     public static final String SCAN = "lily.mapreduce.scan";
 
+    /** Number of splits to create per region, default 1. */
+    public static final String SPLITS_PER_REGION = "lily.mapreduce.splits.perregion";
+
+    /** Whether to sample the row keys to divide regions containing user-specified record ids, default true. */
+    public static final String SAMPLE_USER_IDS = "lily.mapreduce.splits.sampleuserids";
+
+    /** Maximum number of row keys to retain per region when sampling, default 1000. */
+    public static final String SAMPLE_SIZE = "lily.mapreduce.splits.samplesize";
+
+    /** Overrides the caching setting of the scan. */
+    public static final String SCAN_CACHING = "lily.mapreduce.scan.caching";
+
+    /** Overrides the cache blocks setting of the scan. */
+    public static final String SCAN_CACHE_BLOCKS = "lily.mapreduce.scan.cacheblocks";
+
+    /**
+     * Overrides the return fields of the scan: either ALL, NONE, or a comma-separated list of
+     * field names in the {namespace}name syntax.
+     */
+    public static final String SCAN_RETURN_FIELDS = "lily.mapreduce.scan.returnfields";
+
+    /** Row keys of user-specified record ids start with this byte, UUID record ids with the next one. */
+    private static final byte[] UUID_ID_SPACE_START = new byte[] {1};
+    /**
+     * Start keys of the parts of the key space in which the row keys are uniformly distributed: the UUID record
+     * ids, followed by the SALTED record ids. The last one is the end of the last part.
+     */
+    private static final byte[][] UNIFORM_ID_SPACES = new byte[][] {UUID_ID_SPACE_START, {2}, {3}};
+
     final Log log = LogFactory.getLog(AbstractLilyScanInputFormat.class);
     
     private Configuration conf;
@@ -140,8 +186,9 @@ public abstract class AbstractLilyScanInputFormat<KEYIN, VALUEIN> extends InputF
                 keys.getFirst().length == 0) {
             throw new IOException("Expecting at least one region.");
         }
+        int splitsPerRegion = conf != null ? conf.getInt(SPLITS_PER_REGION, 1) : 1;
         int count = 0;
-        List<InputSplit> splits = new ArrayList<InputSplit>(keys.getFirst().length);
+        List<InputSplit> splits = new ArrayList<InputSplit>(keys.getFirst().length * splitsPerRegion);
         for (int i = 0; i < keys.getFirst().length; i++) {
             if ( !includeRegionInSplit(keys.getFirst()[i], keys.getSecond()[i])) {
                 continue;
@@ -160,16 +207,127 @@ public abstract class AbstractLilyScanInputFormat<KEYIN, VALUEIN> extends InputF
                         Bytes.compareTo(keys.getSecond()[i], stopRow) <= 0) &&
                         keys.getSecond()[i].length > 0 ?
                         keys.getSecond()[i] : stopRow;
-                InputSplit split = new TableSplit(table.getTableName(),
-                        splitStart, splitStop, regionLocation);
-                splits.add(split);
-                if (log.isDebugEnabled())
-                    log.debug("getSplits: split -> " + (count++) + " -> " + split);
+                List<byte[]> boundaries = new ArrayList<byte[]>();
+                boundaries.add(splitStart);
+                if (splitsPerRegion > 1) {
+                    boundaries.addAll(getSubRegionSplitKeys(table, splitStart, splitStop, splitsPerRegion));
+                }
+                boundaries.add(splitStop);
+
+                for (int j = 0; j < boundaries.size() - 1; j++) {
+                    InputSplit split = new TableSplit(table.getTableName(),
+                            boundaries.get(j), boundaries.get(j + 1), regionLocation);
+                    splits.add(split);
+                    if (log.isDebugEnabled())
+                        log.debug("getSplits: split -> " + (count++) + " -> " + split);
+                }
             }
         }
         return splits;
     }
 
+    /**
+     * Determines the keys at which the range [startRow, stopRow[ (which lies within one region) should be
+     * divided. The parts of the range containing user-specified, UUID and SALTED record ids are handled
+     * separately, each being divided in the requested number of parts.
+     */
+    protected List<byte[]> getSubRegionSplitKeys(HTable table, byte[] startRow, byte[] stopRow, int numSplits)
+            throws IOException {
+        List<byte[]> result = new ArrayList<byte[]>();
+
+        // Part of the range containing user record ids
+        if (startRow.length == 0 || Bytes.compareTo(startRow, UUID_ID_SPACE_START) < 0) {
+            byte[] userStop = stopRow.length == 0 || Bytes.compareTo(stopRow, UUID_ID_SPACE_START) > 0 ?
+                    UUID_ID_SPACE_START : stopRow;
+            if (conf.getBoolean(SAMPLE_USER_IDS, true)) {
+                result.addAll(sampleSplitKeys(table, startRow, userStop, numSplits));
+            } else {
+                result.addAll(KeyRangeUtil.interpolate(startRow, userStop, numSplits));
+            }
+            if (userStop != stopRow) {
+                result.add(userStop);
+            }
+        }
+
+        // Parts of the range containing UUID and SALTED record ids
+        for (int i = 0; i < UNIFORM_ID_SPACES.length - 1; i++) {
+            byte[] spaceStart = UNIFORM_ID_SPACES[i];
+            byte[] spaceEnd = UNIFORM_ID_SPACES[i + 1];
+            if (stopRow.length != 0 && Bytes.compareTo(stopRow, spaceStart) <= 0) {
+                break;
+            }
+            byte[] partStart = Bytes.compareTo(startRow, spaceStart) > 0 ? startRow : spaceStart;
+            byte[] partStop = stopRow.length == 0 || Bytes.compareTo(stopRow, spaceEnd) > 0 ? spaceEnd : stopRow;
+            if (Bytes.compareTo(partStart, partStop) < 0) {
+                if (i > 0 && Bytes.compareTo(startRow, spaceStart) < 0) {
+                    // the range continues from the previous part (the user part adds its own boundary)
+                    result.add(spaceStart);
+                }
+                result.addAll(KeyRangeUtil.interpolate(partStart, partStop, numSplits));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Divides [startRow, stopRow[ based on a random sample of the row keys in that range.
+     */
+    private List<byte[]> sampleSplitKeys(HTable table, byte[] startRow, byte[] stopRow, int numSplits)
+            throws IOException {
+        int sampleSize = Math.max(numSplits, conf.getInt(SAMPLE_SIZE, 1000));
+        List<byte[]> sample = new ArrayList<byte[]>(sampleSize);
+        Random random = new Random();
+
+        Scan scan = new Scan(startRow, stopRow);
+        scan.setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+        scan.setCaching(1000);
+        scan.setCacheBlocks(false);
+
+        // Reservoir sampling
+        ResultScanner scanner = table.getScanner(scan);
+        try {
+            long rowCount = 0;
+            Result result;
+            while ((result = scanner.next()) != null) {
+                if (rowCount < sampleSize) {
+                    sample.add(result.getRow());
+                } else {
+                    long pos = (long) (random.nextDouble() * (rowCount + 1));
+                    if (pos < sampleSize) {
+                        sample.set((int) pos, result.getRow());
+                    }
+                }
+                rowCount++;
+            }
+        } finally {
+            Closer.close(scanner);
+        }
+
+        Collections.sort(sample, Bytes.BYTES_COMPARATOR);
+
+        List<byte[]> splitKeys = new ArrayList<byte[]>();
+        byte[] previous = startRow;
+        for (int i = 1; i < numSplits; i++) {
+            int pos = (int) ((long) i * sample.size() / numSplits);
+            if (pos >= sample.size()) {
+                break;
+            }
+            byte[] key = sample.get(pos);
+            if (Bytes.compareTo(key, previous) > 0) {
+                splitKeys.add(key);
+                previous = key;
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Sampled " + sample.size() + " row keys to divide region in " + (splitKeys.size() + 1) +
+                    " splits.");
+        }
+
+        return splitKeys;
+    }
+
     protected boolean includeRegionInSplit(final byte[] startKey, final byte [] endKey) {
         return true;
     }
@@ -190,6 +348,38 @@ public abstract class AbstractLilyScanInputFormat<KEYIN, VALUEIN> extends InputF
         } else {
             scan = new RecordScan();
         }
+
+        if (conf.get(SCAN_CACHING) != null) {
+            scan.setCaching(conf.getInt(SCAN_CACHING, scan.getCaching()));
+        }
+
+        if (conf.get(SCAN_CACHE_BLOCKS) != null) {
+            scan.setCacheBlocks(conf.getBoolean(SCAN_CACHE_BLOCKS, scan.getCacheBlocks()));
+        }
+
+        String returnFields = conf.get(SCAN_RETURN_FIELDS);
+        if (returnFields != null) {
+            scan.setReturnFields(parseReturnFields(returnFields));
+        }
+
         return scan;
     }
+
+    static ReturnFields parseReturnFields(String returnFields) {
+        returnFields = returnFields.trim();
+        if (returnFields.equals("ALL")) {
+            return ReturnFields.ALL;
+        } else if (returnFields.equals("NONE")) {
+            return ReturnFields.NONE;
+        }
+
+        List<QName> fields = new ArrayList<QName>();
+        for (String field : returnFields.split(",")) {
+            field = field.trim();
+            if (field.length() > 0) {
+                fields.add(QName.fromString(field));
+            }
+        }
+        return new ReturnFields(fields);
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.mapreduce;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Utility methods to reason about row key ranges as if the keys were (unsigned, big-endian) numbers.
+ *
+ * <p>The keys of a range are right-padded with zero bytes to a common length. An empty start key stands
+ * for the lowest possible key, an empty stop key for the key just beyond the highest possible key.</p>
+ *
+ * <p>This is a good model for keys which are uniformly distributed, such as UUID record ids.</p>
+ */
+public class KeyRangeUtil {
+    private KeyRangeUtil() {
+    }
+
+    /**
+     * Splits the key range [startKey, stopKey[ into (at most) the given number of sub-ranges of about
+     * the same size, by interpolation.
+     *
+     * @return the keys at which the range should be split, excluding startKey and stopKey. Can be less than
+     *         numRanges - 1 keys in case the range is too small to be split that much.
+     */
+    public static List<byte[]> interpolate(byte[] startKey, byte[] stopKey, int numRanges) {
+        List<byte[]> result = new ArrayList<byte[]>();
+        if (numRanges < 2) {
+            return result;
+        }
+
+        int length = keyLength(startKey, stopKey);
+        BigInteger start = toNumber(startKey, length);
+        BigInteger stop = toStopNumber(stopKey, length);
+        BigInteger span = stop.subtract(start);
+        if (span.signum() <= 0) {
+            return result;
+        }
+
+        BigInteger parts = BigInteger.valueOf(numRanges);
+        byte[] previous = startKey;
+        for (int i = 1; i < numRanges; i++) {
+            BigInteger point = start.add(span.multiply(BigInteger.valueOf(i)).divide(parts));
+            byte[] key = toKey(point, length);
+            if (Bytes.compareTo(key, previous) > 0 && (stopKey.length == 0 || Bytes.compareTo(key, stopKey) < 0)) {
+                result.add(key);
+                previous = key;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Estimates the relative position of the given key within [startKey, stopKey[, as a number between 0 and 1.
+     */
+    public static float progress(byte[] startKey, byte[] stopKey, byte[] key) {
+        if (key == null) {
+            return 0f;
+        }
+
+        int length = keyLength(startKey, stopKey);
+        BigInteger start = toNumber(startKey, length);
+        BigInteger stop = toStopNumber(stopKey, length);
+        BigInteger span = stop.subtract(start);
+        if (span.signum() <= 0) {
+            return 0f;
+        }
+
+        BigInteger done = toNumber(key, length).subtract(start);
+        float progress = (float) (done.doubleValue() / span.doubleValue());
+        return Math.max(0f, Math.min(1f, progress));
+    }
+
+    private static int keyLength(byte[] startKey, byte[] stopKey) {
+        // At least a few bytes so that there is some room to interpolate between keys of length 1 (e.g.
+        // the key consisting only of the record id type byte).
+        return Math.max(4, Math.max(startKey.length, stopKey.length));
+    }
+
+    /**
+     * Converts a key to a number, padding or truncating it to the given length.
+     */
+    private static BigInteger toNumber(byte[] key, int length) {
+        byte[] padded = new byte[length];
+        System.arraycopy(key, 0, padded, 0, Math.min(key.length, length));
+        return new BigInteger(1, padded);
+    }
+
+    /**
+     * Same as {@link #toNumber}, but treats the empty key as the end of the key space.
+     */
+    private static BigInteger toStopNumber(byte[] key, int length) {
+        if (key.length == 0) {
+            return BigInteger.ONE.shiftLeft(length * 8);
+        }
+        return toNumber(key, length);
+    }
+
+    private static byte[] toKey(BigInteger number, int length) {
+        byte[] bytes = number.toByteArray();
+        byte[] key = new byte[length];
+        // toByteArray can have an extra leading sign byte, or be shorter than length
+        int copy = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copy, key, length - copy, copy);
+        return key;
+    }
+}
@@ -59,6 +59,42 @@ public class LilyMapReduceUtil {
         }
     }
 
+    /**
+     * Set the necessary parameters inside the job configuration for using Lily as output, through
+     * {@link LilyRecordOutputFormat}.
+     */
+    public static void initOutputJob(String zooKeeperConnectString, Job job) {
+        initOutputJob(LilyRecordOutputFormat.Mode.CREATE, zooKeeperConnectString, job);
+    }
+
+    /**
+     * Set the necessary parameters inside the job configuration for using Lily as output, through
+     * {@link LilyRecordOutputFormat}.
+     *
+     * @param mode the kind of write operation to perform, use {@link LilyRecordOutputFormat.Mode#CREATE_OR_UPDATE}
+     *             for idempotent writes, which is safe in case of task retries.
+     */
+    public static void initOutputJob(LilyRecordOutputFormat.Mode mode, String zooKeeperConnectString, Job job) {
+        job.setOutputFormatClass(LilyRecordOutputFormat.class);
+        job.getConfiguration().set(ZK_CONNECT_STRING, zooKeeperConnectString);
+
+        String modeString;
+        switch (mode) {
+            case CREATE:
+                modeString = "create";
+                break;
+            case UPDATE:
+                modeString = "update";
+                break;
+            case CREATE_OR_UPDATE:
+                modeString = "createOrUpdate";
+                break;
+            default:
+                throw new RuntimeException("Unexpected mode: " + mode);
+        }
+        job.getConfiguration().set(LilyRecordOutputFormat.MODE, modeString);
+    }
+
     /**
      * Creates a LilyClient based on the information found in the Configuration object.
      */
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.lilyproject.client.LilyClient;
+
+/**
+ * A MapReduce OutputFormat which writes the {@link RecordWritable}s to Lily. The keys are ignored.
+ *
+ * <p>Records are written using the asynchronous repository API, with at most
+ * {@link #MAX_IN_FLIGHT} operations outstanding at any time. What operation is performed
+ * is determined by {@link #MODE}. Since map and reduce tasks can be retried, it is recommended
+ * to use the createOrUpdate mode, in combination with records having a fixed record ID.</p>
+ *
+ * <p>The number of written and failed records, and the total time spent waiting on the repository, are
+ * reported as counters of the {@link LilyRecordWriter.Counters} group, when the task context allows it.</p>
+ *
+ * <p>Use {@link LilyMapReduceUtil#initOutputJob} to configure a job to use this output format.</p>
+ */
+public class LilyRecordOutputFormat<KEY> extends OutputFormat<KEY, RecordWritable> {
+    /** One of create, update or createOrUpdate, default create. */
+    public static final String MODE = "lily.mapreduce.output.mode";
+
+    /** Maximum number of concurrent write operations per task, default 100. */
+    public static final String MAX_IN_FLIGHT = "lily.mapreduce.output.maxinflight";
+
+    /** Whether the task should fail when a record could not be written, default true. */
+    public static final String FAIL_ON_ERROR = "lily.mapreduce.output.failonerror";
+
+    public enum Mode {
+        CREATE, UPDATE, CREATE_OR_UPDATE
+    }
+
+    @Override
+    public RecordWriter<KEY, RecordWritable> getRecordWriter(TaskAttemptContext context)
+            throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        LilyClient lilyClient = LilyMapReduceUtil.getLilyClient(conf);
+
+        return new LilyRecordWriter<KEY>(lilyClient, context, getMode(conf), conf.getInt(MAX_IN_FLIGHT, 100),
+                conf.getBoolean(FAIL_ON_ERROR, true));
+    }
+
+    @Override
+    public void checkOutputSpecs(JobContext context) throws IOException, InterruptedException {
+        if (context.getConfiguration().get(LilyMapReduceUtil.ZK_CONNECT_STRING) == null) {
+            throw new IOException("ZooKeeper connection string not specified in job configuration, property "
+                    + LilyMapReduceUtil.ZK_CONNECT_STRING);
+        }
+        getMode(context.getConfiguration());
+    }
+
+    @Override
+    public OutputCommitter getOutputCommitter(TaskAttemptContext context) throws IOException, InterruptedException {
+        // Records are written straight to the repository, there is nothing to commit
+        return new OutputCommitter() {
+            @Override
+            public void setupJob(JobContext jobContext) throws IOException {
+            }
+
+            @Override
+            public void cleanupJob(JobContext jobContext) throws IOException {
+            }
+
+            @Override
+            public void setupTask(TaskAttemptContext taskContext) throws IOException {
+            }
+
+            @Override
+            public boolean needsTaskCommit(TaskAttemptContext taskContext) throws IOException {
+                return false;
+            }
+
+            @Override
+            public void commitTask(TaskAttemptContext taskContext) throws IOException {
+            }
+
+            @Override
+            public void abortTask(TaskAttemptContext taskContext) throws IOException {
+            }
+        };
+    }
+
+    private static Mode getMode(Configuration conf) throws IOException {
+        String mode = conf.get(MODE, "create");
+        if (mode.equals("create")) {
+            return Mode.CREATE;
+        } else if (mode.equals("update")) {
+            return Mode.UPDATE;
+        } else if (mode.equals("createOrUpdate")) {
+            return Mode.CREATE_OR_UPDATE;
+        } else {
+            throw new IOException("Invalid value for " + MODE + ": " + mode
+                    + ". Expected one of: create, update, createOrUpdate.");
+        }
+    }
+}
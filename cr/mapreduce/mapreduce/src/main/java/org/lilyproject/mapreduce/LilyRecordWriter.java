@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.mapreduce;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.lilyproject.client.LilyClient;
+import org.lilyproject.repository.api.AsyncRepository;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.util.io.Closer;
+
+/**
+ * RecordWriter for {@link LilyRecordOutputFormat}.
+ *
+ * <p>Keeps a window of outstanding asynchronous write operations. When the window is full, write() waits for the
+ * oldest operation to complete.</p>
+ */
+public class LilyRecordWriter<KEY> extends RecordWriter<KEY, RecordWritable> {
+    private final LilyClient lilyClient;
+    private final AsyncRepository repository;
+    private final TaskAttemptContext context;
+    private final LilyRecordOutputFormat.Mode mode;
+    private final int maxInFlight;
+    private final boolean failOnError;
+    private final LinkedList<Future<Record>> inFlight = new LinkedList<Future<Record>>();
+
+    private long written;
+    private long failed;
+    private long waitTime;
+    private final long startedAt = System.currentTimeMillis();
+    private Throwable firstError;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    public enum Counters {
+        RECORDS_WRITTEN, RECORDS_FAILED, WRITE_WAIT_MILLIS
+    }
+
+    public LilyRecordWriter(LilyClient lilyClient, TaskAttemptContext context, LilyRecordOutputFormat.Mode mode,
+            int maxInFlight, boolean failOnError) {
+        this.lilyClient = lilyClient;
+        this.repository = lilyClient.getAsyncRepository();
+        this.context = context;
+        this.mode = mode;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.failOnError = failOnError;
+    }
+
+    @Override
+    public void write(KEY key, RecordWritable value) throws IOException, InterruptedException {
+        while (inFlight.size() >= maxInFlight) {
+            waitForOldest();
+        }
+
+        Record record = value.getRecord();
+        switch (mode) {
+            case CREATE:
+                inFlight.add(repository.createAsync(record));
+                break;
+            case UPDATE:
+                inFlight.add(repository.updateAsync(record));
+                break;
+            case CREATE_OR_UPDATE:
+                inFlight.add(repository.createOrUpdateAsync(record, true));
+                break;
+            default:
+                throw new RuntimeException("Unexpected mode: " + mode);
+        }
+    }
+
+    private void waitForOldest() throws IOException, InterruptedException {
+        Future<Record> future = inFlight.getFirst();
+        long before = System.currentTimeMillis();
+        try {
+            // Wait in steps, so that we can report progress to avoid the task timing out
+            while (true) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    context.progress();
+                }
+            }
+            written++;
+            increment(Counters.RECORDS_WRITTEN, 1);
+        } catch (ExecutionException e) {
+            failed++;
+            increment(Counters.RECORDS_FAILED, 1);
+            if (firstError == null) {
+                firstError = e.getCause();
+            }
+            log.error("Error writing record to Lily", e.getCause());
+        } finally {
+            long duration = System.currentTimeMillis() - before;
+            waitTime += duration;
+            increment(Counters.WRITE_WAIT_MILLIS, duration);
+            inFlight.removeFirst();
+        }
+
+        if (failOnError && firstError != null) {
+            throw new IOException("Error writing record to Lily", firstError);
+        }
+    }
+
+    private void increment(Counters counter, long amount) {
+        // Before Hadoop 0.21, the context passed to OutputFormats does not give access to counters
+        if (context instanceof TaskInputOutputContext) {
+            ((TaskInputOutputContext)context).getCounter(counter).increment(amount);
+        }
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+        try {
+            while (!inFlight.isEmpty()) {
+                waitForOldest();
+            }
+        } finally {
+            long duration = Math.max(1, System.currentTimeMillis() - startedAt);
+            String status = "Lily output: " + written + " records written, " + failed + " failed, "
+                    + (written * 1000 / duration) + " records/s, " + waitTime + " ms waiting on the repository";
+            log.info(status);
+            context.setStatus(status);
+            Closer.close(lilyClient);
+        }
+    }
+}
@@ -17,6 +17,7 @@ package org.lilyproject.mapreduce;
 
 import java.io.IOException;
 
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -32,7 +33,10 @@ import org.lilyproject.util.io.Closer;
 public class LilyScanIdRecordReader extends RecordReader<RecordIdWritable, IdRecordWritable> {
     private LilyClient lilyClient;
     private IdRecordScanner scanner;
-    private IdRecord currentRecord;
+    private volatile IdRecord currentRecord;
+    private volatile boolean done;
+    private byte[] splitStart = new byte[0];
+    private byte[] splitEnd = new byte[0];
     
     private RecordIdWritable recordId = new RecordIdWritable();
     private IdRecordWritable record = new IdRecordWritable();
@@ -45,6 +49,10 @@ public class LilyScanIdRecordReader extends RecordReader<RecordIdWritable, IdRec
     @Override
     public void initialize(InputSplit inputSplit, TaskAttemptContext taskAttemptContext)
             throws IOException, InterruptedException {
+        if (inputSplit instanceof TableSplit) {
+            splitStart = ((TableSplit)inputSplit).getStartRow();
+            splitEnd = ((TableSplit)inputSplit).getEndRow();
+        }
     }
 
     @Override
@@ -54,6 +62,7 @@ public class LilyScanIdRecordReader extends RecordReader<RecordIdWritable, IdRec
         } catch (RepositoryException e) {
             throw new IOException("Error scanning to next record.", e);
         }
+        done = currentRecord == null;
         return currentRecord != null;
     }
 
@@ -71,7 +80,12 @@ public class LilyScanIdRecordReader extends RecordReader<RecordIdWritable, IdRec
 
     @Override
     public float getProgress() throws IOException, InterruptedException {
-        return 0;
+        if (done) {
+            return 1;
+        }
+        // Estimate based on the position of the current row key within the split
+        IdRecord current = currentRecord;
+        return current == null ? 0 : KeyRangeUtil.progress(splitStart, splitEnd, current.getId().toBytes());
     }
 
     @Override
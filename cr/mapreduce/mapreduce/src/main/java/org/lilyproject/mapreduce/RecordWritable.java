@@ -28,6 +28,10 @@ public class RecordWritable implements Writable {
     protected RecordWritable() {
     }
 
+    public RecordWritable(Record record) {
+        this.record = record;
+    }
+
     @Override
     public void write(DataOutput dataOutput) throws IOException {
         throw new UnsupportedOperationException("Not implemented");
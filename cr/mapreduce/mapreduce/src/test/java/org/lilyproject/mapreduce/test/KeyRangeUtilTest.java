@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.mapreduce.test;
+
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.lilyproject.mapreduce.KeyRangeUtil;
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyRangeUtilTest {
+    @Test
+    public void testInterpolateUuidSpace() throws Exception {
+        byte[] start = new byte[] {1};
+        byte[] stop = new byte[] {2};
+
+        List<byte[]> splitKeys = KeyRangeUtil.interpolate(start, stop, 4);
+        assertEquals(3, splitKeys.size());
+
+        byte[] previous = start;
+        for (byte[] key : splitKeys) {
+            assertTrue(Bytes.compareTo(key, previous) > 0);
+            assertTrue(Bytes.compareTo(key, stop) < 0);
+            previous = key;
+        }
+
+        // Evenly spread: the middle one should be at 0x0180...
+        assertEquals(1, splitKeys.get(1)[0]);
+        assertEquals((byte) 0x80, splitKeys.get(1)[1]);
+    }
+
+    @Test
+    public void testInterpolateOpenRange() throws Exception {
+        List<byte[]> splitKeys = KeyRangeUtil.interpolate(new byte[0], new byte[0], 2);
+        assertEquals(1, splitKeys.size());
+        assertEquals((byte) 0x80, splitKeys.get(0)[0]);
+    }
+
+    @Test
+    public void testInterpolateTooSmallRange() throws Exception {
+        byte[] start = new byte[] {1, 2, 3, 4};
+        byte[] stop = new byte[] {1, 2, 3, 5};
+
+        // There is no room for 3 split keys of 4 bytes between these keys
+        List<byte[]> splitKeys = KeyRangeUtil.interpolate(start, stop, 4);
+        assertTrue(splitKeys.size() < 3);
+
+        assertEquals(0, KeyRangeUtil.interpolate(stop, start, 4).size());
+    }
+
+    @Test
+    public void testProgress() throws Exception {
+        IdGenerator idGenerator = new IdGeneratorImpl();
+
+        byte[] start = new byte[] {1};
+        byte[] stop = new byte[] {2};
+
+        assertEquals(0f, KeyRangeUtil.progress(start, stop, start), 0.001f);
+        assertEquals(0.5f, KeyRangeUtil.progress(start, stop, new byte[] {1, (byte) 0x80}), 0.001f);
+        assertEquals(1f, KeyRangeUtil.progress(start, stop, stop), 0.001f);
+
+        float progress = KeyRangeUtil.progress(start, stop, idGenerator.newRecordId().toBytes());
+        assertTrue(progress >= 0f && progress <= 1f);
+
+        assertEquals(0f, KeyRangeUtil.progress(start, stop, null), 0.001f);
+    }
+}
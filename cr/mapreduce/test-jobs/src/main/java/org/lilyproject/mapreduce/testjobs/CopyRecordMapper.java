@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.mapreduce.testjobs;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.NullWritable;
+import org.lilyproject.mapreduce.RecordIdWritable;
+import org.lilyproject.mapreduce.RecordMapper;
+import org.lilyproject.mapreduce.RecordWritable;
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordException;
+import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+
+/**
+ * Writes a copy of each record, with "copy-" prepended to its (user-specified) ID, to the job output.
+ */
+public class CopyRecordMapper extends RecordMapper<NullWritable, RecordWritable> {
+    private IdGenerator idGenerator = new IdGeneratorImpl();
+
+    public void map(RecordIdWritable key, RecordWritable value, Context context)
+            throws IOException, InterruptedException {
+
+        try {
+            Record copy = value.getRecord().cloneRecord();
+            String id = copy.getId().getMaster().toString();
+            // strip the "USER." prefix
+            copy.setId(idGenerator.newRecordId("copy-" + id.substring(id.indexOf('.') + 1)));
+            copy.setVersion(null);
+            context.write(NullWritable.get(), new RecordWritable(copy));
+        } catch (RecordException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
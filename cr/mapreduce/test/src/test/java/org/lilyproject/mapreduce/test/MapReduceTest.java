@@ -36,6 +36,8 @@ import org.junit.Test;
 import org.lilyproject.client.LilyClient;
 import org.lilyproject.lilyservertestfw.LilyProxy;
 import org.lilyproject.mapreduce.LilyMapReduceUtil;
+import org.lilyproject.mapreduce.LilyRecordOutputFormat;
+import org.lilyproject.mapreduce.testjobs.CopyRecordMapper;
 import org.lilyproject.mapreduce.testjobs.Test1Mapper;
 import org.lilyproject.repository.api.*;
 import org.lilyproject.util.hbase.HBaseAdminFactory;
@@ -234,6 +236,42 @@ public class MapReduceTest {
             */
         }
 
+        //
+        // Launch a job writing records to Lily, twice: the second run should not fail
+        // because of createOrUpdate mode.
+        //
+        for (int run = 0; run < 2; run++) {
+            Configuration config = HBaseConfiguration.create();
+
+            config.set("mapred.job.tracker", "localhost:9001");
+            config.set("fs.default.name", "hdfs://localhost:8020");
+
+            Job job = new Job(config, "CopyRecords");
+            job.setJarByClass(CopyRecordMapper.class);
+
+            job.setMapperClass(CopyRecordMapper.class);
+
+            job.setNumReduceTasks(0);
+
+            RecordScan scan = new RecordScan();
+            scan.setStartRecordId(idGenerator.newRecordId(String.format("%1$03d", 0)));
+            scan.setStopRecordId(idGenerator.newRecordId(String.format("%1$03d", 10)));
+
+            LilyMapReduceUtil.initMapperJob(scan, "localhost", repository, job);
+            LilyMapReduceUtil.initOutputJob(LilyRecordOutputFormat.Mode.CREATE_OR_UPDATE, "localhost", job);
+
+            boolean b = job.waitForCompletion(true);
+            if (!b) {
+                throw new IOException("error with job!");
+            }
+
+            assertEquals("Number of input records", 10L, getTotalInputRecords(job));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            Record copy = repository.read(idGenerator.newRecordId("copy-" + String.format("%1$03d", i)));
+            assertEquals("foo bar bar", copy.getField(ft1.getName()));
+        }
     }
     
     private long getTotalLaunchedMaps(Job job) throws IOException {
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.lilyproject.repository.api.AsyncRepository;
+import org.lilyproject.repository.api.IORecordException;
+import org.lilyproject.repository.api.MutationCondition;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.Repository;
+
+/**
+ * AsyncRepository which balances each operation over the available Lily servers.
+ *
+ * <p>In contrast to {@link BalancingAndRetryingLilyConnection}, no retrying is done: this would require
+ * keeping all operations in memory until they are acknowledged. If no server is available, the returned
+ * future fails with an {@link IORecordException}.
+ */
+class BalancingAsyncRepository implements AsyncRepository {
+    private final LilyClient lilyClient;
+
+    BalancingAsyncRepository(LilyClient lilyClient) {
+        this.lilyClient = lilyClient;
+    }
+
+    @Override
+    public Future<Record> createAsync(Record record) {
+        try {
+            return lilyClient.getPlainAsyncRepository().createAsync(record);
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    @Override
+    public Future<Record> updateAsync(Record record) {
+        try {
+            return lilyClient.getPlainAsyncRepository().updateAsync(record);
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    @Override
+    public Future<Record> updateAsync(Record record, boolean updateVersion, boolean useLatestRecordType,
+                                      List<MutationCondition> conditions) {
+        try {
+            return lilyClient.getPlainAsyncRepository().updateAsync(record, updateVersion, useLatestRecordType,
+                    conditions);
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    @Override
+    public Future<Record> createOrUpdateAsync(Record record, boolean useLatestRecordType) {
+        try {
+            return lilyClient.getPlainAsyncRepository().createOrUpdateAsync(record, useLatestRecordType);
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    @Override
+    public Future<Record> deleteAsync(RecordId recordId, List<MutationCondition> conditions) {
+        try {
+            return lilyClient.getPlainAsyncRepository().deleteAsync(recordId, conditions);
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    @Override
+    public Future<Record> readAsync(RecordId recordId, QName... fieldNames) {
+        try {
+            return lilyClient.getPlainAsyncRepository().readAsync(recordId, fieldNames);
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    @Override
+    public Repository getRepository() {
+        return lilyClient.getRepository();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the underlying async repositories are managed by LilyClient
+    }
+
+    private Future<Record> failedFuture(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        final Exception error = e instanceof NoServersException || e instanceof IOException
+                ? new IORecordException(e) : e;
+        FutureTask<Record> future = new FutureTask<Record>(new Callable<Record>() {
+            @Override
+            public Record call() throws Exception {
+                throw error;
+            }
+        });
+        future.run();
+        return future;
+    }
+}
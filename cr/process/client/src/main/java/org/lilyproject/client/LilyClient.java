@@ -43,6 +43,7 @@ import org.codehaus.jackson.node.ObjectNode;
 import org.lilyproject.avro.AvroConverter;
 import org.lilyproject.indexer.Indexer;
 import org.lilyproject.indexer.RemoteIndexer;
+import org.lilyproject.repository.api.AsyncRepository;
 import org.lilyproject.repository.api.BlobManager;
 import org.lilyproject.repository.api.BlobStoreAccess;
 import org.lilyproject.repository.api.Repository;
@@ -54,6 +55,7 @@ import org.lilyproject.repository.impl.HBaseBlobStoreAccess;
 import org.lilyproject.repository.impl.InlineBlobStoreAccess;
 import org.lilyproject.repository.impl.SizeBasedBlobStoreAccessFactory;
 import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+import org.lilyproject.repository.remote.RemoteAsyncRepository;
 import org.lilyproject.repository.remote.RemoteRepository;
 import org.lilyproject.repository.remote.RemoteTypeManager;
 import org.lilyproject.util.hbase.HBaseTableFactory;
@@ -88,6 +90,7 @@ public class LilyClient implements Closeable {
 
     private BalancingAndRetryingLilyConnection balancingAndRetryingLilyConnection =
             BalancingAndRetryingLilyConnection.getInstance(this);
+    private AsyncRepository balancingAsyncRepository = new BalancingAsyncRepository(this);
     private RemoteSchemaCache schemaCache;
     private HBaseConnections hbaseConnections = new HBaseConnections();
 
@@ -125,6 +128,7 @@ public class LilyClient implements Closeable {
         schemaCache.close();
 
         for (ServerNode node : servers) {
+            Closer.close(node.asyncRepository);
             Closer.close(node.repository);
         }
 
@@ -185,6 +189,32 @@ public class LilyClient implements Closeable {
         return balancingAndRetryingLilyConnection.getRepository();
     }
 
+    /**
+     * Returns an AsyncRepository that uses one of the available Lily servers (randomly selected).
+     * As with {@link #getPlainRepository()}, you need to recall this method regularly to balance
+     * requests over multiple Lily servers. Most of the time, you will rather use {@link #getAsyncRepository()}.
+     */
+    public synchronized AsyncRepository getPlainAsyncRepository() throws IOException, NoServersException,
+            InterruptedException, KeeperException, RepositoryException {
+        if (servers.size() == 0) {
+            throw new NoServersException("No servers available");
+        }
+        int pos = (int) Math.floor(Math.random() * servers.size());
+        ServerNode server = servers.get(pos);
+        if (server.asyncRepository == null) {
+            constructAsyncRepository(server);
+        }
+        return server.asyncRepository;
+    }
+
+    /**
+     * Returns an async repository instance which balances requests over the available Lily servers.
+     * Operations are not retried: failures are reported through the returned futures.
+     */
+    public AsyncRepository getAsyncRepository() {
+        return balancingAsyncRepository;
+    }
+
     /**
      * Returns an Indexer that uses one of the available Lily servers (randomly selected).
      * This indexer instance will not automatically retry operations and to balance requests
@@ -249,6 +279,24 @@ public class LilyClient implements Closeable {
         server.repository = repository;
     }
 
+    private void constructAsyncRepository(ServerNode server) throws IOException, InterruptedException,
+            KeeperException, RepositoryException {
+        if (server.repository == null) {
+            constructRepository(server);
+        }
+
+        AvroConverter remoteConverter = new AvroConverter();
+        remoteConverter.setRepository(server.repository);
+
+        int connections = Integer.getInteger("lilyclient.async.connections",
+                RemoteAsyncRepository.DEFAULT_CONNECTIONS);
+        int readThreads = Integer.getInteger("lilyclient.async.readthreads",
+                RemoteAsyncRepository.DEFAULT_READ_THREADS);
+
+        server.asyncRepository = new RemoteAsyncRepository(parseAddressAndPort(server.lilyAddressAndPort),
+                remoteConverter, server.repository, connections, readThreads);
+    }
+
     public static BlobManager getBlobManager(ZooKeeperItf zk, HBaseConnections hbaseConns) throws IOException {
         Configuration configuration = getHBaseConfiguration(zk);
         // Avoid HBase(Admin)/ZooKeeper connection leaks when using new Configuration objects each time.
@@ -326,6 +374,7 @@ public class LilyClient implements Closeable {
     private class ServerNode {
         private String lilyAddressAndPort;
         private Repository repository;
+        private AsyncRepository asyncRepository;
         private Indexer indexer;
 
         public ServerNode(String lilyAddressAndPort) {
@@ -379,6 +428,7 @@ public class LilyClient implements Closeable {
             ServerNode server = serverIt.next();
             if (removedServers.contains(server.lilyAddressAndPort)) {
                 serverIt.remove();
+                Closer.close(server.asyncRepository);
                 Closer.close(server.repository);
             }
         }
@@ -400,6 +450,7 @@ public class LilyClient implements Closeable {
         while (serverIt.hasNext()) {
             ServerNode server = serverIt.next();
             serverIt.remove();
+            Closer.close(server.asyncRepository);
             Closer.close(server.repository);
         }
 
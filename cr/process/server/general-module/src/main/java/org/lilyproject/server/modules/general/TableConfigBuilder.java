@@ -37,6 +37,7 @@ public class TableConfigBuilder {
             String splitKeys = table.getChild("splits").getChild("splitKeys").getValue(null);
             String splitKeyPrefix = table.getChild("splits").getChild("splitKeyPrefix").getValue(null);
             byte[] splitKeyPrefixBytes = splitKeyPrefix != null ? Bytes.toBytesBinary(splitKeyPrefix) : null;
+            boolean bucketSplits = table.getChild("splits").getChild("bucketSplits").getValueAsBoolean(false);
 
             Long maxFileSize = table.getChild("maxFileSize").getValueAsLong(null);
             Long memStoreFlushSize = table.getChild("memStoreFlushSize").getValueAsLong(null);
@@ -44,6 +45,7 @@ public class TableConfigBuilder {
             TableConfig config = new TableConfig(regionCount, splitKeys, splitKeyPrefixBytes);
             config.setMaxFileSize(maxFileSize);
             config.setMemStoreFlushSize(memStoreFlushSize);
+            config.setBucketSplits(bucketSplits);
 
             for (Conf familyConf : table.getChild("families").getChildren("family")) {
                 ColumnFamilyConfig family = buildCfConfig(familyConf);
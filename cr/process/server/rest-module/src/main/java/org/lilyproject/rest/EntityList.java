@@ -18,22 +18,26 @@ package org.lilyproject.rest;
 import org.lilyproject.tools.import_.json.WriteOptions;
 
 import javax.ws.rs.core.UriInfo;
-import java.util.Collection;
 
+/**
+ * A list of entities to be serialized as the response of a resource.
+ *
+ * <p>The entities are iterated only once, while writing the response, so they can be produced lazily.</p>
+ */
 public class EntityList<T> {
-    private Collection<T> entities;
+    private Iterable<T> entities;
     private WriteOptions writeOptions;
 
-    public EntityList(Collection<T> entities) {
+    public EntityList(Iterable<T> entities) {
         this(entities, WriteOptions.INSTANCE);
     }
 
-    public EntityList(Collection<T> entities, WriteOptions writeOptions) {
+    public EntityList(Iterable<T> entities, WriteOptions writeOptions) {
         this.entities = entities;
         this.writeOptions = writeOptions;
     }
 
-    public Collection<T> getEntities() {
+    public Iterable<T> getEntities() {
         return entities;
     }
 
@@ -41,7 +45,7 @@ public class EntityList<T> {
         return writeOptions;
     }
 
-    public static <F> EntityList<F> create(Collection<F> entities, UriInfo uriInfo) {
+    public static <F> EntityList<F> create(Iterable<F> entities, UriInfo uriInfo) {
         return new EntityList<F>(entities, ResourceClassUtil.getWriteOptions(uriInfo));
     }
 }
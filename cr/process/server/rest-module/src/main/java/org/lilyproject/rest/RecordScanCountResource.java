@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rest;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response.Status;
+
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import org.lilyproject.repository.api.RecordScan;
+import org.lilyproject.repository.api.RepositoryException;
+
+/**
+ * Counts the records matching a scan, see {@link org.lilyproject.repository.api.Repository#count}. With the
+ * estimate parameter, the count is estimated by counting only the given number of regions.
+ */
+@Path("scan/count")
+public class RecordScanCountResource extends RepositoryEnabled {
+
+    @POST
+    @Consumes("application/json")
+    @Produces("application/json")
+    public ObjectNode post(RecordScan scan, @QueryParam("estimate") Integer sampleRegions) {
+        long count;
+        try {
+            if (sampleRegions != null) {
+                count = repository.estimateCount(scan, sampleRegions);
+            } else {
+                count = repository.count(scan);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ResourceException(e, Status.BAD_REQUEST.getStatusCode());
+        } catch (RepositoryException e) {
+            throw new ResourceException(e, Status.BAD_REQUEST.getStatusCode());
+        } catch (InterruptedException e) {
+            throw new ResourceException(e, Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+
+        ObjectNode result = JsonNodeFactory.instance.objectNode();
+        result.put("count", count);
+        result.put("estimate", sampleRegions != null);
+        return result;
+    }
+}
@@ -15,9 +15,6 @@
  */
 package org.lilyproject.rest;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
@@ -46,30 +43,56 @@ public class RecordScanResource extends RepositoryEnabled {
     @GET
     @Produces("application/json")
     public EntityList<Record> get(@PathParam("id") String scanId, @DefaultValue("1") @QueryParam("batch") Long batch, @Context UriInfo uriInfo) {
+        if (batch < 1) {
+            throw new ResourceException("The batch size should be at least 1, got: " + batch,
+                    Status.BAD_REQUEST.getStatusCode());
+        }
+
         RecordScanner scanner = recordScannerMap.getIfPresent(scanId);
-        if (scanner != null) {           
-            List<Record> records = new ArrayList<Record>();
-            
-            try {                
-                Record record;            
-                while(records.size() < batch && (record = scanner.next()) != null) {
-                    records.add(record);
-                }
-            } catch (RepositoryException e) {
-                throw new ResourceException(e, Status.INTERNAL_SERVER_ERROR.getStatusCode());
-            } catch (InterruptedException e) {
-                throw new ResourceException(e, Status.INTERNAL_SERVER_ERROR.getStatusCode());
-            }
-            
-            if (records.size() < 1) {
+        if (scanner != null) {
+            Record first = nextRecord(scanner);
+            if (first == null) {
                 throw new ResourceException("No more records found in scanner " + scanId, Status.NO_CONTENT.getStatusCode());
             }
-            
-            return EntityList.create(records, uriInfo);
+
+            // The remainder of the batch is taken from the scanner while writing the response
+            return EntityList.create(new ScannerEntities(scanner, first, batch, null), uriInfo);
         } else {
             throw new ResourceException("No scan with ID " + scanId + " found", Status.NOT_FOUND.getStatusCode());
         }
     }
+
+    /**
+     * Streams all remaining records of the scanner in one response. Once the response is written, or writing it
+     * failed, the scanner is closed and removed.
+     */
+    @GET
+    @Path("stream")
+    @Produces("application/json")
+    public EntityList<Record> stream(@PathParam("id") final String scanId, @Context UriInfo uriInfo) {
+        final RecordScanner scanner = recordScannerMap.getIfPresent(scanId);
+        if (scanner != null) {
+            return EntityList.create(new ScannerEntities(scanner, null, -1, new Runnable() {
+                @Override
+                public void run() {
+                    scanner.close();
+                    recordScannerMap.invalidate(scanId);
+                }
+            }), uriInfo);
+        } else {
+            throw new ResourceException("No scan with ID " + scanId + " found", Status.NOT_FOUND.getStatusCode());
+        }
+    }
+
+    private Record nextRecord(RecordScanner scanner) {
+        try {
+            return scanner.next();
+        } catch (RepositoryException e) {
+            throw new ResourceException(e, Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        } catch (InterruptedException e) {
+            throw new ResourceException(e, Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+    }
     
     @DELETE
     public Response delete(@PathParam("id") String scanId) {
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rest;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.ws.rs.core.Response.Status;
+
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordScanner;
+
+/**
+ * Lazily takes records from a {@link RecordScanner}, for streaming them as an {@link EntityList}.
+ *
+ * <p>Can be iterated only once. The writer of the response calls {@link #close()} once it is done, also when
+ * writing failed, e.g. because the client went away.</p>
+ */
+public class ScannerEntities implements Iterable<Record>, Closeable {
+    private final RecordScanner scanner;
+    private Record next;
+    private final long limit;
+    private final Runnable onClose;
+    private boolean closed = false;
+
+    /**
+     * @param first   the first record, already taken from the scanner, or null
+     * @param limit   maximum number of records to return, including the first one. Use -1 for no limit.
+     * @param onClose optional (can be null), called once, when the end of the scanner is reached or when the
+     *                writing of the response ended
+     */
+    public ScannerEntities(RecordScanner scanner, Record first, long limit, Runnable onClose) {
+        this.scanner = scanner;
+        this.next = first;
+        this.limit = limit;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            if (onClose != null) {
+                onClose.run();
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return new Iterator<Record>() {
+            private long count = 0;
+            private boolean fetched = next != null;
+            private boolean exhausted = false;
+
+            @Override
+            public boolean hasNext() {
+                if (limit >= 0 && count >= limit) {
+                    return false;
+                }
+
+                if (!fetched && !exhausted) {
+                    try {
+                        next = scanner.next();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new ResourceException(e, Status.INTERNAL_SERVER_ERROR.getStatusCode());
+                    } catch (Exception e) {
+                        throw new ResourceException(e, Status.INTERNAL_SERVER_ERROR.getStatusCode());
+                    }
+                    fetched = true;
+
+                    if (next == null) {
+                        exhausted = true;
+                        close();
+                    }
+                }
+
+                return next != null;
+            }
+
+            @Override
+            public Record next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Record result = next;
+                next = null;
+                fetched = false;
+                count++;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -16,14 +16,13 @@
 package org.lilyproject.rest.providers.json;
 
 import org.apache.commons.io.output.CloseShieldOutputStream;
-import org.codehaus.jackson.node.ArrayNode;
-import org.codehaus.jackson.node.JsonNodeFactory;
-import org.codehaus.jackson.node.ObjectNode;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
 import org.lilyproject.rest.EntityList;
 import org.lilyproject.rest.RepositoryEnabled;
 import org.lilyproject.rest.ResourceException;
 import org.lilyproject.tools.import_.json.EntityWriter;
-import org.lilyproject.tools.import_.json.WriteOptions;
+import org.lilyproject.util.io.Closer;
 import org.lilyproject.util.json.JsonFormat;
 
 import javax.ws.rs.WebApplicationException;
@@ -32,12 +31,21 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 
+/**
+ * Writes an {@link EntityList} as a JSON object with a "results" array.
+ *
+ * <p>The entities are serialized one by one, as they are taken from the list, directly to the response
+ * stream. This keeps the memory usage independent of the number of entities, and allows lazily produced
+ * lists (e.g. backed by a scanner) to be streamed. If the entities are {@link Closeable}, they are closed
+ * once writing ended.</p>
+ */
 @Provider
 public class EntityListMessageBodyWriter extends RepositoryEnabled implements MessageBodyWriter<EntityList> {
 
@@ -74,19 +82,29 @@ public class EntityListMessageBodyWriter extends RepositoryEnabled implements Me
             throws IOException, WebApplicationException {
 
         try {
-            ObjectNode listNode = JsonNodeFactory.instance.objectNode();
-            ArrayNode resultsNode = listNode.putArray("results");
+            JsonGenerator gen = JsonFormat.JSON_FACTORY.createJsonGenerator(new CloseShieldOutputStream(entityStream),
+                    JsonEncoding.UTF8);
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("results");
 
             EntityWriter writer = getEntityWriter(genericType);
             for (Object entity : entityList.getEntities()) {
-                resultsNode.add(writer.toJson(entity, entityList.getWriteOptions(), repository));
+                JsonFormat.OBJECT_MAPPER.writeTree(gen, writer.toJson(entity, entityList.getWriteOptions(),
+                        repository));
             }
 
-            JsonFormat.serialize(listNode, new CloseShieldOutputStream(entityStream));
+            gen.writeEndArray();
+            gen.writeEndObject();
+            gen.close();
         } catch (Throwable e) {
             // We catch every throwable, since otherwise no one does it and we will not have any trace
             // of Errors that happened.
             throw new ResourceException("Error serializing entity list.", e, Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        } finally {
+            // Lazily produced lists (e.g. backed by a scanner) release their resources, also when the client aborted
+            if (entityList.getEntities() instanceof Closeable) {
+                Closer.close((Closeable)entityList.getEntities());
+            }
         }
     }
 
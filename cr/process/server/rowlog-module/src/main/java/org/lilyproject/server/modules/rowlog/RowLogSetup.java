@@ -37,7 +37,6 @@ import org.lilyproject.rowlog.api.RowLogException;
 import org.lilyproject.rowlog.api.RowLogMessageListenerMapping;
 import org.lilyproject.rowlog.api.RowLogProcessor;
 import org.lilyproject.rowlog.api.RowLogSubscription;
-import org.lilyproject.rowlog.impl.RowLogHashShardRouter;
 import org.lilyproject.rowlog.impl.RowLogImpl;
 import org.lilyproject.rowlog.impl.RowLogProcessorElection;
 import org.lilyproject.rowlog.impl.RowLogProcessorImpl;
@@ -92,9 +91,12 @@ public class RowLogSetup {
         long wakeupTimeout = initialConf.getChild("wakeupTimeout").getValueAsLong();
         long orphanedMessageDelay = initialConf.getChild("orphanedMessageDelay").getValueAsLong();
         int deleteBufferSize = initialConf.getChild("deleteBufferSize").getValueAsInteger();
+        String shardRouter = initialConf.getChild("shardRouter").getValue(RowLogConfig.DEFAULT_SHARD_ROUTER);
 
-        return new RowLogConfig(respectOrder, enableNotify, notifyDelay, minimalProcessDelay, wakeupTimeout,
-                orphanedMessageDelay, deleteBufferSize);
+        RowLogConfig config = new RowLogConfig(respectOrder, enableNotify, notifyDelay, minimalProcessDelay,
+                wakeupTimeout, orphanedMessageDelay, deleteBufferSize);
+        config.setShardRouter(shardRouter);
+        return config;
     }
 
     @PostConstruct
@@ -146,11 +148,11 @@ public class RowLogSetup {
         int shardCount = rowLogConf.getChild("shardCount").getValueAsInteger();
 
         messageQueue = new RowLogImpl("mq", LilyHBaseSchema.getRecordTable(hbaseTableFactory), RecordCf.ROWLOG.bytes,
-                RecordColumn.MQ_PREFIX, confMgr, null, new RowLogHashShardRouter());
+                RecordColumn.MQ_PREFIX, confMgr, null, null);
         RowLogShardSetup.setupShards(shardCount, messageQueue, hbaseTableFactory);
 
         writeAheadLog = new WalRowLog("wal", LilyHBaseSchema.getRecordTable(hbaseTableFactory), RecordCf.ROWLOG.bytes,
-                RecordColumn.WAL_PREFIX, confMgr, rowLocker, new RowLogHashShardRouter());
+                RecordColumn.WAL_PREFIX, confMgr, rowLocker, null);
         RowLogShardSetup.setupShards(shardCount, writeAheadLog, hbaseTableFactory);
 
         RowLogMessageListenerMapping.INSTANCE.put(WalListener.ID, new WalListener(writeAheadLog, rowLocker));
@@ -171,6 +173,9 @@ public class RowLogSetup {
                 }
             }
             RowLogProcessorSettings settings = createProcessorSettings(mqProcessorConf);
+            if (mqProcessorConf.getChild("directNotify").getAttributeAsBoolean("enabled", true)) {
+                settings.setNotifyHostName(hostName);
+            }
             RowLogProcessor processor = new RowLogProcessorImpl(messageQueue, confMgr, hbaseConf, settings);
             messageQueueProcessorLeader = new RowLogProcessorElection(zk, processor, lilyInfo);
             if (mqProcessorNodes.isEmpty() || mqProcessorNodes.contains(hostName)) {
@@ -232,6 +237,10 @@ public class RowLogSetup {
                 conf.getChild("messagesWorkQueueSize")
                         .getValueAsInteger(settings.getMessagesWorkQueueSize()));
 
+        settings.setRemoteListenerWindow(
+                conf.getChild("remoteListenerWindow")
+                        .getValueAsInteger(settings.getRemoteListenerWindow()));
+
         return settings;
     }
 
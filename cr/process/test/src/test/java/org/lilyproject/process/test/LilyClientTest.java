@@ -17,6 +17,9 @@ package org.lilyproject.process.test;
 
 import java.io.ByteArrayInputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.AfterClass;
@@ -24,6 +27,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.lilyproject.client.LilyClient;
 import org.lilyproject.lilyservertestfw.LilyProxy;
+import org.lilyproject.repository.api.AsyncRepository;
 import org.lilyproject.repository.api.Blob;
 import org.lilyproject.repository.api.FieldType;
 import org.lilyproject.repository.api.IdGenerator;
@@ -149,6 +153,46 @@ public class LilyClientTest {
         assertEquals("Number of scanned records", 10, i);
     }
 
+    @Test
+    public void testAsyncRepository() throws Exception {
+        LilyClient client = lilyProxy.getLilyServerProxy().getClient();
+
+        Repository repository = client.getRepository();
+        AsyncRepository asyncRepository = client.getAsyncRepository();
+
+        String NS = "org.lilyproject.client.test";
+        TypeManager typeManager = repository.getTypeManager();
+        FieldType fieldType = typeManager.newFieldType("STRING", new QName(NS, "asyncfield"), Scope.VERSIONED);
+        fieldType = typeManager.createFieldType(fieldType);
+
+        RecordType recordType = typeManager.newRecordType(new QName(NS, "asyncrt"));
+        recordType.addFieldTypeEntry(fieldType.getId(), true);
+        recordType = typeManager.createRecordType(recordType);
+
+        // Have a bunch of creates in flight at the same time
+        List<Future<Record>> futures = new ArrayList<Future<Record>>();
+        for (int i = 0; i < 50; i++) {
+            Record record = repository.newRecord();
+            record.setId(repository.getIdGenerator().newRecordId("async" + i));
+            record.setRecordType(recordType.getName());
+            record.setField(fieldType.getName(), "value " + i);
+            futures.add(asyncRepository.createAsync(record));
+        }
+
+        for (Future<Record> future : futures) {
+            assertEquals(Long.valueOf(1), future.get().getVersion());
+        }
+
+        // Update and read back
+        Record record = repository.newRecord(repository.getIdGenerator().newRecordId("async0"));
+        record.setRecordType(recordType.getName());
+        record.setField(fieldType.getName(), "updated");
+        assertEquals(Long.valueOf(2), asyncRepository.updateAsync(record).get().getVersion());
+
+        Record readRecord = asyncRepository.readAsync(record.getId()).get();
+        assertEquals("updated", readRecord.getField(fieldType.getName()));
+    }
+
     @Test
     public void testIndexerApi() throws Exception {
         LilyClient client = lilyProxy.getLilyServerProxy().getClient();
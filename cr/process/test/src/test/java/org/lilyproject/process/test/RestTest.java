@@ -1198,6 +1198,58 @@ public class RestTest {
         
     }
     
+    @Test
+    public void testRecordScanBatchSize() throws Exception {
+        setupRecordScannerTest();
+
+        String body = json("{'recordFilter' : { '@class' : 'org.lilyproject.repository.api.filter.RecordIdPrefixFilter', " +
+                "'recordId' : 'USER.scan_'}}, 'caching' : 1024, 'cacheBlocks' : false}");
+        Response response = post(BASE_URI + "/scan", body);
+        assertStatus(Status.SUCCESS_CREATED, response);
+        String location = response.getLocationRef().toUri().toString();
+
+        // Batch sizes smaller than 1 are refused
+        response = get(location + "?batch=0");
+        assertStatus(Status.CLIENT_ERROR_BAD_REQUEST, response);
+        response = get(location + "?batch=-1");
+        assertStatus(Status.CLIENT_ERROR_BAD_REQUEST, response);
+
+        // The refused requests did not take any records from the scanner
+        response = get(location + "?batch=10");
+        assertStatus(Status.SUCCESS_OK, response);
+        JsonNode json = readJson(response.getEntity());
+        assertEquals(3, json.get("results").size());
+    }
+
+    @Test
+    public void testRecordScanStream() throws Exception {
+        setupRecordScannerTest();
+
+        String body = json("{'recordFilter' : { '@class' : 'org.lilyproject.repository.api.filter.RecordIdPrefixFilter', " +
+                "'recordId' : 'USER.scan_'}}, 'caching' : 1024, 'cacheBlocks' : false}");
+        Response response = post(BASE_URI + "/scan", body);
+        assertStatus(Status.SUCCESS_CREATED, response);
+        String location = response.getLocationRef().toUri().toString();
+
+        // Take the first record, then stream the remaining ones
+        response = get(location);
+        assertStatus(Status.SUCCESS_OK, response);
+        assertEquals(1, readJson(response.getEntity()).get("results").size());
+
+        response = get(location + "/stream");
+        assertStatus(Status.SUCCESS_OK, response);
+        JsonNode json = readJson(response.getEntity());
+        assertEquals(2, json.get("results").size());
+        assertEquals("USER.scan_fister_fashing", json.get("results").get(0).get("id").getTextValue());
+        assertEquals("USER.scan_fly_fishing_with_flash", json.get("results").get(1).get("id").getTextValue());
+
+        // After streaming, the scanner is removed
+        response = get(location);
+        assertStatus(Status.CLIENT_ERROR_NOT_FOUND, response);
+        response = get(location + "/stream");
+        assertStatus(Status.CLIENT_ERROR_NOT_FOUND, response);
+    }
+
     @Test
     public void testRecordScanDelete() throws Exception {
         setupRecordScannerTest();
@@ -1222,6 +1274,26 @@ public class RestTest {
         assertStatus(Status.CLIENT_ERROR_NOT_FOUND, response);    
     }
 
+    @Test
+    public void testRecordScanCount() throws Exception {
+        setupRecordScannerTest();
+
+        String body = json("{'recordFilter' : { '@class' : 'org.lilyproject.repository.api.filter.RecordIdPrefixFilter', " +
+                "'recordId' : 'USER.scan_'}}");
+        Response response = post(BASE_URI + "/scan/count", body);
+        assertStatus(Status.SUCCESS_OK, response);
+        JsonNode json = readJson(response.getEntity());
+        assertEquals(3L, json.get("count").getLongValue());
+        assertFalse(json.get("estimate").getBooleanValue());
+
+        // With only one region, the estimate is the exact count
+        response = post(BASE_URI + "/scan/count?estimate=1", body);
+        assertStatus(Status.SUCCESS_OK, response);
+        json = readJson(response.getEntity());
+        assertEquals(3L, json.get("count").getLongValue());
+        assertTrue(json.get("estimate").getBooleanValue());
+    }
+
     private JsonNode getFieldValue(JsonNode recordJson, String fieldName) {
         String prefix = recordJson.get("namespaces").get("org.lilyproject.resttest").getTextValue();
         JsonNode fieldsNode = recordJson.get("fields");
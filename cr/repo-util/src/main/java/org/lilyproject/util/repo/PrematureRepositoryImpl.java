@@ -185,6 +185,13 @@ public class PrematureRepositoryImpl implements PrematureRepository {
         return delegate.readWithIds(recordId, version, fieldIds);
     }
 
+    @Override
+    public List<IdRecord> readVTaggedWithIds(RecordId recordId, Set<SchemaId> vtagIds)
+            throws RepositoryException, InterruptedException {
+        waitOnRepo();
+        return delegate.readVTaggedWithIds(recordId, vtagIds);
+    }
+
     @Override
     public void delete(RecordId recordId) throws RepositoryException, InterruptedException {
         waitOnRepo();
@@ -301,6 +308,18 @@ public class PrematureRepositoryImpl implements PrematureRepository {
         return delegate.getScannerWithIds(scan);
     }
 
+    @Override
+    public long count(RecordScan scan) throws RepositoryException, InterruptedException {
+        waitOnRepo();
+        return delegate.count(scan);
+    }
+
+    @Override
+    public long estimateCount(RecordScan scan, int sampleRegions) throws RepositoryException, InterruptedException {
+        waitOnRepo();
+        return delegate.estimateCount(scan, sampleRegions);
+    }
+
     @Override
     public RecordBuilder recordBuilder() throws RecordException, InterruptedException {
         waitOnRepo();
@@ -30,6 +30,10 @@ import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.util.ByteArrayBuilder;
+import org.lilyproject.bytes.api.DataInput;
+import org.lilyproject.bytes.api.DataOutput;
+import org.lilyproject.bytes.impl.DataInputImpl;
+import org.lilyproject.bytes.impl.DataOutputImpl;
 import org.lilyproject.repository.api.IdGenerator;
 import org.lilyproject.repository.api.Record;
 import org.lilyproject.repository.api.SchemaId;
@@ -39,7 +43,9 @@ import org.lilyproject.util.json.JsonFormat;
 /**
  * Represents the payload of an event about a create-update-delete operation on the repository.
  *
- * <p>The actual payload is json, this class helps in parsing or constructing that json.
+ * <p>The payload is either json or a more compact binary format, this class helps in parsing or
+ * constructing it. When parsing, the format is detected automatically: binary payloads start with a
+ * version byte, json payloads with '{'.
  */
 public class RecordEvent {
     private long versionCreated = -1;
@@ -52,31 +58,57 @@ public class RecordEvent {
     private IndexRecordFilterData indexRecordFilterData;
     /** A copy of the attributes supplied via {@link Record#setAttributes(Map)}. */
     private Map<String, String> attributes;
+    /** Time at which the record was written, for tracing the indexing lag. */
+    private long writeTimestamp = -1;
+
+    /** First byte of payloads in (version 1 of) the binary format. */
+    private static final byte BINARY_FORMAT_V1 = 1;
+
+    private static final int SCHEMA_ID_LENGTH = 16;
 
     public enum Type {
-        CREATE("repo:record-created"),
-        UPDATE("repo:record-updated"),
-        DELETE("repo:record-deleted"),
-        INDEX("repo:index");
+        CREATE("repo:record-created", (byte)1),
+        UPDATE("repo:record-updated", (byte)2),
+        DELETE("repo:record-deleted", (byte)3),
+        INDEX("repo:index", (byte)4);
 
         private String name;
+        private byte code;
 
-        private Type(String name) {
+        private Type(String name, byte code) {
             this.name = name;
+            this.code = code;
         }
 
         public String getName() {
             return name;
         }
+
+        private static Type fromCode(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new RuntimeException("Unexpected kind of message type code: " + code);
+        }
     }
 
     public RecordEvent() {
     }
 
     /**
-     * Creates a record event from the json data supplied as bytes.
+     * Creates a record event from the json or binary data supplied as bytes.
      */
     public RecordEvent(byte[] data, IdGenerator idGenerator) throws IOException {
+        if (data.length > 0 && data[0] == BINARY_FORMAT_V1) {
+            readBinary(new DataInputImpl(data), idGenerator);
+        } else {
+            readJson(data, idGenerator);
+        }
+    }
+
+    private void readJson(byte[] data, IdGenerator idGenerator) throws IOException {
         // Using streaming JSON parsing for performance. We expect the JSON to be correct, validation
         // is absent/minimal.
 
@@ -137,8 +169,48 @@ public class RecordEvent {
                 }
             } else if (fieldName.equals("indexFilterData")) {
                 this.indexRecordFilterData = new IndexRecordFilterData(jp, idGenerator);
+            } else if (fieldName.equals("writeTimestamp")) {
+                writeTimestamp = jp.getLongValue();
+            }
+        }
+    }
+
+    private void readBinary(DataInput input, IdGenerator idGenerator) {
+        input.readByte(); // format version
+
+        byte typeCode = input.readByte();
+        type = typeCode != 0 ? Type.fromCode(typeCode) : null;
+        versionUpdated = input.readVLong() - 1;
+        versionCreated = input.readVLong() - 1;
+        recordTypeChanged = input.readBoolean();
+
+        int count = input.readVInt();
+        for (int i = 0; i < count; i++) {
+            addUpdatedField(readSchemaId(input, idGenerator));
+        }
+
+        count = input.readVInt();
+        for (int i = 0; i < count; i++) {
+            addVTagToIndex(readSchemaId(input, idGenerator));
+        }
+
+        count = input.readVInt();
+        if (count > 0) {
+            attributes = new HashMap<String, String>();
+            for (int i = 0; i < count; i++) {
+                String key = input.readVUTF();
+                attributes.put(key, input.readVUTF());
             }
         }
+
+        if (input.readBoolean()) {
+            indexRecordFilterData = new IndexRecordFilterData(input, idGenerator);
+        }
+
+        // absent in events written before the write timestamp was added
+        if (input.getPosition() < input.getSize()) {
+            writeTimestamp = input.readVLong() - 1;
+        }
     }
 
     public long getVersionCreated() {
@@ -231,6 +303,19 @@ public class RecordEvent {
         this.attributes = attributes;
     }
 
+    /**
+     * The time at which the record was written by the repository, or -1 if unknown. This is used to trace the
+     * lag between a record write and the processing of its events (e.g. by the indexer). It is not taken into
+     * account by {@link #equals(Object)}.
+     */
+    public long getWriteTimestamp() {
+        return writeTimestamp;
+    }
+
+    public void setWriteTimestamp(long writeTimestamp) {
+        this.writeTimestamp = writeTimestamp;
+    }
+
     public IndexRecordFilterData getIndexRecordFilterData() {
         return indexRecordFilterData;
     }
@@ -287,6 +372,10 @@ public class RecordEvent {
             indexRecordFilterData.toJson(gen);
         }
 
+        if (writeTimestamp != -1) {
+            gen.writeNumberField("writeTimestamp", writeTimestamp);
+        }
+
         gen.writeEndObject();
         gen.flush();
     }
@@ -315,6 +404,95 @@ public class RecordEvent {
         }
     }
 
+    /**
+     * Serializes this event to the binary format, which is more compact and cheaper to
+     * produce and parse than json.
+     */
+    public byte[] toBytes() {
+        DataOutput output = new DataOutputImpl(64);
+        output.writeByte(BINARY_FORMAT_V1);
+
+        output.writeByte(type != null ? type.code : 0);
+        // versions are -1 when not set
+        output.writeVLong(versionUpdated + 1);
+        output.writeVLong(versionCreated + 1);
+        output.writeBoolean(recordTypeChanged);
+
+        writeSchemaIds(output, updatedFields);
+        writeSchemaIds(output, vtagsToIndex);
+
+        if (attributes != null) {
+            output.writeVInt(attributes.size());
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                output.writeVUTF(entry.getKey());
+                output.writeVUTF(entry.getValue());
+            }
+        } else {
+            output.writeVInt(0);
+        }
+
+        output.writeBoolean(indexRecordFilterData != null);
+        if (indexRecordFilterData != null) {
+            indexRecordFilterData.write(output);
+        }
+
+        // added at the end, so that readers of older versions can still read the event
+        output.writeVLong(writeTimestamp + 1);
+
+        return output.toByteArray();
+    }
+
+    private static void writeSchemaIds(DataOutput output, Set<SchemaId> ids) {
+        if (ids == null) {
+            output.writeVInt(0);
+            return;
+        }
+        output.writeVInt(ids.size());
+        for (SchemaId id : ids) {
+            writeSchemaId(output, id);
+        }
+    }
+
+    private static void writeSchemaId(DataOutput output, SchemaId id) {
+        byte[] bytes = id.getBytes();
+        if (bytes.length != SCHEMA_ID_LENGTH) {
+            throw new IllegalArgumentException("Unexpected schema id length: " + bytes.length);
+        }
+        output.writeBytes(bytes);
+    }
+
+    private static SchemaId readSchemaId(DataInput input, IdGenerator idGenerator) {
+        return idGenerator.getSchemaId(input.readBytes(SCHEMA_ID_LENGTH));
+    }
+
+    private static void writeNullableSchemaId(DataOutput output, SchemaId id) {
+        output.writeBoolean(id != null);
+        if (id != null) {
+            writeSchemaId(output, id);
+        }
+    }
+
+    private static SchemaId readNullableSchemaId(DataInput input, IdGenerator idGenerator) {
+        return input.readBoolean() ? readSchemaId(input, idGenerator) : null;
+    }
+
+    /**
+     * Writes the length + 1 followed by the bytes, a length of 0 means null.
+     */
+    private static void writeNullableBytes(DataOutput output, byte[] value) {
+        if (value == null) {
+            output.writeVInt(0);
+        } else {
+            output.writeVInt(value.length + 1);
+            output.writeBytes(value);
+        }
+    }
+
+    private static byte[] readNullableBytes(DataInput input) {
+        int length = input.readVInt();
+        return length == 0 ? null : input.readBytes(length - 1);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj)
@@ -419,6 +597,22 @@ public class RecordEvent {
             }
         }
 
+        private IndexRecordFilterData(DataInput input, IdGenerator idGenerator) {
+            oldRecordExists = input.readBoolean();
+            newRecordExists = input.readBoolean();
+            newRecordType = readNullableSchemaId(input, idGenerator);
+            oldRecordType = readNullableSchemaId(input, idGenerator);
+
+            // count + 1, 0 means null
+            int count = input.readVInt();
+            if (count > 0) {
+                fieldChanges = new ArrayList<FieldChange>(count - 1);
+                for (int i = 0; i < count - 1; i++) {
+                    fieldChanges.add(new FieldChange(input, idGenerator));
+                }
+            }
+        }
+
         public boolean getNewRecordExists() {
             return newRecordExists;
         }
@@ -489,6 +683,22 @@ public class RecordEvent {
 
             gen.writeEndObject();
         }
+
+        private void write(DataOutput output) {
+            output.writeBoolean(oldRecordExists);
+            output.writeBoolean(newRecordExists);
+            writeNullableSchemaId(output, newRecordType);
+            writeNullableSchemaId(output, oldRecordType);
+
+            if (fieldChanges != null) {
+                output.writeVInt(fieldChanges.size() + 1);
+                for (FieldChange fieldChange : fieldChanges) {
+                    fieldChange.write(output);
+                }
+            } else {
+                output.writeVInt(0);
+            }
+        }
     }
 
     public static class FieldChange {
@@ -522,6 +732,12 @@ public class RecordEvent {
             }
         }
 
+        private FieldChange(DataInput input, IdGenerator idGenerator) {
+            id = readSchemaId(input, idGenerator);
+            oldValue = readNullableBytes(input);
+            newValue = readNullableBytes(input);
+        }
+
         public SchemaId getId() {
             return id;
         }
@@ -549,6 +765,12 @@ public class RecordEvent {
 
             gen.writeEndObject();
         }
+
+        private void write(DataOutput output) {
+            writeSchemaId(output, id);
+            writeNullableBytes(output, oldValue);
+            writeNullableBytes(output, newValue);
+        }
     }
 }
 
@@ -53,6 +53,11 @@ public class VTaggedRecord {
 
     private Map<Long, Set<SchemaId>> tagsByVersion;
 
+    /**
+     * Records of versions other than the last one, which were already read, by version number.
+     */
+    private Map<Long, IdRecord> versionRecords = new HashMap<Long, IdRecord>();
+
     private RecordEvent recordEvent;
 
     private RecordEventHelper recordEventHelper;
@@ -78,6 +83,27 @@ public class VTaggedRecord {
         this(repository.readWithIds(recordId, null, null), eventHelper, repository);
     }
 
+    /**
+     * Construct based on a recordId. The versions to which the given vtags point are read together with the
+     * latest record, using {@link Repository#readVTaggedWithIds}, so that {@link #getIdRecord} does not
+     * need further repository reads for these vtags.
+     */
+    public VTaggedRecord(RecordId recordId, Set<SchemaId> vtagsToRead, RecordEventHelper eventHelper,
+            Repository repository) throws RepositoryException, InterruptedException {
+        this(repository.readVTaggedWithIds(recordId, vtagsToRead), eventHelper, repository);
+    }
+
+    /**
+     * Construct based on the result of {@link Repository#readVTaggedWithIds}.
+     */
+    VTaggedRecord(List<IdRecord> records, RecordEventHelper eventHelper, Repository repository)
+            throws RepositoryException, InterruptedException {
+        this(records.get(0), eventHelper, repository);
+        for (IdRecord versionRecord : records.subList(1, records.size())) {
+            versionRecords.put(versionRecord.getVersion(), versionRecord);
+        }
+    }
+
     /**
      * Construct based on an existing record to prevent additional repository reads when the record is already
      * available. The existing IdRecord should be the last (when it was read) and should have been read with all
@@ -251,6 +277,14 @@ public class VTaggedRecord {
             return getNonVersionedRecord();
         } else if (record.getVersion() != null && version == record.getVersion()) {
             return record;
+        } else if (fields == null) {
+            // One version can be tagged by multiple vtags, avoid reading it again for each of them
+            IdRecord versionRecord = versionRecords.get(version);
+            if (versionRecord == null) {
+                versionRecord = repository.readWithIds(record.getId(), version, null);
+                versionRecords.put(version, versionRecord);
+            }
+            return versionRecord;
         } else {
             return repository.readWithIds(record.getId(), version, fields);
         }
@@ -15,6 +15,7 @@
  */
 package org.lilyproject.util.repo;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -32,6 +33,7 @@ import org.lilyproject.repository.api.RepositoryException;
 import org.lilyproject.repository.api.SchemaId;
 import org.lilyproject.repository.api.Scope;
 import org.lilyproject.repository.api.TypeManager;
+import org.lilyproject.repository.api.VersionNotFoundException;
 
 /**
  * Version tag related utilities.
@@ -84,12 +86,13 @@ public class VersionTag {
     }
 
     /**
-     * Get an IdRecord of the given vtag version, based on a recordId.
+     * Get an IdRecord of the given vtag version, based on a recordId. The vtag is resolved and the tagged
+     * version read in one repository read.
      */
     public static IdRecord getIdRecord(RecordId recordId, SchemaId vtagId, Repository repository)
             throws RepositoryException, InterruptedException {
 
-        VTaggedRecord vtRecord = new VTaggedRecord(recordId, null, repository);
+        VTaggedRecord vtRecord = new VTaggedRecord(recordId, Collections.singleton(vtagId), null, repository);
         return vtRecord.getIdRecord(vtagId);
     }
 
@@ -111,29 +114,54 @@ public class VersionTag {
             throws RepositoryException, InterruptedException {
 
         QName vtagName = new QName(NAMESPACE, vtag);
-        Record record = repository.read(recordId);
 
-        long version;
         if (vtag.equals("last")) {
-            // we loaded the last version
+            // we load the last version
+            Record record = repository.read(recordId);
             if (fields != null) {
                 filterFields(record, new HashSet<QName>(fields));
             }
             return record;
-        } else if (!record.hasField(vtagName)) {
+        }
+
+        SchemaId vtagId;
+        try {
+            vtagId = repository.getTypeManager().getFieldTypeByName(vtagName).getId();
+        } catch (FieldTypeNotFoundException e) {
+            // a vtag which does not exist can not be defined on the record
             return null;
-        } else {
-            version = (Long) record.getField(vtagName);
-
-            if (version == 0) {
-                reduceToNonVersioned(record, fields != null ? new HashSet<QName>(fields) : null,
-                        repository.getTypeManager());
-            } else {
-                record = repository.read(recordId, version, fields);
-            }
+        }
+
+        // Resolve the vtag and read the tagged version in one go
+        List<IdRecord> records = repository.readVTaggedWithIds(recordId, Collections.singleton(vtagId));
+        Record record = records.get(0).getRecord();
+        if (!record.hasField(vtagName)) {
+            return null;
+        }
 
+        long version = (Long) record.getField(vtagName);
+        if (version == 0) {
+            reduceToNonVersioned(record, fields != null ? new HashSet<QName>(fields) : null,
+                    repository.getTypeManager());
             return record;
         }
+
+        if (record.getVersion() == null || version != record.getVersion()) {
+            record = null;
+            for (IdRecord versionRecord : records) {
+                if (versionRecord.getVersion() != null && versionRecord.getVersion() == version) {
+                    record = versionRecord.getRecord();
+                }
+            }
+            if (record == null) {
+                throw new VersionNotFoundException(recordId, version);
+            }
+        }
+
+        if (fields != null) {
+            filterFields(record, new HashSet<QName>(fields));
+        }
+        return record;
     }
 
     /**
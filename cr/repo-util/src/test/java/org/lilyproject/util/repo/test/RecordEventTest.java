@@ -22,6 +22,7 @@ import org.lilyproject.repository.api.SchemaId;
 import org.lilyproject.repository.impl.id.IdGeneratorImpl;
 import org.lilyproject.util.repo.RecordEvent;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
@@ -29,6 +30,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class RecordEventTest {
     @Test
@@ -92,4 +94,70 @@ public class RecordEventTest {
         assertNull(fieldChanges.get(3).getOldValue());
         assertArrayEquals(Bytes.toBytes("foo4"), fieldChanges.get(3).getNewValue());
     }
+
+    @Test
+    public void testBinary() throws Exception {
+        IdGenerator idGenerator = new IdGeneratorImpl();
+
+        RecordEvent event = new RecordEvent();
+        assertEquals(event, new RecordEvent(event.toBytes(), idGenerator));
+
+        event.setType(RecordEvent.Type.UPDATE);
+        event.setVersionCreated(3);
+        event.setVersionUpdated(2);
+        event.setRecordTypeChanged(true);
+        event.addUpdatedField(idGenerator.getSchemaId(UUID.randomUUID()));
+        event.addUpdatedField(idGenerator.getSchemaId(UUID.randomUUID()));
+        event.addVTagToIndex(idGenerator.getSchemaId(UUID.randomUUID()));
+        event.getAttributes().put("key", "value");
+
+        SchemaId rtId = idGenerator.getSchemaId(UUID.randomUUID());
+        SchemaId fieldId = idGenerator.getSchemaId(UUID.randomUUID());
+        RecordEvent.IndexRecordFilterData idxSel = new RecordEvent.IndexRecordFilterData();
+        idxSel.setOldRecordExists(true);
+        idxSel.setNewRecordExists(true);
+        idxSel.setNewRecordType(rtId);
+        idxSel.addChangedField(fieldId, null, Bytes.toBytes("foo"));
+        event.setIndexRecordFilterData(idxSel);
+
+        byte[] binary = event.toBytes();
+        byte[] json = event.toJsonBytes();
+        assertTrue(binary.length < json.length);
+
+        // Both formats are readable
+        RecordEvent fromBinary = new RecordEvent(binary, idGenerator);
+        assertEquals(event, fromBinary);
+        assertEquals(event, new RecordEvent(json, idGenerator));
+
+        idxSel = fromBinary.getIndexRecordFilterData();
+        assertTrue(idxSel.getOldRecordExists());
+        assertTrue(idxSel.getNewRecordExists());
+        assertEquals(rtId, idxSel.getNewRecordType());
+        assertNull(idxSel.getOldRecordType());
+        assertEquals(1, idxSel.getFieldChanges().size());
+        assertEquals(fieldId, idxSel.getFieldChanges().get(0).getId());
+        assertNull(idxSel.getFieldChanges().get(0).getOldValue());
+        assertArrayEquals(Bytes.toBytes("foo"), idxSel.getFieldChanges().get(0).getNewValue());
+    }
+
+    @Test
+    public void testWriteTimestamp() throws Exception {
+        IdGenerator idGenerator = new IdGeneratorImpl();
+
+        RecordEvent event = new RecordEvent();
+        event.setType(RecordEvent.Type.CREATE);
+        assertEquals(-1, new RecordEvent(event.toBytes(), idGenerator).getWriteTimestamp());
+        assertEquals(-1, new RecordEvent(event.toJsonBytes(), idGenerator).getWriteTimestamp());
+
+        // Binary events written before the write timestamp existed end right before it
+        byte[] binary = event.toBytes();
+        byte[] oldBinary = Arrays.copyOf(binary, binary.length - 1);
+        assertEquals(-1, new RecordEvent(oldBinary, idGenerator).getWriteTimestamp());
+        assertEquals(RecordEvent.Type.CREATE, new RecordEvent(oldBinary, idGenerator).getType());
+
+        long now = System.currentTimeMillis();
+        event.setWriteTimestamp(now);
+        assertEquals(now, new RecordEvent(event.toBytes(), idGenerator).getWriteTimestamp());
+        assertEquals(now, new RecordEvent(event.toJsonBytes(), idGenerator).getWriteTimestamp());
+    }
 }
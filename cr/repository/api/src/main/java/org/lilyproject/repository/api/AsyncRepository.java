@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.api;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Non-blocking variant of the record CRUD operations of {@link Repository}.
+ *
+ * <p>Each method returns immediately with a {@link Future}. Multiple operations can be outstanding
+ * at the same time, which allows a small number of client threads to keep many requests in flight.
+ *
+ * <p>When an operation fails, {@link Future#get()} throws an {@link java.util.concurrent.ExecutionException}
+ * whose cause is the same exception the corresponding {@link Repository} method would have thrown
+ * (typically a {@link RepositoryException}).
+ *
+ * <p>The semantics of each operation are the same as those of the corresponding {@link Repository} method.
+ */
+public interface AsyncRepository extends Closeable {
+    /**
+     * Async variant of {@link Repository#create(Record)}.
+     */
+    Future<Record> createAsync(Record record);
+
+    /**
+     * Async variant of {@link Repository#update(Record)}.
+     */
+    Future<Record> updateAsync(Record record);
+
+    /**
+     * Async variant of {@link Repository#update(Record, boolean, boolean, List)}.
+     */
+    Future<Record> updateAsync(Record record, boolean updateVersion, boolean useLatestRecordType,
+            List<MutationCondition> conditions);
+
+    /**
+     * Async variant of {@link Repository#createOrUpdate(Record, boolean)}.
+     */
+    Future<Record> createOrUpdateAsync(Record record, boolean useLatestRecordType);
+
+    /**
+     * Async variant of {@link Repository#delete(RecordId, List)}. The future's value is the deleted record
+     * as returned by the repository, or null.
+     */
+    Future<Record> deleteAsync(RecordId recordId, List<MutationCondition> conditions);
+
+    /**
+     * Async variant of {@link Repository#read(RecordId, QName...)}.
+     */
+    Future<Record> readAsync(RecordId recordId, QName... fieldNames);
+
+    /**
+     * Returns the synchronous repository on which this async repository is based.
+     */
+    Repository getRepository();
+}
@@ -60,6 +60,18 @@ public interface IdGenerator {
      */
     RecordId newRecordId(String userProvidedId, Map<String, String> variantProperties);
 
+    /**
+     * Creates a new record id based on a string provided by the user, of which the byte representation is prefixed
+     * with a bucket derived from the hash of the string.
+     *
+     * <p>Use this rather than {@link #newRecordId(String)} for ids which are created in (near) sequential order,
+     * e.g. counters or timestamps, so that the records are spread over all regions of the record table rather
+     * than all being written to the last one. The downside is that the records can not be scanned in the
+     * order of their ids. The bucket is not visible in the string representation, which is "SALTED." followed
+     * by the given string.</p>
+     */
+    RecordId newSaltedRecordId(String userProvidedId);
+
     /**
      * Creates a RecordId based on the provided byte array.
      *
@@ -35,7 +35,7 @@ public interface RecordId {
      *
      * <pre>{record id type}.{master record id}</pre>
      *
-     * <p>Where the record id type is UUID or USER. For example:
+     * <p>Where the record id type is UUID, USER or SALTED. For example:
      *
      * <pre>USER.2354236523</pre>
      *
@@ -60,7 +60,9 @@ public interface RecordId {
      * 
      * <pre>{identifier byte}{basic byte representation}</pre>
      *
-     * <p>Where the identifier byte is (byte)0 for a USER record id, and (byte)1 for a UUID record id.
+     * <p>Where the identifier byte is (byte)0 for a USER record id, (byte)1 for a UUID record id and (byte)2
+     * for a SALTED record id. The basic byte representation of a SALTED record id is a bucket byte, derived
+     * from the hash of the id, followed by the id as for USER record id's.
      *
      * <p>The {identifier byte} is put at the start because otherwise UUIDs
      * and USER-id's would be intermingled, preventing meaningful scan operations
@@ -69,7 +71,7 @@ public interface RecordId {
      * <p>In case there are variant properties:</p>
      *
      * <ul>
-     *     <li>For USER record id's, a zero byte (NULL character) is appended to mark the end
+     *     <li>For USER and SALTED record id's, a zero byte (NULL character) is appended to mark the end
      *     of the master record id. By consequence, use of the (non-printable) zero byte is
      *     forbidden in the master record id. The reason for choosing the zero byte is because
      *     it sorts before any other byte: this makes that the record id's of variants and
@@ -31,6 +31,8 @@ public class RecordScan {
     private ReturnFields returnFields;
     private int caching = -1;
     private boolean cacheBlocks = true;
+    private int parallelism = 1;
+    private boolean ordered = true;
 
     /**
      * @see #setStartRecordId(RecordId)
@@ -210,4 +212,47 @@ public class RecordScan {
     public void setCacheBlocks(boolean cacheBlocks) {
         this.cacheBlocks = cacheBlocks;
     }
+
+    /**
+     * @see #setParallelism(int)
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of regions which are scanned concurrently.
+     *
+     * <p>By default this is 1, and the regions are scanned one after the other, as for a plain
+     * HBase scan. When set to a higher value, the range of the scan is split along the region
+     * boundaries, and up to this number of regions are scanned at the same time, each one reading
+     * ahead of the records which are being consumed. This is interesting for scans over a large part
+     * of the table, as these are otherwise limited to one region server at a time. The filter,
+     * return fields and caching settings apply to each of the region scans.</p>
+     *
+     * <p>See also {@link #setOrdered(boolean)}.</p>
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @see #setOrdered(boolean)
+     */
+    public boolean getOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Sets whether a parallel scan (see {@link #setParallelism(int)}) should return the records
+     * in record ID order. By default this is true.
+     *
+     * <p>When false, the records are returned as soon as any of the region scans reads them, which
+     * avoids that the scan has to wait on one slow region while the others are done.</p>
+     *
+     * <p>This setting has no effect on non-parallel scans, which always return the records in order.</p>
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
 }
@@ -365,6 +365,22 @@ public interface Repository extends Closeable {
     IdRecord readWithIds(RecordId recordId, Long version, List<SchemaId> fieldIds)
             throws RepositoryException, InterruptedException;
 
+    /**
+     * Reads the last version of a record together with the versions to which the given version tags point,
+     * typically in one read on the storage.
+     *
+     * <p>A version tag is a non-versioned field of type LONG whose value is a version number. The version tags
+     * are resolved against the last version of the record. Version tags which are not defined on the record,
+     * which point to version 0 (the non-versioned view of the record), to the last version or to a non-existing
+     * version, do not add a record to the result.
+     *
+     * @param vtagIds ids of the version tag fields, can be empty
+     * @return the last version of the record, with all fields, followed by the distinct tagged versions in
+     *         ascending version order. Use {@link Record#getVersion()} to find out which version is which.
+     */
+    List<IdRecord> readVTaggedWithIds(RecordId recordId, Set<SchemaId> vtagIds)
+            throws RepositoryException, InterruptedException;
+
     /**
      * Delete a {@link Record} from the repository.
      *
@@ -551,6 +567,31 @@ public interface Repository extends Closeable {
      */
     IdRecordScanner getScannerWithIds(RecordScan scan) throws RepositoryException, InterruptedException;
 
+    /**
+     * Counts the records matching a scan, without reading the records themselves.
+     *
+     * <p>Only the start and stop record ID and the record filter of the scan are taken into account. The
+     * scan runs server-side without returning any field values, and the regions are counted in parallel,
+     * using the parallelism of the scan (see {@link RecordScan#setParallelism(int)}), with a minimum of 4.</p>
+     *
+     * <p>This still reads all rows in the range of the scan, see {@link #estimateCount} for a faster
+     * alternative.</p>
+     */
+    long count(RecordScan scan) throws RepositoryException, InterruptedException;
+
+    /**
+     * Estimates the number of records matching a scan, by counting the records in only a sample of the
+     * regions in the range of the scan, evenly spread over the range, and extrapolating this count to
+     * all regions.
+     *
+     * <p>The estimate assumes the matching records are spread uniformly over the regions, which is usually
+     * the case for UUID-based record ID's and for scans without a record filter. When there are no more
+     * regions than the number to sample, this returns the exact count.</p>
+     *
+     * @param sampleRegions the number of regions to count
+     */
+    long estimateCount(RecordScan scan, int sampleRegions) throws RepositoryException, InterruptedException;
+
     /**
      * Returns a record builder object which can be used to compose a record object and create or update it on the
      * repository.
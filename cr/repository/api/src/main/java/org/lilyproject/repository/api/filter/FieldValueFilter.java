@@ -21,8 +21,15 @@ import org.lilyproject.repository.api.QName;
 /**
  * Filters based on the value of a record field.
  *
- * <p>Only equals and not-equals comparisons are possible. This is because the comparison happens inside
- * the HBase region servers, on the bytes-encoded field values.</p>
+ * <p>The comparison happens inside the HBase region servers, on the bytes-encoded field values. Equals and
+ * not-equals comparisons are possible for all value types. The other comparisons, ranges (see
+ * {@link #setRangeEndValue(Object)}) and prefix matches (see {@link #setMatchPrefix(boolean)}) are only
+ * possible for the value types which the region servers know how to decode: LONG, INTEGER, DOUBLE, DECIMAL,
+ * DATE, DATETIME and STRING, and LIST or PATH of these.</p>
+ *
+ * <p>For LIST and PATH fields, equals and not-equals comparisons by default compare the complete value. For
+ * the other comparisons, the field value should be a single value (of the deepest value type), and the
+ * record matches if any of the values in the list or path matches.</p>
  *
  * <p>For versioned fields, the filtering always happens based on the last version of the field values.</p>
  */
@@ -31,6 +38,9 @@ public class FieldValueFilter implements RecordFilter {
     private Object fieldValue;
     private CompareOp compareOp = CompareOp.EQUAL;
     private boolean filterIfMissing = true;
+    private boolean matchPrefix = false;
+    private Object rangeEndValue;
+    private CompareOp rangeEndCompareOp = CompareOp.LESS;
 
     public FieldValueFilter() {
     }
@@ -46,8 +56,9 @@ public class FieldValueFilter implements RecordFilter {
 
     /**
      * Constructs a filter comparing the specified field with the specified value,
-     * using the specified comparison operator. Only {@link CompareOp#EQUAL} and
-     * {@link CompareOp#NOT_EQUAL} are supported.
+     * using the specified comparison operator. Except for {@link CompareOp#EQUAL} and
+     * {@link CompareOp#NOT_EQUAL}, the value type of the field should be one of the
+     * ordered types listed in the {@link FieldValueFilter class description}.
      */
     public FieldValueFilter(QName field, CompareOp compareOp, Object fieldValue) {
         this.field = field;
@@ -96,13 +107,64 @@ public class FieldValueFilter implements RecordFilter {
     }
 
     /**
-     * Sets the comparison operator, only {@link CompareOp#EQUAL} and
-     * {@link CompareOp#NOT_EQUAL} are supported.
+     * Sets the comparison operator. Except for {@link CompareOp#EQUAL} and
+     * {@link CompareOp#NOT_EQUAL}, the value type of the field should be one of the
+     * ordered types listed in the {@link FieldValueFilter class description}.
      */
     public void setCompareOp(CompareOp compareOp) {
         this.compareOp = compareOp;
     }
 
+    /**
+     * @see #setMatchPrefix(boolean)
+     */
+    public boolean getMatchPrefix() {
+        return matchPrefix;
+    }
+
+    /**
+     * Sets whether the field value should be matched as a prefix. Only for STRING fields (or LIST
+     * or PATH of STRING), and only in combination with {@link CompareOp#EQUAL} (the value starts
+     * with the field value) or {@link CompareOp#NOT_EQUAL} (it doesn't).
+     */
+    public void setMatchPrefix(boolean matchPrefix) {
+        this.matchPrefix = matchPrefix;
+    }
+
+    /**
+     * @see #setRangeEndValue(Object)
+     */
+    public Object getRangeEndValue() {
+        return rangeEndValue;
+    }
+
+    /**
+     * Sets a second value the field should be compared with, typically the upper bound of a range,
+     * in which case the compare operator would be {@link CompareOp#GREATER} or
+     * {@link CompareOp#GREATER_OR_EQUAL}. The same value of the field should satisfy both
+     * comparisons, this matters for LIST or PATH fields.
+     *
+     * <p>Optional, null by default. Can not be combined with {@link #setMatchPrefix(boolean)}.</p>
+     */
+    public void setRangeEndValue(Object rangeEndValue) {
+        this.rangeEndValue = rangeEndValue;
+    }
+
+    /**
+     * @see #setRangeEndCompareOp(CompareOp)
+     */
+    public CompareOp getRangeEndCompareOp() {
+        return rangeEndCompareOp;
+    }
+
+    /**
+     * Sets the comparison operator for the {@link #setRangeEndValue range end value}, by default
+     * {@link CompareOp#LESS}.
+     */
+    public void setRangeEndCompareOp(CompareOp rangeEndCompareOp) {
+        this.rangeEndCompareOp = rangeEndCompareOp;
+    }
+
     /**
      * Set whether the record should be filtered if the record does not have the field.
      * 
@@ -32,7 +32,8 @@ public class IdGeneratorImpl implements IdGenerator {
 
     protected static enum IdType {
         USER((byte) 0, new UserRecordIdFactory()),
-        UUID((byte) 1, new UUIDRecordIdFactory());
+        UUID((byte) 1, new UUIDRecordIdFactory()),
+        SALTED((byte) 2, new SaltedRecordIdFactory());
 
         private final byte identifierByte;
         private final RecordIdFactory factory;
@@ -91,6 +92,13 @@ public class IdGeneratorImpl implements IdGenerator {
         return newRecordId(newRecordId(userProvidedId), variantProperties);
     }
 
+    @Override
+    public RecordId newSaltedRecordId(String userProvidedId) {
+        ArgumentValidator.notNull(userProvidedId, "userProvidedId");
+        checkIdString(userProvidedId, "record id");
+        return new SaltedRecordId(userProvidedId, this);
+    }
+
     @Override
     public RecordId fromBytes(byte[] bytes) {
         return fromBytes(new DataInputImpl(bytes));
@@ -137,6 +145,16 @@ public class IdGeneratorImpl implements IdGenerator {
         return stringBuilder.toString();
     }
 
+    protected String toString(SaltedRecordId saltedRecordId) {
+        String idString = saltedRecordId.getBasicString();
+
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(IdType.SALTED.name());
+        stringBuilder.append(".");
+        stringBuilder.append(escapeReservedCharacters(idString));
+        return stringBuilder.toString();
+    }
+
     // The variantproperties are appended to the string of the master record
     protected String toString(VariantRecordId variantRecordId) {
         StringBuilder stringBuilder = new StringBuilder();
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.impl.id;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.MurmurHash;
+import org.lilyproject.bytes.api.DataOutput;
+import org.lilyproject.bytes.impl.DataOutputImpl;
+import org.lilyproject.repository.api.RecordId;
+
+/**
+ * A user-provided record id whose byte representation starts with a bucket byte, derived from the hash of the
+ * id. Records with sequential ids are hereby spread over the whole key space of the record table, rather than
+ * all being written to the region which holds the end of the table.
+ *
+ * <p>The bucket is not part of the string representation, it is recomputed when parsing the string.</p>
+ */
+public class SaltedRecordId implements RecordId {
+
+    protected final String basicRecordIdString;
+    protected byte[] recordIdBytes;
+    protected String recordIdString;
+    private final IdGeneratorImpl idGenerator;
+
+    private static final SortedMap<String, String> EMPTY_SORTED_MAP =
+            Collections.unmodifiableSortedMap(new TreeMap<String, String>());
+
+    protected SaltedRecordId(String recordId, IdGeneratorImpl idGenerator) {
+        IdGeneratorImpl.checkIdString(recordId, "record id");
+        this.basicRecordIdString = recordId;
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Returns the bucket (0-255) in which the record id with the given string falls.
+     */
+    public static int getBucket(String recordId) {
+        return MurmurHash.getInstance().hash(Bytes.toBytes(recordId)) & 0xFF;
+    }
+
+    @Override
+    public byte[] toBytes() {
+        if (recordIdBytes == null) {
+            DataOutput dataOutput = new DataOutputImpl();
+            writeBytes(dataOutput);
+            recordIdBytes = dataOutput.toByteArray();
+        }
+        return recordIdBytes;
+    }
+
+    @Override
+    public void writeBytes(DataOutput dataOutput) {
+        if (recordIdBytes == null) {
+            dataOutput.writeByte(IdGeneratorImpl.IdType.SALTED.getIdentifierByte());
+            dataOutput.writeByte((byte)getBucket(basicRecordIdString));
+            dataOutput.writeUTF(basicRecordIdString, false);
+        } else {
+            dataOutput.writeBytes(recordIdBytes);
+        }
+    }
+
+    public String toString() {
+        if (recordIdString == null) {
+            recordIdString = idGenerator.toString(this);
+        }
+        return recordIdString;
+    }
+
+    protected String getBasicString() {
+        return basicRecordIdString;
+    }
+
+    @Override
+    public SortedMap<String, String> getVariantProperties() {
+        return EMPTY_SORTED_MAP;
+    }
+
+    @Override
+    public int hashCode() {
+        return basicRecordIdString.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        SaltedRecordId other = (SaltedRecordId) obj;
+        return basicRecordIdString.equals(other.basicRecordIdString);
+    }
+
+    @Override
+    public RecordId getMaster() {
+        return this;
+    }
+
+    @Override
+    public boolean isMaster() {
+        return true;
+    }
+}
@@ -91,7 +91,7 @@ public class VariantRecordId implements RecordId {
             masterRecordId.writeBytes(dataOutput);
 
             // TODO this needs to be designed some other way
-            if (masterRecordId instanceof UserRecordId) {
+            if (masterRecordId instanceof UserRecordId || masterRecordId instanceof SaltedRecordId) {
                 dataOutput.writeByte((byte) 0);
             }
 
@@ -24,9 +24,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
 import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
@@ -34,8 +39,10 @@ import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.CompareFilter;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.lilyproject.hbaseext.SeekHintFilterList;
 import org.lilyproject.repository.api.Blob;
 import org.lilyproject.repository.api.BlobAccess;
 import org.lilyproject.repository.api.BlobException;
@@ -74,6 +81,20 @@ public abstract class BaseRepository implements Repository {
     protected final RecordDecoder recdec;
     protected final HTableInterface recordTable;
     protected RepositoryMetrics metrics;
+
+    /**
+     * Number of cell versions read per column by {@link #readVTaggedWithIds}. Tagged versions which are older
+     * than this number of changes to some field are read separately.
+     */
+    protected static final int VTAGGED_READ_MAX_VERSIONS = 10;
+    /**
+     * Minimum number of regions counted in parallel by {@link #count(RecordScan)}.
+     */
+    private static final int COUNT_PARALLELISM = 4;
+    /**
+     * Number of rows per request when counting, if the scan does not specify it.
+     */
+    private static final int COUNT_CACHING = 1000;
     /**
      * Not all rows in the HBase record table are real records, this filter excludes non-valid
      * record rows.
@@ -203,6 +224,124 @@ public abstract class BaseRepository implements Repository {
     }
 
     private ResultScanner createHBaseResultScanner(RecordScan scan) throws RepositoryException, InterruptedException {
+        try {
+            if (scan.getParallelism() > 1) {
+                return createParallelResultScanner(scan);
+            }
+            return recordTable.getScanner(createHBaseScan(scan, false));
+        } catch (IOException e) {
+            throw new RecordException("Error creating scanner", e);
+        }
+    }
+
+    /**
+     * Creates a scanner which runs a separate scan for each region in the range of the scan.
+     */
+    private ResultScanner createParallelResultScanner(RecordScan scan)
+            throws RepositoryException, InterruptedException, IOException {
+        List<Scan> scans = createRegionScans(scan, getRegionRanges(scan), false);
+
+        // Read ahead a few batches of rows per region
+        int prefetch = scan.getCaching() > 0 ? scan.getCaching() * 2 : 100;
+        return new ParallelResultScanner(recordTable, scans, scan.getParallelism(), scan.getOrdered(), prefetch);
+    }
+
+    /**
+     * Splits the range of the scan along the region boundaries.
+     */
+    private List<byte[][]> getRegionRanges(RecordScan scan)
+            throws RepositoryException, InterruptedException, IOException {
+        Scan hbaseScan = createHBaseScan(scan, false);
+
+        HTable table = new HTable(recordTable.getConfiguration(), recordTable.getTableName());
+        byte[][] regionStartKeys;
+        try {
+            regionStartKeys = table.getStartKeys();
+        } finally {
+            table.close();
+        }
+
+        return ParallelResultScanner.splitOnRegions(hbaseScan.getStartRow(), hbaseScan.getStopRow(), regionStartKeys);
+    }
+
+    /**
+     * Creates a scan for each of the given ranges. Each of these scans gets its own instance of the filters,
+     * since some filters keep state during a scan.
+     */
+    private List<Scan> createRegionScans(RecordScan scan, List<byte[][]> ranges, boolean countOnly)
+            throws RepositoryException, InterruptedException {
+        List<Scan> scans = new ArrayList<Scan>(ranges.size());
+        for (byte[][] range : ranges) {
+            Scan regionScan = createHBaseScan(scan, countOnly);
+            regionScan.setStartRow(range[0]);
+            regionScan.setStopRow(range[1]);
+            scans.add(regionScan);
+        }
+        return scans;
+    }
+
+    @Override
+    public long count(RecordScan scan) throws RepositoryException, InterruptedException {
+        return count(scan, -1);
+    }
+
+    @Override
+    public long estimateCount(RecordScan scan, int sampleRegions) throws RepositoryException, InterruptedException {
+        if (sampleRegions < 1) {
+            throw new IllegalArgumentException("The number of regions to sample should be at least 1, got: "
+                    + sampleRegions);
+        }
+        return count(scan, sampleRegions);
+    }
+
+    /**
+     * @param sampleRegions number of regions to count, -1 to count all regions
+     */
+    private long count(RecordScan scan, int sampleRegions) throws RepositoryException, InterruptedException {
+        ResultScanner scanner = null;
+        try {
+            List<byte[][]> ranges = getRegionRanges(scan);
+
+            List<byte[][]> countedRanges = ranges;
+            if (sampleRegions > 0 && ranges.size() > sampleRegions) {
+                countedRanges = new ArrayList<byte[][]>(sampleRegions);
+                for (int i = 0; i < sampleRegions; i++) {
+                    countedRanges.add(ranges.get(i * ranges.size() / sampleRegions));
+                }
+            }
+
+            int caching = scan.getCaching() > 0 ? scan.getCaching() : COUNT_CACHING;
+            List<Scan> scans = createRegionScans(scan, countedRanges, true);
+            for (Scan countScan : scans) {
+                countScan.setCaching(caching);
+            }
+
+            scanner = new ParallelResultScanner(recordTable, scans, Math.max(scan.getParallelism(),
+                    COUNT_PARALLELISM), false, caching * 2);
+            long count = 0;
+            Result[] results;
+            while ((results = scanner.next(caching)).length > 0) {
+                count += results.length;
+            }
+
+            if (countedRanges.size() < ranges.size()) {
+                count = Math.round((double)count * ranges.size() / countedRanges.size());
+            }
+            return count;
+        } catch (IOException e) {
+            throw new RecordException("Error counting records", e);
+        } finally {
+            if (scanner != null) {
+                scanner.close();
+            }
+        }
+    }
+
+    /**
+     * @param countOnly if true, the scan only serves to count the rows: it reads as few columns as possible, and
+     *                  returns only the keys of the cells
+     */
+    private Scan createHBaseScan(RecordScan scan, boolean countOnly) throws RepositoryException, InterruptedException {
         Scan hbaseScan = new Scan();
 
         hbaseScan.setMaxVersions(1);
@@ -219,8 +358,9 @@ public abstract class BaseRepository implements Repository {
             hbaseScan.setStopRow(scan.getStopRecordId().toBytes());
         }
 
-        // Filters
-        FilterList filterList = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+        // Filters. The list passes on seek hints, such as those of LilyRecordVariantFilter, which a plain
+        // FilterList would ignore.
+        FilterList filterList = new SeekHintFilterList(FilterList.Operator.MUST_PASS_ALL);
 
         // filter out deleted records
         filterList.addFilter(REAL_RECORDS_FILTER);
@@ -231,6 +371,11 @@ public abstract class BaseRepository implements Repository {
             filterList.addFilter(filter);
         }
 
+        if (countOnly) {
+            // Added last, since it strips the values of the cells, which the other filters might need
+            filterList.addFilter(new KeyOnlyFilter());
+        }
+
         hbaseScan.setFilter(filterList);
 
         hbaseScan.setCaching(scan.getCaching());
@@ -238,7 +383,15 @@ public abstract class BaseRepository implements Repository {
         hbaseScan.setCacheBlocks(scan.getCacheBlocks());
 
         ReturnFields returnFields = scan.getReturnFields();
-        if (returnFields != null && returnFields.getType() != ReturnFields.Type.ALL) {
+        if (countOnly) {
+            if (scan.getRecordFilter() == null) {
+                // the deleted flag is all the real records filter needs
+                hbaseScan.addColumn(RecordCf.DATA.bytes, RecordColumn.DELETED.bytes);
+            } else {
+                // we don't know which columns the record filter needs
+                hbaseScan.addFamily(RecordCf.DATA.bytes);
+            }
+        } else if (returnFields != null && returnFields.getType() != ReturnFields.Type.ALL) {
             RecordDecoder.addSystemColumnsToScan(hbaseScan);
             switch (returnFields.getType()) {
                 case ENUM:
@@ -257,13 +410,7 @@ public abstract class BaseRepository implements Repository {
             hbaseScan.addFamily(RecordCf.DATA.bytes);
         }
 
-        ResultScanner hbaseScanner;
-        try {
-            hbaseScanner = recordTable.getScanner(hbaseScan);
-        } catch (IOException e) {
-            throw new RecordException("Error creating scanner", e);
-        }
-        return hbaseScanner;
+        return hbaseScan;
     }
 
     private static List<HBaseRecordFilterFactory> FILTER_FACTORIES;
@@ -359,6 +506,78 @@ public abstract class BaseRepository implements Repository {
         }
     }
 
+    public List<IdRecord> readVTaggedWithIds(RecordId recordId, Set<SchemaId> vtagIds)
+            throws RepositoryException, InterruptedException {
+        long before = System.currentTimeMillis();
+        try {
+            ArgumentValidator.notNull(recordId, "recordId");
+            ArgumentValidator.notNull(vtagIds, "vtagIds");
+
+            FieldTypes fieldTypes = typeManager.getFieldTypesSnapshot();
+
+            // Read a number of cell versions of every column, so that versions other than the last one can be
+            // decoded from the same result, in the same way as readVersions does.
+            Result result = getRow(recordId, null, VTAGGED_READ_MAX_VERSIONS, null);
+
+            Long latestVersion = recdec.getLatestVersion(result);
+            IdRecord latest = recdec.decodeRecordWithIds(recordId, latestVersion, result, fieldTypes);
+
+            List<IdRecord> records = new ArrayList<IdRecord>(vtagIds.size() + 1);
+            records.add(latest);
+
+            if (latestVersion == null) {
+                // Only non-versioned fields, vtags can only point to version 0
+                return records;
+            }
+
+            SortedSet<Long> versions = new TreeSet<Long>();
+            for (SchemaId vtagId : vtagIds) {
+                if (latest.hasField(vtagId)) {
+                    Object version = latest.getField(vtagId);
+                    if (version instanceof Long && (Long)version > 0 && (Long)version < latestVersion) {
+                        versions.add((Long)version);
+                    }
+                }
+            }
+
+            for (Long version : versions) {
+                if (containsVersion(result, version)) {
+                    records.add(recdec.decodeRecordWithIds(recordId, version, result, fieldTypes));
+                } else {
+                    // Some column changed more often than the number of cell versions we read since this
+                    // version, fall back to a separate read
+                    Result versionResult = getRow(recordId, version, 1, null);
+                    records.add(recdec.decodeRecordWithIds(recordId, version, versionResult, fieldTypes));
+                }
+            }
+
+            return records;
+        } finally {
+            if (metrics != null)
+                metrics.report(Action.READ, System.currentTimeMillis() - before);
+        }
+    }
+
+    /**
+     * Checks if the result, read with {@link #VTAGGED_READ_MAX_VERSIONS}, contains the cells needed to decode the
+     * given version: for a column of which all requested cell versions were returned, the cell applying
+     * to the version might not be among them.
+     */
+    private boolean containsVersion(Result result, long version) {
+        NavigableMap<byte[], NavigableMap<Long, byte[]>> columns = result.getMap().get(RecordCf.DATA.bytes);
+        if (columns == null) {
+            return true;
+        }
+
+        for (NavigableMap<Long, byte[]> cells : columns.values()) {
+            // The cells are sorted from new to old, the last key is the oldest timestamp
+            if (cells.size() >= VTAGGED_READ_MAX_VERSIONS && cells.lastKey() > version) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private List<FieldType> getFieldTypesFromIds(List<SchemaId> fieldIds, FieldTypes fieldTypes)
             throws TypeException, InterruptedException {
         List<FieldType> fields = null;
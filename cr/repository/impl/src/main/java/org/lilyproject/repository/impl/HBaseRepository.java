@@ -445,7 +445,8 @@ public class HBaseRepository extends BaseRepository {
     private void putRowWithWalProcessing(RecordId recordId, RowLock rowLock, Put put, RecordEvent recordEvent)
             throws InterruptedException, RowLogException, IOException, RecordException {
         RowLogMessage walMessage;
-        walMessage = wal.putMessage(recordId.toBytes(), null, recordEvent.toJsonBytes(), put);
+        recordEvent.setWriteTimestamp(System.currentTimeMillis());
+        walMessage = wal.putMessage(recordId.toBytes(), null, recordEvent.toBytes(), put);
         if (!rowLocker.put(put, rowLock)) {
             throw new RecordException("Invalid or expired lock trying to put record '" + recordId + "' on HBase table");
         }
@@ -953,8 +954,9 @@ public class HBaseRepository extends BaseRepository {
             }
 
             recordEvent.setAttributes(attributes);
+            recordEvent.setWriteTimestamp(System.currentTimeMillis());
 
-            RowLogMessage walMessage = wal.putMessage(recordId.toBytes(), null, recordEvent.toJsonBytes(), put);
+            RowLogMessage walMessage = wal.putMessage(recordId.toBytes(), null, recordEvent.toBytes(), put);
             if (!rowLocker.put(put, rowLock)) {
                 throw new RecordException("Exception occurred while deleting record '" + recordId + "' on HBase table");
             }
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.lilyproject.util.concurrent.CustomThreadFactory;
+
+/**
+ * A ResultScanner which runs a number of scans (typically one per region, see {@link #splitOnRegions}) at the
+ * same time, and returns their results as one scan.
+ *
+ * <p>Each scan reads ahead into its own bounded queue. In ordered mode, the results of the scans are returned
+ * one scan after the other, so if the scans are given in key order, the results are too. In unordered mode,
+ * the results are returned in the order in which they are read.</p>
+ *
+ * <p>The scans run on a thread pool of the given size, owned by this scanner, which is stopped by
+ * {@link #close()}. If one of the scans fails, the scanner is closed and each further call to next()
+ * throws the error of that scan.</p>
+ */
+public class ParallelResultScanner implements ResultScanner {
+    private final HTableInterface table;
+    private final boolean ordered;
+    private final ExecutorService executor;
+    private final List<BlockingQueue<Object>> queues = new ArrayList<BlockingQueue<Object>>();
+    private final int partitionCount;
+
+    /** The queue being read (ordered mode), or the number of scans which have ended (unordered mode). */
+    private int current;
+    private volatile boolean closed;
+
+    /** The error of a failed scan, which is thrown again by any further call to next(). */
+    private IOException failure;
+
+    /** Marks the end of the results of one scan. */
+    private static final Object END = new Object();
+
+    /**
+     * @param scans       the scans to run, in key order
+     * @param parallelism maximum number of scans running at the same time
+     * @param prefetch    maximum number of results read ahead by each scan
+     */
+    public ParallelResultScanner(HTableInterface table, List<Scan> scans, int parallelism, boolean ordered,
+            int prefetch) {
+        this.table = table;
+        this.ordered = ordered;
+        this.partitionCount = scans.size();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, scans.size())),
+                new CustomThreadFactory("parallel-record-scan", null, true));
+
+        BlockingQueue<Object> sharedQueue = ordered ? null : new ArrayBlockingQueue<Object>(prefetch * parallelism);
+        for (Scan scan : scans) {
+            BlockingQueue<Object> queue = ordered ? new ArrayBlockingQueue<Object>(prefetch) : sharedQueue;
+            queues.add(queue);
+            // The tasks are started in order, so that in ordered mode the first scans are read first
+            executor.submit(new ScanTask(scan, queue));
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Splits the range [startRow, stopRow[ into the parts which fall in the different regions.
+     *
+     * @param startRow         start of the range, empty for the start of the table
+     * @param stopRow          end of the range (exclusive), empty for the end of the table
+     * @param regionStartKeys  the start keys of the regions of the table
+     * @return list of [start, stop[ ranges, in key order
+     */
+    public static List<byte[][]> splitOnRegions(byte[] startRow, byte[] stopRow, byte[][] regionStartKeys) {
+        List<byte[][]> ranges = new ArrayList<byte[][]>();
+        byte[] rangeStart = startRow;
+        for (byte[] regionStart : regionStartKeys) {
+            if (regionStart.length == 0 || Bytes.compareTo(regionStart, rangeStart) <= 0) {
+                continue;
+            }
+            if (stopRow.length > 0 && Bytes.compareTo(regionStart, stopRow) >= 0) {
+                break;
+            }
+            ranges.add(new byte[][] {rangeStart, regionStart});
+            rangeStart = regionStart;
+        }
+        ranges.add(new byte[][] {rangeStart, stopRow});
+        return ranges;
+    }
+
+    @Override
+    public Result next() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("This scanner has been closed.");
+        }
+
+        while (current < partitionCount) {
+            BlockingQueue<Object> queue = queues.get(ordered ? current : 0);
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the next scan result.");
+            }
+
+            if (item == END) {
+                current++;
+            } else if (item instanceof IOException) {
+                // The failed scan will not deliver END, so the other scans are stopped and the scanner is unusable
+                failure = (IOException)item;
+                close();
+                throw failure;
+            } else {
+                return (Result)item;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Result[] next(int nbRows) throws IOException {
+        List<Result> results = new ArrayList<Result>(nbRows);
+        for (int i = 0; i < nbRows; i++) {
+            Result result = next();
+            if (result == null) {
+                break;
+            }
+            results.add(result);
+        }
+        return results.toArray(new Result[results.size()]);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+    }
+
+    @Override
+    public Iterator<Result> iterator() {
+        return new Iterator<Result>() {
+            private Result next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = ParallelResultScanner.this.next();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Result next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Result result = next;
+                next = null;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private class ScanTask implements Runnable {
+        private final Scan scan;
+        private final BlockingQueue<Object> queue;
+
+        ScanTask(Scan scan, BlockingQueue<Object> queue) {
+            this.scan = scan;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            Object last = END;
+            ResultScanner scanner = null;
+            try {
+                scanner = table.getScanner(scan);
+                Result result;
+                while (!closed && (result = scanner.next()) != null) {
+                    if (!put(result)) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                last = e;
+            } catch (Throwable t) {
+                last = new IOException("Error scanning from row " + Bytes.toStringBinary(scan.getStartRow())
+                        + " to row " + Bytes.toStringBinary(scan.getStopRow() == null ?
+                        HConstants.EMPTY_END_ROW : scan.getStopRow()), t);
+            } finally {
+                if (scanner != null) {
+                    scanner.close();
+                }
+                put(last);
+            }
+        }
+
+        /**
+         * Returns false if the scanner was closed in the meantime.
+         */
+        private boolean put(Object item) {
+            try {
+                while (!closed) {
+                    if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.lilyproject.bytes.api.DataOutput;
 import org.lilyproject.bytes.impl.DataOutputImpl;
+import org.lilyproject.hbaseext.TypedValueComparator;
 import org.lilyproject.repository.api.*;
 import org.lilyproject.repository.api.filter.FieldValueFilter;
 import org.lilyproject.repository.api.filter.RecordFilter;
@@ -54,11 +55,14 @@ public class HBaseFieldValueFilter implements HBaseRecordFilterFactory {
         }
 
         CompareOp compareOp = filter.getCompareOp() != null ? filter.getCompareOp() : CompareOp.EQUAL;
-        if (compareOp != CompareOp.EQUAL && compareOp != CompareOp.NOT_EQUAL) {
-            throw new IllegalArgumentException("FieldValueFilter does not support this compare operator: " + compareOp);
-        }
 
         FieldType fieldType = repository.getTypeManager().getFieldTypeByName(filter.getField());
+
+        if (filter.getMatchPrefix() || filter.getRangeEndValue() != null
+                || (compareOp != CompareOp.EQUAL && compareOp != CompareOp.NOT_EQUAL)) {
+            return createTypedFilter(filter, fieldType, compareOp);
+        }
+
         DataOutput dataOutput = new DataOutputImpl();
         dataOutput.writeByte(EXISTS_FLAG);
         fieldType.getValueType().write(filter.getFieldValue(), dataOutput, new IdentityRecordStack());
@@ -81,4 +85,81 @@ public class HBaseFieldValueFilter implements HBaseRecordFilterFactory {
             return hbaseFilter;
         }
     }
+
+    /**
+     * Creates a filter which compares the values in value order, which requires the region server to decode them.
+     */
+    private Filter createTypedFilter(FieldValueFilter filter, FieldType fieldType, CompareOp compareOp)
+            throws RepositoryException, InterruptedException {
+        if (filter.getMatchPrefix() && filter.getRangeEndValue() != null) {
+            throw new IllegalArgumentException("FieldValueFilter can not combine a prefix match with a range end value");
+        }
+
+        ValueType valueType = fieldType.getValueType();
+        ValueType deepestValueType = valueType.getDeepestValueType();
+        byte type = getComparatorType(deepestValueType, filter, compareOp);
+
+        byte[] operand = encodeOperand(deepestValueType, filter.getFieldValue(), "field value");
+        CompareFilter.CompareOp rangeEndCompareOp = null;
+        byte[] rangeEndOperand = null;
+        if (filter.getRangeEndValue() != null) {
+            CompareOp rangeEndOp = filter.getRangeEndCompareOp() != null ? filter.getRangeEndCompareOp() : CompareOp.LESS;
+            rangeEndCompareOp = HBaseRecordFilterUtil.translateCompareOp(rangeEndOp);
+            rangeEndOperand = encodeOperand(deepestValueType, filter.getRangeEndValue(), "range end value");
+        }
+
+        TypedValueComparator comparator = new TypedValueComparator(type, valueType.getNestingLevel(),
+                HBaseRecordFilterUtil.translateCompareOp(compareOp), operand, rangeEndCompareOp, rangeEndOperand,
+                filter.getMatchPrefix(), !filter.getFilterIfMissing());
+
+        // The comparator evaluates the complete condition, it returns 0 when the value matches
+        SingleColumnValueFilter hbaseFilter = new SingleColumnValueFilter(RecordCf.DATA.bytes,
+                ((FieldTypeImpl)fieldType).getQualifier(), CompareFilter.CompareOp.EQUAL, comparator);
+        hbaseFilter.setFilterIfMissing(filter.getFilterIfMissing());
+        return hbaseFilter;
+    }
+
+    private byte getComparatorType(ValueType valueType, FieldValueFilter filter, CompareOp compareOp) {
+        String name = valueType.getBaseName();
+        if (name.equals("STRING")) {
+            return TypedValueComparator.TYPE_STRING;
+        }
+
+        if (filter.getMatchPrefix()) {
+            throw new IllegalArgumentException("FieldValueFilter only supports prefix matches on STRING values, not on "
+                    + name);
+        }
+
+        if (name.equals("LONG")) {
+            return TypedValueComparator.TYPE_LONG;
+        } else if (name.equals("INTEGER")) {
+            return TypedValueComparator.TYPE_INTEGER;
+        } else if (name.equals("DOUBLE")) {
+            return TypedValueComparator.TYPE_DOUBLE;
+        } else if (name.equals("DECIMAL")) {
+            return TypedValueComparator.TYPE_DECIMAL;
+        } else if (name.equals("DATE")) {
+            return TypedValueComparator.TYPE_DATE;
+        } else if (name.equals("DATETIME")) {
+            return TypedValueComparator.TYPE_DATETIME;
+        } else {
+            throw new IllegalArgumentException("FieldValueFilter does not support compare operator " + compareOp
+                    + (filter.getRangeEndValue() != null ? " with a range end value" : "") + " on " + name + " values");
+        }
+    }
+
+    private byte[] encodeOperand(ValueType valueType, Object value, String description)
+            throws RepositoryException, InterruptedException {
+        if (value == null) {
+            throw new IllegalArgumentException("FieldValueFilter " + description + " should not be null");
+        }
+        if (!valueType.getType().isInstance(value)) {
+            throw new IllegalArgumentException("FieldValueFilter " + description + " should be a "
+                    + valueType.getType().getName() + " for comparing " + valueType.getName() + " values, got: "
+                    + value.getClass().getName());
+        }
+        DataOutput dataOutput = new DataOutputImpl();
+        valueType.write(value, dataOutput, new IdentityRecordStack());
+        return dataOutput.toByteArray();
+    }
 }
@@ -17,6 +17,7 @@ package org.lilyproject.repository.impl.filter;
 
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
+import org.lilyproject.hbaseext.SeekHintFilterList;
 import org.lilyproject.repository.api.Repository;
 import org.lilyproject.repository.api.RepositoryException;
 import org.lilyproject.repository.api.filter.RecordFilter;
@@ -37,7 +38,7 @@ public class HBaseRecordFilterList implements HBaseRecordFilterFactory {
         FilterList.Operator hbaseOp = filter.getOperator() == RecordFilterList.Operator.MUST_PASS_ONE ?
                 FilterList.Operator.MUST_PASS_ONE : FilterList.Operator.MUST_PASS_ALL;
 
-        FilterList hbaseFilter = new FilterList(hbaseOp);
+        FilterList hbaseFilter = new SeekHintFilterList(hbaseOp);
 
         for (RecordFilter subFilter : filter.getFilters()) {
             hbaseFilter.addFilter(factory.createHBaseFilter(subFilter, repository, factory));
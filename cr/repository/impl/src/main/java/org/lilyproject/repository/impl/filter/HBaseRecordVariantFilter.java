@@ -15,11 +15,7 @@
  */
 package org.lilyproject.repository.impl.filter;
 
-import java.util.Arrays;
-
 import org.apache.hadoop.hbase.filter.Filter;
-import org.apache.hadoop.hbase.filter.FilterList;
-import org.apache.hadoop.hbase.filter.PrefixFilter;
 import org.lilyproject.hbaseext.LilyRecordVariantFilter;
 import org.lilyproject.repository.api.Repository;
 import org.lilyproject.repository.api.RepositoryException;
@@ -46,9 +42,10 @@ public class HBaseRecordVariantFilter implements HBaseRecordFilterFactory {
             throw new IllegalArgumentException("VariantProperties should be specified in RecordVariantFilter");
         }
 
-        return new FilterList(Arrays.<Filter>asList(
-                new PrefixFilter(filter.getMasterRecordId().getMaster().toBytes()),
-                new LilyRecordVariantFilter(filter.getVariantProperties())));
+        // The variant filter limits the scan to the variants of the master record itself, there is no need to
+        // combine it with a prefix filter (which would also hide its seek hints from the scanner).
+        return new LilyRecordVariantFilter(filter.getMasterRecordId().getMaster().toBytes(),
+                filter.getVariantProperties());
 
     }
 }
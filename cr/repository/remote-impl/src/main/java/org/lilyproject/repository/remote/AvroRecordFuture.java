@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.avro.AvroRemoteException;
+import org.apache.avro.ipc.Callback;
+import org.lilyproject.avro.AvroConverter;
+import org.lilyproject.avro.AvroGenericException;
+import org.lilyproject.avro.AvroRepositoryException;
+import org.lilyproject.repository.api.IORecordException;
+import org.lilyproject.repository.api.Record;
+
+/**
+ * Future for an Avro call returning a serialized record, which is at the same time the Avro callback
+ * that receives the response.
+ *
+ * <p>The response is only deserialized when {@link #get()} is called, so that this work happens in the
+ * caller's thread rather than on the Netty I/O thread which delivers the response.
+ */
+class AvroRecordFuture implements Future<Record>, Callback<ByteBuffer> {
+    private final AvroConverter converter;
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private volatile ByteBuffer result;
+    private volatile Throwable error;
+
+    AvroRecordFuture(AvroConverter converter) {
+        this.converter = converter;
+    }
+
+    @Override
+    public void handleResult(ByteBuffer result) {
+        this.result = result;
+        latch.countDown();
+    }
+
+    @Override
+    public void handleError(Throwable error) {
+        this.error = error;
+        latch.countDown();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        // Once sent, a request can not be withdrawn
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+    @Override
+    public Record get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return getResult();
+    }
+
+    @Override
+    public Record get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+            TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    private Record getResult() throws InterruptedException, ExecutionException {
+        if (error != null) {
+            throw new ExecutionException(convertError(error));
+        }
+
+        try {
+            return result == null ? null : converter.convertRecord(result);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ExecutionException(e);
+        }
+    }
+
+    /**
+     * Converts Avro-level errors to the exceptions the synchronous {@link RemoteRepository} would throw.
+     */
+    private Throwable convertError(Throwable throwable) {
+        if (throwable instanceof AvroRepositoryException) {
+            return converter.convert((AvroRepositoryException) throwable);
+        } else if (throwable instanceof AvroGenericException) {
+            return converter.convert((AvroGenericException) throwable);
+        } else if (throwable instanceof AvroRemoteException) {
+            if (throwable.getCause() instanceof IOException) {
+                return new IORecordException(throwable.getCause());
+            }
+            return converter.convert((AvroRemoteException) throwable);
+        } else if (throwable instanceof IOException) {
+            return new IORecordException(throwable);
+        }
+        return throwable;
+    }
+}
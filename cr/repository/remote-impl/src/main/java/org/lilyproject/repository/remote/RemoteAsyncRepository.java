@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.remote;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.ipc.Transceiver;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.lilyproject.avro.AvroConverter;
+import org.lilyproject.avro.AvroLily;
+import org.lilyproject.avro.NettyTransceiverFactory;
+import org.lilyproject.repository.api.AsyncRepository;
+import org.lilyproject.repository.api.MutationCondition;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.Repository;
+import org.lilyproject.util.concurrent.CustomThreadFactory;
+import org.lilyproject.util.io.Closer;
+
+/**
+ * {@link AsyncRepository} talking to one Lily server.
+ *
+ * <p>Mutations are sent using Avro's callback-based requests over a small pool of Netty connections. The
+ * Netty transceiver multiplexes requests, so each connection can have many requests in flight at the same
+ * time (pipelining); the pool of connections spreads the (de)serialization work over multiple I/O threads.
+ *
+ * <p>Reads are, as in {@link RemoteRepository}, executed directly on HBase. They are run on a bounded
+ * thread pool: when all threads are busy and the queue is full, the caller runs the read itself, which
+ * provides natural back-pressure.
+ */
+public class RemoteAsyncRepository implements AsyncRepository {
+    private final Repository repository;
+    private final AvroConverter converter;
+    private final List<Transceiver> transceivers = new ArrayList<Transceiver>();
+    private final List<AvroLily.Callback> proxies = new ArrayList<AvroLily.Callback>();
+    private final AtomicInteger nextProxy = new AtomicInteger();
+    private final ThreadPoolExecutor readExecutor;
+
+    public static final int DEFAULT_CONNECTIONS = 4;
+    public static final int DEFAULT_READ_THREADS = 10;
+
+    /**
+     * @param repository the synchronous repository for the same server, used for reads. Its type manager should
+     *                   be the one set on the converter.
+     */
+    public RemoteAsyncRepository(InetSocketAddress address, AvroConverter converter, Repository repository)
+            throws IOException {
+        this(address, converter, repository, DEFAULT_CONNECTIONS, DEFAULT_READ_THREADS);
+    }
+
+    public RemoteAsyncRepository(InetSocketAddress address, AvroConverter converter, Repository repository,
+                                 int connections, int readThreads) throws IOException {
+        if (connections < 1) {
+            throw new IllegalArgumentException("Number of connections should be at least 1, got: " + connections);
+        }
+
+        this.repository = repository;
+        this.converter = converter;
+
+        try {
+            for (int i = 0; i < connections; i++) {
+                Transceiver transceiver = NettyTransceiverFactory.create(address);
+                transceivers.add(transceiver);
+                proxies.add(SpecificRequestor.getClient(AvroLily.Callback.class, transceiver));
+            }
+        } catch (IOException e) {
+            closeTransceivers();
+            throw e;
+        }
+
+        readExecutor = new ThreadPoolExecutor(readThreads, readThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(readThreads * 10),
+                new CustomThreadFactory("lily-async-read", null, true),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    public void close() throws IOException {
+        readExecutor.shutdownNow();
+        closeTransceivers();
+    }
+
+    private void closeTransceivers() {
+        for (Transceiver transceiver : transceivers) {
+            Closer.close(transceiver);
+        }
+        transceivers.clear();
+        proxies.clear();
+    }
+
+    @Override
+    public Repository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Selects the connection to use for the next request, round-robin.
+     */
+    private AvroLily.Callback nextProxy() {
+        int pos = (nextProxy.getAndIncrement() & Integer.MAX_VALUE) % proxies.size();
+        return proxies.get(pos);
+    }
+
+    @Override
+    public Future<Record> createAsync(Record record) {
+        AvroRecordFuture future = new AvroRecordFuture(converter);
+        try {
+            nextProxy().create(converter.convert(record), future);
+        } catch (Throwable t) {
+            future.handleError(t);
+        }
+        return future;
+    }
+
+    @Override
+    public Future<Record> updateAsync(Record record) {
+        return updateAsync(record, false, true, null);
+    }
+
+    @Override
+    public Future<Record> updateAsync(Record record, boolean updateVersion, boolean useLatestRecordType,
+                                      List<MutationCondition> conditions) {
+        AvroRecordFuture future = new AvroRecordFuture(converter);
+        try {
+            nextProxy().update(converter.convert(record), updateVersion, useLatestRecordType,
+                    converter.convert(record, conditions), future);
+        } catch (Throwable t) {
+            future.handleError(t);
+        }
+        return future;
+    }
+
+    @Override
+    public Future<Record> createOrUpdateAsync(Record record, boolean useLatestRecordType) {
+        AvroRecordFuture future = new AvroRecordFuture(converter);
+        try {
+            nextProxy().createOrUpdate(converter.convert(record), useLatestRecordType, future);
+        } catch (Throwable t) {
+            future.handleError(t);
+        }
+        return future;
+    }
+
+    @Override
+    public Future<Record> deleteAsync(RecordId recordId, List<MutationCondition> conditions) {
+        AvroRecordFuture future = new AvroRecordFuture(converter);
+        try {
+            nextProxy().delete(converter.convert(recordId), converter.convert(null, conditions), future);
+        } catch (Throwable t) {
+            future.handleError(t);
+        }
+        return future;
+    }
+
+    @Override
+    public Future<Record> readAsync(final RecordId recordId, final QName... fieldNames) {
+        return readExecutor.submit(new Callable<Record>() {
+            @Override
+            public Record call() throws Exception {
+                return repository.read(recordId, fieldNames);
+            }
+        });
+    }
+}
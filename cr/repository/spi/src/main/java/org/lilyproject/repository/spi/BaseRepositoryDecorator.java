@@ -164,6 +164,12 @@ public class BaseRepositoryDecorator implements RepositoryDecorator {
         return delegate.readWithIds(recordId, version, fieldIds);
     }
 
+    @Override
+    public List<IdRecord> readVTaggedWithIds(RecordId recordId, Set<SchemaId> vtagIds)
+            throws RepositoryException, InterruptedException {
+        return delegate.readVTaggedWithIds(recordId, vtagIds);
+    }
+
     @Override
     public void delete(RecordId recordId) throws RepositoryException, InterruptedException {
         delegate.delete(recordId);
@@ -262,6 +268,16 @@ public class BaseRepositoryDecorator implements RepositoryDecorator {
         return delegate.getScannerWithIds(scan);
     }
 
+    @Override
+    public long count(RecordScan scan) throws RepositoryException, InterruptedException {
+        return delegate.count(scan);
+    }
+
+    @Override
+    public long estimateCount(RecordScan scan, int sampleRegions) throws RepositoryException, InterruptedException {
+        return delegate.estimateCount(scan, sampleRegions);
+    }
+
     @Override
     public void close() throws IOException {
         delegate.close();
@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -599,6 +600,54 @@ public abstract class AbstractRepositoryTest {
         assertTrue(records.contains(record1));
     }
 
+    @Test
+    public void testReadVTaggedWithIds() throws Exception {
+        FieldType vtag1 = typeManager.createFieldType(typeManager.newFieldType(typeManager.getValueType("LONG"),
+                new QName(namespace, "readVTaggedVtag1"), Scope.NON_VERSIONED));
+        FieldType vtag2 = typeManager.createFieldType(typeManager.newFieldType(typeManager.getValueType("LONG"),
+                new QName(namespace, "readVTaggedVtag2"), Scope.NON_VERSIONED));
+        RecordType recordType = typeManager.newRecordType(new QName(namespace, "readVTaggedRT"));
+        recordType.addFieldTypeEntry(fieldType2.getId(), false);
+        recordType.addFieldTypeEntry(vtag1.getId(), false);
+        recordType.addFieldTypeEntry(vtag2.getId(), false);
+        recordType = typeManager.createRecordType(recordType);
+
+        Record record = repository.newRecord();
+        record.setRecordType(recordType.getName());
+        record.setField(fieldType2.getName(), 1);
+        record = repository.create(record);
+
+        // Create more versions than the number of cell versions read in one go
+        for (int i = 2; i <= 15; i++) {
+            record.setField(fieldType2.getName(), i);
+            record = repository.update(record);
+        }
+
+        record.setField(vtag1.getName(), 12L);
+        record.setField(vtag2.getName(), 2L);
+        repository.update(record);
+
+        Set<SchemaId> vtags = new HashSet<SchemaId>(Arrays.asList(vtag1.getId(), vtag2.getId()));
+        List<IdRecord> records = repository.readVTaggedWithIds(record.getId(), vtags);
+        assertEquals(3, records.size());
+
+        assertEquals(Long.valueOf(15), records.get(0).getVersion());
+        assertEquals(12L, records.get(0).getField(vtag1.getName()));
+
+        // The recent version is decoded from the same read, the old one is read separately
+        assertEquals(Long.valueOf(2), records.get(1).getVersion());
+        assertEquals(2, records.get(1).getField(fieldType2.getName()));
+        assertEquals(Long.valueOf(12), records.get(2).getVersion());
+        assertEquals(12, records.get(2).getField(fieldType2.getName()));
+        assertEquals(repository.readWithIds(record.getId(), 12L, null), records.get(2));
+
+        // A vtag pointing to the last version or to a non-existing version does not add a record
+        record.setField(vtag1.getName(), 15L);
+        record.setField(vtag2.getName(), 20L);
+        repository.update(record);
+        assertEquals(1, repository.readVTaggedWithIds(record.getId(), vtags).size());
+    }
+
     @Test
     public void testReadNonExistingRecord() throws Exception {
         try {
@@ -2191,6 +2240,71 @@ public abstract class AbstractRepositoryTest {
         assertTrue("Found at least 26 records", i >= 26);
     }
 
+    @Test
+    public void testParallelScanner() throws Exception {
+        List<RecordId> ids = new ArrayList<RecordId>();
+        for (int i = 'A'; i <= 'Z'; i++) {
+            RecordId id = idGenerator.newRecordId("ParallelScan" + (char) i);
+            ids.add(id);
+            repository.recordBuilder()
+                    .id(id)
+                    .recordType(recordType1.getName())
+                    .field(fieldType1.getName(), "value " + (char) i)
+                    .create();
+        }
+
+        RecordScan scan = new RecordScan();
+        scan.setStartRecordId(idGenerator.newRecordId("ParallelScanA"));
+        scan.setStopRecordId(idGenerator.newRecordId("ParallelScanZ"));
+        scan.setParallelism(4);
+        scan.setCaching(5);
+
+        // ordered
+        List<RecordId> found = new ArrayList<RecordId>();
+        RecordScanner scanner = repository.getScanner(scan);
+        for (Record record : scanner) {
+            found.add(record.getId());
+        }
+        scanner.close();
+        assertEquals(ids.subList(0, 25), found);
+
+        // unordered
+        scan.setOrdered(false);
+        Set<RecordId> foundSet = new HashSet<RecordId>();
+        IdRecordScanner idScanner = repository.getScannerWithIds(scan);
+        IdRecord idRecord;
+        while ((idRecord = idScanner.next()) != null) {
+            foundSet.add(idRecord.getId());
+        }
+        idScanner.close();
+        assertEquals(new HashSet<RecordId>(ids.subList(0, 25)), foundSet);
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        for (int i = 'A'; i <= 'Z'; i++) {
+            repository.recordBuilder()
+                    .id(idGenerator.newRecordId("CountTest" + (char) i))
+                    .recordType(recordType1.getName())
+                    .field(fieldType1.getName(), "value " + (char) i)
+                    .create();
+        }
+        repository.delete(idGenerator.newRecordId("CountTestB"));
+
+        RecordScan scan = new RecordScan();
+        scan.setStartRecordId(idGenerator.newRecordId("CountTestA"));
+        scan.setStopRecordId(idGenerator.newRecordId("CountTestZ"));
+        assertEquals(24L, repository.count(scan));
+
+        // with a record filter
+        scan.setRecordFilter(new RecordIdPrefixFilter(idGenerator.newRecordId("CountTestC")));
+        assertEquals(1L, repository.count(scan));
+
+        // all regions sampled: exact count
+        scan.setRecordFilter(null);
+        assertEquals(24L, repository.estimateCount(scan, 10));
+    }
+
     @Test
     public void testScannerWithIdRecords() throws Exception {
         RecordId id = idGenerator.newRecordId();
@@ -2329,6 +2443,97 @@ public abstract class AbstractRepositoryTest {
         assertEquals(3, countResults(repository.getScanner(scan)));
     }
 
+    @Test
+    public void testTypedFieldValueFilter() throws Exception {
+        FieldType longField =
+                typeManager.createFieldType("LONG", new QName("TypedFieldValueFilter", "long"), Scope.NON_VERSIONED);
+        FieldType listField = typeManager.createFieldType("LIST<STRING>",
+                new QName("TypedFieldValueFilter", "list"), Scope.NON_VERSIONED);
+        RecordType rt = typeManager.recordTypeBuilder()
+                .defaultNamespace("TypedFieldValueFilter")
+                .name("rt1")
+                .fieldEntry().use(longField).add()
+                .fieldEntry().use(listField).add()
+                .create();
+
+        // Negative values and values > 255 would not be in value order when comparing the bytes
+        long[] values = new long[] {-1000L, -5L, 3L, 99L, 100L, 256L};
+        for (long value : values) {
+            repository.recordBuilder()
+                    .recordType(rt.getName())
+                    .field(longField.getName(), value)
+                    .field(listField.getName(), Arrays.asList("value" + value, "Foo" + value))
+                    .create();
+        }
+
+        RecordScan scan = new RecordScan();
+        scan.setRecordFilter(new FieldValueFilter(longField.getName(), CompareOp.LESS, 100L));
+        assertEquals(4, countResults(repository.getScanner(scan)));
+
+        scan = new RecordScan();
+        scan.setRecordFilter(new FieldValueFilter(longField.getName(), CompareOp.GREATER_OR_EQUAL, 100L));
+        assertEquals(2, countResults(repository.getScanner(scan)));
+
+        // Range
+        scan = new RecordScan();
+        FieldValueFilter rangeFilter = new FieldValueFilter(longField.getName(), CompareOp.GREATER, -5L);
+        rangeFilter.setRangeEndValue(100L);
+        rangeFilter.setRangeEndCompareOp(CompareOp.LESS_OR_EQUAL);
+        scan.setRecordFilter(rangeFilter);
+        assertEquals(3, countResults(repository.getScanner(scan)));
+
+        // Prefix, on any of the values of a multi-value field
+        scan = new RecordScan();
+        FieldValueFilter prefixFilter = new FieldValueFilter(listField.getName(), "Foo1");
+        prefixFilter.setMatchPrefix(true);
+        scan.setRecordFilter(prefixFilter);
+        assertEquals(1, countResults(repository.getScanner(scan)));
+
+        scan = new RecordScan();
+        prefixFilter = new FieldValueFilter(listField.getName(), "value-");
+        prefixFilter.setMatchPrefix(true);
+        scan.setRecordFilter(prefixFilter);
+        assertEquals(2, countResults(repository.getScanner(scan)));
+
+        // Equals on a multi-value field still compares the complete value
+        scan = new RecordScan();
+        scan.setRecordFilter(new FieldValueFilter(listField.getName(), Arrays.asList("value3", "Foo3")));
+        assertEquals(1, countResults(repository.getScanner(scan)));
+    }
+
+    @Test
+    public void testTypedFieldValueFilterOnDouble() throws Exception {
+        FieldType doubleField = typeManager.createFieldType("DOUBLE",
+                new QName("TypedFieldValueFilter", "double"), Scope.NON_VERSIONED);
+        RecordType rt = typeManager.recordTypeBuilder()
+                .defaultNamespace("TypedFieldValueFilter")
+                .name("rt2")
+                .fieldEntry().use(doubleField).add()
+                .create();
+
+        double[] values = new double[] {-2.5d, -0.1d, 0d, 1.5d, 2.25d, 1000d};
+        for (double value : values) {
+            repository.recordBuilder()
+                    .recordType(rt.getName())
+                    .field(doubleField.getName(), value)
+                    .create();
+        }
+
+        RecordScan scan = new RecordScan();
+        scan.setRecordFilter(new FieldValueFilter(doubleField.getName(), CompareOp.LESS, 0d));
+        assertEquals(2, countResults(repository.getScanner(scan)));
+
+        // Range
+        scan = new RecordScan();
+        FieldValueFilter rangeFilter = new FieldValueFilter(doubleField.getName(), CompareOp.GREATER_OR_EQUAL, -0.1d);
+        rangeFilter.setRangeEndValue(2.25d);
+        scan.setRecordFilter(rangeFilter);
+        assertEquals(3, countResults(repository.getScanner(scan)));
+
+        rangeFilter.setRangeEndCompareOp(CompareOp.LESS_OR_EQUAL);
+        assertEquals(4, countResults(repository.getScanner(scan)));
+    }
+
     @Test
     public void testFilterList() throws Exception {
         FieldType f1 = typeManager.createFieldType("STRING", new QName("FilterList", "field1"), Scope.NON_VERSIONED);
@@ -2824,4 +3029,62 @@ public abstract class AbstractRepositoryTest {
             scanner.close();
         }
     }
+
+    @Test
+    public void testVariantScansSkipNonMatchingVariants() throws Exception {
+        // the id of the second master starts with the id of the first one
+        final RecordId master = idGenerator.newRecordId("VariantScanSkipTest");
+        final RecordId otherMaster = idGenerator.newRecordId("VariantScanSkipTest2");
+        final RecordId uuidMaster = idGenerator.newRecordId();
+
+        List<RecordId> ids = new ArrayList<RecordId>();
+        for (RecordId masterId : Arrays.asList(master, otherMaster, uuidMaster)) {
+            ids.add(masterId);
+            ids.add(idGenerator.newRecordId(masterId, ImmutableMap.of("a", "1")));
+            ids.add(idGenerator.newRecordId(masterId, ImmutableMap.of("a", "2")));
+            ids.add(idGenerator.newRecordId(masterId, ImmutableMap.of("a", "2", "b", "1")));
+            ids.add(idGenerator.newRecordId(masterId, ImmutableMap.of("b", "1")));
+        }
+        for (RecordId id : ids) {
+            repository.recordBuilder()
+                    .id(id)
+                    .recordType(recordType1.getName())
+                    .field(fieldType1.getName(), "foo")
+                    .create();
+        }
+
+        {
+            // master scan, should not return the master which has a longer id
+            final RecordScan scan = new RecordScan();
+            scan.setRecordFilter(new RecordVariantFilter(master, new HashMap<String, String>()));
+            RecordScanner scanner = repository.getScanner(scan);
+            assertEquals(master, scanner.next().getId());
+            assertNull(scanner.next());
+            scanner.close();
+        }
+
+        for (RecordId masterId : Arrays.asList(master, otherMaster, uuidMaster)) {
+            final HashMap<String, String> variantProperties = new HashMap<String, String>();
+            variantProperties.put("a", "2");
+
+            final RecordScan scan = new RecordScan();
+            scan.setRecordFilter(new RecordVariantFilter(masterId, variantProperties));
+            RecordScanner scanner = repository.getScanner(scan);
+            assertEquals(idGenerator.newRecordId(masterId, ImmutableMap.of("a", "2")), scanner.next().getId());
+            assertNull(scanner.next());
+            scanner.close();
+        }
+
+        for (RecordId masterId : Arrays.asList(master, otherMaster, uuidMaster)) {
+            final HashMap<String, String> variantProperties = new HashMap<String, String>();
+            variantProperties.put("b", null);
+
+            final RecordScan scan = new RecordScan();
+            scan.setRecordFilter(new RecordVariantFilter(masterId, variantProperties));
+            RecordScanner scanner = repository.getScanner(scan);
+            assertEquals(idGenerator.newRecordId(masterId, ImmutableMap.of("b", "1")), scanner.next().getId());
+            assertNull(scanner.next());
+            scanner.close();
+        }
+    }
 }
@@ -17,13 +17,16 @@ package org.lilyproject.repository.impl.test;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.junit.Test;
 import org.lilyproject.repository.api.IdGenerator;
 import org.lilyproject.repository.api.RecordId;
 import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+import org.lilyproject.repository.impl.id.SaltedRecordId;
 
 import static org.junit.Assert.*;
 
@@ -89,6 +92,51 @@ public class IdGeneratorImplTest {
         assertArrayEquals(idBytes, idGenerator.fromString(idString).toBytes());
     }
 
+    @Test
+    public void testSALTED() {
+        IdGenerator idGenerator = new IdGeneratorImpl();
+        RecordId recordId = idGenerator.newSaltedRecordId("aUserId");
+        String saltedRecordIdString = "SALTED.aUserId";
+
+        assertTrue(recordId.isMaster());
+
+        // The bucket is not part of the string representation
+        assertEquals(saltedRecordIdString, recordId.toString());
+        assertEquals(recordId, idGenerator.fromString(saltedRecordIdString));
+        assertFalse(recordId.equals(idGenerator.newRecordId("aUserId")));
+
+        // Test bytes representation: type byte, bucket byte, id
+        byte[] bytes = recordId.toBytes();
+        assertEquals(2, bytes[0]);
+        assertEquals((byte)SaltedRecordId.getBucket("aUserId"), bytes[1]);
+        assertEquals(recordId, idGenerator.fromBytes(bytes));
+        assertArrayEquals(bytes, idGenerator.fromString(saltedRecordIdString).toBytes());
+
+        // Sequential ids end up in different buckets
+        Set<Integer> buckets = new HashSet<Integer>();
+        for (int i = 0; i < 100; i++) {
+            buckets.add(SaltedRecordId.getBucket(String.valueOf(i)));
+        }
+        assertTrue(buckets.size() > 50);
+
+        // Variants, also of an id in bucket 0 (the bucket byte should not be taken for the variant separator)
+        String zeroBucketId = null;
+        for (int i = 0; zeroBucketId == null; i++) {
+            if (SaltedRecordId.getBucket(String.valueOf(i)) == 0) {
+                zeroBucketId = String.valueOf(i);
+            }
+        }
+        Map<String, String> variantProperties = Collections.singletonMap("lang", "en");
+        for (String id : new String[] {"aUserId", zeroBucketId}) {
+            RecordId master = idGenerator.newSaltedRecordId(id);
+            RecordId variant = idGenerator.newRecordId(master, variantProperties);
+            assertEquals(master, idGenerator.fromBytes(master.toBytes()));
+            assertEquals(variant, idGenerator.fromBytes(variant.toBytes()));
+            assertEquals(master, idGenerator.fromBytes(variant.toBytes()).getMaster());
+            assertEquals(variant, idGenerator.fromString("SALTED." + id + ".lang=en"));
+        }
+    }
+
     @Test
     public void testUUIDWithVariantSingleProperty() {
         IdGenerator idGenerator = new IdGeneratorImpl();
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.impl.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.lilyproject.hbaseext.LilyRecordVariantFilter;
+import org.lilyproject.hbaseext.SeekHintFilterList;
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+import org.lilyproject.util.hbase.LilyHBaseSchema.RecordCf;
+import org.lilyproject.util.hbase.LilyHBaseSchema.RecordColumn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the seek hints of {@link LilyRecordVariantFilter} make the scan skip the non-matching rows, also
+ * when the filter is combined with other filters, by running the filters over row keys the way a region scanner
+ * does.
+ */
+public class LilyRecordVariantFilterTest {
+    private final IdGenerator idGenerator = new IdGeneratorImpl();
+
+    @Test
+    public void testSeekHintsSkipRows() throws Exception {
+        RecordId before = idGenerator.newRecordId("a");
+        RecordId master = idGenerator.newRecordId("b");
+        RecordId after = idGenerator.newRecordId("c");
+
+        TreeSet<byte[]> rows = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+        for (RecordId id : new RecordId[] {before, master, after}) {
+            rows.add(id.toBytes());
+            for (int i = 0; i < 100; i++) {
+                // the variant property names are encoded with their length first, so "abc" sorts before "lang" and
+                // "zzzzz" after it
+                rows.add(idGenerator.newRecordId(id, ImmutableMap.of("abc", String.valueOf(i))).toBytes());
+                rows.add(idGenerator.newRecordId(id, ImmutableMap.of("zzzzz", String.valueOf(i))).toBytes());
+            }
+        }
+        RecordId en = idGenerator.newRecordId(master, ImmutableMap.of("lang", "en"));
+        RecordId fr = idGenerator.newRecordId(master, ImmutableMap.of("lang", "fr"));
+        rows.add(en.toBytes());
+        rows.add(fr.toBytes());
+        rows.add(idGenerator.newRecordId(master, ImmutableMap.of("lang", "nl", "abc", "1")).toBytes());
+
+        List<byte[]> expected = new ArrayList<byte[]>();
+        expected.add(en.toBytes());
+        expected.add(fr.toBytes());
+
+        // A plain FilterList drops the hints: the results are correct, but all rows up to the end of the master's
+        // variants are read
+        FilterList plainList = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+        plainList.addFilter(newRealRecordsFilter());
+        plainList.addFilter(new LilyRecordVariantFilter(master.toBytes(), Collections.singletonMap("lang",
+                (String)null)));
+        ScanOutcome plain = scan(plainList, rows);
+        assertRows(expected, plain.results);
+        assertTrue("Rows read: " + plain.rowsRead, plain.rowsRead > 300);
+
+        // With the hints passed on, only the first row, the master, the two matches and the first row after them
+        // (which ends the scan) are read
+        FilterList hintList = new SeekHintFilterList(FilterList.Operator.MUST_PASS_ALL);
+        hintList.addFilter(newRealRecordsFilter());
+        hintList.addFilter(new LilyRecordVariantFilter(master.toBytes(), Collections.singletonMap("lang",
+                (String)null)));
+        ScanOutcome hinted = scan(hintList, rows);
+        assertRows(expected, hinted.results);
+        assertEquals(5, hinted.rowsRead);
+    }
+
+    @Test
+    public void testSeekHintsWithoutMaster() throws Exception {
+        TreeSet<byte[]> rows = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+        List<byte[]> expected = new ArrayList<byte[]>();
+        for (int m = 0; m < 10; m++) {
+            RecordId master = idGenerator.newRecordId();
+            rows.add(master.toBytes());
+            for (int i = 0; i < 20; i++) {
+                rows.add(idGenerator.newRecordId(master, ImmutableMap.of("abc", String.valueOf(i))).toBytes());
+            }
+            RecordId match = idGenerator.newRecordId(master, ImmutableMap.of("lang", "en"));
+            rows.add(match.toBytes());
+            expected.add(match.toBytes());
+        }
+        Collections.sort(expected, Bytes.BYTES_COMPARATOR);
+
+        FilterList hintList = new SeekHintFilterList(FilterList.Operator.MUST_PASS_ALL);
+        hintList.addFilter(newRealRecordsFilter());
+        hintList.addFilter(new LilyRecordVariantFilter(ImmutableMap.of("lang", "en")));
+        ScanOutcome hinted = scan(hintList, rows);
+        assertRows(expected, hinted.results);
+        // per master: the master row, which hints to the matching variant, and that variant, which hints to the
+        // next master
+        assertEquals(20, hinted.rowsRead);
+    }
+
+    private static Filter newRealRecordsFilter() {
+        SingleColumnValueFilter filter = new SingleColumnValueFilter(RecordCf.DATA.bytes, RecordColumn.DELETED.bytes,
+                CompareFilter.CompareOp.NOT_EQUAL, Bytes.toBytes(true));
+        filter.setFilterIfMissing(true);
+        return filter;
+    }
+
+    private static class ScanOutcome {
+        List<byte[]> results = new ArrayList<byte[]>();
+        int rowsRead;
+    }
+
+    /**
+     * Runs the filter over the rows (each consisting of the deleted flag of a live record), following the seek
+     * hints, as the region scanner does.
+     */
+    private static ScanOutcome scan(Filter filter, TreeSet<byte[]> rows) {
+        ScanOutcome outcome = new ScanOutcome();
+        byte[] row = rows.isEmpty() ? null : rows.first();
+        while (row != null && !filter.filterAllRemaining()) {
+            outcome.rowsRead++;
+            filter.reset();
+            byte[] next = rows.higher(row);
+            if (!filter.filterRowKey(row, 0, row.length)) {
+                KeyValue kv = new KeyValue(row, RecordCf.DATA.bytes, RecordColumn.DELETED.bytes, Bytes.toBytes(false));
+                Filter.ReturnCode code = filter.filterKeyValue(kv);
+                if (code == Filter.ReturnCode.SEEK_NEXT_USING_HINT) {
+                    byte[] hint = filter.getNextKeyHint(kv).getRow();
+                    assertTrue("seek hints should go forward", Bytes.compareTo(hint, row) > 0);
+                    next = rows.ceiling(hint);
+                } else if (code == Filter.ReturnCode.INCLUDE && !filter.filterRow()) {
+                    outcome.results.add(row);
+                }
+            }
+            row = next;
+        }
+        return outcome;
+    }
+
+    private static void assertRows(List<byte[]> expected, List<byte[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(Bytes.toStringBinary(expected.get(i)), Bytes.toStringBinary(actual.get(i)));
+        }
+    }
+}
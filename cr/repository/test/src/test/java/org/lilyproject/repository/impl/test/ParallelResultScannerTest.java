@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.repository.impl.test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.lilyproject.repository.impl.ParallelResultScanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ParallelResultScannerTest {
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[][] REGIONS = {EMPTY, Bytes.toBytes("d"), Bytes.toBytes("m"), Bytes.toBytes("t")};
+
+    @Test
+    public void testSplitFullTable() {
+        List<byte[][]> ranges = ParallelResultScanner.splitOnRegions(EMPTY, EMPTY, REGIONS);
+        assertEquals(4, ranges.size());
+        assertRange("", "d", ranges.get(0));
+        assertRange("d", "m", ranges.get(1));
+        assertRange("m", "t", ranges.get(2));
+        assertRange("t", "", ranges.get(3));
+    }
+
+    @Test
+    public void testSplitPartOfTable() {
+        List<byte[][]> ranges = ParallelResultScanner.splitOnRegions(Bytes.toBytes("f"), Bytes.toBytes("p"), REGIONS);
+        assertEquals(2, ranges.size());
+        assertRange("f", "m", ranges.get(0));
+        assertRange("m", "p", ranges.get(1));
+
+        // range starting on a region boundary and stopping on the next one
+        ranges = ParallelResultScanner.splitOnRegions(Bytes.toBytes("d"), Bytes.toBytes("m"), REGIONS);
+        assertEquals(1, ranges.size());
+        assertRange("d", "m", ranges.get(0));
+
+        // range within one region
+        ranges = ParallelResultScanner.splitOnRegions(Bytes.toBytes("u"), EMPTY, REGIONS);
+        assertEquals(1, ranges.size());
+        assertRange("u", "", ranges.get(0));
+    }
+
+    /**
+     * A failing scan must not leave the scanner blocked: the error is thrown, also on further calls.
+     */
+    @Test
+    public void testFailingScan() throws Exception {
+        for (boolean ordered : new boolean[] {true, false}) {
+            List<Scan> scans = new ArrayList<Scan>();
+            scans.add(new Scan(EMPTY, Bytes.toBytes("d")));
+            scans.add(new Scan(Bytes.toBytes("d"), Bytes.toBytes("m")));
+            scans.add(new Scan(Bytes.toBytes("m"), EMPTY));
+
+            // The scan of the middle region fails
+            ParallelResultScanner scanner = new ParallelResultScanner(newTable(Bytes.toBytes("d")), scans, 3, ordered,
+                    10);
+
+            IOException failure = null;
+            try {
+                while (scanner.next() != null) {
+                    // continue
+                }
+                fail("Expected the failure of the second scan to be thrown.");
+            } catch (IOException e) {
+                failure = e;
+            }
+            assertNotNull(failure);
+
+            try {
+                scanner.next();
+                fail("Expected the failure to be thrown again.");
+            } catch (IOException e) {
+                assertSame(failure, e);
+            }
+        }
+    }
+
+    /**
+     * Creates a table of which each scan returns one row, except for the scan starting at failingStartRow,
+     * which fails.
+     */
+    private HTableInterface newTable(final byte[] failingStartRow) {
+        return (HTableInterface)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] {HTableInterface.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (!method.getName().equals("getScanner")) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        Scan scan = (Scan)args[0];
+                        if (Bytes.equals(scan.getStartRow(), failingStartRow)) {
+                            throw new IOException("Failure scanning " + Bytes.toString(failingStartRow));
+                        }
+                        return newScanner(scan.getStartRow());
+                    }
+                });
+    }
+
+    private ResultScanner newScanner(final byte[] row) {
+        return (ResultScanner)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] {ResultScanner.class}, new InvocationHandler() {
+                    private boolean done;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("close")) {
+                            return null;
+                        } else if (method.getName().equals("next") && method.getParameterTypes().length == 0) {
+                            if (done) {
+                                return null;
+                            }
+                            done = true;
+                            KeyValue kv = new KeyValue(row, Bytes.toBytes("f"), Bytes.toBytes("q"), Bytes.toBytes("v"));
+                            return new Result(new KeyValue[] {kv});
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private void assertRange(String start, String stop, byte[][] range) {
+        assertEquals(start, Bytes.toString(range[0]));
+        assertEquals(stop, Bytes.toString(range[1]));
+    }
+}
@@ -21,12 +21,13 @@ import org.apache.hadoop.hbase.client.HBaseAdmin;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class HBaseMetricsPlugin implements MetricsPlugin {
     private HBaseMetrics hbaseMetrics;
     private HBaseAdmin hbaseAdmin;
     private boolean useJmx;
-    private long lastRequestCountReport;
+    private final AtomicLong lastRequestCountReport = new AtomicLong();
 
     public HBaseMetricsPlugin(HBaseMetrics hbaseMetrics, HBaseAdmin hbaseAdmin, boolean useJmx) throws MasterNotRunningException {
         this.hbaseAdmin = hbaseAdmin;
@@ -51,8 +52,9 @@ public class HBaseMetricsPlugin implements MetricsPlugin {
         try {
             long now = System.currentTimeMillis();
             // the 3000 is the default value of hbase.regionserver.msginterval
-            if (now - lastRequestCountReport > 3000) {
-                lastRequestCountReport = now;
+            long last = lastRequestCountReport.get();
+            // increment is called concurrently, only one thread should do the report
+            if (now - last > 3000 && lastRequestCountReport.compareAndSet(last, now)) {
                 hbaseMetrics.reportRequestCountMetric(metrics);
             }
         } catch (Throwable t) {
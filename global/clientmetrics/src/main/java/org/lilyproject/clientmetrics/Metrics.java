@@ -15,10 +15,16 @@
  */
 package org.lilyproject.clientmetrics;
 
+import org.HdrHistogram.DoubleHistogram;
+import org.HdrHistogram.DoubleRecorder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 /**
@@ -32,6 +38,12 @@ import java.util.regex.Pattern;
  * yourself, it is also possible to collect some system/HBase metrics at the end of each interval. These
  * are retrieved via HBaseAdmin & JMX. See {@link HBaseMetricsPlugin}.
  *
+ * <p>Recording a value does not take any lock: each metric records into an HdrHistogram
+ * {@link DoubleRecorder}, of which the reporting thread takes a snapshot at the end of each interval. The
+ * reports are printed by a background thread, which is started upon the first recorded value. Since values
+ * are kept in histograms, the reported values (including the percentiles) have a precision of three
+ * significant digits.
+ *
  * <p>If afterwards you'd like some charts of the metrics, check out
  * {@link org.lilyproject.clientmetrics.postproc.MetricsReportTool}.
  *
@@ -39,20 +51,24 @@ import java.util.regex.Pattern;
  * be parsed using {@link org.lilyproject.clientmetrics.postproc.MetricsParser}.
  */
 public class Metrics {
-    private Map<String, Metric> metrics = new TreeMap<String, Metric>();
-    private int intervalDuration = 1000 * 30;
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+    private volatile int intervalDuration = 1000 * 30;
     private DateTime intervalStartedAt;
     private DateTime startedAt;
     private PrintStream reportStream;
     private MetricsPlugin plugin;
-    private boolean inReport;
+    private volatile boolean started;
+    private Thread reporter;
     private int threadCount = 1;
     private Table table;
     private boolean inHeader;
+    private final Log log = LogFactory.getLog(getClass());
     private boolean inFooter;
 
     private static final Pattern NAME_PATTERN = Pattern.compile("\\w+");
 
+    private static final int SIGNIFICANT_DIGITS = 3;
+
     public Metrics() {
         this(System.out, null);
     }
@@ -70,6 +86,9 @@ public class Metrics {
         table.addColumn(-1, "Op count", "d");
         table.addColumn(-1, "Average", "f");
         table.addColumn(-1, "Median", "f");
+        table.addColumn(-1, "95th pct", "f");
+        table.addColumn(-1, "99th pct", "f");
+        table.addColumn(-1, "99.9th pct", "f");
         table.addColumn(-1, "Minimum", "f");
         table.addColumn(-1, "Maximum", "f");
         table.addColumn(-1, "Alltime ops", "d");
@@ -85,10 +104,17 @@ public class Metrics {
         this.intervalDuration = duration;
     }
 
-    public void finish() {
+    public synchronized void finish() {
         // print one last report
         printReport();
         printGlobalOpsPerSec();
+
+        // stop the reporter thread, it is restarted if values would still be recorded
+        if (reporter != null) {
+            reporter.interrupt();
+            reporter = null;
+        }
+        started = false;
     }
 
     /**
@@ -101,6 +127,7 @@ public class Metrics {
         metrics.clear();
         intervalStartedAt = null;
         startedAt = null;
+        started = false;
 
         reportStream.println("");
         reportStream.println("Metrics have been reset");
@@ -143,11 +170,11 @@ public class Metrics {
         return intervalDuration;
     }
 
-    public synchronized void increment(String name, double value) {
+    public void increment(String name, double value) {
         increment(name, null, 1, value);
     }
 
-    public synchronized void increment(String name, String type, double value) {
+    public void increment(String name, String type, double value) {
         increment(name, type, 1, value);
     }
 
@@ -159,13 +186,29 @@ public class Metrics {
      *             the same text before the @ symbol.
      * @param type optional, can be null. If specified, number of operations per second will be summarized
      *             for all metrics of the same type. The value must represent a timing in milliseconds. Only
-     *             alphanumeric characters allowed.
+     *             alphanumeric characters allowed. The type of a metric is fixed by its first recorded value.
      * @param operations the number of operations performed, usually 1, but sometimes operations are performed
      *                   in groups
      * @param value the value for the metric, such as a duration (typically in ms), an operation count, or whatever
-     *              quantity you want to keep track of such as free memory, cpu load, ...
+     *              quantity you want to keep track of such as free memory, cpu load, ... Negative values are
+     *              recorded as zero.
      */
-    public synchronized void increment(String name, String type, int operations, double value) {
+    public void increment(String name, String type, int operations, double value) {
+        if (!started) {
+            start();
+        }
+
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            metric = createMetric(name, type);
+        }
+
+        metric.add(operations, value);
+
+        plugin.afterIncrement(this);
+    }
+
+    private Metric createMetric(String name, String type) {
         if (type != null && !NAME_PATTERN.matcher(type).matches()) {
             // Being strict here, can be helpful for further reporting
             throw new IllegalArgumentException("Invalid type name, should be alphanumeric only: " + type);
@@ -176,109 +219,116 @@ public class Metrics {
             throw new IllegalArgumentException("Usage of the colon character is reserved in the metric name: " + name);
         }
 
+        Metric metric = new Metric(type);
+        Metric existing = metrics.putIfAbsent(name, metric);
+        return existing != null ? existing : metric;
+    }
+
+    private synchronized void start() {
         if (intervalStartedAt == null) {
             // it's our very first value
             intervalStartedAt = new DateTime();
             startedAt = new DateTime();
         }
 
-        if (!inReport && System.currentTimeMillis() - intervalStartedAt.getMillis() >= intervalDuration) {
-            printReport();
-            for (Metric metric : metrics.values()) {
-                metric.rollInterval();
-            }
-            intervalStartedAt = new DateTime();
-        }
-
-        Metric metric = metrics.get(name);
-        if (metric == null) {
-            metric = new Metric();
-            metric.type = type;
-            metrics.put(name, metric);
+        if (reporter == null) {
+            reporter = new Thread(new Reporter(), "Metrics reporter");
+            reporter.setDaemon(true);
+            reporter.start();
         }
 
-        metric.add(operations, value);
-
-        plugin.afterIncrement(this);
+        started = true;
+        notifyAll();
     }
 
-    public void printReport() {
+    /**
+     * Prints the report for the current interval, and starts a new interval.
+     */
+    public synchronized void printReport() {
         if (intervalStartedAt == null) {
             return;
         }
 
-        inReport = true;
-
+        // Values recorded by the plugin are still part of this interval
         plugin.beforeReport(this);
 
         long now = System.currentTimeMillis();
         long actualIntervalDuration = now - intervalStartedAt.getMillis();
 
-        table.fullSepLine();
-        table.crossColumn("Interval started at: " + intervalStartedAt + " (duration: " + (actualIntervalDuration / 1000) + "s).");
-        table.crossColumn("Measurements started at: " + startedAt + " (duration: " + formatDuration(now - startedAt.getMillis()) + ")");
+        // Take the snapshots of all metrics at once, before spending time on printing
+        Map<String, Metric> sortedMetrics = new TreeMap<String, Metric>(metrics);
+        for (Metric metric : sortedMetrics.values()) {
+            metric.rollInterval();
+        }
 
+        try {
+            table.fullSepLine();
+            table.crossColumn("Interval started at: " + intervalStartedAt + " (duration: " + (actualIntervalDuration / 1000) + "s).");
+            table.crossColumn("Measurements started at: " + startedAt + " (duration: " + formatDuration(now - startedAt.getMillis()) + ")");
 
-        List<String> extra = plugin.getExtraInfoLines();
-        for (String line : extra) {
-            table.crossColumn(line);
-        }
 
-        table.columnSepLine();
-        table.titles();
-        table.columnSepLine();
+            List<String> extra = plugin.getExtraInfoLines();
+            for (String line : extra) {
+                table.crossColumn(line);
+            }
 
-        Map<String, CountAndValue> statByType = new TreeMap<String, CountAndValue>();
+            table.columnSepLine();
+            table.titles();
+            table.columnSepLine();
 
-        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
-            String name = entry.getKey();
-            Metric metric = entry.getValue();
+            Map<String, CountAndValue> statByType = new TreeMap<String, CountAndValue>();
 
-            if (metric.type != null) {
-                name = metric.type + ":" + name;
-                CountAndValue stat = statByType.get(metric.type);
-                if (stat == null) {
-                    stat = new CountAndValue();
-                    statByType.put(metric.type, stat);
+            for (Map.Entry<String, Metric> entry : sortedMetrics.entrySet()) {
+                String name = entry.getKey();
+                Metric metric = entry.getValue();
+
+                if (metric.type != null) {
+                    name = metric.type + ":" + name;
+                    CountAndValue stat = statByType.get(metric.type);
+                    if (stat == null) {
+                        stat = new CountAndValue();
+                        statByType.put(metric.type, stat);
+                    }
+
+                    stat.count += metric.getIntervalCount();
+                    stat.value += metric.getIntervalValue();
                 }
 
-                stat.count += metric.getIntervalCount();
-                stat.value += metric.getIntervalValue();
+                table.columns(name, metric.getIntervalCount(), metric.getIntervalAverage(),
+                        metric.getIntervalPercentile(50), metric.getIntervalPercentile(95),
+                        metric.getIntervalPercentile(99), metric.getIntervalPercentile(99.9), metric.getIntervalMin(),
+                        metric.getIntervalMax(), metric.getAllTimeCount(), metric.getAllTimeAverage());
             }
-
-            table.columns(name, metric.getIntervalCount(), metric.getIntervalAverage(), metric.getIntervalMedian(),
-                    metric.getIntervalMin(), metric.getIntervalMax(), metric.getAllTimeCount(),
-                    metric.getAllTimeAverage());
-        }
-        table.columnSepLine();
+            table.columnSepLine();
 
 
-        if (statByType.size() > 0) {
-            int i = 0;
-            for (Map.Entry<String, CountAndValue> entry : statByType.entrySet()) {
-                if (entry.getValue().count == 0)
-                    continue;
+            if (statByType.size() > 0) {
+                int i = 0;
+                for (Map.Entry<String, CountAndValue> entry : statByType.entrySet()) {
+                    if (entry.getValue().count == 0)
+                        continue;
 
-                i++;
+                    i++;
 
-                // The real time spent in the operations is the time counted together from multiple threads,
-                // hence more than the actual elapsed time. E.g. in an interval of 30s, each thread runs 30s,
-                // hence with 3 threads there are 90 seconds spent. So usually the interval ops/sec will give
-                // a better picture.
-                double opsPerSec = (((double)entry.getValue().count) / (entry.getValue().value)) * 1000d;
-                double opsPerSecInt = (((double)entry.getValue().count) / ((double)actualIntervalDuration)) * 1000d;
+                    // The real time spent in the operations is the time counted together from multiple threads,
+                    // hence more than the actual elapsed time. E.g. in an interval of 30s, each thread runs 30s,
+                    // hence with 3 threads there are 90 seconds spent. So usually the interval ops/sec will give
+                    // a better picture.
+                    double opsPerSec = (((double)entry.getValue().count) / (entry.getValue().value)) * 1000d;
+                    double opsPerSecInt = (((double)entry.getValue().count) / ((double)actualIntervalDuration)) * 1000d;
 
-                table.crossColumn(String.format("%1$s ops/sec: %5$.2f real (=%3$.2fx%4$d), %2$.2f interval",
-                        entry.getKey(), opsPerSecInt, opsPerSec, threadCount, opsPerSec * ((double)threadCount)));
-            }
-            if (i > 0) {
-                table.fullSepLine();
+                    table.crossColumn(String.format("%1$s ops/sec: %5$.2f real (=%3$.2fx%4$d), %2$.2f interval",
+                            entry.getKey(), opsPerSecInt, opsPerSec, threadCount, opsPerSec * ((double)threadCount)));
+                }
+                if (i > 0) {
+                    table.fullSepLine();
+                }
             }
-        }
-
-        reportStream.flush();
 
-        inReport = false;
+            reportStream.flush();
+        } finally {
+            intervalStartedAt = new DateTime(now);
+        }
     }
 
     private void printGlobalOpsPerSec() {
@@ -335,21 +385,52 @@ public class Metrics {
         return String.format("%1$02d:%2$02d:%3$02d", hours, minutesOverflow, secondsOverflow);
     }
 
+    /**
+     * Prints the report each time an interval has passed. Holds the lock on the {@link Metrics} instance,
+     * except while waiting.
+     */
+    private class Reporter implements Runnable {
+        @Override
+        public void run() {
+            synchronized (Metrics.this) {
+                while (reporter == Thread.currentThread()) {
+                    try {
+                        if (intervalStartedAt == null) {
+                            Metrics.this.wait();
+                            continue;
+                        }
+
+                        long waitTime = intervalStartedAt.getMillis() + intervalDuration - System.currentTimeMillis();
+                        if (waitTime > 0) {
+                            Metrics.this.wait(waitTime);
+                            continue;
+                        }
+
+                        printReport();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Throwable t) {
+                        log.error("Error printing metrics report", t);
+                    }
+                }
+            }
+        }
+    }
+
     private static class Metric {
-        private List<Double> values = new ArrayList<Double>(1000);
+        final String type;
+
+        /** Records the values, concurrent calls to record don't block each other. */
+        private final DoubleRecorder recorder = new DoubleRecorder(SIGNIFICANT_DIGITS);
 
-        String type;
-        
-        int intervalCount;
-        double intervalValue;
-        double intervalMin;
-        double intervalMax;
+        /** Snapshot of the last interval, only accessed by the reporting thread. */
+        private DoubleHistogram interval;
 
-        int allTimeCount;
-        double allTimeValue;
+        private final DoubleHistogram allTime = new DoubleHistogram(SIGNIFICANT_DIGITS);
 
-        public Metric() {
-            rollInterval();
+        public Metric(String type) {
+            this.type = type;
+            this.interval = recorder.getIntervalHistogram();
         }
 
         /**
@@ -357,82 +438,62 @@ public class Metrics {
          * @param value will most often be a duration in ms, but could be other kinds of values as well.
          */
         public void add(int operations, double value) {
-            if (operations == 0)
+            if (operations <= 0)
                 return;
 
-            intervalCount += operations;
-            intervalValue += value;
-            allTimeCount += operations;
-            allTimeValue += value;
-
             double valuePerOp = value / (double)operations;
 
-            if (valuePerOp < intervalMin)
-                intervalMin = valuePerOp;
-
-            if (valuePerOp > intervalMax)
-                intervalMax = valuePerOp;
-
-            values.add(valuePerOp);
+            // the histograms can't hold negative values
+            recorder.recordValueWithCount(valuePerOp < 0 ? 0 : valuePerOp, operations);
         }
 
+        /**
+         * Takes a snapshot of the values recorded since the previous call, and adds it to the all time values.
+         */
         public void rollInterval() {
-            intervalCount = 0;
-            intervalValue = 0;
-            intervalMin = Integer.MAX_VALUE;
-            intervalMax = 0;
-            values.clear();
+            interval = recorder.getIntervalHistogram(interval);
+            allTime.add(interval);
         }
 
-        public int getIntervalCount() {
-            return intervalCount;
+        public long getIntervalCount() {
+            return interval.getTotalCount();
         }
 
         public double getIntervalValue() {
-            return intervalValue;
+            return interval.getTotalCount() == 0 ? 0 : interval.getMean() * (double)interval.getTotalCount();
         }
 
-        public int getAllTimeCount() {
-            return allTimeCount;
+        public long getAllTimeCount() {
+            return allTime.getTotalCount();
         }
 
         public double getIntervalAverage() {
-            return intervalCount == 0 ? 0 : intervalValue / (double)intervalCount;
+            return interval.getTotalCount() == 0 ? 0 : interval.getMean();
         }
 
         public double getAllTimeAverage() {
-            return allTimeCount == 0 ? 0 : allTimeValue / (double)allTimeCount;
+            return allTime.getTotalCount() == 0 ? 0 : allTime.getMean();
         }
 
         public double getAllTimeValue() {
-            return allTimeValue;
+            return allTime.getTotalCount() == 0 ? 0 : allTime.getMean() * (double)allTime.getTotalCount();
         }
 
         public double getIntervalMin() {
-            return intervalCount == 0 ? 0 : intervalMin;
+            return interval.getTotalCount() == 0 ? 0 : interval.getMinValue();
         }
 
         public double getIntervalMax() {
-            return intervalMax;
+            return interval.getTotalCount() == 0 ? 0 : interval.getMaxValue();
         }
 
-        public double getIntervalMedian() {
-            if (values.size() == 0)
-                return 0;
-
-            Collections.sort(values);
-            int middle = values.size() / 2;
-
-            if (values.size() % 2 == 1) {
-                return values.get(middle);
-            } else {
-                return (values.get(middle - 1) + values.get(middle)) / 2d;
-            }
+        public double getIntervalPercentile(double percentile) {
+            return interval.getTotalCount() == 0 ? 0 : interval.getValueAtPercentile(percentile);
         }
     }
 
     private static class CountAndValue {
-        int count;
+        long count;
         double value;
     }
 }
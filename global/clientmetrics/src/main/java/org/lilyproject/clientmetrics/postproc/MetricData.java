@@ -21,4 +21,7 @@ public class MetricData {
     public double median = -1;
     public double min = -1;
     public double max = -1;
+    public double p95 = -1;
+    public double p99 = -1;
+    public double p999 = -1;
 }
@@ -19,6 +19,9 @@ import org.joda.time.DateTime;
 import org.lilyproject.util.io.Closer;
 
 import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -109,28 +112,43 @@ public class MetricsParser {
                 // read all heading section lines
                 while ((line = reader.readLine()) != null && line.startsWith("| "));
 
-                // read the title lines (we are already positioned at the first one)
-                reader.readLine();
+                // read the title lines (we are already positioned at the first one). The titles tell us which
+                // column is where: older metrics files, like the example above, don't have the percentile columns
+                // (95th pct, 99th pct, 99.9th pct) which follow the median.
+                Map<String, Integer> columns = parseTitles(reader.readLine());
                 reader.readLine();
 
+                int countCol = getColumn(columns, "Op count");
+                int averageCol = getColumn(columns, "Average");
+                int medianCol = getColumn(columns, "Median");
+                int minCol = getColumn(columns, "Minimum");
+                int maxCol = getColumn(columns, "Maximum");
+                Integer p95Col = columns.get("95th pct");
+                Integer p99Col = columns.get("99th pct");
+                Integer p999Col = columns.get("99.9th pct");
+
                 // read the metrics
                 while ((line = reader.readLine()) != null && line.startsWith("|")) {
-                    int countColStart = line.indexOf("|", 1);
-                    int averageColStart = line.indexOf("|", countColStart + 1);
-                    int medianColStart = line.indexOf("|", averageColStart + 1);
-                    int minColStart = line.indexOf("|", medianColStart + 1);
-                    int maxColStart = line.indexOf("|", minColStart + 1);
-                    int allTimeOpsColStart = line.indexOf("|", maxColStart + 1);
+                    String[] values = splitColumns(line);
 
                     MetricData data = new MetricData();
 
-                    String metricName = line.substring(1, countColStart).trim();
-
-                    data.count = Integer.parseInt(line.substring(countColStart + 1, averageColStart).trim());
-                    data.average = Double.parseDouble(line.substring(averageColStart + 1, medianColStart).trim());
-                    data.median = Double.parseDouble(line.substring(medianColStart + 1, minColStart).trim());
-                    data.min = Double.parseDouble(line.substring(minColStart + 1, maxColStart).trim());
-                    data.max = Double.parseDouble(line.substring(maxColStart + 1, allTimeOpsColStart).trim());
+                    String metricName = values[0].trim();
+
+                    data.count = Long.parseLong(values[countCol].trim());
+                    data.average = Double.parseDouble(values[averageCol].trim());
+                    data.median = Double.parseDouble(values[medianCol].trim());
+                    data.min = Double.parseDouble(values[minCol].trim());
+                    data.max = Double.parseDouble(values[maxCol].trim());
+                    if (p95Col != null) {
+                        data.p95 = Double.parseDouble(values[p95Col].trim());
+                    }
+                    if (p99Col != null) {
+                        data.p99 = Double.parseDouble(values[p99Col].trim());
+                    }
+                    if (p999Col != null) {
+                        data.p999 = Double.parseDouble(values[p999Col].trim());
+                    }
 
                     interval.set(metricName, data);
                 }
@@ -162,6 +180,31 @@ public class MetricsParser {
         return tests;
     }
 
+    private Map<String, Integer> parseTitles(String line) {
+        String[] titles = splitColumns(line);
+        Map<String, Integer> columns = new HashMap<String, Integer>();
+        for (int i = 0; i < titles.length; i++) {
+            columns.put(titles[i].trim(), i);
+        }
+        return columns;
+    }
+
+    private int getColumn(Map<String, Integer> columns, String title) {
+        Integer column = columns.get(title);
+        if (column == null) {
+            throw new RuntimeException("Missing column in metrics table: " + title);
+        }
+        return column;
+    }
+
+    /**
+     * Splits a table line in its columns, leaving out the leading and trailing column separator.
+     */
+    private String[] splitColumns(String line) {
+        int end = line.endsWith("|") ? line.length() - 1 : line.length();
+        return line.substring(1, end).split(Pattern.quote("|"), -1);
+    }
+
     public int getCurrentLine() {
         return reader != null ? reader.currentLine : -1;
     }
@@ -47,7 +47,7 @@ public class MetricsReportTool extends BaseCliTool {
 
     private static final String STRING_QUOTE = "\"";
 
-    private static final int COLS_PER_METRIC = 5;
+    private static final int COLS_PER_METRIC = 8;
 
     private static final int HEADER_COLUMNS = 2;
 
@@ -56,6 +56,13 @@ public class MetricsReportTool extends BaseCliTool {
     private static final int COL_MED = 3;
     private static final int COL_MIN = 4;
     private static final int COL_MAX = 5;
+    private static final int COL_P95 = 6;
+    private static final int COL_P99 = 7;
+    private static final int COL_P999 = 8;
+
+    /** The columns which are plotted, by default and for the avg-only metrics. */
+    private static final int[] PLOT_COLS = new int[] {COL_AVG, COL_MED, COL_MIN, COL_P99, COL_P999};
+    private static final int[] PLOT_COLS_AVG_ONLY = new int[] {COL_AVG};
 
     // http://www.uni-hamburg.de/Wiss/FB/15/Sustainability/schneider/gnuplot/colors.htm
     private static final String[] COLORS = new String[] {
@@ -256,6 +263,12 @@ public class MetricsReportTool extends BaseCliTool {
             titleLine.append(STRING_QUOTE).append(removeGroupingPrefix(metricName)).append(" min").append(STRING_QUOTE);
             titleLine.append(SEP);
             titleLine.append(STRING_QUOTE).append(removeGroupingPrefix(metricName)).append(" max").append(STRING_QUOTE);
+            titleLine.append(SEP);
+            titleLine.append(STRING_QUOTE).append(removeGroupingPrefix(metricName)).append(" p95").append(STRING_QUOTE);
+            titleLine.append(SEP);
+            titleLine.append(STRING_QUOTE).append(removeGroupingPrefix(metricName)).append(" p99").append(STRING_QUOTE);
+            titleLine.append(SEP);
+            titleLine.append(STRING_QUOTE).append(removeGroupingPrefix(metricName)).append(" p99.9").append(STRING_QUOTE);
         }
 
         ps.println(titleLine.toString());
@@ -279,6 +292,12 @@ public class MetricsReportTool extends BaseCliTool {
                 ps.print(formatDouble(data.min));
                 ps.print(SEP);
                 ps.print(formatDouble(data.max));
+                ps.print(SEP);
+                ps.print(formatDouble(data.p95));
+                ps.print(SEP);
+                ps.print(formatDouble(data.p99));
+                ps.print(SEP);
+                ps.print(formatDouble(data.p999));
             }
 
             ps.println();
@@ -342,11 +361,8 @@ public class MetricsReportTool extends BaseCliTool {
         // if the name starts with a dash, it means the values for avg/med/min/max are (intended to be) the same
         boolean isAvgOnly = groupName.name.startsWith("-");
 
-        final int firstPlotValue = COL_AVG;
-        int lastPlotValue = COL_MIN;
-        if (isAvgOnly) {
-            lastPlotValue = COL_AVG;
-        }
+        // For metrics files without percentiles, these columns contain NaN, which gnuplot skips
+        int[] plotCols = isAvgOnly ? PLOT_COLS_AVG_ONLY : PLOT_COLS;
 
         if (test.intervals.size() > 1) {
             // Calculate trendlines: on median except for avg-only metrics
@@ -363,19 +379,17 @@ public class MetricsReportTool extends BaseCliTool {
         ps.println("set xdata time");
         ps.println("set timefmt \"%Y%m%d%H%M%S\"");
 
-        int numberOfValues = lastPlotValue - firstPlotValue + 1;
-
         StringBuilder plot = new StringBuilder();
         plot.append("plot ");
         for (int i = 0; i < metricNames.size(); i++) {
-            int colorStart = i * numberOfValues;
+            int colorStart = i * plotCols.length;
 
-            for (int c = firstPlotValue; c <= lastPlotValue; c++) {
-                if (i > 0 || c > firstPlotValue)
+            for (int c = 0; c < plotCols.length; c++) {
+                if (i > 0 || c > 0)
                     plot.append(", ");
 
-                int dataCol = (COLS_PER_METRIC * i) + HEADER_COLUMNS + c;
-                int color = colorStart + c - firstPlotValue;
+                int dataCol = (COLS_PER_METRIC * i) + HEADER_COLUMNS + plotCols[c];
+                int color = colorStart + c;
                 plot.append("'").append(groupName.fileName).append(".txt' using 1:").append(dataCol).
                         append(" with steps linecolor rgb '").append(COLORS[color % COLORS.length]).append("'");
             }
@@ -383,7 +397,7 @@ public class MetricsReportTool extends BaseCliTool {
             if (test.intervals.size() > 1) {
                 // add trendline
                 // same color as data line
-                int color = colorStart + (isAvgOnly ? COL_AVG : COL_MED) - firstPlotValue;
+                int color = colorStart + (isAvgOnly ? 0 : 1);
                 plot.append(", '").append(groupName.fileName).append(".txt' using 1:(f").append(i).append("($2))").
                         append(" with lines linewidth 1 linecolor rgb '").append(COLORS[color % COLORS.length]).append("' title '")
                         .append(removeGroupingPrefix(metricNames.get(i))).append(isAvgOnly ? " avg" : " med").append(" trend'");
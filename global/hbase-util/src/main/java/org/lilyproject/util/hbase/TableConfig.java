@@ -25,6 +25,7 @@ public class TableConfig {
     private Integer regionCount;
     private String splitKeysAsString;
     private byte[] splitKeyPrefix;
+    private boolean bucketSplits;
     private Long maxFileSize;
     private Long memStoreFlushSize;
     private Map<String, ColumnFamilyConfig> columnFamilies = new HashMap<String, ColumnFamilyConfig>();
@@ -69,6 +70,19 @@ public class TableConfig {
         this.memStoreFlushSize = memStoreFlushSize;
     }
 
+    public boolean getBucketSplits() {
+        return bucketSplits;
+    }
+
+    /**
+     * Makes that the regionCount splits are created on bucket boundaries, for row keys which consist of the
+     * splitKeyPrefix followed by a bucket byte (such as SALTED record ids, for which the prefix is \x02), rather
+     * than for random UUIDs. There are at most 256 buckets, so at most 256 regions.
+     */
+    public void setBucketSplits(boolean bucketSplits) {
+        this.bucketSplits = bucketSplits;
+    }
+
     public byte[][] getSplitKeys() {
         byte[][] splitKeys = null;
         if (splitKeysAsString != null && !splitKeysAsString.isEmpty()) {
@@ -79,6 +93,12 @@ public class TableConfig {
             }
         } else if (regionCount != null && regionCount <= 1) {
             // one region requested, no need to define splits
+        } else if (regionCount != null && bucketSplits) {
+            int count = Math.min(regionCount, 256);
+            splitKeys = new byte[count - 1][];
+            for (int i = 1; i < count; i++) {
+                splitKeys[i - 1] = Bytes.add(splitKeyPrefix, new byte[] {(byte)(i * 256 / count)});
+            }
         } else if (regionCount != null) {
             byte[] startBytes = splitKeyPrefix.length > 0 ? splitKeyPrefix : new byte[]{(byte)0};
             byte[] endBytes =  new byte[splitKeyPrefix.length + 16];
@@ -29,6 +29,10 @@ public abstract class MetricsDynamicMBeanBase implements DynamicMBean {
   private final static String MIN_TIME = "MinTime";
   private final static String MAX_TIME = "MaxTime";
   private final static String NUM_OPS = "NumOps";
+  private final static String MEDIAN = "Median";
+  private final static String PERCENTILE_95 = "95thPercentile";
+  private final static String PERCENTILE_99 = "99thPercentile";
+  private final static String MAX = "Max";
   private final static String RESET_ALL_MIN_MAX_OP = "resetAllMinMax";
   private MetricsRegistry metricsRegistry;
   private MBeanInfo mbeanInfo;
@@ -75,6 +79,12 @@ public abstract class MetricsDynamicMBeanBase implements DynamicMBean {
         metricsRateAttributeMod.put(o.getName() + MIN_TIME, o);
         metricsRateAttributeMod.put(o.getName() + MAX_TIME, o);
 
+      } else if (MetricsHistogram.class.isInstance(o)) {
+        for (String suffix : new String[] {NUM_OPS, MEDIAN, PERCENTILE_95, PERCENTILE_99, MAX}) {
+          attributesInfo.add(new MBeanAttributeInfo(o.getName() + suffix, "java.lang.Long",
+              o.getDescription(), true, false, false));
+          metricsRateAttributeMod.put(o.getName() + suffix, o);
+        }
       }  else if ( MetricsIntValue.class.isInstance(o) || MetricsTimeVaryingInt.class.isInstance(o) ) {
         attributesInfo.add(new MBeanAttributeInfo(o.getName(), "java.lang.Integer",
             o.getDescription(), true, false, false));
@@ -139,6 +149,22 @@ public abstract class MetricsDynamicMBeanBase implements DynamicMBean {
         MetricsUtil.LOG.error("Unexpected attrubute suffix");
         throw new AttributeNotFoundException();
       }
+    } else if (o instanceof MetricsHistogram) {
+      MetricsHistogram histogram = (MetricsHistogram) o;
+      if (attributeName.endsWith(NUM_OPS))
+        return histogram.getPreviousIntervalNumOps();
+      else if (attributeName.endsWith(MEDIAN))
+        return histogram.getPreviousIntervalPercentile(50);
+      else if (attributeName.endsWith(PERCENTILE_95))
+        return histogram.getPreviousIntervalPercentile(95);
+      else if (attributeName.endsWith(PERCENTILE_99))
+        return histogram.getPreviousIntervalPercentile(99);
+      else if (attributeName.endsWith(MAX))
+        return histogram.getPreviousIntervalMax();
+      else {
+        MetricsUtil.LOG.error("Unexpected attrubute suffix");
+        throw new AttributeNotFoundException();
+      }
     } else if (o instanceof MetricsNonTimeRate) {
         MetricsNonTimeRate metric = (MetricsNonTimeRate)o;
         return metric.getPreviousIntervalValue();
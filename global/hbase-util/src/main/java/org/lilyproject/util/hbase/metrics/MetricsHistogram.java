@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.util.hbase.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.metrics.MetricsRecord;
+import org.apache.hadoop.metrics.util.MetricsBase;
+import org.apache.hadoop.metrics.util.MetricsRegistry;
+
+/**
+ * Metric for the distribution of a value (typically a duration or lag in ms) during a reporting interval.
+ *
+ * <p>For the previous interval, the number of values, the median, the 95th and 99th percentile and the maximum
+ * are published, as name_num_ops, name_median, name_95th_percentile, name_99th_percentile and name_max.</p>
+ *
+ * <p>Recording a value does not take a lock, the values are recorded in an HdrHistogram {@link Recorder}.</p>
+ */
+public class MetricsHistogram extends MetricsBase {
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+
+    /** Values of the previous interval. */
+    private Histogram interval;
+
+    public MetricsHistogram(final String name, MetricsRegistry registry, final String description) {
+        super(name, description);
+        interval = recorder.getIntervalHistogram();
+        registry.add(name, this);
+    }
+
+    public MetricsHistogram(final String name, MetricsRegistry registry) {
+        this(name, registry, NO_DESCRIPTION);
+    }
+
+    /**
+     * Records a value, negative values (e.g. a lag influenced by clock differences between servers) are
+     * recorded as 0.
+     */
+    public void inc(final long value) {
+        recorder.recordValue(value < 0 ? 0 : value);
+    }
+
+    private synchronized void intervalHeartBeat() {
+        interval = recorder.getIntervalHistogram(interval);
+    }
+
+    @Override
+    public synchronized void pushMetric(final MetricsRecord mr) {
+        intervalHeartBeat();
+        try {
+            mr.setMetric(getName() + "_num_ops", getPreviousIntervalNumOps());
+            mr.setMetric(getName() + "_median", getPreviousIntervalPercentile(50));
+            mr.setMetric(getName() + "_95th_percentile", getPreviousIntervalPercentile(95));
+            mr.setMetric(getName() + "_99th_percentile", getPreviousIntervalPercentile(99));
+            mr.setMetric(getName() + "_max", getPreviousIntervalMax());
+        } catch (Exception e) {
+            log.info("pushMetric failed for " + getName(), e);
+        }
+    }
+
+    public synchronized long getPreviousIntervalNumOps() {
+        return interval.getTotalCount();
+    }
+
+    public synchronized long getPreviousIntervalPercentile(double percentile) {
+        return interval.getValueAtPercentile(percentile);
+    }
+
+    public synchronized long getPreviousIntervalMax() {
+        return interval.getMaxValue();
+    }
+}
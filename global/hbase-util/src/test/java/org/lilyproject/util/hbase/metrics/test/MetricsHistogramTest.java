@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.util.hbase.metrics.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.metrics.MetricsRecord;
+import org.apache.hadoop.metrics.util.MetricsRegistry;
+import org.junit.Test;
+import org.lilyproject.util.hbase.metrics.MetricsHistogram;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetricsHistogramTest {
+    @Test
+    public void testIntervalRollover() throws Exception {
+        MetricsHistogram histogram = new MetricsHistogram("lag", new MetricsRegistry());
+        Map<String, Number> metrics = new HashMap<String, Number>();
+        MetricsRecord record = newRecord(metrics);
+
+        // Nothing is published for an interval before it has ended
+        for (int i = 1; i <= 10; i++) {
+            histogram.inc(i * 10);
+        }
+        assertEquals(0, histogram.getPreviousIntervalNumOps());
+
+        histogram.pushMetric(record);
+        assertEquals(10L, metrics.get("lag_num_ops"));
+        assertEquals(50L, metrics.get("lag_median"));
+        assertEquals(100L, metrics.get("lag_99th_percentile"));
+        assertEquals(100L, metrics.get("lag_max"));
+
+        // The next interval only contains the values recorded since the previous push
+        histogram.inc(5);
+        histogram.inc(-20); // recorded as 0
+        histogram.pushMetric(record);
+        assertEquals(2L, metrics.get("lag_num_ops"));
+        assertEquals(0L, metrics.get("lag_median"));
+        assertEquals(5L, metrics.get("lag_max"));
+
+        // An interval without values
+        histogram.pushMetric(record);
+        assertEquals(0L, metrics.get("lag_num_ops"));
+        assertEquals(0L, metrics.get("lag_max"));
+        assertEquals(0, histogram.getPreviousIntervalNumOps());
+    }
+
+    /**
+     * Creates a MetricsRecord which puts the metrics set on it in the given map.
+     */
+    private static MetricsRecord newRecord(final Map<String, Number> metrics) {
+        return (MetricsRecord)Proxy.newProxyInstance(MetricsRecord.class.getClassLoader(),
+                new Class[] {MetricsRecord.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("setMetric")) {
+                            metrics.put((String)args[0], (Number)args[1]);
+                        }
+                        return null;
+                    }
+                });
+    }
+}
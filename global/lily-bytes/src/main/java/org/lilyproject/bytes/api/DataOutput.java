@@ -15,6 +15,8 @@
  */
 package org.lilyproject.bytes.api;
 
+import java.nio.ByteBuffer;
+
 /**
  * The <code>DataOutput</code> converts primitive types to bytes
  * and writes them to an underlying byte array.
@@ -36,6 +38,14 @@ public interface DataOutput {
      * Returns the underlying byte[]
      */
     byte[] toByteArray();
+
+    /**
+     * Returns the written bytes as a ByteBuffer, which shares the underlying byte[] rather than copying it.
+     *
+     * <p>The returned buffer should not be used anymore once more data has been written to this
+     * <code>DataOutput</code>.
+     */
+    ByteBuffer toByteBuffer();
     
     /**
      * Writes a byte to the <code>DataOutput</code> 
@@ -15,6 +15,8 @@
  */
 package org.lilyproject.bytes.impl;
 
+import java.nio.ByteBuffer;
+
 import org.lilyproject.bytes.api.DataInput;
 
 /**
@@ -78,6 +80,31 @@ public class DataInputImpl implements DataInput {
         this.pos = 0;
     }
 
+    /**
+     * Constructor for the {@link DataInput} based on the remaining bytes of a ByteBuffer.
+     *
+     * <p>If the buffer is backed by an accessible array, as is the case for the buffers delivered by Avro, the
+     * bytes are read straight from that array without copying them. Otherwise, they are copied once. The position
+     * of the given buffer is not modified.
+     *
+     * <p>As for the other constructors, {@link #getPosition()} and {@link #getSize()} are indexes in the underlying
+     * byte[], so for a buffer which does not start at the beginning of its array, the position does not start at 0.
+     */
+    public DataInputImpl(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            this.source = buffer.array();
+            this.pos = buffer.arrayOffset() + buffer.position();
+            this.size = buffer.arrayOffset() + buffer.limit();
+        } else {
+            this.source = new byte[buffer.remaining()];
+            buffer.duplicate().get(source);
+            this.pos = 0;
+            this.size = source.length;
+        }
+        // Sub-DataInputs are created with absolute positions, so the start position stays 0
+        this.startPosition = 0;
+    }
+
     /**
      * Constructor for the {@link DataInput} based on an existing DataInputImpl.
      * Its source (the underlying byte[]) is the same as for the given dataInput.
@@ -15,6 +15,7 @@
  */
 package org.lilyproject.bytes.impl;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.lilyproject.bytes.api.DataOutput;
@@ -74,6 +75,11 @@ public class DataOutputImpl implements DataOutput {
     public byte[] toByteArray() {
         return Arrays.copyOfRange(buffer, 0, pos);
     }
+
+    @Override
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buffer, 0, pos);
+    }
     
     /**
      * Checks if the buffer has enough space to put <code>len</code> bytes.
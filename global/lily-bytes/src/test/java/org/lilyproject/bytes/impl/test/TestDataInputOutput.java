@@ -15,6 +15,7 @@
  */
 package org.lilyproject.bytes.impl.test;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import org.junit.Assert;
@@ -191,4 +192,41 @@ public class TestDataInputOutput extends TestCase {
         Assert.assertEquals(Math.abs(i), dataInput.readVInt());
         Assert.assertEquals(Math.abs(l), dataInput.readVLong());
     }
+
+    public void testByteBuffer() {
+        DataOutput dataOutput = new DataOutputImpl(4);
+        String string = randomUnicodeString(100);
+        dataOutput.writeUTF(string);
+        dataOutput.writeVLong(123456789L);
+
+        // The buffer shares the array of the DataOutput and only exposes the written bytes
+        ByteBuffer buffer = dataOutput.toByteBuffer();
+        Assert.assertEquals(dataOutput.getSize(), buffer.remaining());
+
+        DataInput dataInput = new DataInputImpl(buffer);
+        Assert.assertEquals(string, dataInput.readUTF());
+        Assert.assertEquals(123456789L, dataInput.readVLong());
+        Assert.assertEquals(dataInput.getSize(), dataInput.getPosition());
+
+        // Buffers which do not start at the beginning of their array are read in place as well
+        ByteBuffer prefixed = ByteBuffer.allocate(buffer.remaining() + 2);
+        prefixed.put((byte) 7);
+        prefixed.put(buffer.duplicate());
+        prefixed.put((byte) 8);
+        prefixed.position(1);
+        prefixed.limit(prefixed.capacity() - 1);
+        dataInput = new DataInputImpl(prefixed);
+        Assert.assertEquals(1, dataInput.getPosition());
+        Assert.assertEquals(string, dataInput.readUTF());
+        Assert.assertEquals(123456789L, dataInput.readVLong());
+        Assert.assertEquals(dataInput.getSize(), dataInput.getPosition());
+        Assert.assertEquals(1, prefixed.position());
+
+        // Also for a slice, whose array offset is not 0
+        ByteBuffer slice = prefixed.slice();
+        dataInput = new DataInputImpl(slice);
+        Assert.assertEquals(string, dataInput.readUTF());
+        Assert.assertEquals(123456789L, dataInput.readVLong());
+        Assert.assertEquals(dataInput.getSize(), dataInput.getPosition());
+    }
 }
@@ -18,6 +18,10 @@ package org.lilyproject.rowlog.api;
 import com.google.common.base.Objects;
 
 public class RowLogConfig {
+    /**
+     * The default shard router, see {@link #setShardRouter}.
+     */
+    public static final String DEFAULT_SHARD_ROUTER = "murmur";
 
     private boolean respectOrder;
     private boolean enableNotify;
@@ -26,6 +30,7 @@ public class RowLogConfig {
     private long wakeupTimeout;
     private long orphanedMessageDelay;
     private int deleteBufferSize;
+    private String shardRouter = DEFAULT_SHARD_ROUTER;
 
     /**
      * A value object bundling the configuration paramaters for a rowlog and its processors.
@@ -108,10 +113,26 @@ public class RowLogConfig {
         this.deleteBufferSize = deleteBufferSize;
     }
 
+    public String getShardRouter() {
+        return shardRouter;
+    }
+
+    /**
+     * Sets the router which decides on which shard a message is put: "murmur" (the default) or "md5" to spread
+     * messages by hash of their row key, "keyrange" to keep messages of nearby rows together, or the class name
+     * of a RowLogShardRouter implementation.
+     *
+     * <p>Messages are removed from the shard chosen by the router, hence the router should only be changed
+     * while the rowlog has no pending messages. The router is chosen when the rowlog is started.</p>
+     */
+    public void setShardRouter(String shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hashCode(enableNotify, minimalProcessDelay, notifyDelay, wakeupTimeout, orphanedMessageDelay,
-                respectOrder, deleteBufferSize);
+                respectOrder, deleteBufferSize, shardRouter);
     }
 
     @Override
@@ -129,7 +150,8 @@ public class RowLogConfig {
                 && Objects.equal(wakeupTimeout, other.wakeupTimeout)
                 && Objects.equal(orphanedMessageDelay, other.orphanedMessageDelay)
                 && Objects.equal(respectOrder, other.respectOrder)
-                && Objects.equal(deleteBufferSize, other.deleteBufferSize);
+                && Objects.equal(deleteBufferSize, other.deleteBufferSize)
+                && Objects.equal(shardRouter, other.shardRouter);
     }
 
     @Override
@@ -137,6 +159,6 @@ public class RowLogConfig {
         return "RowLogConfig [respectOrder=" + respectOrder + ", enableNotify="
                 + enableNotify + ", notifyDelay=" + notifyDelay + ", minimalProcessDelay=" + minimalProcessDelay +
                 ", wakeupTimeout=" + wakeupTimeout + ", orphanedMessageDelay=" + orphanedMessageDelay +
-                ", deleteBufferSize=" + deleteBufferSize + "]";
+                ", deleteBufferSize=" + deleteBufferSize + ", shardRouter=" + shardRouter + "]";
     }
 }
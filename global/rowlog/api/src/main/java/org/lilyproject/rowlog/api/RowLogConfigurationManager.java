@@ -187,6 +187,21 @@ public interface RowLogConfigurationManager {
      */
     void addListener(String rowLogId, String subscriptionId, String listenerId) throws RowLogException, InterruptedException, KeeperException;
 
+    /**
+     * Same as {@link #addListener(String, String, String)}, but stores the given data with the listener, e.g. to
+     * advertise what it supports to the {@link ListenerSubscriptionHandler}.
+     */
+    void addListener(String rowLogId, String subscriptionId, String listenerId, byte[] data) throws RowLogException, InterruptedException, KeeperException;
+
+    /**
+     * Retrieves the data stored with a listener, see {@link #addListener(String, String, String, byte[])}.
+     *
+     * <p>This method blocks if the ZK connection is down.
+     *
+     * @return null if the listener does not exist or has no data
+     */
+    byte[] getListenerData(String rowLogId, String subscriptionId, String listenerId) throws InterruptedException, KeeperException;
+
     /**
      *
      * <p>This method blocks if the ZK connection is down.
@@ -210,4 +225,21 @@ public interface RowLogConfigurationManager {
 	void notifyProcessor(String rowLogId, String subscriptionId)
 			throws InterruptedException, KeeperException;
 
+    /**
+     * Publishes the endpoint (host:port) on which the processor of a rowlog accepts direct wake-up
+     * notifications, as an alternative to {@link #notifyProcessor}. The endpoint is removed automatically
+     * when the ZooKeeper session ends.
+     */
+    void setProcessorNotifyEndpoint(String rowLogId, String endpoint) throws InterruptedException, KeeperException;
+
+    /**
+     * Removes the endpoint published by {@link #setProcessorNotifyEndpoint}, if any.
+     */
+    void removeProcessorNotifyEndpoint(String rowLogId) throws InterruptedException, KeeperException;
+
+    /**
+     * Returns the endpoint published by {@link #setProcessorNotifyEndpoint}, or null if there is none.
+     */
+    String getProcessorNotifyEndpoint(String rowLogId) throws InterruptedException, KeeperException;
+
 }
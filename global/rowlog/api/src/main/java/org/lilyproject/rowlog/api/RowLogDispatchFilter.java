@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.api;
+
+import java.util.List;
+
+/**
+ * Decides to which of the deferred subscriptions of a write-ahead-log a message needs to be dispatched.
+ *
+ * <p>Deferred subscriptions are the remote (Netty) subscriptions of a WAL rowlog: rather than being processed
+ * in-line when the WAL processes a message, the message is put on the rowlog shard for them, where it waits
+ * until the remote listeners consume it. For the subscriptions removed by the filter, the message is
+ * immediately marked as done, without any further writes.</p>
+ *
+ * <p>Filters are registered in the {@link RowLogDispatchFilterMapping}.</p>
+ */
+public interface RowLogDispatchFilter {
+    /**
+     * Removes the subscriptions for which the message is not relevant from the given list.
+     *
+     * <p>In case of doubt (e.g. the payload of the message can not be parsed), subscriptions should be
+     * left in the list.</p>
+     */
+    void filterSubscriptions(RowLogMessage message, List<String> subscriptionIds);
+}
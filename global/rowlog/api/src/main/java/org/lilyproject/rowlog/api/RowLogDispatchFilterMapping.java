@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.api;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps rowlog id's onto {@link RowLogDispatchFilter} instances.
+ */
+public class RowLogDispatchFilterMapping {
+
+    public static RowLogDispatchFilterMapping INSTANCE = new RowLogDispatchFilterMapping();
+
+    private Map<String, RowLogDispatchFilter> mapping =
+            Collections.synchronizedMap(new HashMap<String, RowLogDispatchFilter>());
+
+    private RowLogDispatchFilterMapping() {
+    }
+
+    public void put(String rowLogId, RowLogDispatchFilter filter) {
+        mapping.put(rowLogId, filter);
+    }
+
+    public RowLogDispatchFilter get(String rowLogId) {
+        return mapping.get(rowLogId);
+    }
+
+    public void remove(String rowLogId) {
+        mapping.remove(rowLogId);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.lilyproject.rowlog.impl;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -27,7 +28,7 @@ import org.lilyproject.rowlog.api.RowLogConfigurationManager;
 
 public abstract class AbstractListenersSubscriptionHandler extends AbstractSubscriptionHandler implements ListenersObserver {
     protected RowLogConfigurationManager rowLogConfigurationManager;
-    private Map<String, Worker> listeners = new ConcurrentHashMap<String, Worker>();
+    private Map<String, List<Worker>> listeners = new ConcurrentHashMap<String, List<Worker>>();
     protected volatile boolean stop = false;
     private Log log = LogFactory.getLog(getClass());
 
@@ -68,19 +69,34 @@ public abstract class AbstractListenersSubscriptionHandler extends AbstractSubsc
         submitWorker(listener);
     }
 
+    /**
+     * The number of workers started for each listener, i.e. the number of messages that can be handed
+     * to one listener concurrently.
+     */
+    protected int getWorkersPerListener() {
+        return 1;
+    }
+
     protected void submitWorker(String listener) {
-        Worker worker = new Worker(subscriptionId, listener);
-        worker.start();
-        listeners.put(listener, worker);
+        int count = Math.max(1, getWorkersPerListener());
+        List<Worker> workers = new ArrayList<Worker>(count);
+        for (int i = 0; i < count; i++) {
+            Worker worker = new Worker(subscriptionId, listener);
+            worker.start();
+            workers.add(worker);
+        }
+        listeners.put(listener, workers);
     }
 
     protected void listenerUnregistered(String listenerId) {
-        Worker worker = listeners.get(listenerId);
-        if (worker != null) {
-            try {
-                worker.stop();
-            } catch (InterruptedException e) {
-                log.info("Interrupted while stopping subscription handler worker.", e);
+        List<Worker> workers = listeners.get(listenerId);
+        if (workers != null) {
+            for (Worker worker : workers) {
+                try {
+                    worker.stop();
+                } catch (InterruptedException e) {
+                    log.info("Interrupted while stopping subscription handler worker.", e);
+                }
             }
             listeners.remove(listenerId);
         }
@@ -94,6 +94,7 @@ public abstract class AbstractSubscriptionHandler implements SubscriptionHandler
                             //   1) there is currently only one rowlog processor
                             //   2) the messagesWorkQueue take() and done() calls make sure messages for the same row are not given to multiple listeners at the same time
                             if (rowLog.isMessageAvailable(message, subscriptionId)) {
+                                metrics.messageAge.inc(System.currentTimeMillis() - message.getTimestamp());
                                 boolean processMessageResult = false;
                                 try {
                                     processMessageResult = delegate.processMessage(message);
@@ -21,6 +21,7 @@ import org.apache.hadoop.metrics.MetricsRecord;
 import org.apache.hadoop.metrics.MetricsUtil;
 import org.apache.hadoop.metrics.Updater;
 import org.apache.hadoop.metrics.util.MetricsBase;
+import org.apache.hadoop.metrics.util.MetricsLongValue;
 import org.apache.hadoop.metrics.util.MetricsRegistry;
 import org.apache.hadoop.metrics.util.MetricsTimeVaryingRate;
 import org.lilyproject.util.hbase.metrics.MBeanUtil;
@@ -44,6 +45,19 @@ public class ProcessorMetrics implements Updater {
 
     public MetricsRate wakeups = new MetricsRate("wakeups_rate", registry);
 
+    /**
+     * Age of the oldest message found by the last scan, thus how far the subscription is behind. Unlike the
+     * message_age of the subscription handler, which is recorded when the processing of a message starts, this
+     * keeps growing while the messages are not being processed.
+     */
+    public MetricsLongValue oldestMessageAge = new MetricsLongValue("oldest_message_age", registry);
+
+    /**
+     * Time between a producer wanting to notify the processor and the processor receiving the notification, for
+     * notifications sent directly to the processor. Includes clock skew between the servers.
+     */
+    public MetricsTimeVaryingRate notifyLatency = new MetricsTimeVaryingRate("notify_latency", registry);
+
     public ProcessorMetrics(String subscriptionId) {
         this.subscriptionId = subscriptionId;
         context = MetricsUtil.getContext("rowlog");
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.lilyproject.util.Logs;
+
+/**
+ * Receives the wake-up notifications which the {@link RowLogProcessorNotifier} sends directly (over UDP) to
+ * the processor of a rowlog, rather than through ZooKeeper.
+ *
+ * <p>A notification is a single datagram: [sent-at timestamp:long][rowlog id:UTF][subscription id:UTF].
+ * Since UDP does not guarantee delivery, the processor should keep waking up periodically by itself.</p>
+ */
+public class ProcessorNotifyReceiver {
+    private final String rowLogId;
+    private final String hostName;
+    private final Listener listener;
+    private final DatagramSocket socket;
+    private final Thread thread;
+    private final Log log = LogFactory.getLog(getClass());
+
+    private static final int MAX_PACKET_SIZE = 1024;
+
+    public interface Listener {
+        /**
+         * @param sentAt the time at which the producer first wanted to notify the processor
+         */
+        void notificationReceived(String subscriptionId, long sentAt);
+    }
+
+    public ProcessorNotifyReceiver(String rowLogId, String hostName, Listener listener) throws SocketException {
+        this.rowLogId = rowLogId;
+        this.hostName = hostName;
+        this.listener = listener;
+        this.socket = new DatagramSocket(new InetSocketAddress(hostName, 0));
+        this.thread = new Thread(new Receiver(), "Row log processor notification receiver for " + rowLogId);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() throws InterruptedException {
+        // Closing the socket makes the receive call fail
+        socket.close();
+        Logs.logThreadJoin(thread);
+        thread.join();
+    }
+
+    /**
+     * The endpoint, as host:port, to publish for the producers.
+     */
+    public String getEndpoint() {
+        return hostName + ":" + socket.getLocalPort();
+    }
+
+    public static byte[] encode(String rowLogId, String subscriptionId, long sentAt) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeLong(sentAt);
+        dos.writeUTF(rowLogId);
+        dos.writeUTF(subscriptionId);
+        dos.close();
+        return bos.toByteArray();
+    }
+
+    private class Receiver implements Runnable {
+        @Override
+        public void run() {
+            byte[] buffer = new byte[MAX_PACKET_SIZE];
+            while (!socket.isClosed()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(packet);
+
+                    DataInputStream dis = new DataInputStream(
+                            new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+                    long sentAt = dis.readLong();
+                    String packetRowLogId = dis.readUTF();
+                    String subscriptionId = dis.readUTF();
+
+                    if (rowLogId.equals(packetRowLogId)) {
+                        listener.notificationReceived(subscriptionId, sentAt);
+                    } else if (log.isDebugEnabled()) {
+                        log.debug("Received processor notification for other rowlog " + packetRowLogId);
+                    }
+                } catch (IOException e) {
+                    if (!socket.isClosed()) {
+                        log.warn("Error receiving processor notification for rowlog " + rowLogId, e);
+                    }
+                } catch (Throwable t) {
+                    log.error("Error handling processor notification for rowlog " + rowLogId, t);
+                }
+            }
+        }
+    }
+}
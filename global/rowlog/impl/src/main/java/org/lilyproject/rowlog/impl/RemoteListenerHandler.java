@@ -16,6 +16,9 @@
 package org.lilyproject.rowlog.impl;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
@@ -24,7 +27,6 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.zookeeper.KeeperException;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.channel.group.ChannelGroup;
@@ -35,6 +37,14 @@ import org.jboss.netty.handler.codec.frame.FrameDecoder;
 import org.lilyproject.rowlog.api.*;
 import org.lilyproject.util.concurrent.CustomThreadFactory;
 
+/**
+ * Listens for messages sent by the {@link RemoteListenersSubscriptionHandler} and gives them to a
+ * {@link RowLogMessageListener}.
+ *
+ * <p>Both versions of the {@link RemoteListenerProtocol} are supported. Messages received in version 2
+ * batches are processed concurrently, and their results are sent back as soon as they are available.
+ * The sender takes care that the messages in flight are all for different rows.</p>
+ */
 public class RemoteListenerHandler {
     private final Log log = LogFactory.getLog(getClass());
     private final RowLogMessageListener rowLogMessageListener;
@@ -46,6 +56,7 @@ public class RemoteListenerHandler {
     private final String subscriptionId;
     private final RowLogConfigurationManager rowLogConfMgr;
     private final String hostName;
+    private final ExecutorService executor;
 
     public RemoteListenerHandler(RowLog rowLog, String subscriptionId, RowLogMessageListener rowLogMessageListener,
             RowLogConfigurationManager rowLogConfMgr, String hostName) throws RowLogException {
@@ -62,6 +73,9 @@ public class RemoteListenerHandler {
                         Executors.newCachedThreadPool(
                                 new CustomThreadFactory("rowlog-server-" + rowLog.getId() + "-worker",
                                         new ThreadGroup("RowLogListener_" + subscriptionId)))));
+        executor = Executors.newCachedThreadPool(
+                new CustomThreadFactory("rowlog-server-" + rowLog.getId() + "-handler",
+                        new ThreadGroup("RowLogListenerHandler_" + subscriptionId)));
         bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
             @Override
             public ChannelPipeline getPipeline() throws Exception {
@@ -84,7 +98,9 @@ public class RemoteListenerHandler {
         allChannels.add(channel);
         int port = ((InetSocketAddress)channel.getLocalAddress()).getPort();
         listenerId = hostName + ":" + port;
-        rowLogConfMgr.addListener(rowLog.getId(), subscriptionId, listenerId);
+        // Advertise version 2, senders fall back to version 1 for listeners which don't
+        rowLogConfMgr.addListener(rowLog.getId(), subscriptionId, listenerId,
+                RemoteListenerProtocol.toListenerData(RemoteListenerProtocol.V2));
     }
     
     public void stop() throws InterruptedException {
@@ -92,6 +108,7 @@ public class RemoteListenerHandler {
         future.awaitUninterruptibly();
 
         bootstrap.releaseExternalResources();
+        executor.shutdownNow();
 
         if (listenerId != null) {
             try {
@@ -108,7 +125,7 @@ public class RemoteListenerHandler {
     
     private class MessageDecoder extends FrameDecoder {
         @Override
-        protected ChannelBuffer decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
             // Make sure if the length field was received.
             if (buffer.readableBytes() < 4) {
                 // The length field was not received yet - return null.
@@ -128,6 +145,16 @@ public class RemoteListenerHandler {
             // Read the length field.
             int length = buffer.readInt();
 
+            // A version 2 frame: the length field follows the marker
+            boolean batch = length == RemoteListenerProtocol.V2_MARKER;
+            if (batch) {
+                if (buffer.readableBytes() < 4) {
+                    buffer.resetReaderIndex();
+                    return null;
+                }
+                length = buffer.readInt();
+            }
+
             // Make sure if there's enough bytes in the buffer.
             if (buffer.readableBytes() < length) {
                 // The whole bytes were not received yet - return null.
@@ -144,6 +171,10 @@ public class RemoteListenerHandler {
             // There's enough bytes in the buffer. Read it.
             ChannelBuffer frame = buffer.readBytes(length);
 
+            if (batch) {
+                return RemoteListenerProtocol.decodeRequests(frame, rowLog);
+            }
+
             // Successfully decoded a frame.  Return the decoded frame.
             return frame;
         }
@@ -152,34 +183,80 @@ public class RemoteListenerHandler {
     private class RowLogMessageDecoder extends SimpleChannelUpstreamHandler {
         @Override
         public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-            ChannelBufferInputStream inputStream = new ChannelBufferInputStream((ChannelBuffer)e.getMessage());
-            
-            long timestamp = inputStream.readLong();
-            
-            int rowKeyLength = inputStream.readInt();
-            byte[] rowKey = new byte[rowKeyLength];
-            inputStream.readFully(rowKey, 0, rowKeyLength);
-            
-            long seqnr = inputStream.readLong();
-            
-            int dataLength = inputStream.readInt();
-            byte[] data = null;
-            if (dataLength > 0) {
-                data = new byte[dataLength];
-                inputStream.readFully(data, 0, dataLength);
+            if (e.getMessage() instanceof ChannelBuffer) {
+                RowLogMessage rowLogMessage = RemoteListenerProtocol.readMessage((ChannelBuffer)e.getMessage(), rowLog);
+                Channels.fireMessageReceived(ctx, rowLogMessage); // Give the message to the MessageHandler
+            } else {
+                ctx.sendUpstream(e); // Version 2 requests are already decoded by the MessageDecoder
             }
-            inputStream.close();
-            RowLogMessage rowLogMessage = new RowLogMessageImpl(timestamp, rowKey, seqnr, data, rowLog);
-            Channels.fireMessageReceived(ctx, rowLogMessage); // Give the message to the MessageHandler
         }
     }
     
     private class MessageHandler extends SimpleChannelUpstreamHandler {
+        /**
+         * Results which still need to be written, guarded by the MessageHandler lock.
+         */
+        private List<RemoteListenerProtocol.Result> pendingResults = new ArrayList<RemoteListenerProtocol.Result>();
+        private boolean writingResults = false;
+
         @Override
+        @SuppressWarnings("unchecked")
         public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-            RowLogMessage message = (RowLogMessage)e.getMessage();
-            boolean result = rowLogMessageListener.processMessage(message);
-            writeResult(e.getChannel(), result, message);
+            if (e.getMessage() instanceof RowLogMessage) {
+                RowLogMessage message = (RowLogMessage)e.getMessage();
+                boolean result = rowLogMessageListener.processMessage(message);
+                writeResult(e.getChannel(), result, message);
+            } else {
+                final Channel channel = e.getChannel();
+                for (final RemoteListenerProtocol.Request request : (List<RemoteListenerProtocol.Request>)e.getMessage()) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            boolean result = false;
+                            try {
+                                result = rowLogMessageListener.processMessage(request.message);
+                            } catch (Throwable t) {
+                                // The message will be retried later on, the other messages on the channel are not
+                                // affected.
+                                log.warn("Exception in MessageHandler while processing message " + request.message, t);
+                            }
+                            addResult(channel, new RemoteListenerProtocol.Result(request.id, result));
+                        }
+                    });
+                }
+            }
+        }
+
+        /**
+         * Writes the result back to the sender. Results which become available while another thread is
+         * writing are sent together in one frame.
+         */
+        private void addResult(Channel channel, RemoteListenerProtocol.Result result) {
+            synchronized (this) {
+                pendingResults.add(result);
+                if (writingResults) {
+                    return;
+                }
+                writingResults = true;
+            }
+
+            while (true) {
+                List<RemoteListenerProtocol.Result> results;
+                synchronized (this) {
+                    if (pendingResults.isEmpty()) {
+                        writingResults = false;
+                        return;
+                    }
+                    results = pendingResults;
+                    pendingResults = new ArrayList<RemoteListenerProtocol.Result>();
+                }
+
+                if (channel.isOpen()) {
+                    channel.write(RemoteListenerProtocol.encodeResults(results));
+                } else {
+                    log.warn("Failed to send processing results for " + results.size() + " messages due to closed channel.");
+                }
+            }
         }
 
         private void writeResult(Channel channel, boolean result, RowLogMessage message) throws InterruptedException {
@@ -209,6 +286,10 @@ public class RemoteListenerHandler {
     private class ResultEncoder extends SimpleChannelDownstreamHandler {
         @Override
         public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+            if (!(e.getMessage() instanceof Boolean)) {
+                ctx.sendDownstream(e); // Version 2 results are already encoded
+                return;
+            }
             Boolean result = (Boolean)e.getMessage();
             ChannelBuffer channelBuffer = ChannelBuffers.buffer(Bytes.SIZEOF_BOOLEAN);
             channelBuffer.writeBytes(Bytes.toBytes(result));
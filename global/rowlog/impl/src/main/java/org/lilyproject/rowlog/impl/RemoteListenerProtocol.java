@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.lilyproject.rowlog.api.RowLog;
+import org.lilyproject.rowlog.api.RowLogMessage;
+
+/**
+ * Wire format used between the {@link RemoteListenersSubscriptionHandler} and the {@link RemoteListenerHandler}.
+ *
+ * <p>Version 1 of the protocol sends one message per frame ([length][message]) and expects a single boolean
+ * byte as answer, before the next message can be sent.</p>
+ *
+ * <p>Version 2 sends batches of messages, each message carrying a correlation id:</p>
+ *
+ * <pre>
+ * request frame:  [V2_MARKER:int][length:int][count:int] count x ([id:int][message])
+ * response frame: [count:int] count x ([id:int][result:byte])
+ * </pre>
+ *
+ * <p>The marker is negative, so that the listener side can tell the difference with a version 1 length field.
+ * The results of a batch can be returned in any order and spread over multiple response frames.</p>
+ *
+ * <p>Listeners advertise the highest version they support in the data of their listener node (see
+ * {@link #toListenerData}). Listeners without such data only know version 1, so that a sender can keep
+ * talking to them during a rolling upgrade.</p>
+ */
+class RemoteListenerProtocol {
+    static final int V1 = 1;
+    static final int V2 = 2;
+
+    static final int V2_MARKER = -2;
+
+    /** id + result */
+    static final int RESULT_SIZE = 4 + 1;
+
+    private RemoteListenerProtocol() {
+    }
+
+    static class Request {
+        final int id;
+        final RowLogMessage message;
+
+        Request(int id, RowLogMessage message) {
+            this.id = id;
+            this.message = message;
+        }
+    }
+
+    static class Result {
+        final int id;
+        final boolean result;
+
+        Result(int id, boolean result) {
+            this.id = id;
+            this.result = result;
+        }
+    }
+
+    static byte[] toListenerData(int version) {
+        return Bytes.toBytes(version);
+    }
+
+    /**
+     * Returns the protocol version advertised by a listener, version 1 if it did not advertise any.
+     */
+    static int fromListenerData(byte[] data) {
+        if (data == null || data.length != Bytes.SIZEOF_INT) {
+            return V1;
+        }
+        return Bytes.toInt(data);
+    }
+
+    /**
+     * Encodes a version 1 request frame, containing one message.
+     */
+    static ChannelBuffer encodeRequest(RowLogMessage message) {
+        int length = messageSize(message);
+        ChannelBuffer buffer = ChannelBuffers.buffer(4 + length);
+        buffer.writeInt(length);
+        writeMessage(buffer, message);
+        return buffer;
+    }
+
+    static ChannelBuffer encodeRequests(List<? extends Request> requests) {
+        int length = 4; // count
+        for (Request request : requests) {
+            length += 4 + messageSize(request.message);
+        }
+
+        ChannelBuffer buffer = ChannelBuffers.buffer(4 + 4 + length);
+        buffer.writeInt(V2_MARKER);
+        buffer.writeInt(length);
+        buffer.writeInt(requests.size());
+        for (Request request : requests) {
+            buffer.writeInt(request.id);
+            writeMessage(buffer, request.message);
+        }
+        return buffer;
+    }
+
+    /**
+     * Decodes the body of a version 2 request frame, i.e. what follows the length field.
+     */
+    static List<Request> decodeRequests(ChannelBuffer buffer, RowLog rowLog) {
+        int count = buffer.readInt();
+        List<Request> requests = new ArrayList<Request>(count);
+        for (int i = 0; i < count; i++) {
+            int id = buffer.readInt();
+            requests.add(new Request(id, readMessage(buffer, rowLog)));
+        }
+        return requests;
+    }
+
+    static ChannelBuffer encodeResults(List<Result> results) {
+        ChannelBuffer buffer = ChannelBuffers.buffer(4 + results.size() * RESULT_SIZE);
+        buffer.writeInt(results.size());
+        for (Result result : results) {
+            buffer.writeInt(result.id);
+            buffer.writeByte(result.result ? 1 : 0);
+        }
+        return buffer;
+    }
+
+    /**
+     * Decodes a complete response frame, or returns null if not enough bytes are available yet, in which
+     * case the reader index of the buffer is left untouched.
+     */
+    static List<Result> decodeResults(ChannelBuffer buffer) {
+        if (buffer.readableBytes() < 4) {
+            return null;
+        }
+
+        int count = buffer.getInt(buffer.readerIndex());
+        if (buffer.readableBytes() < 4 + count * RESULT_SIZE) {
+            return null;
+        }
+
+        buffer.skipBytes(4);
+        List<Result> results = new ArrayList<Result>(count);
+        for (int i = 0; i < count; i++) {
+            int id = buffer.readInt();
+            results.add(new Result(id, buffer.readByte() != 0));
+        }
+        return results;
+    }
+
+    /**
+     * timestamp + rowkey-length + rowkey + seqnr + data-length + data
+     */
+    static int messageSize(RowLogMessage message) {
+        byte[] data = message.getData();
+        return 8 + 4 + message.getRowKey().length + 8 + 4 + (data != null ? data.length : 0);
+    }
+
+    static void writeMessage(ChannelBuffer buffer, RowLogMessage message) {
+        byte[] rowKey = message.getRowKey();
+        byte[] data = message.getData();
+        buffer.writeLong(message.getTimestamp());
+        buffer.writeInt(rowKey.length);
+        buffer.writeBytes(rowKey);
+        buffer.writeLong(message.getSeqNr());
+        if (data != null) {
+            buffer.writeInt(data.length);
+            buffer.writeBytes(data);
+        } else {
+            buffer.writeInt(0);
+        }
+    }
+
+    static RowLogMessage readMessage(ChannelBuffer buffer, RowLog rowLog) {
+        long timestamp = buffer.readLong();
+
+        byte[] rowKey = new byte[buffer.readInt()];
+        buffer.readBytes(rowKey);
+
+        long seqnr = buffer.readLong();
+
+        int dataLength = buffer.readInt();
+        byte[] data = null;
+        if (dataLength > 0) {
+            data = new byte[dataLength];
+            buffer.readBytes(data);
+        }
+
+        return new RowLogMessageImpl(timestamp, rowKey, seqnr, data, rowLog);
+    }
+}
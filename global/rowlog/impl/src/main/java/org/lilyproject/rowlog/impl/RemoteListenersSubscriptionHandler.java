@@ -16,59 +16,171 @@
 package org.lilyproject.rowlog.impl;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.zookeeper.KeeperException;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBufferOutputStream;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
 import org.lilyproject.rowlog.api.*;
 import org.lilyproject.util.concurrent.CustomThreadFactory;
-import org.lilyproject.util.io.Closer;
 
+/**
+ * Sends the messages of a subscription to remote listeners ({@link RemoteListenerHandler}s), using
+ * version 2 of the {@link RemoteListenerProtocol} for the listeners which advertise it, and version 1,
+ * one message at a time, for the others.
+ *
+ * <p>For each listener, up to <i>window</i> workers take messages from the {@link MessagesWorkQueue}
+ * and send them over one shared channel. Messages which are sent at about the same time are combined
+ * into one frame, and the results can arrive in any order. Since a worker only releases a message (and thus
+ * its row) in the work queue once its result has been received, the messages in flight on a channel are
+ * always for different rows, and the per-row ordering remains the same as with one message at a time.</p>
+ */
 public class RemoteListenersSubscriptionHandler extends AbstractListenersSubscriptionHandler {
     private Log log = LogFactory.getLog(getClass());
     private ClientBootstrap bootstrap;
     private NioClientSocketChannelFactory channelFactory;
-    private Map<Integer, RemoteWorkerDelegate> workerDelegates = new ConcurrentHashMap<Integer, RemoteWorkerDelegate>();
+    private final int window;
+    private final Map<String, ListenerConnection> connections = new ConcurrentHashMap<String, ListenerConnection>();
+    private final Map<Integer, ListenerConnection> channelConnections = new ConcurrentHashMap<Integer, ListenerConnection>();
+
+    public static final int DEFAULT_WINDOW = 10;
 
     public RemoteListenersSubscriptionHandler(String subscriptionId, MessagesWorkQueue messagesWorkQueue,
             RowLog rowLog, RowLogConfigurationManager rowLogConfigurationManager) {
+        this(subscriptionId, messagesWorkQueue, rowLog, rowLogConfigurationManager, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window the maximum number of messages in flight to one remote listener
+     */
+    public RemoteListenersSubscriptionHandler(String subscriptionId, MessagesWorkQueue messagesWorkQueue,
+            RowLog rowLog, RowLogConfigurationManager rowLogConfigurationManager, int window) {
         super(subscriptionId, messagesWorkQueue, rowLog, rowLogConfigurationManager);
+        this.window = Math.max(1, window);
         initBootstrap();
     }
 
+    @Override
+    protected int getWorkersPerListener() {
+        return window;
+    }
+
     @Override
     protected WorkerDelegate createWorkerDelegate(String host) {
-        return new RemoteWorkerDelegate(host);
+        return new RemoteWorkerDelegate(getConnection(host));
     }
 
-    private class RemoteWorkerDelegate implements WorkerDelegate {
-        private Boolean remoteProcessMessageResult = null;
-        private Throwable resultHandlerException = null;
-        private Semaphore semaphore = new Semaphore(0);
-        private Channel channel = null;
-        private String host;
+    private synchronized ListenerConnection getConnection(String host) {
+        ListenerConnection connection = connections.get(host);
+        if (connection == null) {
+            connection = new ListenerConnection(host);
+            connections.put(host, connection);
+        }
+        connection.refCount++;
+        return connection;
+    }
+
+    private synchronized void releaseConnection(ListenerConnection connection) {
+        connection.refCount--;
+        if (connection.refCount == 0) {
+            connections.remove(connection.host);
+            connection.close();
+        }
+    }
 
-        public RemoteWorkerDelegate(String host) {
+    /**
+     * A message which has been handed to a {@link ListenerConnection}, and for which we're waiting on the result.
+     */
+    private static class PendingMessage extends RemoteListenerProtocol.Request {
+        private final Channel channel;
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile Boolean result;
+        private volatile Throwable exception;
+        /** Released once the result is known, only used for version 1 channels. */
+        private final Semaphore permit;
+
+        public PendingMessage(int id, RowLogMessage message, Channel channel, Semaphore permit) {
+            super(id, message);
+            this.channel = channel;
+            this.permit = permit;
+        }
+
+        public void done(Boolean result, Throwable exception) {
+            this.result = result;
+            this.exception = exception;
+            if (permit != null) {
+                permit.release();
+            }
+            latch.countDown();
+        }
+    }
+
+    /**
+     * The channel to one remote listener, shared by all workers for that listener.
+     */
+    private class ListenerConnection {
+        private final String host;
+        private int refCount;
+        private Channel channel;
+        /** Whether the current channel talks version 2 of the protocol, guarded by the ListenerConnection lock. */
+        private boolean batching;
+        /** A version 1 listener handles one message at a time, and answers without an id. */
+        private final Semaphore v1Permit = new Semaphore(1);
+        private volatile PendingMessage v1Pending;
+        private final AtomicInteger idCounter = new AtomicInteger();
+        private final Map<Integer, PendingMessage> inFlight = new ConcurrentHashMap<Integer, PendingMessage>();
+
+        /**
+         * Messages which still need to be written, guarded by the ListenerConnection lock.
+         */
+        private List<PendingMessage> toWrite = new ArrayList<PendingMessage>();
+        private boolean writing = false;
+
+        public ListenerConnection(String host) {
             this.host = host;
-            initBootstrap();
         }
 
-        private Channel getListenerChannel(String host) throws RemoteListenerIOException, InterruptedException {
-            return getListenerChannel(host, 9);
+        private synchronized Channel getChannel() throws RemoteListenerIOException, InterruptedException {
+            if (channel == null || !channel.isConnected()) {
+                if (channel != null) {
+                    channelConnections.remove(channel.getId());
+                }
+                // Check the version on each connect, the listener could have been replaced by another version
+                int version = getListenerVersion();
+                channel = connect(9);
+                batching = version >= RemoteListenerProtocol.V2;
+                if (!batching) {
+                    // Nothing has been written yet, so no results can have been received
+                    channel.getPipeline().replace("resultDecoder", "resultDecoder", new V1ResultDecoder());
+                }
+                channelConnections.put(channel.getId(), this);
+            }
+            return channel;
         }
 
-        private Channel getListenerChannel(String host, int triesRemaining) throws RemoteListenerIOException, InterruptedException {
+        private int getListenerVersion() throws RemoteListenerIOException, InterruptedException {
+            try {
+                return RemoteListenerProtocol.fromListenerData(
+                        rowLogConfigurationManager.getListenerData(rowLogId, subscriptionId, host));
+            } catch (KeeperException e) {
+                throw new RemoteListenerIOException("Failed to read the protocol version of remote listener on host '"
+                        + host + "'", e);
+            }
+        }
+
+        private Channel connect(int triesRemaining) throws RemoteListenerIOException, InterruptedException {
             String listenerHostAndPort[] = host.split(":");
             ChannelFuture connectFuture = bootstrap.connect(new InetSocketAddress(listenerHostAndPort[0],
                     Integer.valueOf(listenerHostAndPort[1])));
@@ -78,13 +190,147 @@ public class RemoteListenersSubscriptionHandler extends AbstractListenersSubscri
             } else {
                 if (triesRemaining > 0) {
                     Thread.sleep(10);
-                    return getListenerChannel(host, triesRemaining - 1);
+                    return connect(triesRemaining - 1);
                 } else {
                     throw new RemoteListenerIOException("Failed to connect channel to remote listener on host '" + host + "'");
                 }
             }
         }
 
+        public PendingMessage send(RowLogMessage message) throws RemoteListenerIOException, InterruptedException {
+            Channel channel;
+            boolean batching;
+            synchronized (this) {
+                channel = getChannel();
+                batching = this.batching;
+            }
+
+            if (!batching) {
+                return sendV1(message, channel);
+            }
+
+            PendingMessage pending = new PendingMessage(idCounter.incrementAndGet(), message, channel, null);
+            inFlight.put(pending.id, pending);
+
+            synchronized (this) {
+                toWrite.add(pending);
+                if (writing) {
+                    // The thread which is currently writing will pick up our message as well
+                    return pending;
+                }
+                writing = true;
+            }
+
+            while (true) {
+                final List<PendingMessage> batch;
+                synchronized (this) {
+                    if (toWrite.isEmpty()) {
+                        writing = false;
+                        return pending;
+                    }
+                    batch = toWrite;
+                    toWrite = new ArrayList<PendingMessage>();
+                }
+
+                // In case of a reconnect, the messages of the batch could have been assigned to different channels.
+                // Those of a closed channel will fail to be written.
+                batch.get(0).channel.write(RemoteListenerProtocol.encodeRequests(batch))
+                        .addListener(new ChannelFutureListener() {
+                            @Override
+                            public void operationComplete(ChannelFuture future) throws Exception {
+                                if (!future.isSuccess()) {
+                                    for (PendingMessage message : batch) {
+                                        fail(message, future.getCause());
+                                    }
+                                }
+                            }
+                        });
+            }
+        }
+
+        /**
+         * Sends one message in a version 1 frame, after the result of the previous one has been received.
+         */
+        private PendingMessage sendV1(RowLogMessage message, Channel channel) throws InterruptedException {
+            v1Permit.acquire();
+            final PendingMessage pending = new PendingMessage(idCounter.incrementAndGet(), message, channel, v1Permit);
+            inFlight.put(pending.id, pending);
+            v1Pending = pending;
+            channel.write(RemoteListenerProtocol.encodeRequest(message)).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (!future.isSuccess()) {
+                        fail(pending, future.getCause());
+                    }
+                }
+            });
+            return pending;
+        }
+
+        public void v1ResultReceived(Channel channel, boolean result) {
+            PendingMessage pending = v1Pending;
+            if (pending != null && pending.channel == channel) {
+                resultReceived(new RemoteListenerProtocol.Result(pending.id, result));
+            }
+        }
+
+        public void resultReceived(RemoteListenerProtocol.Result result) {
+            PendingMessage pending = inFlight.remove(result.id);
+            if (pending != null) {
+                pending.done(result.result, null);
+            }
+        }
+
+        public void fail(PendingMessage pending, Throwable exception) {
+            if (inFlight.remove(pending.id) != null) {
+                pending.done(null, exception);
+            }
+        }
+
+        /**
+         * Gives up on a message because the worker waiting for it was interrupted. A version 1 listener would
+         * still answer it, and that answer would be taken for the result of the next message sent over the
+         * channel, so in that case the channel is closed before the next message can be sent.
+         */
+        public void interrupted(PendingMessage pending, InterruptedException exception) {
+            if (pending.permit == null) {
+                fail(pending, exception);
+                return;
+            }
+
+            channelConnections.remove(pending.channel.getId());
+            pending.channel.close().awaitUninterruptibly();
+            // Only releases the permit once the channel is closed
+            channelFailed(pending.channel, exception);
+        }
+
+        /**
+         * Fails all messages which were sent over the given channel, the result will not arrive anymore.
+         */
+        public void channelFailed(Channel channel, Throwable exception) {
+            for (PendingMessage pending : inFlight.values()) {
+                if (pending.channel == channel) {
+                    fail(pending, exception);
+                }
+            }
+        }
+
+        public synchronized void close() {
+            if (channel != null) {
+                channelConnections.remove(channel.getId());
+                channel.close().awaitUninterruptibly();
+                channelFailed(channel, null);
+            }
+        }
+    }
+
+    private class RemoteWorkerDelegate implements WorkerDelegate {
+        private final ListenerConnection connection;
+
+        public RemoteWorkerDelegate(ListenerConnection connection) {
+            this.connection = connection;
+        }
+
         /**
          * Processes a message by sending the message to a remote listener.
          * This method retries (5 times) until a communication channel has been successfully setup and a result has been received
@@ -98,59 +344,41 @@ public class RemoteListenersSubscriptionHandler extends AbstractListenersSubscri
         public boolean processMessage(RowLogMessage message, int triesRemaining) throws RowLogException,
                 InterruptedException {
 
-            remoteProcessMessageResult = null;
-            resultHandlerException = null;
+            PendingMessage pending = connection.send(message);
             try {
-                if (channel == null || (!channel.isConnected())) {
-                    channel = getListenerChannel(host);
-                }
-
-                // We can associate 'this' directly with the channel, as we never handle more than one
-                // message at a time over a channel. If this ever changes, we should rather generate a per-request ID
-                workerDelegates.put(channel.getId(), this);
-
-                ChannelFuture writeFuture = channel.write(message);
-                writeFuture.await();
-                semaphore.acquire();
-                if (remoteProcessMessageResult == null || resultHandlerException != null) {
-                    if (triesRemaining > 0) {
-                        // Retry
-                        if (log.isInfoEnabled()) {
-                            log.info("Failed to process message. Retries remaining : " + triesRemaining,
-                                    resultHandlerException);
-                        }
-                        Thread.sleep(10);
-                        return processMessage(message, triesRemaining - 1);
-                    } else {
-                        throw new RemoteListenerIOException("Failure in sending message '" + message +
-                                "' to remote listener on host '" + host + "'", resultHandlerException);
-                    }
-                }
-
-                return remoteProcessMessageResult;
+                pending.latch.await();
             } catch (InterruptedException e) {
-                if (channel != null) {
-                    channel.close().awaitUninterruptibly();
-                }
+                connection.interrupted(pending, e);
                 throw e;
-            } finally {
-                if (channel != null) {
-                    workerDelegates.remove(channel.getId());
+            }
+
+            if (pending.result == null || pending.exception != null) {
+                if (triesRemaining > 0) {
+                    // Retry
+                    if (log.isInfoEnabled()) {
+                        log.info("Failed to process message. Retries remaining : " + triesRemaining,
+                                pending.exception);
+                    }
+                    Thread.sleep(10);
+                    return processMessage(message, triesRemaining - 1);
+                } else {
+                    throw new RemoteListenerIOException("Failure in sending message '" + message +
+                            "' to remote listener on host '" + connection.host + "'", pending.exception);
                 }
             }
+
+            return pending.result;
         }
 
         @Override
         public void close() {
-            if (channel != null) {
-                channel.close().awaitUninterruptibly();
-            }
+            releaseConnection(connection);
         }
 
     }
 
-    private RemoteWorkerDelegate getWorkerDelegate(ChannelHandlerContext ctx) {
-        return workerDelegates.get(ctx.getChannel().getId());
+    private ListenerConnection getConnection(ChannelHandlerContext ctx) {
+        return channelConnections.get(ctx.getChannel().getId());
     }
 
 
@@ -173,15 +401,11 @@ public class RemoteListenersSubscriptionHandler extends AbstractListenersSubscri
     }
 
     private final class ChannelPipelineFactoryImplementation implements ChannelPipelineFactory {
-        private final ResultDecoder RESULT_DECODER = new ResultDecoder();
-        private final MessageEncoder MESSAGE_ENCODER = new MessageEncoder();
-
         @Override
         public ChannelPipeline getPipeline() {
             ChannelPipeline pipeline = Channels.pipeline();
-            pipeline.addLast("resultDecoder", RESULT_DECODER); // Read enough bytes and decode the result
-            pipeline.addLast("resultHandler", new ResultHandler()); // Handle the result
-            pipeline.addLast("messageEncoder", MESSAGE_ENCODER); // Encode and send the RowLogMessage
+            pipeline.addLast("resultDecoder", new ResultDecoder()); // Read enough bytes and decode the results
+            pipeline.addLast("resultHandler", new ResultHandler()); // Handle the results
             return pipeline;
         }
     }
@@ -189,71 +413,60 @@ public class RemoteListenersSubscriptionHandler extends AbstractListenersSubscri
     private class ResultHandler extends SimpleChannelUpstreamHandler {
 
         @Override
+        @SuppressWarnings("unchecked")
         public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-            RemoteWorkerDelegate worker = getWorkerDelegate(ctx);
-            worker.remoteProcessMessageResult = (Boolean) e.getMessage();
-            worker.semaphore.release(); // We received the message, the processMessage call can continue
+            ListenerConnection connection = getConnection(ctx);
+            if (connection == null) {
+                return;
+            }
+            if (e.getMessage() instanceof Boolean) {
+                connection.v1ResultReceived(e.getChannel(), (Boolean)e.getMessage());
+            } else {
+                for (RemoteListenerProtocol.Result result : (List<RemoteListenerProtocol.Result>) e.getMessage()) {
+                    connection.resultReceived(result);
+                }
+            }
         }
 
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
             log.debug("Receive response from listener: error occurred", e.getCause());
-            RemoteWorkerDelegate worker = getWorkerDelegate(ctx);
-            if (worker != null) {
-                worker.resultHandlerException = e.getCause();
-                worker.semaphore.release(); // An exception occurred, the processMessage call should handle it
+            ListenerConnection connection = getConnection(ctx);
+            if (connection != null) {
+                // The processMessage calls waiting on this channel should retry
+                e.getChannel().close();
+                connection.channelFailed(e.getChannel(), e.getCause());
             }
         }
 
         @Override
         public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
             log.debug("Receive response from listener: channel was closed");
-            RemoteWorkerDelegate worker = getWorkerDelegate(ctx);
-            if (worker != null) {
-                worker.semaphore.release(); // The remoteProcessMessageResult will still be null
-                super.channelClosed(ctx, e);
+            ListenerConnection connection = getConnection(ctx);
+            if (connection != null) {
+                connection.channelFailed(e.getChannel(), null); // The results will still be null
             }
+            super.channelClosed(ctx, e);
         }
     }
 
     private class ResultDecoder extends FrameDecoder {
         @Override
-        protected Boolean decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
-            if (buffer.readableBytes() < Bytes.SIZEOF_BOOLEAN) {
-                return null;
-            }
-            return Bytes.toBoolean(buffer.readBytes(Bytes.SIZEOF_BOOLEAN).array()); // Send the result to the ResultHandler
+        protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+            return RemoteListenerProtocol.decodeResults(buffer); // Send the results to the ResultHandler
         }
     }
 
-    private class MessageEncoder extends SimpleChannelDownstreamHandler {
+    /**
+     * Decodes the answers of a version 1 listener: one boolean byte per message.
+     */
+    private class V1ResultDecoder extends FrameDecoder {
         @Override
-        public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-            ChannelBufferOutputStream outputStream = null;
-            try {
-                RowLogMessage message = (RowLogMessage) e.getMessage();
-                byte[] rowKey = message.getRowKey();
-                byte[] data = message.getData();
-                int msgLength = 8 + 4 + rowKey.length + 8 + 4; // timestamp + rowkey-length + rowkey + seqnr + data-length + data
-                if (data != null)
-                    msgLength = msgLength + data.length;
-                ChannelBuffer channelBuffer = ChannelBuffers.buffer(4 + msgLength);
-                outputStream = new ChannelBufferOutputStream(channelBuffer);
-                outputStream.writeInt(msgLength);
-                outputStream.writeLong(message.getTimestamp());
-                outputStream.writeInt(rowKey.length);
-                outputStream.write(rowKey);
-                outputStream.writeLong(message.getSeqNr());
-                if (data != null) {
-                    outputStream.writeInt(data.length);
-                    outputStream.write(data);
-                } else {
-                    outputStream.writeInt(0);
-                }
-                Channels.write(ctx, e.getFuture(), channelBuffer);
-            } finally {
-                Closer.close(outputStream);
+        protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+            if (buffer.readableBytes() < 1) {
+                return null;
             }
+            return buffer.readByte() != 0; // Send the result to the ResultHandler
         }
     }
 }
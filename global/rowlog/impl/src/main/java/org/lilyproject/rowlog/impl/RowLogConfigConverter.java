@@ -48,8 +48,13 @@ public class RowLogConfigConverter {
         // For deleteBufferSize we supply a default because the parameter was new in Lily 1.2
         int deleteBufferSize = JsonUtil.getInt(node, "deleteBufferSize", 100);
 
-        return new RowLogConfig(respectOrder, enableNotify, notifyDelay, minimalProcessDelay, wakeupTimeout,
-                orphanedMessageDelay, deleteBufferSize);
+        // Rowlogs created before the shardRouter parameter existed have their messages routed using MD5
+        String shardRouter = JsonUtil.getString(node, "shardRouter", RowLogShardRouterFactory.MD5);
+
+        RowLogConfig config = new RowLogConfig(respectOrder, enableNotify, notifyDelay, minimalProcessDelay,
+                wakeupTimeout, orphanedMessageDelay, deleteBufferSize);
+        config.setShardRouter(shardRouter);
+        return config;
     }
 
     public byte[] toJsonBytes(String rowLogId, RowLogConfig config) {
@@ -71,6 +76,7 @@ public class RowLogConfigConverter {
         node.put("wakeupTimeout", config.getWakeupTimeout());
         node.put("orphanedMessageDelay", config.getOrphanedMessageDelay());
         node.put("deleteBufferSize", config.getDeleteBufferSize());
+        node.put("shardRouter", config.getShardRouter());
 
         return node;
     }
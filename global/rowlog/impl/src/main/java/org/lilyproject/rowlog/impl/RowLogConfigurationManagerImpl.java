@@ -27,6 +27,7 @@ import javax.annotation.PreDestroy;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.NoNodeException;
@@ -45,6 +46,7 @@ import org.lilyproject.rowlog.api.RowLogSubscription;
 import org.lilyproject.rowlog.api.SubscriptionsObserver;
 import org.lilyproject.util.ArgumentValidator;
 import org.lilyproject.util.Logs;
+import org.lilyproject.util.zookeeper.ZkCache;
 import org.lilyproject.util.zookeeper.ZkUtil;
 import org.lilyproject.util.zookeeper.ZooKeeperItf;
 import org.lilyproject.util.zookeeper.ZooKeeperOperation;
@@ -53,6 +55,7 @@ import org.lilyproject.util.zookeeper.ZooKeeperOperation;
 // The paths used in zookeeper to store the data are :
 // /lily/rowlog/<rowlogid>+<data>
 // /lily/rowlog/<rowlogid>/shards/<shardid>/processorNotify+<data>
+// /lily/rowlog/<rowlogid>/processorNotifyEndpoint+<host:port>
 // /lily/rowlog/<rowlogid>/subscriptions/<subscriptionid>/<listenerid>
 
 public class RowLogConfigurationManagerImpl implements RowLogConfigurationManager {
@@ -61,12 +64,20 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
     
     private ZooKeeperItf zooKeeper;
 
+    /**
+     * Answers the configuration reads, which are done for every subscription and listener lookup. The observers
+     * keep using their own watches. Writes invalidate the nodes they change, so that they are visible to the
+     * reads which follow them.
+     */
+    private ZkCache zkCache;
+
     private ObserverSupport observerSupport = new ObserverSupport();
 
     private Log log = LogFactory.getLog(getClass());
     
     public RowLogConfigurationManagerImpl(ZooKeeperItf zooKeeper) throws RowLogException {
         this.zooKeeper = zooKeeper;
+        this.zkCache = new ZkCache(zooKeeper);
         this.observerSupport = new ObserverSupport();
         observerSupport.start();
     }
@@ -74,6 +85,7 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
     @PreDestroy
     public void shutdown() throws InterruptedException {
         observerSupport.shutdown();
+        zkCache.close();
     }
     
     // RowLogs
@@ -83,6 +95,7 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
         
         final byte[] data = RowLogConfigConverter.INSTANCE.toJsonBytes(rowLogId, rowLogConfig);
         ZkUtil.createPath(zooKeeper, path, data);
+        invalidate(path);
     }
     
     @Override
@@ -96,6 +109,7 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
                 return null;
             }
         });
+        invalidate(path);
     }
 
     @Override
@@ -109,45 +123,25 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
     
     
     private synchronized boolean subscriptionsExist(String rowLogId) throws KeeperException, InterruptedException {
-        final String subscriptionsPath = subscriptionsPath(rowLogId);
-        return zooKeeper.retryOperation(new ZooKeeperOperation<Boolean>() {
-           @Override
-           public Boolean execute() throws KeeperException, InterruptedException {
-               return zooKeeper.exists(subscriptionsPath, false) != null;
-           }
-        });
+        return zkCache.exists(subscriptionsPath(rowLogId));
     } 
     
     @Override
     public boolean rowLogExists(String rowLogId) throws InterruptedException, KeeperException {
-        final String path = rowLogPath(rowLogId);
-
-        return zooKeeper.retryOperation(new ZooKeeperOperation<Boolean>() {
-            @Override
-            public Boolean execute() throws KeeperException, InterruptedException {
-                return zooKeeper.exists(path, false) != null;
-            }
-        });
+        return zkCache.exists(rowLogPath(rowLogId));
     }
     
     @Override
     public Map<String, RowLogConfig> getRowLogs() throws KeeperException, InterruptedException {
         Map<String, RowLogConfig> rowLogs = new HashMap<String, RowLogConfig>();
-        List<String> rowLogIds = zooKeeper.retryOperation(new ZooKeeperOperation<List<String>>() {
-            @Override
-            public List<String> execute() throws KeeperException, InterruptedException {
-                return zooKeeper.getChildren(rowLogPath, false);
-            }
-        });
+        List<String> rowLogIds = zkCache.getChildren(rowLogPath);
+        if (rowLogIds == null)
+            return rowLogs;
         
         for (final String rowLogId : rowLogIds) {
-            byte[] data = zooKeeper.retryOperation(new ZooKeeperOperation<byte[]>() {
-                @Override
-                public byte[] execute() throws KeeperException, InterruptedException {
-                    return zooKeeper.getData(rowLogPath(rowLogId), false, null);
-                }
-            });
-            if (data != null)
+            byte[] data = zkCache.getData(rowLogPath(rowLogId));
+            // A rowlog without data (or which was removed in the meantime) has no configuration
+            if (data != null && data.length > 0)
                 rowLogs.put(rowLogId, RowLogConfigConverter.INSTANCE.fromJsonBytes(rowLogId, data));
         }
         return rowLogs;
@@ -177,20 +171,14 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
 
     @Override
     public boolean subscriptionExists(String rowLogId, String subscriptionId) throws InterruptedException, KeeperException {
-        final String path = subscriptionPath(rowLogId, subscriptionId);
-
-        return zooKeeper.retryOperation(new ZooKeeperOperation<Boolean>() {
-            @Override
-            public Boolean execute() throws KeeperException, InterruptedException {
-                return zooKeeper.exists(path, false) != null;
-            }
-        });
+        return zkCache.exists(subscriptionPath(rowLogId, subscriptionId));
     }
 
     @Override
     public synchronized void addSubscription(String rowLogId, String subscriptionId, RowLogSubscription.Type type, int orderNr) throws KeeperException, InterruptedException, RowLogException {
 
         ZkUtil.createPath(zooKeeper, subscriptionsPath(rowLogId));
+        invalidate(subscriptionsPath(rowLogId));
 
         final String path = subscriptionPath(rowLogId, subscriptionId);
 
@@ -204,6 +192,7 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
                     return zooKeeper.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
                 }
             });
+            invalidate(path);
         } catch (KeeperException.NodeExistsException e) {
             // The subscription already exists. This can be because someone else already created it, but also
             // because of the use of retryOperation.
@@ -231,6 +220,7 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
                     return null;
                 }
             });
+            invalidate(path);
         } catch (KeeperException.NoNodeException e) {
             throw new RowLogException("Subscription '" + subscriptionId + "' does not exist for rowlog '" + rowLogId + "'");
         }
@@ -294,38 +284,25 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
 
             tryCount++;
             if (tryCount > 3) {
+                invalidate(path);
                 return false;
             }
         }
+        invalidate(path);
         return true;
     }
     
     @Override
     public List<RowLogSubscription> getSubscriptions(final String rowLogId) throws KeeperException, InterruptedException {
         List<RowLogSubscription> subscriptions = new ArrayList<RowLogSubscription>();
-        Boolean subscriptionsExist = zooKeeper.retryOperation(new ZooKeeperOperation<Boolean>() {
-            @Override
-            public Boolean execute() throws KeeperException, InterruptedException {
-                return zooKeeper.exists(subscriptionsPath(rowLogId), false) != null;
-            }
-        });
-        if (!subscriptionsExist)
+        List<String> subscriptionIds = zkCache.getChildren(subscriptionsPath(rowLogId));
+        if (subscriptionIds == null)
             return subscriptions; // Return an empty list
         
-        List<String> subscriptionIds = zooKeeper.retryOperation(new ZooKeeperOperation<List<String>>() {
-            @Override
-            public List<String> execute() throws KeeperException, InterruptedException {
-                return zooKeeper.getChildren(subscriptionsPath(rowLogId), false);
-            }
-        });
-        
         for (final String subscriptionId : subscriptionIds) {
-            byte[] data = zooKeeper.retryOperation(new ZooKeeperOperation<byte[]>() {
-                @Override
-                public byte[] execute() throws KeeperException, InterruptedException {
-                    return zooKeeper.getData(subscriptionPath(rowLogId, subscriptionId), false, null);
-                }
-            });
+            byte[] data = zkCache.getData(subscriptionPath(rowLogId, subscriptionId));
+            if (data == null)
+                continue; // The subscription was removed in the meantime
             subscriptions.add(SubscriptionConverter.INSTANCE.fromJsonBytes(rowLogId, subscriptionId, data));
         }
         // Sort the subscriptions before returning
@@ -348,14 +325,21 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
     @Override
     public void addListener(String rowLogId, String subscriptionId, String listenerId) throws RowLogException,
             InterruptedException, KeeperException {
+        addListener(rowLogId, subscriptionId, listenerId, null);
+    }
+
+    @Override
+    public void addListener(String rowLogId, String subscriptionId, String listenerId, final byte[] data)
+            throws RowLogException, InterruptedException, KeeperException {
         final String path = listenerPath(rowLogId, subscriptionId, listenerId);
         try {
             zooKeeper.retryOperation(new ZooKeeperOperation<String>() {
                 @Override
                 public String execute() throws KeeperException, InterruptedException {
-                    return zooKeeper.create(path, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+                    return zooKeeper.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
                 }
             });
+            invalidate(path);
         } catch (KeeperException.NoNodeException e) {
             // This is thrown when the parent does not exist
             throw new RowLogException("Cannot add listener: subscription does not exist. Row log ID " +
@@ -380,19 +364,22 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
         } catch (KeeperException.NoNodeException ignore) {
             // Silently ignore. Might occur because we use retryOperation.
         }
+        invalidate(path);
     }
     
     @Override
     public List<String> getListeners(final String rowLogId, final String subscriptionId) throws KeeperException, InterruptedException  {
-        List<String> listenerIds = zooKeeper.retryOperation(new ZooKeeperOperation<List<String>>() {
-            @Override
-            public List<String> execute() throws KeeperException, InterruptedException {
-                return zooKeeper.getChildren(subscriptionPath(rowLogId, subscriptionId), false);
-            }
-        });
+        List<String> listenerIds = zkCache.getChildren(subscriptionPath(rowLogId, subscriptionId));
         if (listenerIds == null)
             return new ArrayList<String>();
-        else return listenerIds;
+        else return new ArrayList<String>(listenerIds);
+    }
+
+    @Override
+    public byte[] getListenerData(String rowLogId, String subscriptionId, String listenerId)
+            throws InterruptedException, KeeperException {
+        byte[] data = zkCache.getData(listenerPath(rowLogId, subscriptionId, listenerId));
+        return data == null || data.length == 0 ? null : data;
     }
     
     // Processor Notify
@@ -415,6 +402,50 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
 		}
     }
     
+    @Override
+    public void setProcessorNotifyEndpoint(String rowLogId, final String endpoint) throws InterruptedException,
+            KeeperException {
+        final String path = processorNotifyEndpointPath(rowLogId);
+        removeProcessorNotifyEndpoint(rowLogId);
+        try {
+            zooKeeper.retryOperation(new ZooKeeperOperation<String>() {
+                @Override
+                public String execute() throws KeeperException, InterruptedException {
+                    return zooKeeper.create(path, Bytes.toBytes(endpoint), ZooDefs.Ids.OPEN_ACL_UNSAFE,
+                            CreateMode.EPHEMERAL);
+                }
+            });
+        } catch (KeeperException.NodeExistsException e) {
+            // Might occur because we use a retryOperation.
+        }
+    }
+
+    @Override
+    public void removeProcessorNotifyEndpoint(String rowLogId) throws InterruptedException, KeeperException {
+        final String path = processorNotifyEndpointPath(rowLogId);
+        try {
+            zooKeeper.retryOperation(new ZooKeeperOperation<Object>() {
+                @Override
+                public Object execute() throws KeeperException, InterruptedException {
+                    zooKeeper.delete(path, -1);
+                    return null;
+                }
+            });
+        } catch (KeeperException.NoNodeException e) {
+            // No endpoint published
+        }
+    }
+
+    @Override
+    public String getProcessorNotifyEndpoint(String rowLogId) throws InterruptedException, KeeperException {
+        try {
+            byte[] data = ZkUtil.getData(zooKeeper, processorNotifyEndpointPath(rowLogId), null, null);
+            return data != null ? Bytes.toString(data) : null;
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+    }
+
     // Paths
     private String rowLogPath(String rowLogId) {
         return rowLogPath + "/" + rowLogId;
@@ -436,6 +467,18 @@ public class RowLogConfigurationManagerImpl implements RowLogConfigurationManage
         return rowLogPath(subscriptionKey.getRowLogId()) + "/" + "processorNotify/" + subscriptionKey.getSubscriptionId();
     }
     
+    private String processorNotifyEndpointPath(String rowLogId) {
+        return rowLogPath(rowLogId) + "/processorNotifyEndpoint";
+    }
+
+    /**
+     * Drops the cached state of a node which was changed, and the children of its parent.
+     */
+    private void invalidate(String path) {
+        zkCache.invalidate(path);
+        zkCache.invalidate(path.substring(0, path.lastIndexOf('/')));
+    }
+
     private String listenerPath(String rowLogId, String subscriptionId, String listenerId) {
         return subscriptionPath(rowLogId, subscriptionId) + "/" + listenerId;
     }
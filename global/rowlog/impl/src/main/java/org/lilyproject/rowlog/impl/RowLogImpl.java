@@ -75,6 +75,7 @@ public class RowLogImpl implements RowLog, RowLogImplMBean, SubscriptionsObserve
      * @param rowLogColumnFamily the column family in which the payload and execution state of the messages can be stored
      * @param rowLogId a byte uniquely identifying the rowLog amongst all rowLogs in the system
      * @param rowLocker if given, the rowlog will take locks at row level; if null, the locks will be taken at executionstate level
+     * @param shardRouter if null, the shard router is the one from the {@link RowLogConfig} of the rowlog
      * @throws RowLogException
      */
     public RowLogImpl(String id, HTableInterface rowTable, byte[] rowLogColumnFamily, byte rowLogId,
@@ -96,6 +97,9 @@ public class RowLogImpl implements RowLog, RowLogImplMBean, SubscriptionsObserve
                 initialRowLogConfigLoaded.wait();
             }
         }
+        if (this.shardRouter == null) {
+            this.shardRouter = RowLogShardRouterFactory.create(rowLogConfig.getShardRouter());
+        }
         this.processorNotifier = new RowLogProcessorNotifier(rowLogConfigurationManager, rowLogConfig.getNotifyDelay());
         rowLogConfigurationManager.addSubscriptionsObserver(id, this);
         synchronized (initialSubscriptionsLoaded) {
@@ -336,24 +340,29 @@ public class RowLogImpl implements RowLog, RowLogImplMBean, SubscriptionsObserve
             boolean allDone = processMessage(message, executionState);
             
             if (allDone) {
-                return handleAllDone(message, rowKey, executionStateQualifier, previousValue, lock);
+                return handleAllDone(message, rowKey, executionStateQualifier, previousValue, lock, null);
             } else {
+                boolean updated;
                 if (rowLocker != null) {
-                    // TODO (bruno) return value is ignored, is this ok?
-                    updateExecutionState(rowKey, executionStateQualifier, executionState, previousValue, lock);
+                    updated = updateExecutionState(rowKey, executionStateQualifier, executionState, previousValue, lock);
                 } else {
-                    // TODO (bruno) return value is ignored, is this ok?
-                    updateExecutionState(rowKey, executionStateQualifier, executionState, previousValue);
+                    updated = updateExecutionState(rowKey, executionStateQualifier, executionState, previousValue);
                 }
-                return false;
+                return handleNotAllDone(message, executionState, updated);
             }
         } catch (IOException e) {
             throw new RowLogException("Failed to process message", e);
         }
     }
 
+    /**
+     * Called when a message has been processed for all subscriptions.
+     *
+     * @param subscriptionId the subscription for which {@link #messageDone} completed the message, or null if
+     *                       the message was completed by {@link #processMessage(RowLogMessage, RowLock)}
+     */
     protected boolean handleAllDone(RowLogMessage message, byte[] rowKey, byte[] executionStateQualifier,
-            byte[] previousValue, RowLock lock) throws RowLogException, IOException {
+            byte[] previousValue, RowLock lock, String subscriptionId) throws RowLogException, IOException {
 
         if (lock != null) {
             return removeExecutionStateAndPayload(rowKey, executionStateQualifier, payloadQualifier(message.getSeqNr(),
@@ -365,7 +374,31 @@ public class RowLogImpl implements RowLog, RowLogImplMBean, SubscriptionsObserve
         }
     }
 
-    private boolean processMessage(RowLogMessage message, ExecutionState executionState) throws RowLogException, InterruptedException {
+    /**
+     * Called when, after processing a message, not all subscriptions are done.
+     *
+     * @param updated true if the new execution state was successfully stored
+     * @return the value to return from {@link #processMessage(RowLogMessage, RowLock)}
+     */
+    protected boolean handleNotAllDone(RowLogMessage message, ExecutionState executionState, boolean updated)
+            throws RowLogException {
+        return false;
+    }
+
+    /**
+     * Deferred subscriptions are not processed in-line by {@link #processMessage(RowLogMessage, RowLock)}, and
+     * do not count for deciding if the in-line processing is done.
+     */
+    protected boolean isDeferred(RowLogSubscription subscription) {
+        return false;
+    }
+
+    /**
+     * Offers the message to the listeners of the (non-deferred) subscriptions which did not yet process it.
+     *
+     * @return true if all these subscriptions are done
+     */
+    protected boolean processMessage(RowLogMessage message, ExecutionState executionState) throws RowLogException, InterruptedException {
         boolean allDone = true;
         
         // Take a stable reference to the subscriptions list
@@ -378,6 +411,10 @@ public class RowLogImpl implements RowLog, RowLogImplMBean, SubscriptionsObserve
         for (RowLogSubscription subscription : subscriptions) {
             String subscriptionId = subscription.getId();
 
+            if (isDeferred(subscription)) {
+                continue;
+            }
+
             if (log.isDebugEnabled()) {
                 log.debug("Processing msg '" + formatId(message) + "', subscr '" + subscriptionId + "' state: " +
                         executionState.getState(subscriptionId));
@@ -416,10 +453,14 @@ public class RowLogImpl implements RowLog, RowLogImplMBean, SubscriptionsObserve
         return Bytes.toStringBinary(message.getRowKey()) + ":" + message.getSeqNr();
     }
 
+    protected void notifyProcessor(String subscriptionId) throws InterruptedException {
+        processorNotifier.notifyProcessor(id, subscriptionId);
+    }
+
     /**
      * @return null if there's no subscription with this id
      */
-    private RowLogSubscription getSubscription(String id) {
+    protected RowLogSubscription getSubscription(String id) {
         for (RowLogSubscription subscription : subscriptionsList) {
             if (subscription.getId().equals(id)) {
                 return subscription;
@@ -474,7 +515,7 @@ public class RowLogImpl implements RowLog, RowLogImplMBean, SubscriptionsObserve
                 ExecutionState executionState = SubscriptionExecutionState.fromBytes(previousValue);
                 executionState.setState(subscriptionId, true);
                 if (executionState.allDone()) {
-                    handleAllDone(message, rowKey, executionStateQualifier, previousValue, rowLock);
+                    handleAllDone(message, rowKey, executionStateQualifier, previousValue, rowLock, subscriptionId);
                     if (log.isDebugEnabled()) {
                         log.debug("Message done: was last, removed exec state: " + message);
                     }
@@ -511,7 +552,7 @@ public class RowLogImpl implements RowLog, RowLogImplMBean, SubscriptionsObserve
                 ExecutionState executionState = SubscriptionExecutionState.fromBytes(previousValue);
                 executionState.setState(subscriptionId, true);
                 if (executionState.allDone()) {
-                    handleAllDone(message, rowKey, executionStateQualifier, previousValue, null);
+                    handleAllDone(message, rowKey, executionStateQualifier, previousValue, null, subscriptionId);
                     if (log.isDebugEnabled()) {
                         log.debug("Message done: was last, removed exec state: " + message);
                     }
@@ -571,9 +612,13 @@ public class RowLogImpl implements RowLog, RowLogImplMBean, SubscriptionsObserve
             return false;
         }
         if (rowLogConfig.isRespectOrder()) {
-            for (String orderedSubId : getSubscriptionIds()) {
+            for (RowLogSubscription orderedSub : getSubscriptions()) {
+                String orderedSubId = orderedSub.getId();
                 if (subscriptionId.equals(orderedSubId))
                     break;
+                // Deferred subscriptions are dispatched only once the others are done, and don't wait on each other
+                if (isDeferred(orderedSub))
+                    continue;
                 if (!executionState.getState(orderedSubId)) {
                     return false; // There is a previous subscription to be processed first
                 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl;
+
+import java.util.List;
+
+import org.lilyproject.rowlog.api.*;
+
+/**
+ * Assigns messages to shards by key range: the key space is divided in as many consecutive ranges as there are
+ * shards, based on the row key byte following the record id type byte, so that messages of rows which are close
+ * to each other end up in the same shard.
+ *
+ * <p>For UUID and SALTED record ids, this byte is uniformly distributed. If the record table is pre-split on
+ * the same boundaries (e.g. using bucket splits for SALTED record ids, with as many regions as there are
+ * shards), all messages of one shard belong to the rows of one record table region, which allows to keep the
+ * processing of a shard close to the data it concerns.</p>
+ */
+public class RowLogKeyRangeShardRouter implements RowLogShardRouter {
+    /** Position in the row key of the byte which determines the shard. */
+    private static final int KEY_BYTE = 1;
+
+    public RowLogShard getShard(RowLogMessage message, RowLogShardList shardList) throws RowLogException {
+        List<RowLogShard> shards = shardList.getShards();
+        if (shards.isEmpty()) {
+            throw new RowLogException("There are no rowlog shards registered.");
+        }
+        byte[] rowKey = message.getRowKey();
+        int keyByte = rowKey.length > KEY_BYTE ? rowKey[KEY_BYTE] & 0xFF : 0;
+        return shards.get(keyByte * shards.size() / 256);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl;
+
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Hash;
+import org.apache.hadoop.hbase.util.MurmurHash;
+import org.lilyproject.rowlog.api.*;
+
+/**
+ * Assigns messages to shards based on the MurmurHash of the row key. Like {@link RowLogHashShardRouter}, messages
+ * of the same row always end up in the same shard, but the hash is much cheaper to compute than MD5.
+ */
+public class RowLogMurmurShardRouter implements RowLogShardRouter {
+    private final Hash hash = MurmurHash.getInstance();
+
+    public RowLogShard getShard(RowLogMessage message, RowLogShardList shardList) throws RowLogException {
+        List<RowLogShard> shards = shardList.getShards();
+        if (shards.isEmpty()) {
+            throw new RowLogException("There are no rowlog shards registered.");
+        }
+        int selectedShard = (hash.hash(message.getRowKey()) & Integer.MAX_VALUE) % shards.size();
+        return shards.get(selectedShard);
+    }
+}
@@ -43,6 +43,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.zookeeper.KeeperException;
 import org.lilyproject.rowlog.api.ProcessorNotifyObserver;
 import org.lilyproject.rowlog.api.RowLog;
 import org.lilyproject.rowlog.api.RowLogConfig;
@@ -59,7 +60,8 @@ import org.lilyproject.util.concurrent.CustomThreadFactory;
 import org.lilyproject.util.hbase.HBaseAdminFactory;
 import org.lilyproject.util.io.Closer;
 
-public class RowLogProcessorImpl implements RowLogProcessor, RowLogObserver, SubscriptionsObserver, ProcessorNotifyObserver {
+public class RowLogProcessorImpl implements RowLogProcessor, RowLogObserver, SubscriptionsObserver, ProcessorNotifyObserver,
+        ProcessorNotifyReceiver.Listener {
     private volatile boolean stop = true;
     protected final RowLog rowLog;
     /** key = subscription id */
@@ -72,6 +74,7 @@ public class RowLogProcessorImpl implements RowLogProcessor, RowLogObserver, Sub
     private ScheduledExecutorService scheduledServices;
     private Configuration hbaseConf;
     private RowLogProcessorSettings settings;
+    private ProcessorNotifyReceiver notifyReceiver;
     /** key = subscription id */
     private LoadingCache<String, Triggerable> bufferedProcessorNotifiers;
 
@@ -145,12 +148,48 @@ public class RowLogProcessorImpl implements RowLogProcessor, RowLogObserver, Sub
                     }, rowLogConfig.getNotifyDelay());
                 }
             }));
+
+            startNotifyReceiver();
+        }
+    }
+
+    private void startNotifyReceiver() throws InterruptedException, IOException {
+        if (settings.getNotifyHostName() == null) {
+            return;
+        }
+
+        notifyReceiver = new ProcessorNotifyReceiver(rowLog.getId(), settings.getNotifyHostName(), this);
+        notifyReceiver.start();
+        try {
+            rowLogConfigurationManager.setProcessorNotifyEndpoint(rowLog.getId(), notifyReceiver.getEndpoint());
+            log.info("Receiving direct processor notifications for rowlog " + rowLog.getId() + " on "
+                    + notifyReceiver.getEndpoint());
+        } catch (KeeperException e) {
+            // The producers will keep notifying through ZooKeeper
+            log.warn("Failed to publish processor notify endpoint for rowlog " + rowLog.getId(), e);
+        }
+    }
+
+    private void stopNotifyReceiver() {
+        if (notifyReceiver == null) {
+            return;
+        }
+
+        try {
+            rowLogConfigurationManager.removeProcessorNotifyEndpoint(rowLog.getId());
+            notifyReceiver.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (KeeperException e) {
+            log.warn("Failed to remove processor notify endpoint for rowlog " + rowLog.getId(), e);
         }
+        notifyReceiver = null;
     }
 
     @Override
     public synchronized void stop() {
         stop = true;
+        stopNotifyReceiver();
         for (Triggerable triggerable : bufferedProcessorNotifiers.asMap().values()) {
             Closer.close(triggerable);
         }
@@ -311,6 +350,18 @@ public class RowLogProcessorImpl implements RowLogProcessor, RowLogObserver, Sub
         }
     }
 
+    /**
+     * Called for notifications which are sent directly to this processor, rather than through ZooKeeper.
+     */
+    @Override
+    public void notificationReceived(String subscriptionId, long sentAt) {
+        SubscriptionThread thread = subscriptionThreads.get(subscriptionId);
+        if (thread != null) {
+            thread.metrics.notifyLatency.inc(System.currentTimeMillis() - sentAt);
+        }
+        notifyProcessor(rowLog.getId(), subscriptionId);
+    }
+
     private synchronized void notifyProcessorNonDelayed(String subscriptionId) {
         SubscriptionThread thread = subscriptionThreads.get(subscriptionId);
         if (thread == null) {
@@ -353,7 +404,7 @@ public class RowLogProcessorImpl implements RowLogProcessor, RowLogObserver, Sub
 
                 case Netty:
                     subscriptionHandler = new RemoteListenersSubscriptionHandler(subscription.getId(),
-                            messagesWorkQueue, rowLog, rowLogConfigurationManager);
+                            messagesWorkQueue, rowLog, rowLogConfigurationManager, settings.getRemoteListenerWindow());
                     break;
 
                 case WAL:
@@ -453,6 +504,8 @@ public class RowLogProcessorImpl implements RowLogProcessor, RowLogObserver, Sub
                         });
 
                         metrics.scanDuration.inc(System.currentTimeMillis() - tsBeforeGetMessages);
+                        metrics.oldestMessageAge.set(messages.isEmpty() ? 0 :
+                                Math.max(0, tsBeforeGetMessages - messages.get(0).getTimestamp()));
 
                         if (log.isDebugEnabled()) {
                             log.debug(String.format("[%1$s - %2$s] Scanned with minimal timestamp of %3$s, got %4$s messages.",
@@ -543,7 +596,7 @@ public class RowLogProcessorImpl implements RowLogProcessor, RowLogObserver, Sub
         private boolean checkMinimalProcessDelay(RowLogMessage message) throws InterruptedException {
             long now = System.currentTimeMillis();
             long messageTimestamp = message.getTimestamp();
-            long waitAtLeastUntil = messageTimestamp + rowLogConfig.getMinimalProcessDelay();
+            long waitAtLeastUntil = messageTimestamp + getMinimalProcessDelay(subscription);
             if (now < waitAtLeastUntil) {
                 synchronized (this) {
                     wait(waitAtLeastUntil - now);
@@ -565,6 +618,10 @@ public class RowLogProcessorImpl implements RowLogProcessor, RowLogObserver, Sub
         }
     }
     
+    protected long getMinimalProcessDelay(RowLogSubscription subscription) {
+        return rowLogConfig.getMinimalProcessDelay();
+    }
+
     protected boolean isMessageDone(RowLogMessage message, String subscriptionId) throws RowLogException {
         return rowLog.isMessageDone(message, subscriptionId);
     }
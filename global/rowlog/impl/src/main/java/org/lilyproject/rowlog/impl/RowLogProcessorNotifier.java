@@ -15,7 +15,18 @@
  */
 package org.lilyproject.rowlog.impl;
 
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -25,11 +36,32 @@ import org.apache.zookeeper.KeeperException;
 import org.lilyproject.rowlog.api.RowLogConfigurationManager;
 import org.lilyproject.util.io.Closer;
 
+/**
+ * Wakes up the processor of a rowlog when new messages have been put on it.
+ *
+ * <p>Notifications are buffered per subscription, so that a burst of messages results in one notification.
+ * If the processor published an endpoint for direct notifications (see {@link ProcessorNotifyReceiver}),
+ * the notification is sent there, otherwise it goes through ZooKeeper.</p>
+ */
 public class RowLogProcessorNotifier {
     private RowLogConfigurationManager rowLogConfMgr;
     private Log log = LogFactory.getLog(getClass());
     private LoadingCache<SubscriptionKey, Triggerable> triggerables;
 
+    /**
+     * The endpoints of the processors, refreshed regularly so that we pick up (dis)appearing processors.
+     */
+    private LoadingCache<String, Optional<InetSocketAddress>> endpoints;
+
+    /**
+     * Per subscription, the time of the first notification request which has not yet been sent.
+     */
+    private ConcurrentMap<SubscriptionKey, AtomicLong> pendingSince = new ConcurrentHashMap<SubscriptionKey, AtomicLong>();
+
+    private DatagramSocket socket;
+
+    private static final long ENDPOINT_REFRESH_MILLIS = 5000;
+
     public RowLogProcessorNotifier(RowLogConfigurationManager rowLogConfigurationManager, final long delay) {
         this.rowLogConfMgr = rowLogConfigurationManager;
 
@@ -44,23 +76,87 @@ public class RowLogProcessorNotifier {
                 }, delay);
             }
         }));
+
+        this.endpoints = CacheBuilder.newBuilder()
+                .expireAfterWrite(ENDPOINT_REFRESH_MILLIS, TimeUnit.MILLISECONDS)
+                .build(CacheLoader.from(new Function<String, Optional<InetSocketAddress>>() {
+                    @Override
+                    public Optional<InetSocketAddress> apply(String rowLogId) {
+                        return lookupEndpoint(rowLogId);
+                    }
+                }));
     }
 
     protected void notifyProcessor(String rowLogId, String subscriptionId) throws InterruptedException {
-        triggerables.getUnchecked(new SubscriptionKey(rowLogId, subscriptionId)).trigger();
+        SubscriptionKey subscriptionKey = new SubscriptionKey(rowLogId, subscriptionId);
+        AtomicLong since = pendingSince.get(subscriptionKey);
+        if (since == null) {
+            pendingSince.putIfAbsent(subscriptionKey, new AtomicLong());
+            since = pendingSince.get(subscriptionKey);
+        }
+        since.compareAndSet(0, System.currentTimeMillis());
+
+        triggerables.getUnchecked(subscriptionKey).trigger();
     }
 
 	private void sendNotification(SubscriptionKey subscriptionKey) throws InterruptedException {
+        long sentAt = pendingSince.get(subscriptionKey).getAndSet(0);
+        if (sentAt == 0) {
+            sentAt = System.currentTimeMillis();
+        }
+
+        Optional<InetSocketAddress> endpoint = endpoints.getUnchecked(subscriptionKey.getRowLogId());
+        if (endpoint.isPresent()) {
+            try {
+                byte[] data = ProcessorNotifyReceiver.encode(subscriptionKey.getRowLogId(),
+                        subscriptionKey.getSubscriptionId(), sentAt);
+                getSocket().send(new DatagramPacket(data, data.length, endpoint.get()));
+                return;
+            } catch (IOException e) {
+                log.debug("Exception while sending notification to processor for rowlog subscription " +
+                        subscriptionKey + ", falling back to ZooKeeper", e);
+                endpoints.invalidate(subscriptionKey.getRowLogId());
+            }
+        }
+
 		try {
 			rowLogConfMgr.notifyProcessor(subscriptionKey.getRowLogId(), subscriptionKey.getSubscriptionId());
 		} catch (KeeperException e) {
 			log.debug("Exception while notifying processor for rowlog subscription " + subscriptionKey, e);
 		}
     }
+
+    private synchronized DatagramSocket getSocket() throws SocketException {
+        if (socket == null) {
+            socket = new DatagramSocket();
+        }
+        return socket;
+    }
+
+    private Optional<InetSocketAddress> lookupEndpoint(String rowLogId) {
+        try {
+            String endpoint = rowLogConfMgr.getProcessorNotifyEndpoint(rowLogId);
+            if (endpoint != null) {
+                int colonPos = endpoint.lastIndexOf(':');
+                return Optional.of(new InetSocketAddress(endpoint.substring(0, colonPos),
+                        Integer.parseInt(endpoint.substring(colonPos + 1))));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.debug("Exception while looking up processor notify endpoint for rowlog " + rowLogId, e);
+        }
+        return Optional.absent();
+    }
     
     public void close() throws InterruptedException {
         for (Triggerable triggerable : triggerables.asMap().values()) {
             Closer.close(triggerable);
         }
+        synchronized (this) {
+            if (socket != null) {
+                socket.close();
+            }
+        }
     }    
 }
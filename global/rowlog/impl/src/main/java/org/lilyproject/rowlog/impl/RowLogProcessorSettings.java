@@ -26,6 +26,10 @@ public class RowLogProcessorSettings {
     
     private int messagesWorkQueueSize = 1000;
 
+    private int remoteListenerWindow = RemoteListenersSubscriptionHandler.DEFAULT_WINDOW;
+
+    private String notifyHostName;
+
     public int getScanThreadCount() {
         return scanThreadCount;
     }
@@ -79,4 +83,28 @@ public class RowLogProcessorSettings {
     public void setMessagesWorkQueueSize(int messagesWorkQueueSize) {
         this.messagesWorkQueueSize = messagesWorkQueueSize;
     }
+
+    public int getRemoteListenerWindow() {
+        return remoteListenerWindow;
+    }
+
+    /**
+     * The maximum number of messages that are sent to one remote listener without having received their
+     * result. The messages in flight are always for different rows.
+     */
+    public void setRemoteListenerWindow(int remoteListenerWindow) {
+        this.remoteListenerWindow = remoteListenerWindow;
+    }
+
+    public String getNotifyHostName() {
+        return notifyHostName;
+    }
+
+    /**
+     * The host name on which the processor listens for wake-up notifications sent directly by the
+     * producers of messages. When null (the default), the notifications go through ZooKeeper.
+     */
+    public void setNotifyHostName(String notifyHostName) {
+        this.notifyHostName = notifyHostName;
+    }
 }
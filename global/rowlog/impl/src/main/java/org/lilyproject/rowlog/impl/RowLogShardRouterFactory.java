@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl;
+
+import org.lilyproject.rowlog.api.RowLogConfig;
+import org.lilyproject.rowlog.api.RowLogShardRouter;
+
+/**
+ * Creates the shard router configured by {@link RowLogConfig#getShardRouter()}.
+ */
+public class RowLogShardRouterFactory {
+    public static final String MURMUR = "murmur";
+    public static final String MD5 = "md5";
+    public static final String KEY_RANGE = "keyrange";
+
+    private RowLogShardRouterFactory() {
+    }
+
+    /**
+     * @param name one of the router names defined in this class, or the name of a class implementing
+     *             RowLogShardRouter with a default constructor. If null, the default router is used.
+     */
+    public static RowLogShardRouter create(String name) {
+        if (name == null || name.equals(MURMUR)) {
+            return new RowLogMurmurShardRouter();
+        } else if (name.equals(MD5)) {
+            return new RowLogHashShardRouter();
+        } else if (name.equals(KEY_RANGE)) {
+            return new RowLogKeyRangeShardRouter();
+        }
+
+        try {
+            Class<?> routerClass = RowLogShardRouterFactory.class.getClassLoader().loadClass(name);
+            return (RowLogShardRouter)routerClass.newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid rowlog shard router: " + name, e);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.apache.hadoop.metrics.util.MetricsIntValue;
 import org.apache.hadoop.metrics.util.MetricsRegistry;
 import org.apache.hadoop.metrics.util.MetricsTimeVaryingInt;
 import org.lilyproject.util.hbase.metrics.MBeanUtil;
+import org.lilyproject.util.hbase.metrics.MetricsHistogram;
 import org.lilyproject.util.hbase.metrics.MetricsDynamicMBeanBase;
 
 public class SubscriptionHandlerMetrics implements Updater {
@@ -39,6 +40,11 @@ public class SubscriptionHandlerMetrics implements Updater {
     public MetricsTimeVaryingInt failureRate = new MetricsTimeVaryingInt("failure_rate", registry);
     public MetricsTimeVaryingInt ioExceptionRate = new MetricsTimeVaryingInt("ioexception_rate", registry);
     public MetricsIntValue queueSize = new MetricsIntValue("queueSize", registry);
+    /**
+     * Age of the messages (time since they were put on the row log) when their processing starts. For the age of
+     * the messages still waiting, see {@link ProcessorMetrics#oldestMessageAge}.
+     */
+    public MetricsHistogram messageAge = new MetricsHistogram("message_age", registry);
 
     public SubscriptionHandlerMetrics(String subscriptionId) {
         this.subscriptionId = subscriptionId;
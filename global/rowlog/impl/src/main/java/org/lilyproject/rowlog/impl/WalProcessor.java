@@ -15,6 +15,7 @@
  */
 package org.lilyproject.rowlog.impl;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
@@ -32,43 +33,62 @@ import org.lilyproject.rowlog.api.RowLogSubscription.Type;
  * process any found messages. This will call the WalRowLog.processMessage() call which in its turn will request each
  * 'normal' subscription to process the message.
  * <br>The meta message on the rowlog shard will only be removed once all subscriptions have processed the message.  
+ * <br>The deferred subscriptions of the {@link WalRowLog} do get their own SubscriptionThread.
  */
 public class WalProcessor extends RowLogProcessorImpl {
+    private final RowLogSubscription walSubscription;
+
     public WalProcessor(WalRowLog rowLog, RowLogConfigurationManager rowLogConfigurationManager,
             Configuration hbaseConf) {
-        super(rowLog, rowLogConfigurationManager, hbaseConf);
+        this(rowLog, rowLogConfigurationManager, hbaseConf, new RowLogProcessorSettings());
     }
 
     public WalProcessor(WalRowLog rowLog, RowLogConfigurationManager rowLogConfigurationManager,
             Configuration hbaseConf, RowLogProcessorSettings settings) {
         super(rowLog, rowLogConfigurationManager, hbaseConf, settings);
+        this.walSubscription = new RowLogSubscription(rowLog.getId(), WalRowLog.WAL_SUBSCRIPTIONID, Type.WAL, 1);
     }
 
     /**
      * Instead of creating SubscriptionThread for each subscription, only one SubscriptionThread is created for the
-     * meta 'WAL' subscription.
-     * Also no subscription observers should be registered with the RowLogConfigurationManager.
+     * meta 'WAL' subscription, and one for each of the deferred subscriptions (see {@link WalRowLog}).
      */
     @Override
     protected void initializeSubscriptions() {
-        RowLogSubscription walSubscription = new RowLogSubscription(rowLog.getId(), WalRowLog.WAL_SUBSCRIPTIONID, Type.WAL, 1);
         SubscriptionThread subscriptionThread = startSubscriptionThread(walSubscription);
         subscriptionThreads.put(walSubscription.getId(), subscriptionThread);
+        super.initializeSubscriptions();
     }
     
     @Override
     public synchronized void subscriptionsChanged(List<RowLogSubscription> newSubscriptions) {
+        List<RowLogSubscription> subscriptions = new ArrayList<RowLogSubscription>();
+        subscriptions.add(walSubscription);
+        for (RowLogSubscription subscription : newSubscriptions) {
+            if (subscription.getType() == Type.Netty) {
+                subscriptions.add(subscription);
+            }
+        }
+        super.subscriptionsChanged(subscriptions);
     }
     
-    /**
-     * There are no subscription observers to be unregistered from the RowLogConfigurationManager.
-     */
     @Override
-    protected void stopSubscriptions() {
+    protected boolean isMessageDone(RowLogMessage message, String subscriptionId) throws RowLogException {
+        if (WalRowLog.WAL_SUBSCRIPTIONID.equals(subscriptionId)) {
+            return false;
+        }
+        return super.isMessageDone(message, subscriptionId);
     }
-    
+
+    /**
+     * The minimal process delay serves to give the in-line processing the time to finish, the deferred
+     * subscriptions can process their messages immediately.
+     */
     @Override
-    protected boolean isMessageDone(RowLogMessage message, String subscriptionId) throws RowLogException {
-        return false;
+    protected long getMinimalProcessDelay(RowLogSubscription subscription) {
+        if (subscription.getType() == Type.WAL) {
+            return super.getMinimalProcessDelay(subscription);
+        }
+        return 0;
     }
 }
@@ -16,7 +16,9 @@
 package org.lilyproject.rowlog.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.hadoop.hbase.client.HTableInterface;
@@ -36,6 +38,13 @@ import org.lilyproject.rowlog.api.*;
  * will request the {@link WalRowLog} to process it. This will in its turn request the listeners of each registered
  * (normal) subscription to process the message. (For the WAL use case this processing will be done in-order.)
  * <br>Only when the message has been processed for each subscription it will be removed from the shard.
+ *
+ * <p>Remote (Netty) subscriptions are an exception to this: they are <i>deferred</i>. Once the in-line
+ * subscriptions are done, the message is put on the shard for each deferred subscription which passes the
+ * {@link RowLogDispatchFilter} registered for this rowlog, and the 'meta' message is removed. The shard entries
+ * of the deferred subscriptions are consumed by the {@link WalProcessor} as for any other rowlog, the payload and
+ * execution state stay on the row until they are done. This allows e.g. the indexers to consume the WAL directly,
+ * rather than a second rowlog fed from the WAL.
  * 
  */
 public class WalRowLog extends RowLogImpl {
@@ -50,40 +59,164 @@ public class WalRowLog extends RowLogImpl {
 
     /**
      * When the RowLogMessage needs to be put on the rowlog shard, we only put it there once with the 'meta' subscription id "WAL".
+     * Only when the message is put for deferred subscriptions alone, it is put directly for these subscriptions.
      */
     @Override
     protected void putMessageOnShard(RowLogMessage message, List<RowLogSubscription> subscriptions) throws RowLogException {
-        // Ignore subscriptions and put a message for the 'meta' wal subscription
-        getShard(message).putMessage(message, Arrays.asList(WAL_SUBSCRIPTIONID));
+        List<String> deferredIds = new ArrayList<String>();
+        for (RowLogSubscription subscription : subscriptions) {
+            if (!isDeferred(subscription)) {
+                // Ignore subscriptions and put a message for the 'meta' wal subscription
+                getShard(message).putMessage(message, Arrays.asList(WAL_SUBSCRIPTIONID));
+                return;
+            }
+            deferredIds.add(subscription.getId());
+        }
+        getShard(message).putMessage(message, deferredIds);
     }
     
     /**
-     * Requests to remove the message from the shard for individual subscriptions are ignored.
-     * The 'meta' message will only be removed when it has been processed by all subscriptions.
+     * Requests to remove the message from the shard for individual subscriptions are ignored, except for
+     * deferred subscriptions.
+     * The 'meta' message will only be removed when it has been processed by all in-line subscriptions.
      */
     @Override
     protected void removeMessageFromShard(RowLogMessage message, String subscriptionId) throws RowLogException {
         // Ignore, don't remove message for individual subscriptions.
         // Instead remove the 'meta' message when all messages are done
+        if (isDeferred(subscriptionId)) {
+            super.removeMessageFromShard(message, subscriptionId);
+        }
+    }
+
+    @Override
+    protected boolean isDeferred(RowLogSubscription subscription) {
+        return subscription.getType() == RowLogSubscription.Type.Netty;
+    }
+
+    protected boolean isDeferred(String subscriptionId) {
+        RowLogSubscription subscription = getSubscription(subscriptionId);
+        return subscription != null && isDeferred(subscription);
+    }
+
+    /**
+     * After the in-line subscriptions are done, dispatches the message to the deferred subscriptions.
+     */
+    @Override
+    protected boolean processMessage(RowLogMessage message, ExecutionState executionState)
+            throws RowLogException, InterruptedException {
+        if (!super.processMessage(message, executionState)) {
+            return false;
+        }
+
+        List<String> pendingIds = new ArrayList<String>();
+        for (RowLogSubscription subscription : getSubscriptions()) {
+            if (isDeferred(subscription) && !executionState.getState(subscription.getId())) {
+                pendingIds.add(subscription.getId());
+            }
+        }
+        if (pendingIds.isEmpty()) {
+            return true;
+        }
+
+        List<String> dispatchIds = new ArrayList<String>(pendingIds);
+        RowLogDispatchFilter filter = RowLogDispatchFilterMapping.INSTANCE.get(getId());
+        if (filter != null) {
+            filter.filterSubscriptions(message, dispatchIds);
+        }
+
+        for (String subscriptionId : pendingIds) {
+            if (!dispatchIds.contains(subscriptionId)) {
+                executionState.setState(subscriptionId, true);
+            }
+        }
+        if (dispatchIds.isEmpty()) {
+            return true;
+        }
+
+        // The execution state already lists the deferred subscriptions (it was created when the message was put),
+        // so the messages are available to the processor right away. In case we get here again for the same
+        // message (e.g. when storing the execution state failed), the put simply overwrites the earlier one.
+        getShard(message).putMessage(message, dispatchIds);
+        for (String subscriptionId : dispatchIds) {
+            notifyProcessor(subscriptionId);
+        }
+        return false;
+    }
+
+    /**
+     * When only deferred subscriptions are left, the 'meta' message is removed: these subscriptions are
+     * handled through their own messages on the shard.
+     */
+    @Override
+    protected boolean handleNotAllDone(RowLogMessage message, ExecutionState executionState, boolean updated)
+            throws RowLogException {
+        if (!updated) {
+            return false;
+        }
+        for (RowLogSubscription subscription : getSubscriptions()) {
+            if (!isDeferred(subscription) && !executionState.getState(subscription.getId())) {
+                return false;
+            }
+        }
+        getShard(message).removeMessage(message, WAL_SUBSCRIPTIONID);
+        return true;
+    }
+
+    /**
+     * Messages which are only waiting on deferred subscriptions are not returned when no subscriptions
+     * are specified: they do not block the further processing of the row.
+     */
+    @Override
+    public List<RowLogMessage> getMessages(byte[] rowKey, String... subscriptionIds) throws RowLogException {
+        if (subscriptionIds.length > 0) {
+            return super.getMessages(rowKey, subscriptionIds);
+        }
+
+        boolean hasDeferred = false;
+        List<String> inlineIds = new ArrayList<String>();
+        for (RowLogSubscription subscription : getSubscriptions()) {
+            if (isDeferred(subscription)) {
+                hasDeferred = true;
+            } else {
+                inlineIds.add(subscription.getId());
+            }
+        }
+
+        if (!hasDeferred) {
+            return super.getMessages(rowKey);
+        } else if (inlineIds.isEmpty()) {
+            return Collections.emptyList();
+        } else {
+            return super.getMessages(rowKey, inlineIds.toArray(new String[inlineIds.size()]));
+        }
     }
     
     /**
      * When the message has been processed for all subscriptions (and only then), we can remove the 'meta' message from the rowlog shard.
+     * <p>When the message is completed by a deferred subscription, the 'meta' message was already removed by
+     * {@link #handleNotAllDone}, when the in-line subscriptions were done.
      */
     @Override
-    protected boolean handleAllDone(RowLogMessage message, byte[] rowKey, byte[] executionStateQualifier, byte[] previousValue, RowLock lock) throws IOException, RowLogException {
+    protected boolean handleAllDone(RowLogMessage message, byte[] rowKey, byte[] executionStateQualifier, byte[] previousValue, RowLock lock, String subscriptionId) throws IOException, RowLogException {
         // Remove the 'meta' message
-        getShard(message).removeMessage(message, WAL_SUBSCRIPTIONID);
+        if (subscriptionId == null) {
+            getShard(message).removeMessage(message, WAL_SUBSCRIPTIONID);
+        }
         // Also make sure the execution state and payload are removed from the row-local queue
-        return super.handleAllDone(message, rowKey, executionStateQualifier, previousValue, lock);
+        return super.handleAllDone(message, rowKey, executionStateQualifier, previousValue, lock, subscriptionId);
     }
     
     /**
      * The WalListener will have updated the execution state of the subscriptions it processed
      */
     @Override
-    public boolean messageDone(RowLogMessage message, String subscriptionId) {
-        // The 'meta' message has been removed by the handleAllDone call.
+    public boolean messageDone(RowLogMessage message, String subscriptionId)
+            throws RowLogException, InterruptedException {
+        if (isDeferred(subscriptionId)) {
+            return super.messageDone(message, subscriptionId);
+        }
+        // The 'meta' message has been removed by the handleAllDone or handleNotAllDone call.
         return true;
     }
     
@@ -92,15 +225,21 @@ public class WalRowLog extends RowLogImpl {
      */
     @Override
     protected void removeOrphanMessageFromShard(RowLogMessage message, String subscriptionId) throws RowLogException {
+        if (isDeferred(subscriptionId)) {
+            super.removeOrphanMessageFromShard(message, subscriptionId);
+        }
     }
     
     /**
      * This method is only called from the SubscriptionHandler.
-     * In case of the WalProcessor, the only subscriptionHandler will be the on for the 'meta' subscription.
-     * For these messages we should always return true. 
+     * In case of the WalProcessor, the only subscriptionHandlers will be the one for the 'meta' subscription,
+     * for which we should always return true, and those of the deferred subscriptions. 
      */
     @Override
     public boolean isMessageAvailable(RowLogMessage message, String subscriptionId) throws RowLogException {
+        if (isDeferred(subscriptionId)) {
+            return super.isMessageAvailable(message, subscriptionId);
+        }
         return true;
     }
 }
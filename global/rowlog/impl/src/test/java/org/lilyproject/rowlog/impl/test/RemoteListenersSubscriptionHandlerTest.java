@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl.test;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lilyproject.rowlog.api.RowLog;
+import org.lilyproject.rowlog.api.RowLogConfigurationManager;
+import org.lilyproject.rowlog.impl.RemoteListenersSubscriptionHandler;
+import org.lilyproject.rowlog.impl.RowLogMessageImpl;
+import org.lilyproject.util.io.Closer;
+
+/**
+ * Tests the {@link RemoteListenersSubscriptionHandler} against a fake listener which only talks version 1
+ * of the protocol: one boolean byte answer per message, without correlation id.
+ */
+public class RemoteListenersSubscriptionHandlerTest {
+    private ServerSocket serverSocket;
+    private V1Listener listener;
+    private TestHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+        listener = new V1Listener(serverSocket);
+        listener.start();
+
+        RowLog rowLog = createNiceMock(RowLog.class);
+        expect(rowLog.getId()).andReturn("RemoteTestRowLog").anyTimes();
+        // Without listener data, the listener is treated as a version 1 listener
+        RowLogConfigurationManager confMgr = createNiceMock(RowLogConfigurationManager.class);
+        replay(rowLog, confMgr);
+        handler = new TestHandler(rowLog, confMgr);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Closer.close(handler);
+        Closer.close(serverSocket);
+        listener.join();
+    }
+
+    @Test(timeout=30000)
+    public void testInterruptedV1Send() throws Exception {
+        final TestHandler.Delegate delegate = handler.delegate("localhost:" + serverSocket.getLocalPort());
+
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    delegate.processMessage(new RowLogMessageImpl(0, Bytes.toBytes("row1"), 0, null, null));
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                } catch (Exception e) {
+                    // not expected, the interrupted flag stays false
+                }
+            }
+        };
+        sender.start();
+
+        // The listener got the message but did not answer yet
+        listener.firstReceived.await();
+        sender.interrupt();
+        sender.join();
+        assertTrue(interrupted.get());
+
+        // Let the listener answer 'true' to the first message: this late answer should not be taken
+        // for the result of the next message, which the listener answers with 'false'
+        listener.answerFirst.countDown();
+        assertFalse(delegate.processMessage(new RowLogMessageImpl(0, Bytes.toBytes("row2"), 0, null, null)));
+        assertTrue(listener.connections.get() > 1);
+
+        delegate.close();
+    }
+
+    private static class TestHandler extends RemoteListenersSubscriptionHandler {
+        public TestHandler(RowLog rowLog, RowLogConfigurationManager confMgr) {
+            super("RemoteTestSubscription", null, rowLog, confMgr);
+        }
+
+        public Delegate delegate(String host) {
+            return new Delegate(createWorkerDelegate(host));
+        }
+
+        /**
+         * Makes the delegate of a worker accessible to the test.
+         */
+        private static class Delegate {
+            private final WorkerDelegate delegate;
+
+            Delegate(WorkerDelegate delegate) {
+                this.delegate = delegate;
+            }
+
+            public boolean processMessage(RowLogMessageImpl message) throws Exception {
+                return delegate.processMessage(message);
+            }
+
+            public void close() {
+                delegate.close();
+            }
+        }
+    }
+
+    /**
+     * Answers the first message it receives only after {@link #answerFirst} is released, with 'true', and
+     * all other messages immediately with 'false'.
+     */
+    private static class V1Listener extends Thread {
+        private final ServerSocket serverSocket;
+        private final CountDownLatch firstReceived = new CountDownLatch(1);
+        private final CountDownLatch answerFirst = new CountDownLatch(1);
+        private final AtomicInteger connections = new AtomicInteger();
+
+        V1Listener(ServerSocket serverSocket) {
+            this.serverSocket = serverSocket;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    // server socket closed
+                    return;
+                }
+                connections.incrementAndGet();
+                Thread connectionThread = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            DataInputStream in = new DataInputStream(socket.getInputStream());
+                            OutputStream out = socket.getOutputStream();
+                            while (true) {
+                                in.readFully(new byte[in.readInt()]);
+                                if (firstReceived.getCount() > 0) {
+                                    firstReceived.countDown();
+                                    answerFirst.await();
+                                    out.write(1);
+                                } else {
+                                    out.write(0);
+                                }
+                                out.flush();
+                            }
+                        } catch (Exception e) {
+                            // connection closed
+                        } finally {
+                            Closer.close(socket);
+                        }
+                    }
+                };
+                connectionThread.setDaemon(true);
+                connectionThread.start();
+            }
+        }
+    }
+}
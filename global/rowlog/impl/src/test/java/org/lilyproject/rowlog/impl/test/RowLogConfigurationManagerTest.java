@@ -353,4 +353,64 @@ public class RowLogConfigurationManagerTest {
         }
     }
     
+    @Test
+    public void testCachedReads() throws Exception {
+        String rowLogId = "testCachedReadsRowLogId";
+        String subscriptionId1 = "testCachedReadsSubscriptionId1";
+        String subscriptionId2 = "testCachedReadsSubscriptionId2";
+        RowLogConfigurationManagerImpl writer = new RowLogConfigurationManagerImpl(zooKeeper);
+        RowLogConfigurationManagerImpl reader = new RowLogConfigurationManagerImpl(zooKeeper);
+
+        writer.addSubscription(rowLogId, subscriptionId1, Type.VM, 1);
+        // The writer's own changes are visible at once
+        Assert.assertTrue(writer.subscriptionExists(rowLogId, subscriptionId1));
+        Assert.assertEquals(1, writer.getSubscriptions(rowLogId).size());
+        Assert.assertEquals(1, reader.getSubscriptions(rowLogId).size());
+
+        // The reader's cached reads catch up through the watches
+        writer.addSubscription(rowLogId, subscriptionId2, Type.Netty, 2);
+        waitForSubscriptions(reader, rowLogId, 2);
+        writer.updateSubscription(rowLogId, subscriptionId2, Type.VM, 3);
+        long waitUntil = System.currentTimeMillis() + 10000;
+        while (reader.getSubscriptions(rowLogId).get(1).getType() != Type.VM && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(new RowLogSubscription(rowLogId, subscriptionId2, Type.VM, 3),
+                reader.getSubscriptions(rowLogId).get(1));
+
+        // Listeners and their data
+        Assert.assertTrue(reader.getListeners(rowLogId, subscriptionId1).isEmpty());
+        writer.addListener(rowLogId, subscriptionId1, "listener1", new byte[] {2});
+        Assert.assertArrayEquals(new byte[] {2}, writer.getListenerData(rowLogId, subscriptionId1, "listener1"));
+        writer.addListener(rowLogId, subscriptionId1, "listener2");
+        Assert.assertNull(writer.getListenerData(rowLogId, subscriptionId1, "listener2"));
+        waitUntil = System.currentTimeMillis() + 10000;
+        while (reader.getListeners(rowLogId, subscriptionId1).size() < 2 && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(2, reader.getListeners(rowLogId, subscriptionId1).size());
+        Assert.assertArrayEquals(new byte[] {2}, reader.getListenerData(rowLogId, subscriptionId1, "listener1"));
+
+        writer.removeListener(rowLogId, subscriptionId1, "listener1");
+        Assert.assertNull(writer.getListenerData(rowLogId, subscriptionId1, "listener1"));
+        Assert.assertEquals(Arrays.asList("listener2"), writer.getListeners(rowLogId, subscriptionId1));
+
+        writer.removeSubscription(rowLogId, subscriptionId1);
+        writer.removeSubscription(rowLogId, subscriptionId2);
+        Assert.assertFalse(writer.subscriptionExists(rowLogId, subscriptionId1));
+        Assert.assertTrue(writer.getSubscriptions(rowLogId).isEmpty());
+        waitForSubscriptions(reader, rowLogId, 0);
+
+        writer.shutdown();
+        reader.shutdown();
+    }
+
+    private void waitForSubscriptions(RowLogConfigurationManagerImpl confMgr, String rowLogId, int count)
+            throws Exception {
+        long waitUntil = System.currentTimeMillis() + 10000;
+        while (confMgr.getSubscriptions(rowLogId).size() != count && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(count, confMgr.getSubscriptions(rowLogId).size());
+    }
 }
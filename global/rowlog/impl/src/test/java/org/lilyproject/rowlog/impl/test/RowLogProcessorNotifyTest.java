@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.zookeeper.KeeperException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lilyproject.hadooptestfw.HBaseProxy;
+import org.lilyproject.hadooptestfw.TestHelper;
+import org.lilyproject.rowlog.api.RowLogConfig;
+import org.lilyproject.rowlog.api.RowLogMessage;
+import org.lilyproject.rowlog.api.RowLogMessageListenerMapping;
+import org.lilyproject.rowlog.api.RowLogProcessor;
+import org.lilyproject.rowlog.api.RowLogSubscription;
+import org.lilyproject.rowlog.impl.RowLogConfigurationManagerImpl;
+import org.lilyproject.rowlog.impl.RowLogHashShardRouter;
+import org.lilyproject.rowlog.impl.RowLogImpl;
+import org.lilyproject.rowlog.impl.RowLogProcessorImpl;
+import org.lilyproject.rowlog.impl.RowLogProcessorSettings;
+import org.lilyproject.rowlog.impl.RowLogShardSetup;
+import org.lilyproject.util.hbase.HBaseTableFactoryImpl;
+import org.lilyproject.util.io.Closer;
+import org.lilyproject.util.zookeeper.ZkUtil;
+import org.lilyproject.util.zookeeper.ZooKeeperItf;
+
+/**
+ * Checks that a processor which accepts direct notifications is woken up by them, rather than only
+ * picking up new messages after its wakeup timeout.
+ */
+public class RowLogProcessorNotifyTest {
+    private static HBaseProxy HBASE_PROXY;
+    private static RowLogImpl rowLog;
+    private static RowLogProcessor processor;
+    private static RowLogConfigurationManagerImpl rowLogConfigurationManager;
+    private static RowLogConfigurationManagerImpl producerConfigurationManager;
+    private static ZooKeeperItf zooKeeper;
+    private static final AtomicInteger zkNotifications = new AtomicInteger();
+    private static final long WAKEUP_TIMEOUT = 60000L;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestHelper.setupLogging();
+        HBASE_PROXY = new HBaseProxy();
+        HBASE_PROXY.start();
+        Configuration configuration = HBASE_PROXY.getConf();
+        zooKeeper = ZkUtil.connect(HBASE_PROXY.getZkConnectString(), 120000);
+        rowLogConfigurationManager = new RowLogConfigurationManagerImpl(zooKeeper);
+        // Counts the notifications which the rowlog sends through ZooKeeper instead of directly
+        producerConfigurationManager = new RowLogConfigurationManagerImpl(zooKeeper) {
+            @Override
+            public void notifyProcessor(String rowLogId, String subscriptionId)
+                    throws InterruptedException, KeeperException {
+                zkNotifications.incrementAndGet();
+                super.notifyProcessor(rowLogId, subscriptionId);
+            }
+        };
+        // A wakeup timeout longer than the test waits for the message
+        rowLogConfigurationManager.addRowLog("NotifyRowLog",
+                new RowLogConfig(true, true, 100L, 0L, WAKEUP_TIMEOUT, 120000L, 100));
+        rowLog = new RowLogImpl("NotifyRowLog", RowLogTableUtil.getRowTable(configuration),
+                RowLogTableUtil.ROWLOG_COLUMN_FAMILY, (byte)4, producerConfigurationManager, null,
+                new RowLogHashShardRouter());
+        RowLogShardSetup.setupShards(1, rowLog, new HBaseTableFactoryImpl(configuration));
+        RowLogProcessorSettings settings = new RowLogProcessorSettings();
+        settings.setNotifyHostName("localhost");
+        processor = new RowLogProcessorImpl(rowLog, rowLogConfigurationManager, configuration, settings);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        Closer.close(processor);
+        Closer.close(rowLog);
+        Closer.close(producerConfigurationManager);
+        Closer.close(rowLogConfigurationManager);
+        Closer.close(zooKeeper);
+        HBASE_PROXY.stop();
+    }
+
+    @Test(timeout=150000)
+    public void testDirectNotify() throws Exception {
+        ValidationMessageListener listener = new ValidationMessageListener("NotifyListener", "NotifySubscription",
+                rowLog);
+        RowLogMessageListenerMapping.INSTANCE.put("NotifySubscription", listener);
+        rowLogConfigurationManager.addSubscription(rowLog.getId(), "NotifySubscription", RowLogSubscription.Type.VM, 1);
+        AbstractRowLogEndToEndTest.waitForSubscription(rowLog, "NotifySubscription");
+
+        try {
+            processor.start();
+            while (rowLogConfigurationManager.getProcessorNotifyEndpoint(rowLog.getId()) == null) {
+                Thread.sleep(100);
+            }
+            // Give the processor the time to find no messages and start waiting
+            Thread.sleep(2000);
+
+            listener.expectMessages(1);
+            long start = System.currentTimeMillis();
+            RowLogMessage message = rowLog.putMessage(Bytes.toBytes("notifyrow"), null, null, null);
+            listener.expectMessage(message);
+            listener.waitUntilMessagesConsumed(WAKEUP_TIMEOUT / 2);
+            assertTrue("The processor should be woken up before its wakeup timeout",
+                    System.currentTimeMillis() - start < WAKEUP_TIMEOUT / 2);
+            assertEquals("The processor should have been notified directly", 0, zkNotifications.get());
+
+            // Sleep to allow processor to finish message processing (messageDone marking)
+            Thread.sleep(2000);
+            processor.stop();
+            listener.validate();
+        } finally {
+            rowLogConfigurationManager.removeSubscription(rowLog.getId(), "NotifySubscription");
+            RowLogMessageListenerMapping.INSTANCE.remove("NotifySubscription");
+        }
+    }
+}
@@ -15,14 +15,21 @@
  */
 package org.lilyproject.rowlog.impl.test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.lilyproject.rowlog.api.RowLogMessage;
+import org.lilyproject.rowlog.api.RowLogMessageListener;
 import org.lilyproject.rowlog.api.RowLogSubscription;
 import org.lilyproject.rowlog.impl.RemoteListenerHandler;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 public class RowLogRemoteEndToEndTest extends AbstractRowLogEndToEndTest {
 
     private RemoteListenerHandler remoteListener;
@@ -81,4 +88,93 @@ public class RowLogRemoteEndToEndTest extends AbstractRowLogEndToEndTest {
         remoteListener2.stop();
         rowLogConfigurationManager.removeSubscription(rowLog.getId(), subscriptionId2);
     }
+
+    @Test(timeout=150000)
+    public void testBatchedOutOfOrderResults() throws Exception {
+        DelayingListener delayingListener = new DelayingListener(validationListener);
+        restartRemoteListener(delayingListener);
+
+        validationListener.expectMessages(10);
+        for (int rownr = 30; rownr < 40; rownr++) {
+            RowLogMessage message = rowLog.putMessage(Bytes.toBytes("row" + rownr), Bytes.toBytes(rownr), null, null);
+            validationListener.expectMessage(message);
+        }
+        processor.start();
+        validationListener.waitUntilMessagesConsumed(120000);
+        // Sleep to allow processor to finish message processing (messageDone marking)
+        Thread.sleep(2000);
+        processor.stop();
+        validationListener.validate();
+
+        assertTrue("Messages should be in flight together, max concurrency: " + delayingListener.maxConcurrent,
+                delayingListener.maxConcurrent > 1);
+        assertTrue("Results should have been returned out of order, started: " + delayingListener.started +
+                ", finished: " + delayingListener.finished, !delayingListener.started.equals(delayingListener.finished));
+    }
+
+    @Test(timeout=150000)
+    public void testVersion1Listener() throws Exception {
+        DelayingListener delayingListener = new DelayingListener(validationListener);
+        restartRemoteListener(delayingListener);
+
+        // Register the listener again without data, as a listener which only knows version 1 of the protocol does
+        String listenerId = rowLogConfigurationManager.getListeners(rowLog.getId(), subscriptionId).get(0);
+        rowLogConfigurationManager.removeListener(rowLog.getId(), subscriptionId, listenerId);
+        rowLogConfigurationManager.addListener(rowLog.getId(), subscriptionId, listenerId);
+
+        validationListener.expectMessages(10);
+        for (int rownr = 40; rownr < 50; rownr++) {
+            RowLogMessage message = rowLog.putMessage(Bytes.toBytes("row" + rownr), Bytes.toBytes(rownr), null, null);
+            validationListener.expectMessage(message);
+        }
+        processor.start();
+        validationListener.waitUntilMessagesConsumed(120000);
+        // Sleep to allow processor to finish message processing (messageDone marking)
+        Thread.sleep(2000);
+        processor.stop();
+        validationListener.validate();
+
+        // Version 1 sends one message at a time
+        assertEquals(1, delayingListener.maxConcurrent);
+        assertEquals(delayingListener.started, delayingListener.finished);
+    }
+
+    private void restartRemoteListener(RowLogMessageListener listener) throws Exception {
+        remoteListener.stop();
+        remoteListener = new RemoteListenerHandler(rowLog, subscriptionId, listener, rowLogConfigurationManager,
+                "localhost");
+        remoteListener.start();
+    }
+
+    /**
+     * Processes the messages of rows with a higher number faster, so that concurrently processed messages finish
+     * in another order than they started.
+     */
+    private static class DelayingListener implements RowLogMessageListener {
+        private final RowLogMessageListener delegate;
+        private int concurrent;
+        private int maxConcurrent;
+        private final List<Integer> started = new ArrayList<Integer>();
+        private final List<Integer> finished = new ArrayList<Integer>();
+
+        public DelayingListener(RowLogMessageListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean processMessage(RowLogMessage message) throws InterruptedException {
+            int rownr = Bytes.toInt(message.getData());
+            synchronized (this) {
+                concurrent++;
+                maxConcurrent = Math.max(maxConcurrent, concurrent);
+                started.add(rownr);
+            }
+            Thread.sleep((50 - rownr % 10 * 5) * 10);
+            synchronized (this) {
+                concurrent--;
+                finished.add(rownr);
+            }
+            return delegate.processMessage(message);
+        }
+    }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl.test;
+
+import java.util.Random;
+
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Test;
+import org.lilyproject.rowlog.api.RowLogConfig;
+import org.lilyproject.rowlog.api.RowLogException;
+import org.lilyproject.rowlog.api.RowLogMessage;
+import org.lilyproject.rowlog.api.RowLogShardList;
+import org.lilyproject.rowlog.api.RowLogShardRouter;
+import org.lilyproject.rowlog.impl.RowLogConfigConverter;
+import org.lilyproject.rowlog.impl.RowLogHashShardRouter;
+import org.lilyproject.rowlog.impl.RowLogKeyRangeShardRouter;
+import org.lilyproject.rowlog.impl.RowLogMessageImpl;
+import org.lilyproject.rowlog.impl.RowLogMurmurShardRouter;
+import org.lilyproject.rowlog.impl.RowLogShardImpl;
+import org.lilyproject.rowlog.impl.RowLogShardRouterFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RowLogShardRouterTest {
+    private static final String[] ROUTERS = {RowLogShardRouterFactory.MD5, RowLogShardRouterFactory.MURMUR,
+            RowLogShardRouterFactory.KEY_RANGE};
+
+    @Test
+    public void testConfigDefaultsToMd5() throws Exception {
+        RowLogConfig config = new RowLogConfig(true, true, 100L, 5000L, 5000L, 120000L, 100);
+        config.setShardRouter(RowLogShardRouterFactory.KEY_RANGE);
+        ObjectNode node = RowLogConfigConverter.INSTANCE.toJson(config);
+        assertEquals(RowLogShardRouterFactory.KEY_RANGE,
+                RowLogConfigConverter.INSTANCE.fromJson("rowlog", node).getShardRouter());
+
+        // Rowlogs created before the shard router was configurable keep routing their messages using MD5
+        node.remove("shardRouter");
+        assertEquals(RowLogShardRouterFactory.MD5,
+                RowLogConfigConverter.INSTANCE.fromJson("rowlog", node).getShardRouter());
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+        assertTrue(RowLogShardRouterFactory.create(null) instanceof RowLogMurmurShardRouter);
+        assertTrue(RowLogShardRouterFactory.create(RowLogShardRouterFactory.MURMUR) instanceof RowLogMurmurShardRouter);
+        assertTrue(RowLogShardRouterFactory.create(RowLogShardRouterFactory.MD5) instanceof RowLogHashShardRouter);
+        assertTrue(RowLogShardRouterFactory.create(RowLogShardRouterFactory.KEY_RANGE)
+                instanceof RowLogKeyRangeShardRouter);
+        assertTrue(RowLogShardRouterFactory.create(RowLogKeyRangeShardRouter.class.getName())
+                instanceof RowLogKeyRangeShardRouter);
+
+        try {
+            RowLogShardRouterFactory.create("org.lilyproject.rowlog.impl.NoSuchRouter");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            // A class which is not a router
+            RowLogShardRouterFactory.create(String.class.getName());
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testKeyRange() throws Exception {
+        RowLogShardList shardList = createShardList(4);
+        RowLogShardRouter router = new RowLogKeyRangeShardRouter();
+
+        // The byte following the record id type byte decides
+        assertEquals("shard0", router.getShard(message(1, 0x00), shardList).getId());
+        assertEquals("shard0", router.getShard(message(1, 0x3F), shardList).getId());
+        assertEquals("shard1", router.getShard(message(1, 0x40), shardList).getId());
+        assertEquals("shard2", router.getShard(message(0, 0x80), shardList).getId());
+        assertEquals("shard3", router.getShard(message(0, 0xC0), shardList).getId());
+        assertEquals("shard3", router.getShard(message(1, 0xFF), shardList).getId());
+
+        // Row keys too short to contain the byte go to the first shard
+        assertEquals("shard0", router.getShard(new RowLogMessageImpl(0, new byte[] {1}, 0, null, null), shardList)
+                .getId());
+
+        try {
+            router.getShard(message(1, 0), new RowLogShardList());
+            fail("expected RowLogException");
+        } catch (RowLogException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDistribution() throws Exception {
+        int shardCount = 8;
+        RowLogShardList shardList = createShardList(shardCount);
+
+        // Messages for row keys shaped like UUID record ids
+        Random random = new Random(0);
+        RowLogMessage[] messages = new RowLogMessage[10000];
+        for (int i = 0; i < messages.length; i++) {
+            byte[] rowKey = new byte[17];
+            random.nextBytes(rowKey);
+            rowKey[0] = 1;
+            messages[i] = new RowLogMessageImpl(0, rowKey, i, null, null);
+        }
+
+        for (String name : ROUTERS) {
+            RowLogShardRouter router = RowLogShardRouterFactory.create(name);
+            int[] counts = new int[shardCount];
+            for (RowLogMessage message : messages) {
+                counts[Integer.parseInt(router.getShard(message, shardList).getId().substring("shard".length()))]++;
+            }
+            for (int count : counts) {
+                // roughly uniform: on average 1250 messages per shard
+                assertTrue(name + " routes " + count + " messages to a shard", count > 1000 && count < 1500);
+            }
+
+            // The same row always goes to the same shard
+            RowLogMessage sameRow = new RowLogMessageImpl(1, messages[0].getRowKey().clone(), 1, null, null);
+            assertSame(router.getShard(messages[0], shardList), router.getShard(sameRow, shardList));
+        }
+    }
+
+    private static RowLogShardList createShardList(int shardCount) throws Exception {
+        RowLogShardList shardList = new RowLogShardList();
+        for (int i = 0; i < shardCount; i++) {
+            shardList.addShard(new RowLogShardImpl("shard" + i, new byte[] {(byte)i}, null, null, 1));
+        }
+        return shardList;
+    }
+
+    private static RowLogMessage message(int typeByte, int keyByte) {
+        return new RowLogMessageImpl(0, new byte[] {(byte)typeByte, (byte)keyByte, 5, 6}, 0, null, null);
+    }
+}
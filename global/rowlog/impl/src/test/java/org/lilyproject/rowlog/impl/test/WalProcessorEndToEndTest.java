@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl.test;
+
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lilyproject.hadooptestfw.HBaseProxy;
+import org.lilyproject.hadooptestfw.TestHelper;
+import org.lilyproject.rowlog.api.RowLogConfig;
+import org.lilyproject.rowlog.api.RowLogMessage;
+import org.lilyproject.rowlog.api.RowLogMessageListenerMapping;
+import org.lilyproject.rowlog.api.RowLogProcessor;
+import org.lilyproject.rowlog.api.RowLogSubscription;
+import org.lilyproject.rowlog.impl.RemoteListenerHandler;
+import org.lilyproject.rowlog.impl.RowLogConfigurationManagerImpl;
+import org.lilyproject.rowlog.impl.RowLogHashShardRouter;
+import org.lilyproject.rowlog.impl.RowLogShardSetup;
+import org.lilyproject.rowlog.impl.WalProcessor;
+import org.lilyproject.rowlog.impl.WalRowLog;
+import org.lilyproject.util.hbase.HBaseTableFactoryImpl;
+import org.lilyproject.util.io.Closer;
+import org.lilyproject.util.zookeeper.ZkUtil;
+import org.lilyproject.util.zookeeper.ZooKeeperItf;
+
+/**
+ * Checks that the {@link WalProcessor} delivers the messages which the {@link WalRowLog} dispatched to its
+ * deferred subscriptions.
+ */
+public class WalProcessorEndToEndTest {
+    private static HBaseProxy HBASE_PROXY;
+    private static WalRowLog rowLog;
+    private static RowLogProcessor processor;
+    private static RowLogConfigurationManagerImpl rowLogConfigurationManager;
+    private static ZooKeeperItf zooKeeper;
+    private static final long MINIMAL_PROCESS_DELAY = 60000L;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestHelper.setupLogging();
+        HBASE_PROXY = new HBaseProxy();
+        HBASE_PROXY.start();
+        Configuration configuration = HBASE_PROXY.getConf();
+        zooKeeper = ZkUtil.connect(HBASE_PROXY.getZkConnectString(), 120000);
+        rowLogConfigurationManager = new RowLogConfigurationManagerImpl(zooKeeper);
+        // A minimal process delay longer than the test waits, it should not apply to the deferred subscriptions
+        rowLogConfigurationManager.addRowLog("WalEndToEndRowLog",
+                new RowLogConfig(true, true, 100L, MINIMAL_PROCESS_DELAY, 5000L, 120000L, 100));
+        rowLog = new WalRowLog("WalEndToEndRowLog", RowLogTableUtil.getRowTable(configuration),
+                RowLogTableUtil.ROWLOG_COLUMN_FAMILY, (byte)3, rowLogConfigurationManager, null,
+                new RowLogHashShardRouter());
+        RowLogShardSetup.setupShards(1, rowLog, new HBaseTableFactoryImpl(configuration));
+        processor = new WalProcessor(rowLog, rowLogConfigurationManager, configuration);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        Closer.close(processor);
+        Closer.close(rowLog);
+        Closer.close(rowLogConfigurationManager);
+        Closer.close(zooKeeper);
+        HBASE_PROXY.stop();
+    }
+
+    @Test(timeout=150000)
+    public void testDeferredSubscriptions() throws Exception {
+        ValidationMessageListener inlineListener = new ValidationMessageListener("Inline", "Inline", rowLog);
+        RowLogMessageListenerMapping.INSTANCE.put("Inline", inlineListener);
+        rowLogConfigurationManager.addSubscription(rowLog.getId(), "Inline", RowLogSubscription.Type.VM, 1);
+
+        ValidationMessageListener deferredListener1 = new ValidationMessageListener("Deferred1", "Deferred1", rowLog);
+        rowLogConfigurationManager.addSubscription(rowLog.getId(), "Deferred1", RowLogSubscription.Type.Netty, 2);
+        ValidationMessageListener deferredListener2 = new ValidationMessageListener("Deferred2", "Deferred2", rowLog);
+        rowLogConfigurationManager.addSubscription(rowLog.getId(), "Deferred2", RowLogSubscription.Type.Netty, 3);
+
+        AbstractRowLogEndToEndTest.waitForSubscription(rowLog, "Inline");
+        AbstractRowLogEndToEndTest.waitForSubscription(rowLog, "Deferred1");
+        AbstractRowLogEndToEndTest.waitForSubscription(rowLog, "Deferred2");
+
+        RemoteListenerHandler remoteListener1 = new RemoteListenerHandler(rowLog, "Deferred1", deferredListener1,
+                rowLogConfigurationManager, "localhost");
+        remoteListener1.start();
+        RemoteListenerHandler remoteListener2 = new RemoteListenerHandler(rowLog, "Deferred2", deferredListener2,
+                rowLogConfigurationManager, "localhost");
+        remoteListener2.start();
+
+        try {
+            inlineListener.expectMessages(5);
+            deferredListener1.expectMessages(5);
+            deferredListener2.expectMessages(5);
+            for (int rownr = 0; rownr < 5; rownr++) {
+                RowLogMessage message = rowLog.putMessage(Bytes.toBytes("walrow" + rownr), null, null, null);
+                inlineListener.expectMessage(message);
+                deferredListener1.expectMessage(message);
+                deferredListener2.expectMessage(message);
+                // The in-line processing as done by the repository, which dispatches to the deferred subscriptions
+                assertTrue(rowLog.processMessage(message, null));
+            }
+
+            long start = System.currentTimeMillis();
+            processor.start();
+            deferredListener1.waitUntilMessagesConsumed(MINIMAL_PROCESS_DELAY / 2);
+            deferredListener2.waitUntilMessagesConsumed(MINIMAL_PROCESS_DELAY / 2);
+            assertTrue("Deferred messages should not wait for the minimal process delay",
+                    System.currentTimeMillis() - start < MINIMAL_PROCESS_DELAY);
+            // Sleep to allow processor to finish message processing (messageDone marking)
+            Thread.sleep(2000);
+            processor.stop();
+
+            inlineListener.validate();
+            deferredListener1.validate();
+            deferredListener2.validate();
+            // the 'meta' messages were removed when dispatching
+            assertTrue(rowLog.getShards().get(0).next(WalRowLog.WAL_SUBSCRIPTIONID, 20).isEmpty());
+        } finally {
+            remoteListener1.stop();
+            remoteListener2.stop();
+            rowLogConfigurationManager.removeSubscription(rowLog.getId(), "Deferred1");
+            rowLogConfigurationManager.removeSubscription(rowLog.getId(), "Deferred2");
+            rowLogConfigurationManager.removeSubscription(rowLog.getId(), "Inline");
+            RowLogMessageListenerMapping.INSTANCE.remove("Inline");
+        }
+    }
+}
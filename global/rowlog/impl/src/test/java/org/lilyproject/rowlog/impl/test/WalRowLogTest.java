@@ -0,0 +1,279 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl.test;
+
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.classextension.EasyMock.createControl;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.easymock.classextension.IMocksControl;
+import org.junit.*;
+import org.lilyproject.hadooptestfw.HBaseProxy;
+import org.lilyproject.hadooptestfw.TestHelper;
+import org.lilyproject.rowlog.api.*;
+import org.lilyproject.rowlog.api.RowLogSubscription.Type;
+import org.lilyproject.rowlog.impl.RowLogConfigurationManagerImpl;
+import org.lilyproject.rowlog.impl.RowLogHashShardRouter;
+import org.lilyproject.rowlog.impl.RowLogMessageImpl;
+import org.lilyproject.rowlog.impl.WalRowLog;
+import org.lilyproject.util.io.Closer;
+import org.lilyproject.util.zookeeper.ZkUtil;
+import org.lilyproject.util.zookeeper.ZooKeeperItf;
+
+/**
+ * Tests the handling of deferred (remote) subscriptions by the {@link WalRowLog}: the in-line subscriptions are
+ * processed by the WAL itself, after which the message is dispatched to the deferred subscriptions.
+ */
+public class WalRowLogTest {
+    private static HBaseProxy HBASE_PROXY;
+    private static RowLogConfigurationManager configurationManager;
+    private static IMocksControl control;
+    private static HTableInterface rowTable;
+    private static ZooKeeperItf zooKeeper;
+    private static String rowLogId = "WalRowLogTest";
+    private static String inlineId = "Inline";
+    private static String deferredId1 = "Deferred1";
+    private static String deferredId2 = "Deferred2";
+    private static List<String> walIds = Arrays.asList(WalRowLog.WAL_SUBSCRIPTIONID);
+    private RowLog rowLog;
+    private RowLogShard shard;
+    private CountingListener inlineListener;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestHelper.setupLogging();
+        HBASE_PROXY = new HBaseProxy();
+        HBASE_PROXY.start();
+        zooKeeper = ZkUtil.connect(HBASE_PROXY.getZkConnectString(), 10000);
+        configurationManager = new RowLogConfigurationManagerImpl(zooKeeper);
+        configurationManager.addRowLog(rowLogId, new RowLogConfig(true, false, 100L, 5000L, 5000L, 120000L, 100));
+        configurationManager.addSubscription(rowLogId, inlineId, Type.VM, 1);
+        configurationManager.addSubscription(rowLogId, deferredId1, Type.Netty, 2);
+        configurationManager.addSubscription(rowLogId, deferredId2, Type.Netty, 3);
+        control = createControl();
+        rowTable = RowLogTableUtil.getRowTable(HBASE_PROXY.getConf());
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        Closer.close(zooKeeper);
+        Closer.close(configurationManager);
+        HBASE_PROXY.stop();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        rowLog = new WalRowLog(rowLogId, rowTable, RowLogTableUtil.ROWLOG_COLUMN_FAMILY, (byte)2,
+                configurationManager, null, new RowLogHashShardRouter());
+        AbstractRowLogEndToEndTest.waitForSubscription(rowLog, inlineId);
+        AbstractRowLogEndToEndTest.waitForSubscription(rowLog, deferredId1);
+        AbstractRowLogEndToEndTest.waitForSubscription(rowLog, deferredId2);
+
+        inlineListener = new CountingListener();
+        RowLogMessageListenerMapping.INSTANCE.put(inlineId, inlineListener);
+
+        shard = control.createMock(RowLogShard.class);
+        shard.getId();
+        expectLastCall().andReturn("ShardId").anyTimes();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        control.reset();
+        RowLogMessageListenerMapping.INSTANCE.remove(inlineId);
+        RowLogDispatchFilterMapping.INSTANCE.remove(rowLogId);
+        Closer.close(rowLog);
+    }
+
+    @Test
+    public void testDeferredDispatch() throws Exception {
+        shard.putMessage(isA(RowLogMessage.class), eq(walIds));
+        shard.putMessage(isA(RowLogMessage.class), eq(Arrays.asList(deferredId1, deferredId2)));
+        // when the in-line subscriptions are done, not again when the deferred subscriptions are done
+        shard.removeMessage(isA(RowLogMessage.class), eq(WalRowLog.WAL_SUBSCRIPTIONID));
+        shard.removeMessage(isA(RowLogMessage.class), eq(deferredId1));
+        shard.removeMessage(isA(RowLogMessage.class), eq(deferredId2));
+
+        control.replay();
+        rowLog.getShardList().addShard(shard);
+        byte[] rowKey = Bytes.toBytes("row1");
+        RowLogMessage message = rowLog.putMessage(rowKey, null, null, null);
+
+        // The WAL is done with the message once the in-line subscriptions are done
+        assertTrue(rowLog.processMessage(reload(message), null));
+        assertEquals(1, inlineListener.count);
+        assertTrue(rowLog.isMessageDone(message, inlineId));
+        assertFalse(rowLog.isMessageDone(message, deferredId1));
+        // the WAL respects the order, but the deferred subscriptions don't wait on each other
+        assertTrue(rowLog.isMessageAvailable(message, deferredId1));
+        assertTrue(rowLog.isMessageAvailable(message, deferredId2));
+
+        // The pending deferred subscriptions don't block the row, but are there when asked for
+        assertTrue(rowLog.getMessages(rowKey).isEmpty());
+        assertEquals(1, rowLog.getMessages(rowKey, deferredId1).size());
+
+        rowLog.messageDone(message, deferredId1);
+        assertTrue(rowLog.isMessageDone(message, deferredId1));
+        assertEquals(1, rowLog.getMessages(rowKey, deferredId1, deferredId2).size());
+
+        rowLog.messageDone(message, deferredId2);
+        assertTrue(rowLog.getMessages(rowKey, deferredId1, deferredId2).isEmpty());
+        assertEquals(1, inlineListener.count);
+        control.verify();
+    }
+
+    @Test
+    public void testInlineNotDone() throws Exception {
+        shard.putMessage(isA(RowLogMessage.class), eq(walIds));
+        shard.putMessage(isA(RowLogMessage.class), eq(Arrays.asList(deferredId1, deferredId2)));
+        shard.removeMessage(isA(RowLogMessage.class), eq(WalRowLog.WAL_SUBSCRIPTIONID));
+
+        control.replay();
+        rowLog.getShardList().addShard(shard);
+        byte[] rowKey = Bytes.toBytes("row2");
+        RowLogMessage message = rowLog.putMessage(rowKey, null, null, null);
+
+        // As long as the in-line subscription fails, the message is not dispatched and the 'meta' message stays
+        inlineListener.result = false;
+        assertFalse(rowLog.processMessage(reload(message), null));
+        assertFalse(rowLog.isMessageDone(message, inlineId));
+        assertFalse(rowLog.isMessageAvailable(message, deferredId1));
+        assertEquals(1, rowLog.getMessages(rowKey).size());
+
+        inlineListener.result = true;
+        assertTrue(rowLog.processMessage(reload(message), null));
+        assertEquals(2, inlineListener.count);
+        assertTrue(rowLog.getMessages(rowKey).isEmpty());
+        control.verify();
+    }
+
+    @Test
+    public void testDispatchFilter() throws Exception {
+        RowLogDispatchFilterMapping.INSTANCE.put(rowLogId, new RowLogDispatchFilter() {
+            @Override
+            public void filterSubscriptions(RowLogMessage message, List<String> subscriptionIds) {
+                subscriptionIds.remove(deferredId2);
+            }
+        });
+
+        shard.putMessage(isA(RowLogMessage.class), eq(walIds));
+        shard.putMessage(isA(RowLogMessage.class), eq(Arrays.asList(deferredId1)));
+        shard.removeMessage(isA(RowLogMessage.class), eq(WalRowLog.WAL_SUBSCRIPTIONID));
+
+        control.replay();
+        rowLog.getShardList().addShard(shard);
+        byte[] rowKey = Bytes.toBytes("row3");
+        RowLogMessage message = rowLog.putMessage(rowKey, null, null, null);
+
+        assertTrue(rowLog.processMessage(reload(message), null));
+        assertFalse(rowLog.isMessageDone(message, deferredId1));
+        // filtered subscriptions are marked done right away
+        assertTrue(rowLog.isMessageDone(message, deferredId2));
+        assertTrue(rowLog.getMessages(rowKey, deferredId2).isEmpty());
+        control.verify();
+    }
+
+    @Test
+    public void testDispatchFilterRemovesAll() throws Exception {
+        RowLogDispatchFilterMapping.INSTANCE.put(rowLogId, new RowLogDispatchFilter() {
+            @Override
+            public void filterSubscriptions(RowLogMessage message, List<String> subscriptionIds) {
+                subscriptionIds.clear();
+            }
+        });
+
+        // no dispatching at all, the message is done for all subscriptions
+        shard.putMessage(isA(RowLogMessage.class), eq(walIds));
+        shard.removeMessage(isA(RowLogMessage.class), eq(WalRowLog.WAL_SUBSCRIPTIONID));
+
+        control.replay();
+        rowLog.getShardList().addShard(shard);
+        byte[] rowKey = Bytes.toBytes("row4");
+        RowLogMessage message = rowLog.putMessage(rowKey, null, null, null);
+
+        assertTrue(rowLog.processMessage(reload(message), null));
+        assertTrue(rowLog.getMessages(rowKey, inlineId, deferredId1, deferredId2).isEmpty());
+        control.verify();
+    }
+
+    @Test
+    public void testExecutionStateConflict() throws Exception {
+        shard.putMessage(isA(RowLogMessage.class), eq(walIds));
+        shard.removeMessage(isA(RowLogMessage.class), eq(deferredId1));
+        shard.putMessage(isA(RowLogMessage.class), eq(Arrays.asList(deferredId1, deferredId2)));
+        shard.putMessage(isA(RowLogMessage.class), eq(Arrays.asList(deferredId2)));
+        shard.removeMessage(isA(RowLogMessage.class), eq(WalRowLog.WAL_SUBSCRIPTIONID));
+
+        control.replay();
+        rowLog.getShardList().addShard(shard);
+        byte[] rowKey = Bytes.toBytes("row5");
+        final RowLogMessage message = rowLog.putMessage(rowKey, null, null, null);
+
+        // While the in-line subscription processes the message, the execution state is changed concurrently, so
+        // that storing the new execution state fails: the 'meta' message should stay, for a retry
+        inlineListener.action = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rowLog.messageDone(message, deferredId1);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        assertFalse(rowLog.processMessage(reload(message), null));
+        assertFalse(rowLog.isMessageDone(message, inlineId));
+        assertEquals(1, rowLog.getMessages(rowKey).size());
+
+        // The retry processes the in-line subscription again, and only dispatches to the remaining subscription
+        inlineListener.action = null;
+        assertTrue(rowLog.processMessage(reload(message), null));
+        assertEquals(2, inlineListener.count);
+        assertTrue(rowLog.isMessageDone(message, inlineId));
+        assertTrue(rowLog.isMessageDone(message, deferredId1));
+        assertFalse(rowLog.isMessageDone(message, deferredId2));
+        control.verify();
+    }
+
+    /**
+     * Returns the message as the processor would read it from the shard: without its execution state.
+     */
+    private RowLogMessage reload(RowLogMessage message) {
+        return new RowLogMessageImpl(message.getTimestamp(), message.getRowKey(), message.getSeqNr(), null, rowLog);
+    }
+
+    private static class CountingListener implements RowLogMessageListener {
+        private int count;
+        private boolean result = true;
+        private Runnable action;
+
+        @Override
+        public boolean processMessage(RowLogMessage message) {
+            count++;
+            if (action != null) {
+                action.run();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.rowlog.impl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lilyproject.hadooptestfw.HBaseProxy;
+import org.lilyproject.hadooptestfw.TestHelper;
+import org.lilyproject.rowlog.api.RowLog;
+import org.lilyproject.rowlog.api.RowLogConfig;
+import org.lilyproject.rowlog.api.RowLogMessage;
+import org.lilyproject.rowlog.api.RowLogMessageListener;
+import org.lilyproject.rowlog.api.RowLogMessageListenerMapping;
+import org.lilyproject.rowlog.api.RowLogSubscription.Type;
+import org.lilyproject.rowlog.impl.MessageQueueFeeder;
+import org.lilyproject.rowlog.impl.RowLogConfigurationManagerImpl;
+import org.lilyproject.rowlog.impl.RowLogHashShardRouter;
+import org.lilyproject.rowlog.impl.RowLogImpl;
+import org.lilyproject.rowlog.impl.RowLogShardSetup;
+import org.lilyproject.rowlog.impl.WalRowLog;
+import org.lilyproject.util.hbase.HBaseTableFactory;
+import org.lilyproject.util.hbase.HBaseTableFactoryImpl;
+import org.lilyproject.util.io.Closer;
+import org.lilyproject.util.zookeeper.ZkUtil;
+import org.lilyproject.util.zookeeper.ZooKeeperItf;
+
+/**
+ * Counts the HBase writes (puts, deletes, check-and-puts and increments, on the record table and the shard
+ * tables) caused by one record mutation, for two index subscriptions: when these consume the MQ, which is fed
+ * from the WAL, and when they are deferred subscriptions on the WAL itself.
+ */
+public class WalWriteCountTest {
+    private static HBaseProxy HBASE_PROXY;
+    private static Configuration configuration;
+    private static ZooKeeperItf zooKeeper;
+    private static RowLogConfigurationManagerImpl configurationManager;
+    private static HTableInterface rowTable;
+    private static HBaseTableFactory tableFactory;
+    private static final AtomicInteger writes = new AtomicInteger();
+
+    /** Deletes on the shards are not buffered, so that they are counted right away */
+    private static final RowLogConfig CONFIG = new RowLogConfig(true, false, 100L, 0L, 5000L, 120000L, 1);
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestHelper.setupLogging();
+        HBASE_PROXY = new HBaseProxy();
+        HBASE_PROXY.start();
+        configuration = HBASE_PROXY.getConf();
+        zooKeeper = ZkUtil.connect(HBASE_PROXY.getZkConnectString(), 120000);
+        configurationManager = new RowLogConfigurationManagerImpl(zooKeeper);
+        rowTable = counting(RowLogTableUtil.getRowTable(configuration));
+        final HBaseTableFactory delegate = new HBaseTableFactoryImpl(configuration);
+        tableFactory = (HBaseTableFactory)Proxy.newProxyInstance(HBaseTableFactory.class.getClassLoader(),
+                new Class[] {HBaseTableFactory.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        Object result = invoke(delegate, method, args);
+                        return result instanceof HTableInterface ? counting((HTableInterface)result) : result;
+                    }
+                });
+
+        // A link index updater-like in-line subscription exists in both setups
+        RowLogMessageListenerMapping.INSTANCE.put("LinkIndex", new RowLogMessageListener() {
+            @Override
+            public boolean processMessage(RowLogMessage message) {
+                return true;
+            }
+        });
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        RowLogMessageListenerMapping.INSTANCE.remove("LinkIndex");
+        RowLogMessageListenerMapping.INSTANCE.remove("MQFeeder");
+        Closer.close(configurationManager);
+        Closer.close(zooKeeper);
+        HBASE_PROXY.stop();
+    }
+
+    @Test
+    public void testMessageQueue() throws Exception {
+        configurationManager.addRowLog("CountMqWAL", CONFIG);
+        configurationManager.addSubscription("CountMqWAL", "LinkIndex", Type.VM, 1);
+        configurationManager.addSubscription("CountMqWAL", "MQFeeder", Type.VM, 2);
+        configurationManager.addRowLog("CountMQ", CONFIG);
+        configurationManager.addSubscription("CountMQ", "Index1", Type.Netty, 1);
+        configurationManager.addSubscription("CountMQ", "Index2", Type.Netty, 2);
+
+        WalRowLog wal = new WalRowLog("CountMqWAL", rowTable, RowLogTableUtil.ROWLOG_COLUMN_FAMILY, (byte)5,
+                configurationManager, null, new RowLogHashShardRouter());
+        RowLogImpl mq = new RowLogImpl("CountMQ", rowTable, RowLogTableUtil.ROWLOG_COLUMN_FAMILY, (byte)6,
+                configurationManager, null, new RowLogHashShardRouter());
+        try {
+            setup(wal, "LinkIndex", "MQFeeder");
+            setup(mq, "Index1", "Index2");
+            RowLogMessageListenerMapping.INSTANCE.put("MQFeeder", new MessageQueueFeeder(mq));
+
+            writes.set(0);
+            byte[] rowKey = Bytes.toBytes("mqrow");
+            RowLogMessage message = putRecord(wal, rowKey);
+            // the MQ feeder is an in-line subscription, so the WAL is done with the message right away
+            assertTrue(wal.processMessage(message, null));
+
+            List<RowLogMessage> mqMessages = mq.getMessages(rowKey);
+            assertEquals(1, mqMessages.size());
+            assertTrue(mq.messageDone(mqMessages.get(0), "Index1"));
+            assertTrue(mq.messageDone(mqMessages.get(0), "Index2"));
+            assertTrue(mq.getMessages(rowKey).isEmpty());
+
+            // WAL: increment + record put + meta shard put + meta delete + execution state and payload delete
+            // MQ: increment + payload and execution state put + 2 shard puts,
+            //     per index: a shard delete, and an execution state update or, for the last one, delete
+            assertEquals(13, writes.get());
+        } finally {
+            Closer.close(wal);
+            Closer.close(mq);
+        }
+    }
+
+    @Test
+    public void testDeferredSubscriptions() throws Exception {
+        configurationManager.addRowLog("CountDeferredWAL", CONFIG);
+        configurationManager.addSubscription("CountDeferredWAL", "LinkIndex", Type.VM, 1);
+        configurationManager.addSubscription("CountDeferredWAL", "Index1", Type.Netty, 2);
+        configurationManager.addSubscription("CountDeferredWAL", "Index2", Type.Netty, 3);
+
+        WalRowLog wal = new WalRowLog("CountDeferredWAL", rowTable, RowLogTableUtil.ROWLOG_COLUMN_FAMILY, (byte)7,
+                configurationManager, null, new RowLogHashShardRouter());
+        try {
+            setup(wal, "LinkIndex", "Index1", "Index2");
+
+            writes.set(0);
+            byte[] rowKey = Bytes.toBytes("walrow");
+            RowLogMessage message = putRecord(wal, rowKey);
+            // dispatched to the deferred subscriptions, the 'meta' message is removed
+            assertTrue(wal.processMessage(message, null));
+            assertFalse(wal.isMessageDone(message, "Index1"));
+
+            assertTrue(wal.messageDone(message, "Index1"));
+            assertTrue(wal.messageDone(message, "Index2"));
+            assertTrue(wal.getMessages(rowKey, "Index1", "Index2").isEmpty());
+
+            // increment + record put + meta shard put + 2 shard puts + execution state update + meta delete,
+            // per index: a shard delete, and an execution state update or, for the last one, delete
+            assertEquals(11, writes.get());
+        } finally {
+            Closer.close(wal);
+        }
+    }
+
+    private void setup(RowLog rowLog, String... subscriptionIds) throws Exception {
+        RowLogShardSetup.setupShards(1, rowLog, tableFactory);
+        for (String subscriptionId : subscriptionIds) {
+            AbstractRowLogEndToEndTest.waitForSubscription(rowLog, subscriptionId);
+        }
+    }
+
+    /**
+     * Puts a message on the WAL as the repository does: the payload and execution state are added to the
+     * Put of the record itself.
+     */
+    private RowLogMessage putRecord(RowLog wal, byte[] rowKey) throws Exception {
+        Put put = new Put(rowKey);
+        put.add(RowLogTableUtil.DATA_COLUMN_FAMILY, Bytes.toBytes("field"), Bytes.toBytes("value"));
+        RowLogMessage message = wal.putMessage(rowKey, null, Bytes.toBytes("payload"), put);
+        rowTable.put(put);
+        return message;
+    }
+
+    /**
+     * Wraps the table, to count the writes done on it.
+     */
+    private static HTableInterface counting(final HTableInterface table) {
+        return (HTableInterface)Proxy.newProxyInstance(HTableInterface.class.getClassLoader(),
+                new Class[] {HTableInterface.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("put") || name.equals("delete") || name.equals("batch")) {
+                            writes.addAndGet(args[0] instanceof List ? ((List<?>)args[0]).size() : 1);
+                        } else if (name.equals("checkAndPut") || name.equals("checkAndDelete") ||
+                                name.startsWith("increment")) {
+                            writes.incrementAndGet();
+                        }
+                        return invoke(table, method, args);
+                    }
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.util.zookeeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Executes a number of ZooKeeper operations through the asynchronous ZooKeeper API, so that they are
+ * pipelined over the connection rather than each one waiting for the round trip of the previous one.
+ *
+ * <p>ZooKeeper executes the operations of a session in the order in which they are submitted, so the operations
+ * of a batch are applied in the order in which they were added. A batch is not a transaction though: each
+ * operation succeeds or fails on its own, the outcome is in its {@link Result}.
+ *
+ * <p>Operations which fail due to connection loss are submitted again once the connection is back. As for
+ * {@link ZooKeeperItf#retryOperation}, this means a create might fail with NodeExists and a delete with NoNode
+ * because the first attempt did succeed.
+ *
+ * <p>A batch can only be executed once. Do not execute it from within a ZooKeeper watcher callback.
+ */
+public class ZkBatch {
+    private final ZooKeeperItf zk;
+
+    private final List<Operation> operations = new ArrayList<Operation>();
+
+    private boolean executed = false;
+
+    private Log log = LogFactory.getLog(getClass());
+
+    public ZkBatch(ZooKeeperItf zk) {
+        this.zk = zk;
+    }
+
+    /**
+     * Adds the creation of a node with an open ACL.
+     */
+    public Result create(String path, byte[] data, CreateMode createMode) {
+        return create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, createMode);
+    }
+
+    public Result create(final String path, final byte[] data, final List<ACL> acl, final CreateMode createMode) {
+        return add(new Operation(path) {
+            @Override
+            void submit(Callback callback) {
+                zk.create(path, data, acl, createMode, callback, result);
+            }
+        });
+    }
+
+    public Result delete(final String path, final int version) {
+        return add(new Operation(path) {
+            @Override
+            void submit(Callback callback) {
+                zk.delete(path, version, callback, result);
+            }
+        });
+    }
+
+    public Result setData(final String path, final byte[] data, final int version) {
+        return add(new Operation(path) {
+            @Override
+            void submit(Callback callback) {
+                zk.setData(path, data, version, callback, result);
+            }
+        });
+    }
+
+    public Result exists(final String path) {
+        return add(new Operation(path) {
+            @Override
+            void submit(Callback callback) {
+                zk.exists(path, false, callback, result);
+            }
+        });
+    }
+
+    public Result getData(final String path) {
+        return add(new Operation(path) {
+            @Override
+            void submit(Callback callback) {
+                zk.getData(path, false, callback, result);
+            }
+        });
+    }
+
+    public Result getChildren(final String path) {
+        return add(new Operation(path) {
+            @Override
+            void submit(Callback callback) {
+                zk.getChildren(path, false, (AsyncCallback.ChildrenCallback)callback, result);
+            }
+        });
+    }
+
+    private Result add(Operation operation) {
+        if (executed) {
+            throw new IllegalStateException("This batch has already been executed.");
+        }
+        operations.add(operation);
+        return operation.result;
+    }
+
+    /**
+     * Submits all operations and waits until all of them are answered by ZooKeeper.
+     *
+     * @return the results, in the order in which the operations were added. These are the same objects as
+     *         returned when adding the operations.
+     */
+    public List<Result> execute() throws InterruptedException {
+        if (zk.isCurrentThreadEventThread()) {
+            throw new RuntimeException("ZkBatch should not be executed from within the ZooKeeper event thread.");
+        }
+
+        if (executed) {
+            throw new IllegalStateException("This batch has already been executed.");
+        }
+        executed = true;
+
+        List<Operation> todo = operations;
+        int tryCount = 0;
+        while (!todo.isEmpty()) {
+            tryCount++;
+
+            Callback callback = new Callback(todo.size());
+            for (Operation operation : todo) {
+                operation.submit(callback);
+            }
+            callback.await();
+
+            // Once the connection is lost, all operations submitted after the failed one fail too, so resubmitting
+            // the failed ones preserves the order.
+            List<Operation> failed = new ArrayList<Operation>();
+            for (Operation operation : todo) {
+                if (operation.result.code == KeeperException.Code.CONNECTIONLOSS) {
+                    failed.add(operation);
+                }
+            }
+            todo = failed;
+
+            if (!todo.isEmpty()) {
+                if (tryCount > 3) {
+                    log.warn("ZooKeeper batch attempt " + tryCount + " failed due to connection loss for " +
+                            todo.size() + " operations.");
+                }
+                zk.waitForConnection();
+            }
+        }
+
+        List<Result> results = new ArrayList<Result>(operations.size());
+        for (Operation operation : operations) {
+            results.add(operation.result);
+        }
+        return results;
+    }
+
+    /**
+     * The outcome of one operation of a batch, available after {@link ZkBatch#execute()}.
+     */
+    public static class Result {
+        private final String path;
+        private volatile KeeperException.Code code;
+        private volatile String name;
+        private volatile Stat stat;
+        private volatile byte[] data;
+        private volatile List<String> children;
+
+        private Result(String path) {
+            this.path = path;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * The result code, null if the batch has not been executed.
+         */
+        public KeeperException.Code getCode() {
+            return code;
+        }
+
+        public boolean isOk() {
+            return code == KeeperException.Code.OK;
+        }
+
+        /**
+         * Throws the KeeperException corresponding to the result code, unless the operation succeeded or failed
+         * with one of the given codes.
+         */
+        public void check(KeeperException.Code... allowedCodes) throws KeeperException {
+            if (code == null) {
+                throw new IllegalStateException("The batch has not been executed.");
+            }
+            if (code != KeeperException.Code.OK && !Arrays.asList(allowedCodes).contains(code)) {
+                throw KeeperException.create(code, path);
+            }
+        }
+
+        /**
+         * The path of the created node, which differs from the requested path for sequential nodes.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The stat returned by exists, getData and setData. For exists, null if the node does not exist.
+         */
+        public Stat getStat() {
+            return stat;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public List<String> getChildren() {
+            return children;
+        }
+    }
+
+    private abstract static class Operation {
+        final Result result;
+
+        Operation(String path) {
+            this.result = new Result(path);
+        }
+
+        abstract void submit(Callback callback);
+    }
+
+    private static class Callback implements AsyncCallback.StringCallback, AsyncCallback.VoidCallback,
+            AsyncCallback.StatCallback, AsyncCallback.DataCallback, AsyncCallback.ChildrenCallback {
+        private final CountDownLatch latch;
+
+        Callback(int count) {
+            this.latch = new CountDownLatch(count);
+        }
+
+        void await() throws InterruptedException {
+            latch.await();
+        }
+
+        private void done(Object ctx, int rc, Stat stat) {
+            Result result = (Result)ctx;
+            result.stat = stat;
+            result.code = KeeperException.Code.get(rc);
+            latch.countDown();
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx, String name) {
+            ((Result)ctx).name = name;
+            done(ctx, rc, null);
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx) {
+            done(ctx, rc, null);
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx, Stat stat) {
+            done(ctx, rc, stat);
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+            ((Result)ctx).data = data;
+            done(ctx, rc, stat);
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx, List<String> children) {
+            ((Result)ctx).children = children == null ? null : Collections.unmodifiableList(children);
+            done(ctx, rc, null);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.util.zookeeper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * A read cache of the data and children of znodes, kept up to date by ZooKeeper watches.
+ *
+ * <p>The first read of a node goes to ZooKeeper and leaves a watch, further reads are answered locally until the
+ * watch fires. Then the entry is dropped, so that the next read fetches the node again (and sets a new watch).
+ * The absence of a node is cached as well, using an exists watch.
+ *
+ * <p>When the connection is lost or the session expires, the cache is cleared, so that it never answers from
+ * state which might be outdated for longer than ZooKeeper's own reads would be.
+ *
+ * <p>Like any ZooKeeper read, a cached read might not reflect a change made by another client yet: it catches up
+ * once the watch event is delivered. Use it for data which is read often and changes rarely, such as configuration,
+ * not as a replacement for a versioned update.
+ *
+ * <p>Reads which miss the cache go to ZooKeeper using {@link ZooKeeperItf#retryOperation}, so as for the
+ * latter, do not read from within a ZooKeeper watcher callback. {@link Listener}s are notified from within
+ * the event thread.
+ */
+public class ZkCache {
+    private final ZooKeeperItf zk;
+
+    private final Map<String, NodeData> dataCache = new HashMap<String, NodeData>();
+
+    private final Map<String, List<String>> childrenCache = new HashMap<String, List<String>>();
+
+    /**
+     * The number of invalidations per path. A value read from ZooKeeper is only cached if no invalidation
+     * happened during the read, otherwise a change notified before the read completed would be lost.
+     */
+    private final Map<String, Long> generations = new HashMap<String, Long>();
+
+    /**
+     * Incremented when the whole cache is cleared.
+     */
+    private long epoch = 0;
+
+    private final Set<Listener> listeners = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<Listener, Boolean>()));
+
+    private final Watcher nodeWatcher = new NodeWatcher();
+
+    private final Watcher connectionWatcher = new ConnectionWatcher();
+
+    private Log log = LogFactory.getLog(getClass());
+
+    /**
+     * Marker for a node which does not exist, distinguishes it from a node without data.
+     */
+    private static final NodeData NO_NODE = new NodeData(null, null);
+
+    private static final List<String> NO_CHILDREN = Collections.unmodifiableList(new ArrayList<String>(0));
+
+    public ZkCache(ZooKeeperItf zk) {
+        this.zk = zk;
+        zk.addDefaultWatcher(connectionWatcher);
+    }
+
+    public void close() {
+        zk.removeDefaultWatcher(connectionWatcher);
+        clear();
+    }
+
+    /**
+     * Returns the data of a node, or null if the node does not exist (a node without data returns an
+     * empty array).
+     */
+    public byte[] getData(String path) throws InterruptedException, KeeperException {
+        NodeData node = getNode(path);
+        if (node == NO_NODE) {
+            return null;
+        }
+        return node.data == null ? new byte[0] : node.data.clone();
+    }
+
+    /**
+     * Returns the version of the data of a node, or -1 if the node does not exist.
+     */
+    public int getVersion(String path) throws InterruptedException, KeeperException {
+        NodeData node = getNode(path);
+        return node == NO_NODE ? -1 : node.version;
+    }
+
+    public boolean exists(String path) throws InterruptedException, KeeperException {
+        return getNode(path) != NO_NODE;
+    }
+
+    /**
+     * Returns the names of the children of a node, or null if the node does not exist. The returned list is
+     * unmodifiable.
+     */
+    public List<String> getChildren(final String path) throws InterruptedException, KeeperException {
+        long generation;
+        synchronized (this) {
+            List<String> children = childrenCache.get(path);
+            if (children != null) {
+                return children == NO_CHILDREN ? null : children;
+            }
+            generation = getGeneration(path);
+        }
+
+        List<String> children = zk.retryOperation(new ZooKeeperOperation<List<String>>() {
+            @Override
+            public List<String> execute() throws KeeperException, InterruptedException {
+                while (true) {
+                    try {
+                        return Collections.unmodifiableList(new ArrayList<String>(zk.getChildren(path, nodeWatcher)));
+                    } catch (KeeperException.NoNodeException e) {
+                        // Leave a watch which tells us when the node is created
+                        if (zk.exists(path, nodeWatcher) == null) {
+                            return NO_CHILDREN;
+                        }
+                    }
+                }
+            }
+        });
+
+        synchronized (this) {
+            if (getGeneration(path) == generation) {
+                childrenCache.put(path, children);
+            }
+        }
+
+        return children == NO_CHILDREN ? null : children;
+    }
+
+    private NodeData getNode(final String path) throws InterruptedException, KeeperException {
+        long generation;
+        synchronized (this) {
+            NodeData node = dataCache.get(path);
+            if (node != null) {
+                return node;
+            }
+            generation = getGeneration(path);
+        }
+
+        NodeData node = zk.retryOperation(new ZooKeeperOperation<NodeData>() {
+            @Override
+            public NodeData execute() throws KeeperException, InterruptedException {
+                while (true) {
+                    try {
+                        Stat stat = new Stat();
+                        byte[] data = zk.getData(path, nodeWatcher, stat);
+                        return new NodeData(data, stat);
+                    } catch (KeeperException.NoNodeException e) {
+                        // Leave a watch which tells us when the node is created
+                        if (zk.exists(path, nodeWatcher) == null) {
+                            return NO_NODE;
+                        }
+                    }
+                }
+            }
+        });
+
+        synchronized (this) {
+            if (getGeneration(path) == generation) {
+                dataCache.put(path, node);
+            }
+        }
+
+        return node;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Drops all cached state.
+     */
+    public synchronized void clear() {
+        dataCache.clear();
+        childrenCache.clear();
+        generations.clear();
+        epoch++;
+    }
+
+    /**
+     * Drops the cached state of a node. Use this after changing the node (or its children) through ZooKeeper,
+     * so that the next read does not answer from the cache before the watch event has been processed.
+     */
+    public void invalidate(String path) {
+        invalidate(path, true, true);
+    }
+
+    private long getGeneration(String path) {
+        Long generation = generations.get(path);
+        // The epoch goes in the upper bits, so that a read started before a clear is not cached after it
+        return (epoch << 32) + (generation == null ? 0 : generation);
+    }
+
+    private synchronized void invalidate(String path, boolean data, boolean children) {
+        if (data) {
+            dataCache.remove(path);
+        }
+        if (children) {
+            childrenCache.remove(path);
+        }
+        Long generation = generations.get(path);
+        generations.put(path, generation == null ? 1 : generation + 1);
+    }
+
+    /**
+     * Notified when a node read through the cache has changed. Called from within the ZooKeeper event thread,
+     * so should not block: read the new state from another thread.
+     */
+    public interface Listener {
+        /**
+         * @param dataChanged true if the data of the node changed, or it was created or deleted
+         * @param childrenChanged true if the children of the node changed, or it was created or deleted
+         */
+        void nodeChanged(String path, boolean dataChanged, boolean childrenChanged);
+    }
+
+    private class NodeWatcher implements Watcher {
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getPath() == null) {
+                return;
+            }
+
+            boolean data;
+            boolean children;
+            switch (event.getType()) {
+                case NodeDataChanged:
+                    data = true;
+                    children = false;
+                    break;
+                case NodeChildrenChanged:
+                    data = false;
+                    children = true;
+                    break;
+                case NodeCreated:
+                case NodeDeleted:
+                    data = true;
+                    children = true;
+                    break;
+                default:
+                    return;
+            }
+
+            invalidate(event.getPath(), data, children);
+
+            Listener[] currentListeners;
+            synchronized (listeners) {
+                currentListeners = listeners.toArray(new Listener[listeners.size()]);
+            }
+            for (Listener listener : currentListeners) {
+                try {
+                    listener.nodeChanged(event.getPath(), data, children);
+                } catch (Throwable t) {
+                    log.error("Error in ZkCache listener for node " + event.getPath(), t);
+                }
+            }
+        }
+    }
+
+    private class ConnectionWatcher implements Watcher {
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getType() == Event.EventType.None &&
+                    (event.getState() == Event.KeeperState.Disconnected ||
+                            event.getState() == Event.KeeperState.Expired)) {
+                clear();
+            }
+        }
+    }
+
+    private static class NodeData {
+        private final byte[] data;
+        private final int version;
+
+        NodeData(byte[] data, Stat stat) {
+            this.data = data;
+            this.version = stat == null ? -1 : stat.getVersion();
+        }
+    }
+}
@@ -71,14 +71,23 @@ public class ZkLock {
 
             // Quote from ZK lock recipe:
             //    1. Call create( ) with a pathname of "_locknode_/lock-" and the sequence and ephemeral flags set.
-            zk.retryOperation(new ZooKeeperOperation<String>() {
+            final int[] createAttempts = new int[1];
+            String createdPath = zk.retryOperation(new ZooKeeperOperation<String>() {
                 @Override
                 public String execute() throws KeeperException, InterruptedException {
+                    createAttempts[0]++;
                     return zk.create(lockPath + "/lock-" + threadId + "-", null, ZooDefs.Ids.OPEN_ACL_UNSAFE,
                             CreateMode.EPHEMERAL_SEQUENTIAL);
                 }
             });
 
+            // Our lock node is identified once, the loop below only needs to check it is still there. If the create
+            // succeeded at the first attempt, we know its name. Otherwise, it might have been executed more than
+            // once, and our node(s) need to be looked up.
+            String myLockName = createAttempts[0] == 1 ? createdPath.substring(createdPath.lastIndexOf('/') + 1) : null;
+            ZkLockNode myLockNode = myLockName != null ? new ZkLockNode(myLockName) : null;
+            String myLockPath = myLockName != null ? createdPath : null;
+
             while (true) {
                 // Quote from ZK lock recipe:
                 //    2. Call getChildren( ) on the lock node without setting the watch flag (this is important to avoid
@@ -90,46 +99,47 @@ public class ZkLock {
                     }
                 }));
 
-                ZkLockNode myLockNode = null;
-                String myLockName = null;
-                String myLockPath = null;
-                for (ZkLockNode child : children) {
-                    // if the child has the same thread id and session id as us, then it is our lock
-                    if (child.getThreadId() == threadId) {
-                        final String childPath = lockPath + "/" + child.getName();
-                        Stat stat = zk.retryOperation(new ZooKeeperOperation<Stat>() {
-                            @Override
-                            public Stat execute() throws KeeperException, InterruptedException {
-                                return zk.exists(childPath, false);
-                            }
-                        });
-                        if (stat != null && stat.getEphemeralOwner() == zk.getSessionId()) {
-                            if (myLockName != null) {
-                                // We have found another lock node which belongs to us.
-                                // This means that the lock creation above was executed twice, which can occur
-                                // in case of connection loss. Delete this node to avoid that otherwise it would
-                                // never be released.
-                                zk.retryOperation(new ZooKeeperOperation<Object>() {
-                                    @Override
-                                    public Object execute() throws KeeperException, InterruptedException {
-                                        try {
-                                            zk.delete(childPath, -1);
-                                        } catch (KeeperException.NoNodeException e) {
-                                            // ignore
+                if (myLockName == null) {
+                    for (ZkLockNode child : children) {
+                        // if the child has the same thread id and session id as us, then it is our lock
+                        if (child.getThreadId() == threadId) {
+                            final String childPath = lockPath + "/" + child.getName();
+                            Stat stat = zk.retryOperation(new ZooKeeperOperation<Stat>() {
+                                @Override
+                                public Stat execute() throws KeeperException, InterruptedException {
+                                    return zk.exists(childPath, false);
+                                }
+                            });
+                            if (stat != null && stat.getEphemeralOwner() == zk.getSessionId()) {
+                                if (myLockName != null) {
+                                    // We have found another lock node which belongs to us.
+                                    // This means that the lock creation above was executed twice, which can occur
+                                    // in case of connection loss. Delete this node to avoid that otherwise it would
+                                    // never be released.
+                                    zk.retryOperation(new ZooKeeperOperation<Object>() {
+                                        @Override
+                                        public Object execute() throws KeeperException, InterruptedException {
+                                            try {
+                                                zk.delete(childPath, -1);
+                                            } catch (KeeperException.NoNodeException e) {
+                                                // ignore
+                                            }
+                                            return null;
                                         }
-                                        return null;
-                                    }
-                                });
-                            } else {
-                                myLockNode = child;
-                                myLockName = child.getName();
-                                myLockPath = childPath;
+                                    });
+                                } else {
+                                    myLockNode = child;
+                                    myLockName = child.getName();
+                                    myLockPath = childPath;
+                                }
                             }
                         }
                     }
-                }
 
-                if (myLockName == null) {
+                    if (myLockName == null) {
+                        throw new ZkLockException("Unexpected problem: did not find our lock node.");
+                    }
+                } else if (!children.contains(myLockNode)) {
                     throw new ZkLockException("Unexpected problem: did not find our lock node.");
                 }
 
@@ -80,31 +80,35 @@ public class ZkUtil {
 
         String[] parts = path.substring(1).split("/");
 
-        final StringBuilder subPath = new StringBuilder();
-        boolean created = false;
-        for (int i = 0; i < parts.length; i++) {
-            String part = parts[i];
+        // Both the existence checks and the creation of the missing nodes are pipelined: ZooKeeper executes them
+        // in order, so each parent exists by the time its child is created.
+        List<String> subPaths = new ArrayList<String>(parts.length);
+        ZkBatch existsBatch = new ZkBatch(zk);
+        StringBuilder subPath = new StringBuilder();
+        for (String part : parts) {
             subPath.append("/").append(part);
+            subPaths.add(subPath.toString());
+            existsBatch.exists(subPath.toString());
+        }
+        List<ZkBatch.Result> existing = existsBatch.execute();
 
-            // Only use the supplied data for the last node in the path
-            final byte[] newData = (i == parts.length - 1 ? data : null);
+        ZkBatch createBatch = new ZkBatch(zk);
+        ZkBatch.Result last = null;
+        for (int i = 0; i < parts.length; i++) {
+            existing.get(i).check();
+            if (existing.get(i).getStat() == null) {
+                // Only use the supplied data for the last node in the path
+                byte[] newData = (i == parts.length - 1 ? data : null);
+                last = createBatch.create(subPaths.get(i), newData, CreateMode.PERSISTENT);
+            }
+        }
 
-            created = zk.retryOperation(new ZooKeeperOperation<Boolean>() {
-                @Override
-                public Boolean execute() throws KeeperException, InterruptedException {
-                    if (zk.exists(subPath.toString(), false) == null) {
-                        try {
-                            zk.create(subPath.toString(), newData, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
-                            return true;
-                        } catch (KeeperException.NodeExistsException e) {
-                            return false;
-                        }
-                    }
-                    return false;
-                }
-            });
+        for (ZkBatch.Result result : createBatch.execute()) {
+            result.check(KeeperException.Code.NODEEXISTS);
         }
 
+        boolean created = last != null && last.getPath().equals(path) && last.isOk();
+
         if (!created) {
             // The node already existed, update its data if necessary
             zk.retryOperation(new ZooKeeperOperation<Boolean>() {
@@ -24,6 +24,9 @@ import java.util.List;
 
 /**
  * An interface for ZooKeeper.
+ *
+ * <p>To pipeline several operations using the asynchronous methods, see {@link ZkBatch}. For a watch-maintained
+ * read cache, see {@link ZkCache}.
  */
 public interface ZooKeeperItf extends Closeable {
     
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.util.zookeeper.test;
+
+import java.io.File;
+
+import org.apache.hadoop.hbase.zookeeper.MiniZooKeeperCluster;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lilyproject.hadooptestfw.TestHelper;
+import org.lilyproject.util.io.Closer;
+import org.lilyproject.util.net.NetUtils;
+import org.lilyproject.util.zookeeper.ZkBatch;
+import org.lilyproject.util.zookeeper.ZkUtil;
+import org.lilyproject.util.zookeeper.ZooKeeperItf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ZkBatchTest {
+    private static MiniZooKeeperCluster ZK_CLUSTER;
+    private static File ZK_DIR;
+    private static int ZK_CLIENT_PORT;
+    private static ZooKeeperItf ZK;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestHelper.setupLogging("org.lilyproject.util.zookeeper");
+
+        ZK_DIR = new File(System.getProperty("java.io.tmpdir") + File.separator + "lily.zkbatchtest");
+        ZK_CLIENT_PORT = NetUtils.getFreePort();
+
+        ZK_CLUSTER = new MiniZooKeeperCluster();
+        ZK_CLUSTER.setClientPort(ZK_CLIENT_PORT);
+        ZK_CLUSTER.startup(ZK_DIR);
+
+        ZK = ZkUtil.connect("localhost:" + ZK_CLIENT_PORT, 30000);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        Closer.close(ZK);
+        if (ZK_CLUSTER != null) {
+            ZK_CLUSTER.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        final String path = "/lily/test/zkbatch";
+        ZkUtil.createPath(ZK, path);
+
+        ZkBatch batch = new ZkBatch(ZK);
+        ZkBatch.Result created = batch.create(path + "/node-", new byte[] {1}, CreateMode.PERSISTENT_SEQUENTIAL);
+        ZkBatch.Result existing = batch.create(path, null, CreateMode.PERSISTENT);
+        ZkBatch.Result missing = batch.getData(path + "/missing");
+        ZkBatch.Result children = batch.getChildren(path);
+        batch.execute();
+
+        assertTrue(created.isOk());
+        assertTrue(created.getName().startsWith(path + "/node-"));
+        assertEquals(KeeperException.Code.NODEEXISTS, existing.getCode());
+        assertEquals(KeeperException.Code.NONODE, missing.getCode());
+        assertEquals(1, children.getChildren().size());
+
+        try {
+            missing.check();
+            fail("expected NoNodeException");
+        } catch (KeeperException.NoNodeException e) {
+            // expected
+        }
+        missing.check(KeeperException.Code.NONODE);
+    }
+
+    @Test
+    public void testCreatePath() throws Exception {
+        // createPath pipelines its exists and create calls through a ZkBatch
+        final String path = "/lily/test/zkbatchpath/a/b/c";
+        ZkUtil.createPath(ZK, path, new byte[] {1});
+        assertArrayEquals(new byte[] {1}, ZK.getData(path, false, null));
+
+        // Existing components are left alone
+        ZkUtil.createPath(ZK, path + "/d");
+        assertArrayEquals(new byte[] {1}, ZK.getData(path, false, null));
+        assertTrue(ZK.exists(path + "/d", false) != null);
+    }
+}
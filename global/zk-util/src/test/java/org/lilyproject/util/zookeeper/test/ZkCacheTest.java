@@ -0,0 +1,171 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.util.zookeeper.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.zookeeper.MiniZooKeeperCluster;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lilyproject.hadooptestfw.TestHelper;
+import org.lilyproject.util.io.Closer;
+import org.lilyproject.util.net.NetUtils;
+import org.lilyproject.util.zookeeper.ZkBatch;
+import org.lilyproject.util.zookeeper.ZkCache;
+import org.lilyproject.util.zookeeper.ZkUtil;
+import org.lilyproject.util.zookeeper.ZooKeeperItf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZkCacheTest {
+    private static MiniZooKeeperCluster ZK_CLUSTER;
+    private static File ZK_DIR;
+    private static int ZK_CLIENT_PORT;
+    private static ZooKeeperItf ZK;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestHelper.setupLogging("org.lilyproject.util.zookeeper");
+
+        ZK_DIR = new File(System.getProperty("java.io.tmpdir") + File.separator + "lily.zkcachetest");
+        ZK_CLIENT_PORT = NetUtils.getFreePort();
+
+        ZK_CLUSTER = new MiniZooKeeperCluster();
+        ZK_CLUSTER.setClientPort(ZK_CLIENT_PORT);
+        ZK_CLUSTER.startup(ZK_DIR);
+
+        ZK = ZkUtil.connect("localhost:" + ZK_CLIENT_PORT, 30000);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        Closer.close(ZK);
+        if (ZK_CLUSTER != null) {
+            ZK_CLUSTER.shutdown();
+        }
+    }
+
+    @Test
+    public void testData() throws Exception {
+        final String path = "/lily/test/zkcacheA";
+        ZkUtil.createPath(ZK, path, new byte[] {1});
+
+        ZkCache cache = new ZkCache(ZK);
+        ChangeListener listener = new ChangeListener();
+        cache.addListener(listener);
+
+        assertArrayEquals(new byte[] {1}, cache.getData(path));
+        assertTrue(cache.exists(path));
+        int version = cache.getVersion(path);
+
+        ZK.setData(path, new byte[] {2}, -1);
+        listener.waitForChange();
+        assertArrayEquals(new byte[] {2}, cache.getData(path));
+        assertEquals(version + 1, cache.getVersion(path));
+
+        ZK.delete(path, -1);
+        listener.waitForChange();
+        assertNull(cache.getData(path));
+        assertFalse(cache.exists(path));
+
+        // The absence of the node is cached, its creation should be noticed as well
+        ZK.create(path, new byte[] {3}, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        listener.waitForChange();
+        assertArrayEquals(new byte[] {3}, cache.getData(path));
+
+        cache.close();
+    }
+
+    @Test
+    public void testChildren() throws Exception {
+        final String path = "/lily/test/zkcacheB";
+        ZkUtil.createPath(ZK, path);
+
+        ZkCache cache = new ZkCache(ZK);
+        ChangeListener listener = new ChangeListener();
+        cache.addListener(listener);
+
+        assertEquals(0, cache.getChildren(path).size());
+
+        ZkBatch batch = new ZkBatch(ZK);
+        batch.create(path + "/a", null, CreateMode.PERSISTENT);
+        batch.create(path + "/b", null, CreateMode.PERSISTENT);
+        for (ZkBatch.Result result : batch.execute()) {
+            result.check();
+        }
+
+        // One or two notifications, depending on whether the watch was set again in between
+        listener.waitForChange();
+        List<String> children = cache.getChildren(path);
+        if (children.size() < 2) {
+            listener.waitForChange();
+            children = cache.getChildren(path);
+        }
+        List<String> sortedChildren = new ArrayList<String>(children);
+        Collections.sort(sortedChildren);
+        assertEquals(Arrays.asList("a", "b"), sortedChildren);
+
+        assertNull(cache.getChildren(path + "/c"));
+
+        cache.close();
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        final String path = "/lily/test/zkcacheC";
+        ZkUtil.createPath(ZK, path, new byte[] {1});
+
+        ZkCache cache = new ZkCache(ZK);
+        assertArrayEquals(new byte[] {1}, cache.getData(path));
+
+        // After an own change, the next read should not depend on the watch event having been processed
+        ZK.setData(path, new byte[] {2}, -1);
+        cache.invalidate(path);
+        assertArrayEquals(new byte[] {2}, cache.getData(path));
+
+        ZK.create(path + "/a", null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        cache.invalidate(path);
+        assertEquals(Arrays.asList("a"), cache.getChildren(path));
+
+        cache.close();
+    }
+
+    private static class ChangeListener implements ZkCache.Listener {
+        private final Semaphore changes = new Semaphore(0);
+
+        @Override
+        public void nodeChanged(String path, boolean dataChanged, boolean childrenChanged) {
+            changes.release();
+        }
+
+        public void waitForChange() throws InterruptedException {
+            assertTrue("Timed out waiting for a change notification", changes.tryAcquire(10, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.lilyproject.repository.api.FieldType;
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.api.IdentityRecordStack;
+import org.lilyproject.repository.api.Link;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.api.RecordType;
+import org.lilyproject.repository.api.Repository;
+import org.lilyproject.repository.api.Scope;
+import org.lilyproject.repository.api.TypeManager;
+import org.lilyproject.repository.impl.EncodingUtil;
+import org.lilyproject.repository.impl.RecordImpl;
+import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+import org.lilyproject.util.hbase.LilyHBaseSchema;
+import org.lilyproject.util.hbase.LilyHBaseSchema.RecordCf;
+import org.lilyproject.util.hbase.LilyHBaseSchema.RecordColumn;
+
+/**
+ * The schema and records used by the benchmarks: a record type with about twenty fields of the common value
+ * types, similar to the records of a typical content application.
+ *
+ * <p>The types only live in memory (see {@link InMemoryTypeManager}). The repository returned by
+ * {@link #getRepository()} only supports the methods needed for record (de)serialization.</p>
+ */
+public class BenchmarkSchema {
+    public static final String NS = "org.lilyproject.benchmark";
+
+    private final IdGenerator idGenerator = new IdGeneratorImpl();
+    private final TypeManager typeManager = new InMemoryTypeManager(idGenerator);
+    private final Repository repository;
+    private final List<FieldType> fieldTypes = new ArrayList<FieldType>();
+    private final RecordType recordType;
+    // fixed seed, so that all runs use the same values
+    private final Random random = new Random(0);
+
+    public BenchmarkSchema() throws Exception {
+        repository = createRepository();
+
+        addFieldType("STRING", "title");
+        addFieldType("STRING", "summary");
+        addFieldType("STRING", "body");
+        addFieldType("STRING", "author");
+        addFieldType("STRING", "language");
+        addFieldType("STRING", "status");
+        addFieldType("LONG", "views");
+        addFieldType("LONG", "size");
+        addFieldType("LONG", "revision");
+        addFieldType("INTEGER", "rating");
+        addFieldType("DOUBLE", "score");
+        addFieldType("DECIMAL", "price");
+        addFieldType("BOOLEAN", "published");
+        addFieldType("DATE", "publicationDate");
+        addFieldType("DATETIME", "created");
+        addFieldType("DATETIME", "modified");
+        addFieldType("LIST<STRING>", "tags");
+        addFieldType("LINK", "parent");
+        addFieldType("LIST<LINK>", "related");
+
+        RecordType recordType = typeManager.newRecordType(new QName(NS, "Document"));
+        for (FieldType fieldType : fieldTypes) {
+            recordType.addFieldTypeEntry(fieldType.getId(), false);
+        }
+        this.recordType = typeManager.createRecordType(recordType);
+    }
+
+    private void addFieldType(String valueType, String name) throws Exception {
+        fieldTypes.add(typeManager.createFieldType(valueType, new QName(NS, name), Scope.NON_VERSIONED));
+    }
+
+    private Repository createRepository() {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getTypeManager")) {
+                    return typeManager;
+                } else if (name.equals("getIdGenerator")) {
+                    return idGenerator;
+                } else if (name.equals("newRecord")) {
+                    return args == null ? new RecordImpl() : new RecordImpl((RecordId)args[0]);
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        };
+        return (Repository)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {Repository.class},
+                handler);
+    }
+
+    public IdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    public TypeManager getTypeManager() {
+        return typeManager;
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public List<FieldType> getFieldTypes() {
+        return fieldTypes;
+    }
+
+    public FieldType getFieldType(String name) throws Exception {
+        return typeManager.getFieldTypeByName(new QName(NS, name));
+    }
+
+    /**
+     * Creates a record with a value for each of the fields of the record type.
+     */
+    public Record createRecord() {
+        Record record = new RecordImpl(idGenerator.newRecordId());
+        record.setRecordType(recordType.getName(), recordType.getVersion());
+
+        record.setField(new QName(NS, "title"), randomText(8));
+        record.setField(new QName(NS, "summary"), randomText(40));
+        record.setField(new QName(NS, "body"), randomText(400));
+        record.setField(new QName(NS, "author"), randomText(2));
+        record.setField(new QName(NS, "language"), "en");
+        record.setField(new QName(NS, "status"), "published");
+        record.setField(new QName(NS, "views"), random.nextLong());
+        record.setField(new QName(NS, "size"), (long)random.nextInt(1000000));
+        record.setField(new QName(NS, "revision"), (long)random.nextInt(100));
+        record.setField(new QName(NS, "rating"), random.nextInt(5));
+        record.setField(new QName(NS, "score"), random.nextDouble());
+        record.setField(new QName(NS, "price"), new BigDecimal("19.99"));
+        record.setField(new QName(NS, "published"), Boolean.TRUE);
+        record.setField(new QName(NS, "publicationDate"), new LocalDate(2012, 5, 1));
+        record.setField(new QName(NS, "created"), new DateTime(2012, 5, 1, 10, 15, 0, 0));
+        record.setField(new QName(NS, "modified"), new DateTime());
+
+        List<String> tags = new ArrayList<String>();
+        for (int i = 0; i < 8; i++) {
+            tags.add(randomText(1));
+        }
+        record.setField(new QName(NS, "tags"), tags);
+
+        record.setField(new QName(NS, "parent"), new Link(idGenerator.newRecordId()));
+        List<Link> related = new ArrayList<Link>();
+        for (int i = 0; i < 5; i++) {
+            related.add(new Link(idGenerator.newRecordId()));
+        }
+        record.setField(new QName(NS, "related"), related);
+
+        return record;
+    }
+
+    /**
+     * Creates the HBase row in which the repository would store the given (non-versioned) record.
+     */
+    public Result toResult(Record record) throws Exception {
+        byte[] row = record.getId().toBytes();
+        long timestamp = 1L;
+        List<KeyValue> keyValues = new ArrayList<KeyValue>();
+
+        for (Map.Entry<QName, Object> field : record.getFields().entrySet()) {
+            FieldType fieldType = typeManager.getFieldTypeByName(field.getKey());
+            byte[] qualifier = Bytes.add(new byte[] {RecordColumn.DATA_PREFIX}, fieldType.getId().getBytes());
+            byte[] value = fieldType.getValueType().toBytes(field.getValue(), new IdentityRecordStack());
+            keyValues.add(new KeyValue(row, RecordCf.DATA.bytes, qualifier, timestamp,
+                    EncodingUtil.prefixValue(value, LilyHBaseSchema.EXISTS_FLAG)));
+        }
+
+        keyValues.add(new KeyValue(row, RecordCf.DATA.bytes, RecordColumn.NON_VERSIONED_RT_ID.bytes, timestamp,
+                recordType.getId().getBytes()));
+        keyValues.add(new KeyValue(row, RecordCf.DATA.bytes, RecordColumn.NON_VERSIONED_RT_VERSION.bytes,
+                timestamp, Bytes.toBytes(recordType.getVersion())));
+
+        KeyValue[] sorted = keyValues.toArray(new KeyValue[keyValues.size()]);
+        Arrays.sort(sorted, KeyValue.COMPARATOR);
+        return new Result(sorted);
+    }
+
+    private String randomText(int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            int length = 2 + random.nextInt(9);
+            for (int j = 0; j < length; j++) {
+                text.append((char)('a' + random.nextInt(26)));
+            }
+        }
+        return text.toString();
+    }
+}
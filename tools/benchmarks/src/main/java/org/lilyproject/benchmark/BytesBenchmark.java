@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.lilyproject.bytes.api.DataInput;
+import org.lilyproject.bytes.api.DataOutput;
+import org.lilyproject.bytes.impl.DataInputImpl;
+import org.lilyproject.bytes.impl.DataOutputImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Writes and reads a mix of the primitives of DataOutputImpl and DataInputImpl, in the proportions in which the
+ * record encoding uses them: mostly (variable length) numbers and short strings, and one longer text.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BytesBenchmark {
+    private String shortString;
+    private String longString;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        shortString = "org.lilyproject.benchmark";
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("lorem ipsum ");
+        }
+        // include some multi-byte characters
+        text.append("\u00e9\u00e8\u4e2d\u6587");
+        longString = text.toString();
+        encoded = write();
+    }
+
+    @Benchmark
+    public byte[] write() {
+        DataOutput output = new DataOutputImpl();
+        for (int i = 0; i < 10; i++) {
+            output.writeVInt(i * 1000);
+            output.writeVLong(i * 1000000000L);
+            output.writeLong(i);
+            output.writeInt(i);
+            output.writeUTF(shortString);
+            output.writeVUTF(shortString);
+        }
+        output.writeUTF(longString);
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) {
+        DataInput input = new DataInputImpl(encoded);
+        for (int i = 0; i < 10; i++) {
+            blackhole.consume(input.readVInt());
+            blackhole.consume(input.readVLong());
+            blackhole.consume(input.readLong());
+            blackhole.consume(input.readInt());
+            blackhole.consume(input.readUTF());
+            blackhole.consume(input.readVUTF());
+        }
+        blackhole.consume(input.readUTF());
+    }
+}
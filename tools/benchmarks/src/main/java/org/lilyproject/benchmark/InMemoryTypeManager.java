@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.LogFactory;
+import org.lilyproject.repository.api.FieldType;
+import org.lilyproject.repository.api.FieldTypes;
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.api.QName;
+import org.lilyproject.repository.api.RecordType;
+import org.lilyproject.repository.api.RepositoryException;
+import org.lilyproject.repository.api.SchemaId;
+import org.lilyproject.repository.api.Scope;
+import org.lilyproject.repository.api.TypeBucket;
+import org.lilyproject.repository.api.TypeException;
+import org.lilyproject.repository.api.ValueType;
+import org.lilyproject.repository.impl.AbstractTypeManager;
+import org.lilyproject.repository.impl.FieldTypesCache;
+import org.lilyproject.repository.impl.id.SchemaIdImpl;
+import org.lilyproject.util.Pair;
+
+/**
+ * A TypeManager which keeps its types in memory only, so that the encoding and decoding code can be
+ * benchmarked without HBase or ZooKeeper. It has the same value types as the real type managers.
+ */
+public class InMemoryTypeManager extends AbstractTypeManager {
+    private final FieldTypesCache fieldTypes = new FieldTypesCache();
+    private final Map<SchemaId, RecordType> recordTypes = new ConcurrentHashMap<SchemaId, RecordType>();
+
+    public InMemoryTypeManager(IdGenerator idGenerator) {
+        super(null);
+        this.log = LogFactory.getLog(getClass());
+        this.idGenerator = idGenerator;
+        registerDefaultValueTypes();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public FieldType createFieldType(FieldType fieldType) throws RepositoryException, InterruptedException {
+        FieldType newFieldType = fieldType.clone();
+        if (newFieldType.getId() == null) {
+            newFieldType.setId(new SchemaIdImpl(UUID.randomUUID()));
+        }
+        fieldTypes.update(newFieldType);
+        return newFieldType.clone();
+    }
+
+    @Override
+    public FieldType createFieldType(ValueType valueType, QName name, Scope scope)
+            throws RepositoryException, InterruptedException {
+        return createFieldType(newFieldType(valueType, name, scope));
+    }
+
+    @Override
+    public FieldType createFieldType(String valueType, QName name, Scope scope)
+            throws RepositoryException, InterruptedException {
+        return createFieldType(newFieldType(getValueType(valueType), name, scope));
+    }
+
+    @Override
+    public FieldType updateFieldType(FieldType fieldType) throws RepositoryException, InterruptedException {
+        return createFieldType(fieldType);
+    }
+
+    @Override
+    public FieldType createOrUpdateFieldType(FieldType fieldType) throws RepositoryException, InterruptedException {
+        return createFieldType(fieldType);
+    }
+
+    @Override
+    public RecordType createRecordType(RecordType recordType) throws RepositoryException, InterruptedException {
+        RecordType newRecordType = recordType.clone();
+        if (newRecordType.getId() == null) {
+            newRecordType.setId(new SchemaIdImpl(UUID.randomUUID()));
+        }
+        if (newRecordType.getVersion() == null) {
+            newRecordType.setVersion(1L);
+        }
+        recordTypes.put(newRecordType.getId(), newRecordType);
+        return newRecordType.clone();
+    }
+
+    @Override
+    public RecordType updateRecordType(RecordType recordType) throws RepositoryException, InterruptedException {
+        return createRecordType(recordType);
+    }
+
+    @Override
+    public RecordType createOrUpdateRecordType(RecordType recordType) throws RepositoryException, InterruptedException {
+        return createRecordType(recordType);
+    }
+
+    @Override
+    public FieldTypes getFieldTypesSnapshot() throws InterruptedException {
+        return fieldTypes.getSnapshot();
+    }
+
+    @Override
+    public List<FieldType> getFieldTypes() throws TypeException, InterruptedException {
+        return fieldTypes.getFieldTypes();
+    }
+
+    @Override
+    public FieldType getFieldTypeById(SchemaId id) throws TypeException, InterruptedException {
+        return fieldTypes.getFieldType(id);
+    }
+
+    @Override
+    public FieldType getFieldTypeByName(QName name) throws InterruptedException, TypeException {
+        return fieldTypes.getFieldType(name);
+    }
+
+    @Override
+    public Collection<RecordType> getRecordTypes() throws InterruptedException {
+        return getRecordTypesWithoutCache();
+    }
+
+    @Override
+    protected RecordType getRecordTypeFromCache(QName name) {
+        for (RecordType recordType : recordTypes.values()) {
+            if (recordType.getName().equals(name)) {
+                return recordType;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected RecordType getRecordTypeFromCache(SchemaId id) {
+        return recordTypes.get(id);
+    }
+
+    @Override
+    protected RecordType getRecordTypeByIdWithoutCache(SchemaId id, Long version) {
+        // only the latest version of each record type is kept
+        return null;
+    }
+
+    @Override
+    public List<FieldType> getFieldTypesWithoutCache() throws InterruptedException {
+        return fieldTypes.getFieldTypes();
+    }
+
+    @Override
+    public List<RecordType> getRecordTypesWithoutCache() {
+        List<RecordType> result = new ArrayList<RecordType>();
+        for (RecordType recordType : recordTypes.values()) {
+            result.add(recordType.clone());
+        }
+        return result;
+    }
+
+    @Override
+    public Pair<List<FieldType>, List<RecordType>> getTypesWithoutCache() throws InterruptedException {
+        return new Pair<List<FieldType>, List<RecordType>>(getFieldTypesWithoutCache(), getRecordTypesWithoutCache());
+    }
+
+    @Override
+    public TypeBucket getTypeBucketWithoutCache(String bucketId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void enableSchemaCacheRefresh() {
+    }
+
+    @Override
+    public void disableSchemaCacheRefresh() {
+    }
+
+    @Override
+    public void triggerSchemaCacheRefresh() {
+    }
+
+    @Override
+    public boolean isSchemaCacheRefreshEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.gotometrics.orderly.StructRowKey;
+import org.lilyproject.hbaseindex.IndexDefinition;
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+import org.lilyproject.repository.impl.id.SchemaIdImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes the row keys of hbaseindex entries.
+ *
+ * <p>The LINK shape is the one of the link index (record id, vtag id, field id), the STRING_LONG shape is a
+ * typical secondary index on a string and a number.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IndexRowKeyBenchmark {
+    @Param({"LINK", "STRING_LONG"})
+    public String shape;
+
+    private IndexDefinition definition;
+    private StructRowKey rowKey;
+    private Object[] values;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        IdGenerator idGenerator = new IdGeneratorImpl();
+        byte[] identifier = idGenerator.newRecordId().toBytes();
+
+        definition = new IndexDefinition("benchmark");
+        if (shape.equals("LINK")) {
+            definition.addVariableLengthByteField("source", 2);
+            definition.addByteField("vtag", 16);
+            definition.addByteField("sourcefield", 16);
+            values = new Object[] {idGenerator.newRecordId().toBytes(), new SchemaIdImpl(UUID.randomUUID()).getBytes(),
+                    new SchemaIdImpl(UUID.randomUUID()).getBytes(), identifier};
+        } else if (shape.equals("STRING_LONG")) {
+            definition.addStringField("title");
+            definition.addLongField("views");
+            values = new Object[] {"The quick brown fox jumps over the lazy dog", 1234567L, identifier};
+        } else {
+            throw new IllegalArgumentException("Unknown index shape: " + shape);
+        }
+
+        rowKey = definition.asStructRowKey();
+        encoded = serialize();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return rowKey.serialize(values);
+    }
+
+    /**
+     * Also creates the StructRowKey from the index definition, which Index does for each entry.
+     */
+    @Benchmark
+    public byte[] createAndSerialize() throws Exception {
+        return definition.asStructRowKey().serialize(values);
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception {
+        return rowKey.deserialize(encoded);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.lilyproject.avro.repository.RecordAsBytesConverter;
+import org.lilyproject.bytes.impl.DataInputImpl;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.Repository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializes and deserializes a record of {@link BenchmarkSchema} with RecordAsBytesConverter, as done for
+ * each record sent between the repository client and server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordAsBytesBenchmark {
+    private Repository repository;
+    private Record record;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSchema schema = new BenchmarkSchema();
+        repository = schema.getRepository();
+        record = schema.createRecord();
+        encoded = write();
+    }
+
+    @Benchmark
+    public byte[] write() throws Exception {
+        return RecordAsBytesConverter.write(record, repository);
+    }
+
+    @Benchmark
+    public Record read() throws Exception {
+        return RecordAsBytesConverter.read(new DataInputImpl(encoded), repository);
+    }
+}
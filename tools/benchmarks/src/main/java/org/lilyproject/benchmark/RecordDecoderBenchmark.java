@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.lilyproject.repository.api.FieldTypes;
+import org.lilyproject.repository.api.Record;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.impl.RecordDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes the HBase row of a record of {@link BenchmarkSchema} into a Record object, as done for each record
+ * read from the repository.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordDecoderBenchmark {
+    private RecordDecoder recordDecoder;
+    private FieldTypes fieldTypes;
+    private RecordId recordId;
+    private Result result;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSchema schema = new BenchmarkSchema();
+        recordDecoder = new RecordDecoder(schema.getTypeManager(), schema.getIdGenerator());
+        fieldTypes = schema.getTypeManager().getFieldTypesSnapshot();
+
+        Record record = schema.createRecord();
+        recordId = record.getId();
+        result = schema.toResult(record);
+    }
+
+    /**
+     * Decodes the row using a field types snapshot taken beforehand, as done when reading multiple records.
+     */
+    @Benchmark
+    public Record decode() throws Exception {
+        return recordDecoder.decodeRecord(recordId, null, null, result, fieldTypes);
+    }
+
+    /**
+     * Decodes the row including the record id, and with a new field types snapshot, as done when reading a
+     * single record.
+     */
+    @Benchmark
+    public Record decodeWithSnapshot() throws Exception {
+        return recordDecoder.decodeRecord(result);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+import org.lilyproject.repository.impl.id.SchemaIdImpl;
+import org.lilyproject.util.repo.RecordEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializes and parses the payload of a record update event, in the json and in the binary format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordEventBenchmark {
+    private IdGenerator idGenerator;
+    private RecordEvent event;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+        idGenerator = new IdGeneratorImpl();
+
+        event = new RecordEvent();
+        event.setType(RecordEvent.Type.UPDATE);
+        event.setVersionUpdated(3);
+        for (int i = 0; i < 5; i++) {
+            event.addUpdatedField(new SchemaIdImpl(UUID.randomUUID()));
+        }
+
+        json = event.toJsonBytes();
+        binary = event.toBytes();
+    }
+
+    @Benchmark
+    public byte[] writeJson() {
+        return event.toJsonBytes();
+    }
+
+    @Benchmark
+    public byte[] writeBinary() {
+        return event.toBytes();
+    }
+
+    @Benchmark
+    public RecordEvent readJson() throws Exception {
+        return new RecordEvent(json, idGenerator);
+    }
+
+    @Benchmark
+    public RecordEvent readBinary() throws Exception {
+        return new RecordEvent(binary, idGenerator);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.lilyproject.repository.api.IdGenerator;
+import org.lilyproject.repository.api.RecordId;
+import org.lilyproject.repository.impl.id.IdGeneratorImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converts record ids of the different kinds from and to their byte and string representations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordIdBenchmark {
+    @Param({"UUID", "USER", "SALTED", "UUID_VARIANT", "USER_VARIANT"})
+    public String kind;
+
+    private IdGenerator idGenerator;
+    private RecordId recordId;
+    private byte[] bytes;
+    private String string;
+
+    @Setup
+    public void setup() {
+        idGenerator = new IdGeneratorImpl();
+
+        Map<String, String> variantProperties = new HashMap<String, String>();
+        variantProperties.put("language", "en");
+        variantProperties.put("branch", "dev");
+
+        if (kind.equals("UUID")) {
+            recordId = idGenerator.newRecordId();
+        } else if (kind.equals("USER")) {
+            recordId = idGenerator.newRecordId("document-0000123456");
+        } else if (kind.equals("SALTED")) {
+            recordId = idGenerator.newSaltedRecordId("document-0000123456");
+        } else if (kind.equals("UUID_VARIANT")) {
+            recordId = idGenerator.newRecordId(variantProperties);
+        } else if (kind.equals("USER_VARIANT")) {
+            recordId = idGenerator.newRecordId("document-0000123456", variantProperties);
+        } else {
+            throw new IllegalArgumentException("Unknown record id kind: " + kind);
+        }
+
+        bytes = recordId.toBytes();
+        string = recordId.toString();
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return recordId.toBytes();
+    }
+
+    @Benchmark
+    public RecordId fromBytes() {
+        return idGenerator.fromBytes(bytes);
+    }
+
+    @Benchmark
+    public String toStringBenchmark() {
+        return recordId.toString();
+    }
+
+    @Benchmark
+    public RecordId fromString() {
+        return idGenerator.fromString(string);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.lilyproject.rowlog.api.RowLogException;
+import org.lilyproject.rowlog.api.RowLogMessage;
+import org.lilyproject.rowlog.api.RowLogShard;
+import org.lilyproject.rowlog.api.RowLogShardList;
+import org.lilyproject.rowlog.api.RowLogShardRouter;
+import org.lilyproject.rowlog.impl.RowLogMessageImpl;
+import org.lilyproject.rowlog.impl.RowLogShardImpl;
+import org.lilyproject.rowlog.impl.RowLogShardRouterFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Routes rowlog messages to a shard, for each of the shard routers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RowLogShardRouterBenchmark {
+    @Param({"md5", "murmur", "keyrange"})
+    public String router;
+
+    @Param({"8"})
+    public int shardCount;
+
+    private static final int MESSAGE_COUNT = 1024;
+
+    private RowLogShardRouter shardRouter;
+    private RowLogShardList shardList;
+    private RowLogMessage[] messages;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        shardRouter = RowLogShardRouterFactory.create(router);
+
+        shardList = new RowLogShardList();
+        for (int i = 0; i < shardCount; i++) {
+            shardList.addShard(new RowLogShardImpl("shard" + i, new byte[] {(byte)i}, null, null, 1));
+        }
+
+        // Messages for row keys shaped like UUID record ids
+        Random random = new Random(0);
+        messages = new RowLogMessage[MESSAGE_COUNT];
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            byte[] rowKey = new byte[17];
+            random.nextBytes(rowKey);
+            rowKey[0] = 1;
+            messages[i] = new RowLogMessageImpl(0, rowKey, i, null, null);
+        }
+    }
+
+    @Benchmark
+    public RowLogShard getShard() throws RowLogException {
+        next = (next + 1) & (MESSAGE_COUNT - 1);
+        return shardRouter.getShard(messages[next], shardList);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lilyproject.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.lilyproject.repository.api.FieldType;
+import org.lilyproject.repository.api.IdentityRecordStack;
+import org.lilyproject.repository.api.ValueType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes single field values, for the fields of {@link BenchmarkSchema} with the most used
+ * value types.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValueTypeBenchmark {
+    /** The field, the value type is mentioned between brackets. */
+    @Param({"title (STRING)", "body (STRING)", "views (LONG)", "modified (DATETIME)", "tags (LIST<STRING>)",
+            "parent (LINK)", "related (LIST<LINK>)"})
+    public String field;
+
+    private ValueType valueType;
+    private Object value;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSchema schema = new BenchmarkSchema();
+        FieldType fieldType = schema.getFieldType(field.substring(0, field.indexOf(' ')));
+        valueType = fieldType.getValueType();
+        value = schema.createRecord().getField(fieldType.getName());
+        encoded = write();
+    }
+
+    @Benchmark
+    public byte[] write() throws Exception {
+        return valueType.toBytes(value, new IdentityRecordStack());
+    }
+
+    @Benchmark
+    public Object read() throws Exception {
+        return valueType.read(encoded);
+    }
+}
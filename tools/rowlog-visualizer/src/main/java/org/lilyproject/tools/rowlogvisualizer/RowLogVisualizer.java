@@ -32,7 +32,9 @@ import org.lilyproject.rowlog.impl.SubscriptionExecutionState;
 import org.lilyproject.util.Version;
 import org.lilyproject.util.hbase.HBaseAdminFactory;
 import org.lilyproject.util.hbase.LilyHBaseSchema;
+import org.lilyproject.util.repo.RecordEvent;
 
+import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.List;
 
@@ -185,7 +187,7 @@ public class RowLogVisualizer extends BaseZkCliTool {
             if (payload == null) {
                 System.out.println("No payload found.");
             } else {
-                System.out.println("Payload: " + new String(payload, "UTF-8"));
+                System.out.println("Payload: " + payloadToString(payload, idGenerator));
             }
             System.out.println();
         }
@@ -222,4 +224,13 @@ public class RowLogVisualizer extends BaseZkCliTool {
         buffer.putLong(timestamp);
         return buffer.array();
     }
+
+    private String payloadToString(byte[] payload, IdGenerator idGenerator) throws UnsupportedEncodingException {
+        // The payloads of the Lily rowlogs are record events, which can be in json or binary format
+        try {
+            return new RecordEvent(payload, idGenerator).toJson();
+        } catch (Exception e) {
+            return new String(payload, "UTF-8");
+        }
+    }
 }